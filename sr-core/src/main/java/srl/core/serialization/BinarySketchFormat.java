@@ -0,0 +1,296 @@
+/**
+ * BinarySketchFormat.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.serialization;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * Constants and primitive encoding shared by {@link BinarySketchWriter} and
+ * {@link BinarySketchReader}.
+ * <p>
+ * Layout of a file (all fixed width numbers are big endian):
+ * 
+ * <pre>
+ * header     magic "SRLB", version (1 byte), 3 reserved bytes
+ * strokes    one chunk per stroke, see BinarySketchWriter
+ * structure  sketch id and attributes, then the component tree
+ * index      number of strokes (4 bytes), offset of each stroke chunk
+ *            (8 bytes each), offset of the structure (8 bytes)
+ * trailer    offset of the index (8 bytes), magic "SRLE"
+ * </pre>
+ * 
+ * Variable length integers are stored 7 bits per byte, low bits first, with
+ * the high bit set on every byte but the last. Signed values are zig-zag
+ * encoded first so that small negative numbers stay short.
+ */
+final class BinarySketchFormat {
+
+	/**
+	 * Magic number at the start of a file ("SRLB")
+	 */
+	static final int MAGIC = 0x53524C42;
+
+	/**
+	 * Magic number at the end of a file ("SRLE")
+	 */
+	static final int END_MAGIC = 0x53524C45;
+
+	/**
+	 * Current format version
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header in bytes
+	 */
+	static final int HEADER_SIZE = 8;
+
+	/**
+	 * Size of the trailer in bytes
+	 */
+	static final int TRAILER_SIZE = 12;
+
+	/**
+	 * Stroke flag: coordinates are stored as raw doubles instead of scaled,
+	 * delta-encoded integers
+	 */
+	static final int FLAG_RAW_COORDINATES = 1;
+
+	/**
+	 * Stroke flag: points have pressure values
+	 */
+	static final int FLAG_PRESSURE = 2;
+
+	/**
+	 * Stroke flag: points have tilt values
+	 */
+	static final int FLAG_TILT = 4;
+
+	/**
+	 * Stroke flag: point ids are stored
+	 */
+	static final int FLAG_POINT_IDS = 8;
+
+	/**
+	 * Largest power of ten coordinates are scaled by before they are stored as
+	 * integers
+	 */
+	static final int MAX_SCALE_EXPONENT = 6;
+
+	/**
+	 * Component tag for a stroke (followed by the stroke's index)
+	 */
+	static final int TAG_STROKE = 0;
+
+	/**
+	 * Component tag for a shape (followed by the shape)
+	 */
+	static final int TAG_SHAPE = 1;
+
+	/**
+	 * Character set for strings
+	 */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Powers of ten used for coordinate scaling
+	 */
+	static final double[] SCALES = { 1.0, 10.0, 100.0, 1000.0, 10000.0,
+			100000.0, 1000000.0 };
+
+	/**
+	 * Not instantiable
+	 */
+	private BinarySketchFormat() {
+	}
+
+	/**
+	 * Write an unsigned variable length integer
+	 * 
+	 * @param out
+	 *            output
+	 * @param value
+	 *            value (treated as unsigned)
+	 * @throws IOException
+	 *             if the value could not be written
+	 */
+	static void writeVarLong(DataOutputStream out, long value)
+			throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Write a signed variable length integer (zig-zag encoded)
+	 * 
+	 * @param out
+	 *            output
+	 * @param value
+	 *            value
+	 * @throws IOException
+	 *             if the value could not be written
+	 */
+	static void writeSignedVarLong(DataOutputStream out, long value)
+			throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Write a string (length + 1, then UTF-8 bytes; a length of 0 means null)
+	 * 
+	 * @param out
+	 *            output
+	 * @param s
+	 *            string (may be null)
+	 * @throws IOException
+	 *             if the string could not be written
+	 */
+	static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		if (s == null) {
+			writeVarLong(out, 0);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarLong(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write a UUID (16 bytes; a null id is written as all zeros)
+	 * 
+	 * @param out
+	 *            output
+	 * @param id
+	 *            id
+	 * @throws IOException
+	 *             if the id could not be written
+	 */
+	static void writeUUID(DataOutputStream out, UUID id) throws IOException {
+		out.writeLong((id == null) ? 0L : id.getMostSignificantBits());
+		out.writeLong((id == null) ? 0L : id.getLeastSignificantBits());
+	}
+
+	/**
+	 * Read an unsigned variable length integer
+	 * 
+	 * @param in
+	 *            input
+	 * @return value
+	 * @throws IOException
+	 *             if the value is malformed
+	 */
+	static long readVarLong(ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	/**
+	 * Read an unsigned variable length integer that has to fit in an int
+	 * 
+	 * @param in
+	 *            input
+	 * @return value
+	 * @throws IOException
+	 *             if the value is malformed or too large
+	 */
+	static int readVarInt(ByteBuffer in) throws IOException {
+		long value = readVarLong(in);
+		if (value < 0 || value > Integer.MAX_VALUE)
+			throw new IOException("Value out of range: " + value);
+		return (int) value;
+	}
+
+	/**
+	 * Read a signed (zig-zag encoded) variable length integer
+	 * 
+	 * @param in
+	 *            input
+	 * @return value
+	 * @throws IOException
+	 *             if the value is malformed
+	 */
+	static long readSignedVarLong(ByteBuffer in) throws IOException {
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Read a string
+	 * 
+	 * @param in
+	 *            input
+	 * @return string (may be null)
+	 * @throws IOException
+	 *             if the string is malformed
+	 */
+	static String readString(ByteBuffer in) throws IOException {
+		int length = readVarInt(in);
+		if (length == 0)
+			return null;
+		byte[] bytes = new byte[length - 1];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Read a UUID
+	 * 
+	 * @param in
+	 *            input
+	 * @return id
+	 */
+	static UUID readUUID(ByteBuffer in) {
+		long msb = in.getLong();
+		long lsb = in.getLong();
+		return new UUID(msb, lsb);
+	}
+}
@@ -0,0 +1,433 @@
+/**
+ * BinarySketchReader.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.serialization;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import srl.core.sketch.Alias;
+import srl.core.sketch.Interpretation;
+import srl.core.sketch.Point;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.SContainer;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+
+/**
+ * Reads sketches written by {@link BinarySketchWriter}. The whole sketch can
+ * be read with {@link #readSketch()}, or single strokes can be decoded with
+ * {@link #readStroke(int)} without touching the rest of the data. Files are
+ * memory mapped by {@link #open(File)}, so only the pages of the strokes that
+ * are read are loaded.
+ * <p>
+ * Memory mapped files are limited to 2GB.
+ */
+public class BinarySketchReader implements Closeable {
+
+	/**
+	 * Encoded sketch
+	 */
+	private final ByteBuffer m_buffer;
+
+	/**
+	 * Offset of each stroke chunk
+	 */
+	private final long[] m_strokeOffsets;
+
+	/**
+	 * Offset of the sketch structure
+	 */
+	private final long m_structureOffset;
+
+	/**
+	 * File the buffer was mapped from (null if the buffer was given)
+	 */
+	private final RandomAccessFile m_file;
+
+	/**
+	 * Memory map a file for reading
+	 * 
+	 * @param file
+	 *            file written by {@link BinarySketchWriter}
+	 * @return reader for the file
+	 * @throws IOException
+	 *             if the file could not be mapped or is not a valid sketch
+	 */
+	public static BinarySketchReader open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("File too large to map: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			return new BinarySketchReader(buffer, raf);
+		}
+		catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param buffer
+	 *            buffer holding the encoded sketch from its current position
+	 *            to its limit
+	 * @throws IOException
+	 *             if the buffer does not hold a valid sketch
+	 */
+	public BinarySketchReader(ByteBuffer buffer) throws IOException {
+		this(buffer, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param buffer
+	 *            buffer holding the encoded sketch
+	 * @param file
+	 *            file the buffer was mapped from (may be null)
+	 * @throws IOException
+	 *             if the buffer does not hold a valid sketch
+	 */
+	private BinarySketchReader(ByteBuffer buffer, RandomAccessFile file)
+			throws IOException {
+		m_buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		m_file = file;
+
+		int size = m_buffer.limit();
+		if (size < BinarySketchFormat.HEADER_SIZE
+				+ BinarySketchFormat.TRAILER_SIZE)
+			throw new IOException("Not a binary sketch: too short");
+		if (m_buffer.getInt(0) != BinarySketchFormat.MAGIC)
+			throw new IOException("Not a binary sketch: bad magic number");
+		int version = m_buffer.get(4) & 0xFF;
+		if (version != BinarySketchFormat.VERSION)
+			throw new IOException("Unsupported binary sketch version "
+					+ version);
+		if (m_buffer.getInt(size - 4) != BinarySketchFormat.END_MAGIC)
+			throw new IOException("Binary sketch is truncated");
+
+		try {
+			ByteBuffer index = at(m_buffer.getLong(size
+					- BinarySketchFormat.TRAILER_SIZE));
+			int count = index.getInt();
+			if (count < 0 || count > index.remaining() / 8)
+				throw new IOException("Corrupt binary sketch index");
+			m_strokeOffsets = new long[count];
+			for (int i = 0; i < count; i++)
+				m_strokeOffsets[i] = index.getLong();
+			m_structureOffset = index.getLong();
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt binary sketch index", e);
+		}
+	}
+
+	/**
+	 * Get the number of strokes stored (including parent strokes that are not
+	 * part of the sketch themselves)
+	 * 
+	 * @return number of strokes
+	 */
+	public int getNumStrokes() {
+		return m_strokeOffsets.length;
+	}
+
+	/**
+	 * Decode a single stroke (and its parents). Each call returns new objects.
+	 * 
+	 * @param i
+	 *            index of the stroke, in the order the strokes were written
+	 * @return stroke
+	 * @throws IOException
+	 *             if the stroke is corrupt
+	 */
+	public Stroke readStroke(int i) throws IOException {
+		if (i < 0 || i >= m_strokeOffsets.length)
+			throw new IndexOutOfBoundsException("Stroke " + i + " of "
+					+ m_strokeOffsets.length);
+		return decodeStroke(i, null);
+	}
+
+	/**
+	 * Decode the whole sketch
+	 * 
+	 * @return sketch
+	 * @throws IOException
+	 *             if the sketch is corrupt
+	 */
+	public Sketch readSketch() throws IOException {
+		Stroke[] strokes = new Stroke[m_strokeOffsets.length];
+		// parents always come before their children
+		for (int i = 0; i < strokes.length; i++)
+			decodeStroke(i, strokes);
+
+		try {
+			ByteBuffer in = at(m_structureOffset);
+			Sketch sketch = new Sketch();
+			sketch.setId(BinarySketchFormat.readUUID(in));
+			readAttributes(in, sketch);
+			readContents(in, sketch, strokes);
+			return sketch;
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt binary sketch structure", e);
+		}
+	}
+
+	/**
+	 * Release the mapped file
+	 * 
+	 * @throws IOException
+	 *             if the file could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (m_file != null)
+			m_file.close();
+	}
+
+	/**
+	 * Get an independent view of the buffer positioned at the given offset
+	 * 
+	 * @param offset
+	 *            offset
+	 * @return buffer
+	 * @throws IOException
+	 *             if the offset is outside the buffer
+	 */
+	private ByteBuffer at(long offset) throws IOException {
+		if (offset < BinarySketchFormat.HEADER_SIZE
+				|| offset > m_buffer.limit())
+			throw new IOException("Offset out of range: " + offset);
+		ByteBuffer in = m_buffer.duplicate();
+		in.position((int) offset);
+		return in;
+	}
+
+	/**
+	 * Decode a stroke chunk
+	 * 
+	 * @param i
+	 *            stroke index
+	 * @param decoded
+	 *            strokes decoded so far, to share parents (null to decode
+	 *            parents again)
+	 * @return stroke
+	 * @throws IOException
+	 *             if the stroke is corrupt
+	 */
+	private Stroke decodeStroke(int i, Stroke[] decoded) throws IOException {
+		if (decoded != null && decoded[i] != null)
+			return decoded[i];
+		try {
+			ByteBuffer in = at(m_strokeOffsets[i]);
+			Stroke stroke = new Stroke();
+			stroke.setId(BinarySketchFormat.readUUID(in));
+			int flags = in.get() & 0xFF;
+			int parent = BinarySketchFormat.readVarInt(in);
+			if (parent > 0) {
+				// parents are always written before their children
+				if (parent - 1 >= i)
+					throw new IOException("Corrupt parent reference in stroke "
+							+ i);
+				stroke.setParent(decodeStroke(parent - 1, decoded));
+			}
+			readAttributes(in, stroke);
+			stroke.setNBestList(readInterpretations(in));
+
+			int n = BinarySketchFormat.readVarInt(in);
+			boolean raw = (flags & BinarySketchFormat.FLAG_RAW_COORDINATES) != 0;
+			boolean hasPressure = (flags & BinarySketchFormat.FLAG_PRESSURE) != 0;
+			boolean hasTilt = (flags & BinarySketchFormat.FLAG_TILT) != 0;
+			boolean hasIds = (flags & BinarySketchFormat.FLAG_POINT_IDS) != 0;
+			double scale = 1.0;
+			if (!raw) {
+				int exponent = in.get();
+				if (exponent < 0
+						|| exponent > BinarySketchFormat.MAX_SCALE_EXPONENT)
+					throw new IOException("Corrupt scale in stroke " + i);
+				scale = BinarySketchFormat.SCALES[exponent];
+			}
+
+			List<Point> points = new ArrayList<Point>(n);
+			long x = 0, y = 0, time = 0;
+			for (int j = 0; j < n; j++) {
+				double px, py;
+				if (raw) {
+					px = in.getDouble();
+					py = in.getDouble();
+				}
+				else {
+					x += BinarySketchFormat.readSignedVarLong(in);
+					y += BinarySketchFormat.readSignedVarLong(in);
+					px = x / scale;
+					py = y / scale;
+				}
+				time += BinarySketchFormat.readSignedVarLong(in);
+				Point p = new Point(px, py, time);
+				if (hasPressure)
+					p.setPressure(readNullableDouble(in));
+				if (hasTilt) {
+					p.setTiltX(readNullableDouble(in));
+					p.setTiltY(readNullableDouble(in));
+				}
+				if (hasIds)
+					p.id = BinarySketchFormat.readUUID(in);
+				points.add(p);
+			}
+			stroke.setPoints(points);
+
+			if (decoded != null)
+				decoded[i] = stroke;
+			return stroke;
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Stroke " + i + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Read a value that may be null (stored as NaN)
+	 * 
+	 * @param in
+	 *            input
+	 * @return value (may be null)
+	 */
+	private static Double readNullableDouble(ByteBuffer in) {
+		double value = in.getDouble();
+		return Double.isNaN(value) ? null : value;
+	}
+
+	/**
+	 * Read attributes into a component
+	 * 
+	 * @param in
+	 *            input
+	 * @param component
+	 *            component to set the attributes on
+	 * @throws IOException
+	 *             if the attributes are corrupt
+	 */
+	private static void readAttributes(ByteBuffer in, SComponent component)
+			throws IOException {
+		int n = BinarySketchFormat.readVarInt(in);
+		for (int i = 0; i < n; i++) {
+			String key = BinarySketchFormat.readString(in);
+			component.setAttribute(key, BinarySketchFormat.readString(in));
+		}
+	}
+
+	/**
+	 * Read an n-best list of interpretations
+	 * 
+	 * @param in
+	 *            input
+	 * @return interpretations
+	 * @throws IOException
+	 *             if the interpretations are corrupt
+	 */
+	private static List<Interpretation> readInterpretations(ByteBuffer in)
+			throws IOException {
+		int n = BinarySketchFormat.readVarInt(in);
+		List<Interpretation> interpretations = new ArrayList<Interpretation>(n);
+		for (int i = 0; i < n; i++) {
+			String label = BinarySketchFormat.readString(in);
+			interpretations.add(new Interpretation(label, in.getDouble()));
+		}
+		return interpretations;
+	}
+
+	/**
+	 * Read the component tree of a container
+	 * 
+	 * @param in
+	 *            input
+	 * @param container
+	 *            container to add the components to
+	 * @param strokes
+	 *            decoded strokes
+	 * @throws IOException
+	 *             if the structure is corrupt
+	 */
+	private static void readContents(ByteBuffer in, SContainer container,
+			Stroke[] strokes) throws IOException {
+		int n = BinarySketchFormat.readVarInt(in);
+		for (int i = 0; i < n; i++) {
+			int tag = in.get();
+			if (tag == BinarySketchFormat.TAG_STROKE) {
+				int index = BinarySketchFormat.readVarInt(in);
+				if (index >= strokes.length)
+					throw new IOException("Corrupt stroke reference " + index);
+				container.add(strokes[index]);
+			}
+			else if (tag == BinarySketchFormat.TAG_SHAPE) {
+				Shape shape = new Shape();
+				UUID id = BinarySketchFormat.readUUID(in);
+				shape.setId(id);
+				readAttributes(in, shape);
+				shape.setNBestList(readInterpretations(in));
+				int aliases = BinarySketchFormat.readVarInt(in);
+				for (int j = 0; j < aliases; j++) {
+					String name = BinarySketchFormat.readString(in);
+					double x = in.getDouble();
+					double y = in.getDouble();
+					shape.addAlias(new Alias(name, new Point(x, y, in
+							.getLong())));
+				}
+				readContents(in, shape, strokes);
+				container.add(shape);
+			}
+			else
+				throw new IOException("Unknown component tag " + tag);
+		}
+	}
+}
@@ -0,0 +1,478 @@
+/**
+ * BinarySketchWriter.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.serialization;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.Alias;
+import srl.core.sketch.Interpretation;
+import srl.core.sketch.Point;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+
+/**
+ * Writes sketches in a compact binary format that can be read back with
+ * {@link BinarySketchReader}. Strokes are written first, one self-contained
+ * chunk each, followed by the shape structure and an index of stroke offsets
+ * so that a reader can seek directly to a single stroke.
+ * <p>
+ * Point coordinates are scaled by the smallest power of ten (up to 10^6) that
+ * represents every coordinate of the stroke exactly, and stored as zig-zag
+ * variable length deltas from the previous point, as are the times. Strokes
+ * whose coordinates cannot be represented this way fall back to raw doubles.
+ * <p>
+ * Stroke ids, parents, attributes, interpretations, pressure and tilt are
+ * kept, as are shape ids, attributes, interpretations and aliases. Point ids
+ * are only written if {@link #setWritePointIds(boolean)} is set. Styles and
+ * segmentations are not stored.
+ */
+public class BinarySketchWriter implements Closeable {
+
+	/**
+	 * Stream the file is written to
+	 */
+	private final DataOutputStream m_out;
+
+	/**
+	 * Counts the bytes written so far, for the offset index
+	 */
+	private final CountingOutputStream m_counter;
+
+	/**
+	 * Whether point ids are written
+	 */
+	private boolean m_writePointIds = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param out
+	 *            stream to write to (closed by {@link #close()})
+	 */
+	public BinarySketchWriter(OutputStream out) {
+		m_counter = new CountingOutputStream(new BufferedOutputStream(out));
+		m_out = new DataOutputStream(m_counter);
+	}
+
+	/**
+	 * Set whether point ids are written. They take 16 bytes per point, which
+	 * is more than the rest of the point, so they are left out by default and
+	 * new ids are created when reading.
+	 * 
+	 * @param writePointIds
+	 *            true to write point ids
+	 */
+	public void setWritePointIds(boolean writePointIds) {
+		m_writePointIds = writePointIds;
+	}
+
+	/**
+	 * Get whether point ids are written
+	 * 
+	 * @return true if point ids are written
+	 */
+	public boolean isWritePointIds() {
+		return m_writePointIds;
+	}
+
+	/**
+	 * Write a sketch. Only one sketch should be written per stream.
+	 * 
+	 * @param sketch
+	 *            sketch to write
+	 * @throws IOException
+	 *             if the sketch could not be written
+	 * @throws IllegalArgumentException
+	 *             if the sketch contains components other than strokes and
+	 *             shapes
+	 */
+	public void write(Sketch sketch) throws IOException {
+		long start = m_counter.getCount();
+
+		m_out.writeInt(BinarySketchFormat.MAGIC);
+		m_out.writeByte(BinarySketchFormat.VERSION);
+		m_out.writeByte(0);
+		m_out.writeShort(0);
+
+		// number every stroke (including parents) so they can be referenced
+		Map<Stroke, Integer> indices = new IdentityHashMap<Stroke, Integer>();
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		collectStrokes(sketch, indices, strokes);
+
+		long[] offsets = new long[strokes.size()];
+		for (int i = 0; i < strokes.size(); i++) {
+			offsets[i] = m_counter.getCount() - start;
+			writeStroke(strokes.get(i), indices);
+		}
+
+		long structureOffset = m_counter.getCount() - start;
+		BinarySketchFormat.writeUUID(m_out, sketch.getId());
+		writeAttributes(sketch);
+		writeContents(sketch.getAllComponents(), indices);
+
+		long indexOffset = m_counter.getCount() - start;
+		m_out.writeInt(offsets.length);
+		for (long offset : offsets)
+			m_out.writeLong(offset);
+		m_out.writeLong(structureOffset);
+
+		m_out.writeLong(indexOffset);
+		m_out.writeInt(BinarySketchFormat.END_MAGIC);
+		m_out.flush();
+	}
+
+	/**
+	 * Flush and close the underlying stream
+	 * 
+	 * @throws IOException
+	 *             if the stream could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		m_out.close();
+	}
+
+	/**
+	 * Number all strokes in the given components (and their parents),
+	 * parents first
+	 * 
+	 * @param components
+	 *            components to search
+	 * @param indices
+	 *            index of each stroke found so far
+	 * @param strokes
+	 *            strokes in index order
+	 */
+	private static void collectStrokes(Iterable<SComponent> components,
+			Map<Stroke, Integer> indices, List<Stroke> strokes) {
+		for (SComponent c : components) {
+			if (c instanceof Stroke)
+				collectStroke((Stroke) c, indices, strokes);
+			else if (c instanceof Shape)
+				collectStrokes((Shape) c, indices, strokes);
+			else
+				throw new IllegalArgumentException(
+						"Cannot write component of type "
+								+ c.getClass().getName());
+		}
+	}
+
+	/**
+	 * Number a stroke and its parents, parents first
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @param indices
+	 *            index of each stroke found so far
+	 * @param strokes
+	 *            strokes in index order
+	 */
+	private static void collectStroke(Stroke stroke,
+			Map<Stroke, Integer> indices, List<Stroke> strokes) {
+		if (indices.containsKey(stroke))
+			return;
+		// reserve the slot first so that a cycle of parents terminates
+		indices.put(stroke, -1);
+		if (stroke.getParent() != null)
+			collectStroke(stroke.getParent(), indices, strokes);
+		indices.put(stroke, strokes.size());
+		strokes.add(stroke);
+	}
+
+	/**
+	 * Write one stroke chunk
+	 * 
+	 * @param stroke
+	 *            stroke to write
+	 * @param indices
+	 *            index of each stroke
+	 * @throws IOException
+	 *             if the stroke could not be written
+	 */
+	private void writeStroke(Stroke stroke, Map<Stroke, Integer> indices)
+			throws IOException {
+		List<Point> points = stroke.getPoints();
+		int n = points.size();
+
+		int flags = 0;
+		boolean hasPressure = false, hasTilt = false;
+		for (int i = 0; i < n; i++) {
+			Point p = points.get(i);
+			hasPressure |= p.getPressure() != null;
+			hasTilt |= p.getTiltX() != null || p.getTiltY() != null;
+		}
+		if (hasPressure)
+			flags |= BinarySketchFormat.FLAG_PRESSURE;
+		if (hasTilt)
+			flags |= BinarySketchFormat.FLAG_TILT;
+		if (m_writePointIds)
+			flags |= BinarySketchFormat.FLAG_POINT_IDS;
+		int exponent = findScaleExponent(points);
+		if (exponent < 0)
+			flags |= BinarySketchFormat.FLAG_RAW_COORDINATES;
+
+		BinarySketchFormat.writeUUID(m_out, stroke.getId());
+		m_out.writeByte(flags);
+		Integer parent = (stroke.getParent() == null) ? null : indices
+				.get(stroke.getParent());
+		BinarySketchFormat.writeVarLong(m_out, (parent == null || parent < 0)
+				? 0 : parent + 1);
+		writeAttributes(stroke);
+		writeInterpretations(stroke.getNBestList());
+
+		BinarySketchFormat.writeVarLong(m_out, n);
+		if (exponent >= 0)
+			m_out.writeByte(exponent);
+		double scale = (exponent < 0) ? 1.0
+				: BinarySketchFormat.SCALES[exponent];
+		long lastX = 0, lastY = 0, lastTime = 0;
+		for (int i = 0; i < n; i++) {
+			Point p = points.get(i);
+			if (exponent < 0) {
+				m_out.writeDouble(p.getX());
+				m_out.writeDouble(p.getY());
+			}
+			else {
+				long x = Math.round(p.getX() * scale);
+				long y = Math.round(p.getY() * scale);
+				BinarySketchFormat.writeSignedVarLong(m_out, x - lastX);
+				BinarySketchFormat.writeSignedVarLong(m_out, y - lastY);
+				lastX = x;
+				lastY = y;
+			}
+			BinarySketchFormat.writeSignedVarLong(m_out, p.getTime() - lastTime);
+			lastTime = p.getTime();
+			if (hasPressure)
+				writeNullableDouble(p.getPressure());
+			if (hasTilt) {
+				writeNullableDouble(p.getTiltX());
+				writeNullableDouble(p.getTiltY());
+			}
+			if (m_writePointIds)
+				BinarySketchFormat.writeUUID(m_out, p.id);
+		}
+	}
+
+	/**
+	 * Find the smallest power of ten that turns every coordinate of the given
+	 * points into an integer without losing precision
+	 * 
+	 * @param points
+	 *            points
+	 * @return exponent, or -1 if the coordinates have to be stored as raw
+	 *         doubles
+	 */
+	private static int findScaleExponent(List<Point> points) {
+		int exponent = 0;
+		for (int i = 0; i < points.size(); i++) {
+			Point p = points.get(i);
+			while (!isExact(p.getX(), exponent) || !isExact(p.getY(), exponent)) {
+				if (++exponent > BinarySketchFormat.MAX_SCALE_EXPONENT)
+					return -1;
+			}
+		}
+		return exponent;
+	}
+
+	/**
+	 * Check whether a value survives scaling by 10^exponent, rounding and
+	 * scaling back
+	 * 
+	 * @param value
+	 *            value
+	 * @param exponent
+	 *            power of ten
+	 * @return true if the value is restored exactly
+	 */
+	private static boolean isExact(double value, int exponent) {
+		double scale = BinarySketchFormat.SCALES[exponent];
+		double scaled = value * scale;
+		// stay well inside the range where doubles hold integers exactly
+		if (Double.isNaN(scaled) || Math.abs(scaled) > (1L << 52))
+			return false;
+		return Math.round(scaled) / scale == value;
+	}
+
+	/**
+	 * Write a value that may be null (null is written as NaN)
+	 * 
+	 * @param value
+	 *            value
+	 * @throws IOException
+	 *             if the value could not be written
+	 */
+	private void writeNullableDouble(Double value) throws IOException {
+		m_out.writeDouble((value == null) ? Double.NaN : value.doubleValue());
+	}
+
+	/**
+	 * Write the attributes of a component
+	 * 
+	 * @param component
+	 *            component
+	 * @throws IOException
+	 *             if the attributes could not be written
+	 */
+	private void writeAttributes(SComponent component) throws IOException {
+		Map<String, String> attributes = component.getAttributes();
+		if (attributes == null) {
+			BinarySketchFormat.writeVarLong(m_out, 0);
+			return;
+		}
+		BinarySketchFormat.writeVarLong(m_out, attributes.size());
+		for (Map.Entry<String, String> entry : attributes.entrySet()) {
+			BinarySketchFormat.writeString(m_out, entry.getKey());
+			BinarySketchFormat.writeString(m_out, entry.getValue());
+		}
+	}
+
+	/**
+	 * Write an n-best list of interpretations
+	 * 
+	 * @param interpretations
+	 *            interpretations (may be null)
+	 * @throws IOException
+	 *             if the interpretations could not be written
+	 */
+	private void writeInterpretations(List<Interpretation> interpretations)
+			throws IOException {
+		if (interpretations == null) {
+			BinarySketchFormat.writeVarLong(m_out, 0);
+			return;
+		}
+		BinarySketchFormat.writeVarLong(m_out, interpretations.size());
+		for (Interpretation i : interpretations) {
+			BinarySketchFormat.writeString(m_out, i.label);
+			m_out.writeDouble(i.confidence);
+		}
+	}
+
+	/**
+	 * Write the component tree of a container
+	 * 
+	 * @param contents
+	 *            components of the container
+	 * @param indices
+	 *            index of each stroke
+	 * @throws IOException
+	 *             if the components could not be written
+	 */
+	private void writeContents(List<SComponent> contents,
+			Map<Stroke, Integer> indices) throws IOException {
+		BinarySketchFormat.writeVarLong(m_out, contents.size());
+		for (SComponent c : contents) {
+			if (c instanceof Stroke) {
+				m_out.writeByte(BinarySketchFormat.TAG_STROKE);
+				BinarySketchFormat.writeVarLong(m_out, indices.get(c));
+			}
+			else {
+				Shape shape = (Shape) c;
+				m_out.writeByte(BinarySketchFormat.TAG_SHAPE);
+				BinarySketchFormat.writeUUID(m_out, shape.getId());
+				writeAttributes(shape);
+				writeInterpretations(shape.getNBestList());
+				List<Alias> aliases = shape.getAliases();
+				BinarySketchFormat.writeVarLong(m_out, (aliases == null) ? 0
+						: aliases.size());
+				if (aliases != null) {
+					for (Alias a : aliases) {
+						BinarySketchFormat.writeString(m_out, a.getName());
+						Point p = a.getPoint();
+						m_out.writeDouble(p.getX());
+						m_out.writeDouble(p.getY());
+						m_out.writeLong(p.getTime());
+					}
+				}
+				writeContents(shape.getAllComponents(), indices);
+			}
+		}
+	}
+
+	/**
+	 * Output stream that counts the bytes written through it
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		/**
+		 * Bytes written so far
+		 */
+		private long m_count = 0;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param out
+		 *            stream to write to
+		 */
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		/**
+		 * Get the number of bytes written so far
+		 * 
+		 * @return number of bytes
+		 */
+		public long getCount() {
+			return m_count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			m_count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			m_count += len;
+		}
+	}
+}
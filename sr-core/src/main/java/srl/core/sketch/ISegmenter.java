@@ -70,6 +70,10 @@ public interface ISegmenter extends Runnable {
 	 * Returns the segmentations generated by a thread. Null if the
 	 * segmentations are not yet created.
 	 * 
+	 * There is no way to tell when the thread has finished; to wait for the
+	 * result, cancel it or give it a timeout, run the segmenter with
+	 * srl.segmentation.SegmentationExecutor instead.
+	 * 
 	 * @return Segmentations generated by using the {@link #run()} function
 	 */
 	public List<Segmentation> getThreadedSegmentations();
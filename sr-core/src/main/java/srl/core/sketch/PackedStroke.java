@@ -0,0 +1,286 @@
+/**
+ * PackedStroke.java
+ *
+ * Revision History:<br>
+ * SRL Member - File created<br>
+ *
+ * <p>
+ *
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University
+ *       nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.sketch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact, read-only view of the points of a stroke stored as parallel
+ * primitive arrays (x, y and time). Numeric code such as feature calculation,
+ * fitting and segmentation can walk these arrays instead of dereferencing a
+ * {@link Point} object for every coordinate.
+ * <p>
+ * The arrays returned by {@link #getX()}, {@link #getY()} and
+ * {@link #getTime()} are the backing arrays of this view and must not be
+ * modified.
+ */
+public final class PackedStroke {
+
+	/**
+	 * x values of the points
+	 */
+	private final double[] m_x;
+
+	/**
+	 * y values of the points
+	 */
+	private final double[] m_y;
+
+	/**
+	 * Time values of the points
+	 */
+	private final long[] m_t;
+
+	/**
+	 * Path length up to (and including) each point; calculated on first use.
+	 * Volatile so a stroke shared between threads only ever publishes a
+	 * fully filled array (racing threads at worst calculate it twice).
+	 */
+	private volatile double[] m_lengthSoFar;
+
+	/**
+	 * Pack the points of the given stroke
+	 *
+	 * @param stroke
+	 *            stroke to pack
+	 */
+	public PackedStroke(Stroke stroke) {
+		this(stroke.getPoints());
+	}
+
+	/**
+	 * Pack the given list of points
+	 *
+	 * @param points
+	 *            points to pack
+	 */
+	public PackedStroke(List<Point> points) {
+		int n = points.size();
+		m_x = new double[n];
+		m_y = new double[n];
+		m_t = new long[n];
+		for (int i = 0; i < n; i++) {
+			Point p = points.get(i);
+			m_x[i] = p.getX();
+			m_y[i] = p.getY();
+			m_t[i] = p.getTime();
+		}
+	}
+
+	/**
+	 * Wrap the given arrays (not copied). All three arrays must be the same
+	 * length.
+	 *
+	 * @param x
+	 *            x values
+	 * @param y
+	 *            y values
+	 * @param t
+	 *            time values
+	 */
+	public PackedStroke(double[] x, double[] y, long[] t) {
+		if (x.length != y.length || x.length != t.length)
+			throw new IllegalArgumentException(
+					"x, y and time arrays must be the same length");
+		m_x = x;
+		m_y = y;
+		m_t = t;
+	}
+
+	/**
+	 * Get the number of points
+	 *
+	 * @return number of points
+	 */
+	public int size() {
+		return m_x.length;
+	}
+
+	/**
+	 * Get the backing array of x values
+	 *
+	 * @return x values (do not modify)
+	 */
+	public double[] getX() {
+		return m_x;
+	}
+
+	/**
+	 * Get the backing array of y values
+	 *
+	 * @return y values (do not modify)
+	 */
+	public double[] getY() {
+		return m_y;
+	}
+
+	/**
+	 * Get the backing array of time values
+	 *
+	 * @return time values (do not modify)
+	 */
+	public long[] getTime() {
+		return m_t;
+	}
+
+	/**
+	 * Get the x value of the ith point
+	 *
+	 * @param i
+	 *            point index
+	 * @return x value
+	 */
+	public double getX(int i) {
+		return m_x[i];
+	}
+
+	/**
+	 * Get the y value of the ith point
+	 *
+	 * @param i
+	 *            point index
+	 * @return y value
+	 */
+	public double getY(int i) {
+		return m_y[i];
+	}
+
+	/**
+	 * Get the time of the ith point
+	 *
+	 * @param i
+	 *            point index
+	 * @return time
+	 */
+	public long getTime(int i) {
+		return m_t[i];
+	}
+
+	/**
+	 * Euclidean distance between the ith and jth points
+	 *
+	 * @param i
+	 *            first point index
+	 * @param j
+	 *            second point index
+	 * @return distance between the points
+	 */
+	public double distance(int i, int j) {
+		double dx = m_x[i] - m_x[j];
+		double dy = m_y[i] - m_y[j];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Get the path length up to each point. The first value is always 0 and
+	 * the last is the total path length.
+	 *
+	 * @return path length up to each point (do not modify)
+	 */
+	public double[] getLengthSoFar() {
+		double[] len = m_lengthSoFar;
+		if (len == null) {
+			len = new double[m_x.length];
+			for (int i = 1; i < m_x.length; i++)
+				len[i] = len[i - 1] + distance(i - 1, i);
+			m_lengthSoFar = len;
+		}
+		return len;
+	}
+
+	/**
+	 * Get the total path length
+	 *
+	 * @return path length
+	 */
+	public double getPathLength() {
+		if (m_x.length == 0)
+			return 0.0;
+		return getLengthSoFar()[m_x.length - 1];
+	}
+
+	/**
+	 * Get the path length between two point indices
+	 *
+	 * @param start
+	 *            start index
+	 * @param end
+	 *            end index
+	 * @return path length between start and end
+	 */
+	public double getPathLength(int start, int end) {
+		double[] len = getLengthSoFar();
+		return len[end] - len[start];
+	}
+
+	/**
+	 * Calculate the bounding box of the points
+	 *
+	 * @return bounding box
+	 */
+	public BoundingBox getBoundingBox() {
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < m_x.length; i++) {
+			if (m_x[i] < minX)
+				minX = m_x[i];
+			if (m_x[i] > maxX)
+				maxX = m_x[i];
+			if (m_y[i] < minY)
+				minY = m_y[i];
+			if (m_y[i] > maxY)
+				maxY = m_y[i];
+		}
+		return new BoundingBox(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Create new point objects for the packed values
+	 *
+	 * @return list of points
+	 */
+	public List<Point> toPoints() {
+		List<Point> points = new ArrayList<Point>(m_x.length);
+		for (int i = 0; i < m_x.length; i++)
+			points.add(new Point(m_x[i], m_y[i], m_t[i]));
+		return points;
+	}
+}
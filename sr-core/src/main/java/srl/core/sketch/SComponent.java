@@ -35,9 +35,13 @@
 package srl.core.sketch;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -77,6 +81,26 @@ public abstract class SComponent implements Cloneable, Renderable, Serializable,
 	protected transient BoundingBox boundingBox;
 	protected transient Polygon convexHull;
 
+	/**
+	 * Incremented every time the geometry of this component changes, so
+	 * callers can tell if values they derived from it are still valid
+	 */
+	private transient long generation = 0L;
+
+	/**
+	 * Containers holding this component, which are told when it changes (weak,
+	 * so that temporary containers can be collected)
+	 */
+	private transient List<WeakReference<SContainer>> owners;
+
+	/**
+	 * True once the owners have been told about a change and have not caught
+	 * up with it yet. Further changes are not reported again until then, so
+	 * adding points to a stroke one at a time does not walk up the containers
+	 * for every point.
+	 */
+	private transient volatile boolean changeReported = false;
+
 	@ElementMap(entry="attr",key="key",required=false,attribute=true,inline=true)
 	protected Map<String, String> attributes;
 
@@ -179,9 +203,149 @@ public abstract class SComponent implements Cloneable, Renderable, Serializable,
 				ycenter));
 	}
 
+	/**
+	 * Flag that the geometry of this component has changed. Cached geometry
+	 * (bounding box, convex hull, ...) is thrown away, and the containers
+	 * holding this component are flagged as well, unless they have been
+	 * flagged already and have not read anything from this component since.
+	 */
 	public void flagExternalUpdate() {
 		boundingBox = null;
 		convexHull = null;
+		generation++;
+		if (changeReported)
+			return;
+
+		List<SContainer> toNotify = null;
+		synchronized (this) {
+			if (owners != null && !owners.isEmpty()) {
+				changeReported = true;
+				toNotify = new ArrayList<SContainer>(owners.size());
+				for (WeakReference<SContainer> ref : owners) {
+					SContainer owner = ref.get();
+					if (owner != null)
+						toNotify.add(owner);
+				}
+			}
+		}
+		if (toNotify != null)
+			for (SContainer owner : toNotify)
+				owner.childUpdated(this);
+	}
+
+	/**
+	 * Get the generation of this component's geometry. The generation changes
+	 * whenever the component (or, for containers, anything inside it) is
+	 * changed through this API, so a value derived from the component can be
+	 * cached together with the generation it was derived from.
+	 * 
+	 * @return current generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Register a container that holds this component
+	 * 
+	 * @param owner
+	 *            container
+	 */
+	synchronized void addOwner(SContainer owner) {
+		if (owners == null)
+			owners = new ArrayList<WeakReference<SContainer>>(2);
+		for (int i = owners.size() - 1; i >= 0; i--) {
+			SContainer o = owners.get(i).get();
+			if (o == owner)
+				return;
+			if (o == null)
+				owners.remove(i);
+		}
+		owners.add(new WeakReference<SContainer>(owner));
+		// the new owner has to hear about the next change
+		changeReported = false;
+	}
+
+	/**
+	 * Called by an owner when it has caught up with the changes reported by
+	 * this component, so that the next change is reported again
+	 */
+	void changeSeen() {
+		changeReported = false;
+	}
+
+	/**
+	 * Unregister a container that no longer holds this component
+	 * 
+	 * @param owner
+	 *            container
+	 */
+	synchronized void removeOwner(SContainer owner) {
+		if (owners == null)
+			return;
+		for (int i = owners.size() - 1; i >= 0; i--) {
+			SContainer o = owners.get(i).get();
+			if (o == owner || o == null)
+				owners.remove(i);
+		}
+	}
+
+	/**
+	 * Calculate the convex hull of a list of points (Andrew's monotone chain)
+	 * 
+	 * @param points
+	 *            points
+	 * @return convex hull, counter-clockwise; null if there are no points
+	 */
+	protected static Polygon calculateConvexHull(List<Point> points) {
+		if (points.isEmpty())
+			return null;
+		List<Point> sorted = new ArrayList<Point>(points);
+		Collections.sort(sorted, new Comparator<Point>() {
+
+			@Override
+			public int compare(Point p1, Point p2) {
+				int c = Double.compare(p1.getX(), p2.getX());
+				return (c != 0) ? c : Double.compare(p1.getY(), p2.getY());
+			}
+		});
+
+		int n = sorted.size();
+		Point[] hull = new Point[2 * n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			while (k >= 2 && cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0)
+				k--;
+			hull[k++] = sorted.get(i);
+		}
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			while (k >= lower
+					&& cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0)
+				k--;
+			hull[k++] = sorted.get(i);
+		}
+
+		Polygon polygon = new Polygon();
+		for (int i = 0; i < Math.max(1, k - 1); i++)
+			polygon.addPoint((int) Math.round(hull[i].getX()),
+					(int) Math.round(hull[i].getY()));
+		return polygon;
+	}
+
+	/**
+	 * Cross product of (b - a) and (c - a)
+	 * 
+	 * @param a
+	 *            first point
+	 * @param b
+	 *            second point
+	 * @param c
+	 *            third point
+	 * @return cross product (positive for a counter-clockwise turn)
+	 */
+	private static double cross(Point a, Point b, Point c) {
+		return (b.getX() - a.getX()) * (c.getY() - a.getY())
+				- (b.getY() - a.getY()) * (c.getX() - a.getX());
 	}
 
 	public UUID getId() {
@@ -200,10 +364,27 @@ public abstract class SComponent implements Cloneable, Renderable, Serializable,
 		return boundingBox;
 	}
 
+	/**
+	 * Get the convex hull of this component. The hull is calculated on first
+	 * use and cached until the component changes.
+	 * 
+	 * @return convex hull (null if the component has no points)
+	 */
 	public Polygon getConvexHull() {
+		if (convexHull == null)
+			convexHull = calculateConvexHull();
 		return convexHull;
 	}
 
+	/**
+	 * Calculate the convex hull of this component
+	 * 
+	 * @return convex hull (null if it cannot be calculated)
+	 */
+	protected Polygon calculateConvexHull() {
+		return null;
+	}
+
 	public boolean equals(Object other) {
 		if (other instanceof SComponent) {
 			return id.equals(((SComponent) other).getId());
@@ -283,7 +464,7 @@ public abstract class SComponent implements Cloneable, Renderable, Serializable,
 	 */
 	public abstract boolean equalsByContent(SComponent other);
 	
-	public static UUID nextID() {
+	public static synchronized UUID nextID() {
 
 		counter += 0x10000L;
 		return new UUID(counter, System.nanoTime() | 0x8000000000000000L);
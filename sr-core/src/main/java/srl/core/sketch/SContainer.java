@@ -36,13 +36,18 @@ package srl.core.sketch;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.openawt.Polygon;
 import org.openawt.geom.AffineTransform;
 import org.openawt.svg.SVGGroup;
 import org.openawt.svg.SVGShape;
@@ -51,6 +56,8 @@ import org.simpleframework.xml.ElementList;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
+import srl.core.util.RTree;
+
 
 
 
@@ -68,6 +75,52 @@ public abstract class SContainer extends SComponent implements
 	private transient long timeStart = -1L;
 	private transient long timeEnd = -1L;
 	
+	/**
+	 * Spatial index of the bounding boxes of the direct subcomponents (null if
+	 * the index is turned off)
+	 */
+	private transient RTree<SComponent> spatialIndex;
+
+	/**
+	 * True if the spatial index has to be rebuilt before it is queried
+	 */
+	private transient boolean spatialIndexStale = false;
+
+	/**
+	 * Subcomponents that reported a change this container has not caught up
+	 * with yet (their spatial index entries are out of date)
+	 */
+	private transient Set<SComponent> changedChildren;
+
+	/**
+	 * True if changedChildren may be non-empty
+	 */
+	private transient volatile boolean childChangesPending = false;
+
+	/**
+	 * Id index and class buckets of the direct subcomponents (null if it has
+	 * to be rebuilt). Ids are read when a subcomponent is added, so a
+	 * subcomponent's id should not be changed while it is in a container.
+	 */
+	private transient volatile ChildIndex childIndex;
+
+	/**
+	 * Content list the children were last registered with as owners (they
+	 * are registered again if the list is replaced, e.g. by deserialization)
+	 */
+	private transient List<SComponent> indexedContents;
+
+	/**
+	 * Cached list of all points recursively contained (null if it has to be
+	 * rebuilt)
+	 */
+	private transient volatile List<Point> pointCache;
+
+	/**
+	 * Cached centroid of all points recursively contained
+	 */
+	private transient volatile double[] centroid;
+	
 
 	public SContainer() {
 		super();
@@ -106,8 +159,11 @@ public abstract class SContainer extends SComponent implements
 			return;
 
 		xformed.add(this);
+		// rebuild the spatial index once instead of once per child
+		spatialIndexStale = true;
 		for (SComponent comp : contents)
 			comp.applyTransform(xform, xformed);
+		flagExternalUpdate();
 	}
 
 	/**
@@ -117,6 +173,7 @@ public abstract class SContainer extends SComponent implements
 	 */
 	public void add(SComponent subcomponent) {
 		contents.add(subcomponent);
+		childAdded(subcomponent);
 	}
 
 	/**
@@ -127,6 +184,13 @@ public abstract class SContainer extends SComponent implements
 	 */
 	public void add(int index, SComponent subcomponent) {
 		contents.add(index, subcomponent);
+		if (index < contents.size() - 1) {
+			childIndex = null; // bucket order changed
+			subcomponent.addOwner(this);
+			index(subcomponent);
+			contentsChanged();
+		} else
+			childAdded(subcomponent);
 	}
 
 	/**
@@ -136,6 +200,8 @@ public abstract class SContainer extends SComponent implements
 	 */
 	public void addAll(Collection<? extends SComponent> subcomponents) {
 		contents.addAll(subcomponents);
+		for (SComponent sub : subcomponents)
+			childAdded(sub);
 	}
 	
 	/**
@@ -146,7 +212,10 @@ public abstract class SContainer extends SComponent implements
 	 * @return true if something was removed
 	 */
 	public boolean remove(SComponent subcomponent) {
-		return contents.remove(subcomponent);
+		boolean removed = contents.remove(subcomponent);
+		if (removed)
+			childRemoved(subcomponent);
+		return removed;
 	}
 
 	/**
@@ -156,7 +225,9 @@ public abstract class SContainer extends SComponent implements
 	 * @return the value removed
 	 */
 	public SComponent remove(int i) {
-		return contents.remove(i);
+		SComponent removed = contents.remove(i);
+		childRemoved(removed);
+		return removed;
 	}
 
 	/**
@@ -178,7 +249,16 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public boolean removeAll(Collection<? extends SComponent> subcomponents) {
-		return contents.removeAll(subcomponents);
+		boolean removed = contents.removeAll(subcomponents);
+		if (removed) {
+			childIndex = null;
+			for (SComponent sub : subcomponents) {
+				sub.removeOwner(this);
+				unindex(sub);
+			}
+			contentsChanged();
+		}
+		return removed;
 	}
 
 	/**
@@ -207,6 +287,13 @@ public abstract class SContainer extends SComponent implements
 	 */
 	public List<? extends SComponent> getByClassAssignable(
 			Class<? extends SComponent> clazz) {
+		if (clazz == Stroke.class)
+			return new ArrayList<Stroke>(getChildStrokes());
+		if (clazz == Shape.class)
+			return new ArrayList<Shape>(getChildShapes());
+		if (clazz == SContainer.class)
+			return new ArrayList<SContainer>(getChildContainers());
+
 		ArrayList<SComponent> res = new ArrayList<SComponent>();
 
 		for (SComponent sub : contents)
@@ -284,7 +371,7 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public boolean containsRecursive(SComponent component) {
-		return getRecursiveSubcomponents().contains(component);
+		return component != null && contains(component.getId(), true);
 	}
 
 	/**
@@ -389,11 +476,52 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public List<Point> getPoints() {
-		List<Point> res = new ArrayList<Point>();
+		return new ArrayList<Point>(getPointCache());
+	}
 
-		for (Stroke s : getRecursiveStrokes())
-			res.addAll(s.getPoints());
+	/**
+	 * Get the centroid (average point) of all points recursively contained.
+	 * The value is cached until something in this container changes.
+	 * 
+	 * @return centroid, or null if there are no points
+	 */
+	public Point getCentroid() {
+		double[] c = centroid;
+		if (c == null) {
+			List<Point> points = getPointCache();
+			if (points.isEmpty())
+				return null;
+			double sumX = 0.0, sumY = 0.0;
+			for (Point p : points) {
+				sumX += p.getX();
+				sumY += p.getY();
+			}
+			c = new double[] { sumX / points.size(), sumY / points.size() };
+			centroid = c;
+		}
+		return new Point(c[0], c[1]);
+	}
 
+	@Override
+	protected Polygon calculateConvexHull() {
+		return calculateConvexHull(getPointCache());
+	}
+
+	/**
+	 * Get the cached list of all points recursively contained
+	 * 
+	 * @return points (the cache itself, do not modify)
+	 */
+	private List<Point> getPointCache() {
+		ensureChildIndex();
+		applyChildChanges();
+		List<Point> res = pointCache;
+		if (res == null) {
+			res = new ArrayList<Point>();
+			for (Stroke s : getRecursiveStrokes())
+				res.addAll(s.getPoints());
+			pointCache = res;
+		}
 		return res;
 	}
 	
@@ -404,21 +532,11 @@ public abstract class SContainer extends SComponent implements
 	 */
 	@ElementList(required=false,entry="stroke",inline=true)
 	public List<Stroke> getStrokes() {
-		ArrayList<Stroke> res = new ArrayList<Stroke>();
-
-		for (SComponent s : getByClassAssignable(Stroke.class))
-			res.add((Stroke) s);
-
-		return res;
+		return new ArrayList<Stroke>(getChildStrokes());
 	}
 
 	public int getNumStrokes() {
-		int i = 0;
-
-		for (SComponent s : getByClassAssignable(Stroke.class))
-			++i;
-
-		return i;
+		return getChildStrokes().size();
 	}
 
 
@@ -439,7 +557,7 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public Stroke getFirstStroke() {
-		List<Stroke> strokes = getStrokes();
+		List<Stroke> strokes = getChildStrokes();
 		return (strokes == null || strokes.size() == 0) ? null : strokes.get(0);
 	}
 
@@ -449,7 +567,7 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public Stroke getLastStroke() {
-		List<Stroke> strokes = getStrokes();
+		List<Stroke> strokes = getChildStrokes();
 		return (strokes == null || strokes.size() == 0) ? null : strokes
 				.get(strokes.size() - 1);
 	}
@@ -461,12 +579,7 @@ public abstract class SContainer extends SComponent implements
 	 */
 	@ElementList(required=false,entry="shape",inline=true)
 	public List<Shape> getShapes() {
-		ArrayList<Shape> res = new ArrayList<Shape>();
-
-		for (SComponent s : getByClassAssignable(Shape.class))
-			res.add((Shape) s);
-
-		return res;
+		return new ArrayList<Shape>(getChildShapes());
 	}
 
 	/**
@@ -486,7 +599,7 @@ public abstract class SContainer extends SComponent implements
 	 * @param i
 	 */
 	public Shape getShape(int i) {
-		return getShapes().get(i);
+		return getChildShapes().get(i);
 	}
 
 	/**
@@ -496,7 +609,7 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public Stroke getStroke(int i) {
-		return getStrokes().get(i);
+		return getChildStrokes().get(i);
 	}
 
 	/**
@@ -519,14 +632,14 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public SComponent get(UUID id, boolean searchRecursive) {
-		for (SComponent comp : contents) {
-			if (comp.getId().equals(id))
-				return comp;
-			if (searchRecursive && comp instanceof SContainer) {
-				SComponent maybe = ((SContainer) comp).get(id, true);
-				if (maybe != null)
-					return maybe;
-			}
+		ChildIndex index = ensureChildIndex();
+		SComponent comp = index.byId.get(id);
+		if (comp != null || !searchRecursive)
+			return comp;
+		for (SContainer sub : index.containers) {
+			SComponent maybe = sub.get(id, true);
+			if (maybe != null)
+				return maybe;
 		}
 		return null;
 	}
@@ -548,11 +661,8 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public Stroke getStroke(UUID id) {
-		for (SComponent comp : contents)
-			if (comp instanceof Stroke && comp.getId().equals(id))
-				return (Stroke) comp;
-
-		return null;
+		SComponent comp = get(id, false);
+		return (comp instanceof Stroke) ? (Stroke) comp : null;
 	}
 
 	/**
@@ -562,11 +672,8 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public Shape getShape(UUID id) {
-		for (SComponent comp : contents)
-			if (comp instanceof Shape && comp.getId().equals(id))
-				return (Shape) comp;
-
-		return null;
+		SComponent comp = get(id, false);
+		return (comp instanceof Shape) ? (Shape) comp : null;
 	}
 
 	/**
@@ -586,22 +693,11 @@ public abstract class SContainer extends SComponent implements
 	 * @return
 	 */
 	public boolean contains(SComponent component) {
-		for (SComponent sub : contents)
-			if (sub.equals(component))
-				return true;
-
-		return false;
+		return component != null && get(component.getId(), false) != null;
 	}
 	
 	public boolean contains(UUID id, boolean recursive){
-		for(SComponent sub : contents){
-			if(sub.getId().equals(id))
-				return true;
-			if(recursive && sub instanceof SContainer)
-				if(((SContainer) sub).contains(id, recursive))
-					return true;
-		}
-		return false;
+		return get(id, recursive) != null;
 	}
 
 	/**
@@ -637,7 +733,12 @@ public abstract class SContainer extends SComponent implements
 	 * Clear this container
 	 */
 	public void clear() {
+		for (SComponent sub : contents)
+			sub.removeOwner(this);
 		contents.clear();
+		childIndex = null;
+		if (spatialIndex != null)
+			spatialIndex.clear();
 		flagExternalUpdate();
 	}
 
@@ -651,10 +752,9 @@ public abstract class SContainer extends SComponent implements
 	public List<SContainer> getContainersForComponent(SComponent comp) {
 		List<SContainer> res = new ArrayList<SContainer>();
 
-		for (SComponent c : contents) {
-			if (c instanceof SContainer
-					&& ((SContainer) c).containsRecursive(comp))
-				res.add((SContainer) c);
+		for (SContainer c : getChildContainers()) {
+			if (c.containsRecursive(comp))
+				res.add(c);
 		}
 
 		return res;
@@ -687,6 +787,398 @@ public abstract class SContainer extends SComponent implements
 		return res;
 	}
 
+	/**
+	 * Get the direct subcomponents that are strokes
+	 * 
+	 * @return strokes (the index list itself, do not modify)
+	 */
+	private List<Stroke> getChildStrokes() {
+		return ensureChildIndex().strokes;
+	}
+
+	/**
+	 * Get the direct subcomponents that are shapes
+	 * 
+	 * @return shapes (the index list itself, do not modify)
+	 */
+	private List<Shape> getChildShapes() {
+		return ensureChildIndex().shapes;
+	}
+
+	/**
+	 * Get the direct subcomponents that are containers
+	 * 
+	 * @return containers (the index list itself, do not modify)
+	 */
+	private List<SContainer> getChildContainers() {
+		return ensureChildIndex().containers;
+	}
+
+	/**
+	 * Get the id index and class buckets of the direct subcomponents,
+	 * rebuilding them if they are out of date
+	 * 
+	 * @return the current index
+	 */
+	private ChildIndex ensureChildIndex() {
+		ChildIndex index = childIndex;
+		if (index != null && index.contents == contents)
+			return index;
+		return rebuildChildIndex();
+	}
+
+	/**
+	 * Rebuild the id index and class buckets of the direct subcomponents. The
+	 * new index is filled before it is published, so other threads reading
+	 * this container see either the old index or the complete new one.
+	 * 
+	 * @return the rebuilt index
+	 */
+	private synchronized ChildIndex rebuildChildIndex() {
+		ChildIndex index = childIndex;
+		if (index != null && index.contents == contents)
+			return index;
+		if (indexedContents != contents) {
+			// new content list (copy or deserialization), so the children do
+			// not know about this container yet
+			for (SComponent sub : contents)
+				sub.addOwner(this);
+		}
+		index = new ChildIndex(contents);
+		indexedContents = contents;
+		childIndex = index;
+		return index;
+	}
+
+	/**
+	 * Update the indices after a subcomponent was added to the end of the
+	 * content list
+	 * 
+	 * @param sub
+	 *            added subcomponent
+	 */
+	private void childAdded(SComponent sub) {
+		ChildIndex index = childIndex;
+		if (index != null && index.contents == contents)
+			index.add(sub);
+		sub.addOwner(this);
+		index(sub);
+		contentsChanged();
+	}
+
+	/**
+	 * Update the indices after a subcomponent was removed from the content
+	 * list
+	 * 
+	 * @param sub
+	 *            removed subcomponent
+	 */
+	private void childRemoved(SComponent sub) {
+		ChildIndex index = childIndex;
+		boolean current = index != null && index.contents == contents;
+		if ((current && !index.duplicateIds) || !contents.contains(sub))
+			sub.removeOwner(this);
+		if (current) {
+			if (index.duplicateIds) {
+				// cannot tell which of the components was removed
+				childIndex = null;
+			} else
+				index.remove(sub);
+		}
+		unindex(sub);
+		contentsChanged();
+	}
+
+	/**
+	 * Called by a subcomponent when its geometry has changed
+	 * 
+	 * @param sub
+	 *            changed subcomponent
+	 */
+	void childUpdated(SComponent sub) {
+		synchronized (this) {
+			if (changedChildren == null)
+				changedChildren = Collections
+						.newSetFromMap(new IdentityHashMap<SComponent, Boolean>());
+			changedChildren.add(sub);
+			childChangesPending = true;
+		}
+		contentsChanged();
+	}
+
+	/**
+	 * Catch up with the subcomponents that reported a change: update their
+	 * spatial index entries and let them report their next change. Called
+	 * before anything is derived from the contents, so that a stroke that is
+	 * still being drawn is re-indexed once per query instead of once per
+	 * point.
+	 */
+	private void applyChildChanges() {
+		if (!childChangesPending)
+			return;
+		List<SComponent> changed;
+		synchronized (this) {
+			changed = new ArrayList<SComponent>(changedChildren);
+			changedChildren.clear();
+			childChangesPending = false;
+		}
+		for (SComponent sub : changed) {
+			updateSpatialIndex(sub);
+			sub.changeSeen();
+		}
+	}
+
+	@Override
+	void changeSeen() {
+		// whoever caught up with this container reads what is inside it too
+		applyChildChanges();
+		super.changeSeen();
+	}
+
+	@Override
+	public long getGeneration() {
+		applyChildChanges();
+		return super.getGeneration();
+	}
+
+	/**
+	 * Throw away the geometry derived from the contents and flag the
+	 * containers holding this one
+	 */
+	private void contentsChanged() {
+		pointCache = null;
+		centroid = null;
+		timeStart = -1L;
+		timeEnd = -1L;
+		super.flagExternalUpdate();
+	}
+
+	/**
+	 * Turn the spatial index of the direct subcomponents on or off. While the
+	 * index is on, the bounding box queries below run in logarithmic time
+	 * instead of checking every subcomponent. The index is kept up to date by
+	 * add, remove and applyTransform; if a subcomponent is changed in place,
+	 * call {@link #updateSpatialIndex(SComponent)} or
+	 * {@link #flagExternalUpdate()}.
+	 * 
+	 * @param enabled
+	 *            true to build and maintain the index
+	 */
+	public void setSpatialIndexEnabled(boolean enabled) {
+		if (enabled && spatialIndex == null) {
+			spatialIndex = new RTree<SComponent>();
+			spatialIndexStale = true;
+		} else if (!enabled)
+			spatialIndex = null;
+	}
+
+	/**
+	 * Check if the spatial index is turned on
+	 * 
+	 * @return true if the spatial index is on
+	 */
+	public boolean isSpatialIndexEnabled() {
+		return spatialIndex != null;
+	}
+
+	/**
+	 * Update the spatial index after a subcomponent has been changed in place
+	 * (e.g. points were added to a stroke)
+	 * 
+	 * @param subcomponent
+	 *            changed subcomponent
+	 */
+	public void updateSpatialIndex(SComponent subcomponent) {
+		if (spatialIndex != null && !spatialIndexStale) {
+			// anything in the index is in this container
+			if (spatialIndex.remove(subcomponent)
+					|| contents.contains(subcomponent))
+				index(subcomponent);
+		}
+	}
+
+	/**
+	 * Find the subcomponents whose bounding boxes intersect (or touch) the
+	 * given box
+	 * 
+	 * @param box
+	 *            query box
+	 * @return intersecting subcomponents (in no particular order when the
+	 *         spatial index is on)
+	 */
+	public List<SComponent> getComponentsIn(BoundingBox box) {
+		return getComponentsIn(box.getMinX(), box.getMinY(), box.getMaxX(),
+				box.getMaxY());
+	}
+
+	/**
+	 * Find the subcomponents whose bounding boxes are within the given
+	 * distance of a point (a tolerance of 0 gives a plain hit-test)
+	 * 
+	 * @param x
+	 *            x value of the point
+	 * @param y
+	 *            y value of the point
+	 * @param tolerance
+	 *            how far from the point a bounding box can be
+	 * @return subcomponents near the point (in no particular order when the
+	 *         spatial index is on)
+	 */
+	public List<SComponent> getComponentsAt(double x, double y,
+			double tolerance) {
+		List<SComponent> res = getComponentsIn(x - tolerance, y - tolerance, x
+				+ tolerance, y + tolerance);
+		if (tolerance > 0) {
+			// the query box also reaches past the corners of the circle
+			for (int i = res.size() - 1; i >= 0; i--) {
+				BoundingBox b = res.get(i).getBoundingBox();
+				if (RTree.distance(x, y, b.getMinX(), b.getMinY(),
+						b.getMaxX(), b.getMaxY()) > tolerance)
+					res.remove(i);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Find the k subcomponents whose bounding boxes are closest to a point
+	 * (bounding boxes containing the point have a distance of 0)
+	 * 
+	 * @param x
+	 *            x value of the point
+	 * @param y
+	 *            y value of the point
+	 * @param k
+	 *            maximum number of subcomponents to return
+	 * @return closest subcomponents, closest first
+	 */
+	public List<SComponent> getNearestComponents(final double x,
+			final double y, int k) {
+		if (ensureSpatialIndex())
+			return spatialIndex.nearest(x, y, k);
+
+		List<SComponent> res = new ArrayList<SComponent>();
+		for (SComponent sub : contents)
+			if (hasArea(sub.getBoundingBox()))
+				res.add(sub);
+		Collections.sort(res, new Comparator<SComponent>() {
+
+			@Override
+			public int compare(SComponent c1, SComponent c2) {
+				BoundingBox b1 = c1.getBoundingBox();
+				BoundingBox b2 = c2.getBoundingBox();
+				return Double.compare(
+						RTree.distance(x, y, b1.getMinX(), b1.getMinY(),
+								b1.getMaxX(), b1.getMaxY()),
+						RTree.distance(x, y, b2.getMinX(), b2.getMinY(),
+								b2.getMaxX(), b2.getMaxY()));
+			}
+		});
+		return (res.size() > k) ? new ArrayList<SComponent>(res.subList(0,
+				Math.max(k, 0))) : res;
+	}
+
+	/**
+	 * Find the subcomponents whose bounding boxes intersect the given box
+	 * 
+	 * @param minX
+	 *            left of the box
+	 * @param minY
+	 *            top of the box
+	 * @param maxX
+	 *            right of the box
+	 * @param maxY
+	 *            bottom of the box
+	 * @return intersecting subcomponents
+	 */
+	private List<SComponent> getComponentsIn(double minX, double minY,
+			double maxX, double maxY) {
+		if (ensureSpatialIndex())
+			return spatialIndex.search(minX, minY, maxX, maxY);
+
+		List<SComponent> res = new ArrayList<SComponent>();
+		for (SComponent sub : contents) {
+			BoundingBox b = sub.getBoundingBox();
+			if (hasArea(b) && b.getMinX() <= maxX && b.getMaxX() >= minX
+					&& b.getMinY() <= maxY && b.getMaxY() >= minY)
+				res.add(sub);
+		}
+		return res;
+	}
+
+	/**
+	 * Rebuild the spatial index if it is stale
+	 * 
+	 * @return true if the spatial index is on
+	 */
+	private synchronized boolean ensureSpatialIndex() {
+		if (spatialIndex == null)
+			return false;
+		applyChildChanges();
+		if (spatialIndexStale) {
+			spatialIndexStale = false;
+			spatialIndex.clear();
+			for (SComponent sub : contents)
+				index(sub);
+		}
+		return true;
+	}
+
+	/**
+	 * Add a subcomponent to the spatial index (if it is on)
+	 * 
+	 * @param subcomponent
+	 *            subcomponent to add
+	 */
+	private void index(SComponent subcomponent) {
+		if (spatialIndex == null || spatialIndexStale)
+			return;
+		BoundingBox b = subcomponent.getBoundingBox();
+		if (hasArea(b))
+			spatialIndex.insert(subcomponent, b.getMinX(), b.getMinY(),
+					b.getMaxX(), b.getMaxY());
+	}
+
+	/**
+	 * Remove a subcomponent from the spatial index (if it is on and the
+	 * subcomponent is not in this container any more)
+	 * 
+	 * @param subcomponent
+	 *            subcomponent to remove
+	 */
+	private void unindex(SComponent subcomponent) {
+		if (spatialIndex == null || spatialIndexStale)
+			return;
+		if (!contents.contains(subcomponent))
+			spatialIndex.remove(subcomponent);
+	}
+
+	/**
+	 * Check if a bounding box has a location (components without points do
+	 * not)
+	 * 
+	 * @param b
+	 *            bounding box
+	 * @return true if the box is valid
+	 */
+	private static boolean hasArea(BoundingBox b) {
+		return b != null && b.getMinX() <= b.getMaxX()
+				&& b.getMinY() <= b.getMaxY();
+	}
+
+	@Override
+	public void flagExternalUpdate() {
+		spatialIndexStale = true;
+		contentsChanged();
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		ensureChildIndex();
+		applyChildChanges();
+		return super.getBoundingBox();
+	}
+
 	@Override
 	protected void calculateBBox() {
 		double minX = Double.POSITIVE_INFINITY;
@@ -749,10 +1241,35 @@ public abstract class SContainer extends SComponent implements
 	}
 	
 	public Iterator<SComponent> iterator() {
-		return contents.iterator();
+		final Iterator<SComponent> it = contents.iterator();
+		return new Iterator<SComponent>() {
+
+			private SComponent last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public SComponent next() {
+				return last = it.next();
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				childIndex = null;
+				if (!contents.contains(last))
+					last.removeOwner(SContainer.this);
+				unindex(last);
+				contentsChanged();
+			}
+		};
 	}
 
 	private synchronized void rebuildTime(){
+		applyChildChanges();
 		timeStart = Long.MAX_VALUE;
 		timeEnd = Long.MIN_VALUE;
 		for(SComponent comp:this){
@@ -813,4 +1330,79 @@ public abstract class SContainer extends SComponent implements
 			}
 		}
 	}
+
+	/**
+	 * Id index and class buckets of the direct subcomponents, built from one
+	 * content list. The buckets keep the order of the content list.
+	 */
+	private static class ChildIndex {
+
+		/**
+		 * Content list the index was built from (the index is rebuilt if the
+		 * list is replaced)
+		 */
+		final List<SComponent> contents;
+
+		/**
+		 * Direct subcomponents by id
+		 */
+		final Map<UUID, SComponent> byId = new HashMap<UUID, SComponent>();
+
+		/**
+		 * Direct subcomponents that are strokes
+		 */
+		final List<Stroke> strokes = new ArrayList<Stroke>();
+
+		/**
+		 * Direct subcomponents that are shapes
+		 */
+		final List<Shape> shapes = new ArrayList<Shape>();
+
+		/**
+		 * Direct subcomponents that are containers
+		 */
+		final List<SContainer> containers = new ArrayList<SContainer>();
+
+		/**
+		 * True if two direct subcomponents share an id
+		 */
+		boolean duplicateIds = false;
+
+		ChildIndex(List<SComponent> contents) {
+			this.contents = contents;
+			for (SComponent sub : contents)
+				add(sub);
+		}
+
+		/**
+		 * Add a subcomponent to the end of the buckets
+		 */
+		void add(SComponent sub) {
+			// keep the first of several components with the same id, which is
+			// the one a search of the content list would find
+			if (byId.containsKey(sub.getId()))
+				duplicateIds = true;
+			else
+				byId.put(sub.getId(), sub);
+			if (sub instanceof Stroke)
+				strokes.add((Stroke) sub);
+			if (sub instanceof Shape)
+				shapes.add((Shape) sub);
+			if (sub instanceof SContainer)
+				containers.add((SContainer) sub);
+		}
+
+		/**
+		 * Remove a subcomponent whose id no other subcomponent shares
+		 */
+		void remove(SComponent sub) {
+			byId.remove(sub.getId());
+			if (sub instanceof Stroke)
+				strokes.remove(sub);
+			if (sub instanceof Shape)
+				shapes.remove(sub);
+			if (sub instanceof SContainer)
+				containers.remove(sub);
+		}
+	}
 }
@@ -35,10 +35,13 @@
  *******************************************************************************/
 
 package srl.core.sketch;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 import org.openawt.Color;
@@ -54,6 +57,8 @@ import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.strategy.CycleStrategy;
 import org.simpleframework.xml.stream.Format;
 
+import srl.core.serialization.BinarySketchReader;
+import srl.core.serialization.BinarySketchWriter;
 import srl.core.serialization.SketchModule;
 import srl.core.serialization.UUIDTransform;
 import srl.core.serialization.UnderscoreStyle;
@@ -62,6 +67,7 @@ import srl.core.sketch.comparators.TimePeriodComparator;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -150,6 +156,37 @@ public class Sketch extends SContainer implements TimePeriod,Comparable<TimePeri
 		ObjectMapper mapper = buildJSONSerializer();
 		return mapper.readValue(instream, Sketch.class);
 	}
+	public void serializeBinary(OutputStream out) throws IOException{
+		BinarySketchWriter writer = new BinarySketchWriter(out);
+		writer.write(this);
+		writer.close();
+	}
+	public void serializeBinary(File f) throws IOException{
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			serializeBinary(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+	public static Sketch deserializeBinary(File f) throws IOException{
+		BinarySketchReader reader = BinarySketchReader.open(f);
+		try {
+			return reader.readSketch();
+		}
+		finally {
+			reader.close();
+		}
+	}
+	public static Sketch deserializeBinary(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+			bytes.write(buffer, 0, read);
+		return new BinarySketchReader(ByteBuffer.wrap(bytes.toByteArray())).readSketch();
+	}
 	
 	public static Persister buildXMLCycleSerializer(){
 		Persister persister = new Persister(new CycleStrategy("_id","_refid"),buildXMLTypeMatcher(),new Format(new UnderscoreStyle()));
@@ -160,7 +197,15 @@ public class Sketch extends SContainer implements TimePeriod,Comparable<TimePeri
 		return persister;
 	}
 	public static ObjectMapper buildJSONSerializer(){
-		ObjectMapper mapper = new ObjectMapper();
+		return buildJSONSerializer(null);
+	}
+	/**
+	 * Builds a mapper with the same configuration as the JSON serializer, but
+	 * reading and writing through the given factory, such as a binary Jackson
+	 * format. A null factory gives the plain JSON serializer.
+	 */
+	public static ObjectMapper buildJSONSerializer(JsonFactory factory){
+		ObjectMapper mapper = new ObjectMapper(factory);
 		mapper.setVisibility(PropertyAccessor.ALL, Visibility.NONE);
 		mapper.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
 		mapper.configure(SerializationFeature.INDENT_OUTPUT,true);
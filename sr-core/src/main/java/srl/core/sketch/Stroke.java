@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
+import org.openawt.Polygon;
 import org.openawt.geom.AffineTransform;
 import org.openawt.geom.Path2D;
 import org.openawt.svg.SVGPath;
@@ -69,6 +70,18 @@ Iterable<Point>,TimePeriod, Comparable<TimePeriod> {
 	private transient long timeStart = -1L;
 	private transient long timeEnd = -1L;
 
+	private transient PackedStroke packed;
+
+	/**
+	 * Cached path length (negative if it has to be calculated)
+	 */
+	private transient double pathLength = -1.0;
+
+	/**
+	 * Cached centroid (null if it has to be calculated)
+	 */
+	private transient double[] centroid;
+
 	public Stroke() {
 		points = new ArrayList<Point>();
 		interpretations = new ArrayList<Interpretation>();
@@ -169,6 +182,7 @@ Iterable<Point>,TimePeriod, Comparable<TimePeriod> {
 	 */
 	public void addPoints(List<Point> points){
 		this.points.addAll(points);
+		flagExternalUpdate();
 	}
 	
 	/**
@@ -190,6 +204,31 @@ Iterable<Point>,TimePeriod, Comparable<TimePeriod> {
 		flagExternalUpdate();
 	}
 
+	/**
+	 * Get a packed (primitive array) view of this stroke's points. The view is
+	 * built once and reused until {@link #flagExternalUpdate()} is called.
+	 * 
+	 * @return packed view of the points
+	 */
+	public PackedStroke getPackedStroke() {
+		PackedStroke p = packed;
+		if (p == null) {
+			p = new PackedStroke(points);
+			packed = p;
+		}
+		return p;
+	}
+
+	@Override
+	public void flagExternalUpdate() {
+		packed = null;
+		pathLength = -1.0;
+		centroid = null;
+		timeStart = -1L;
+		timeEnd = -1L;
+		super.flagExternalUpdate();
+	}
+
 	/**
 	 * Get the distance between endpoints
 	 * @return
@@ -206,14 +245,45 @@ Iterable<Point>,TimePeriod, Comparable<TimePeriod> {
 	 * @return
 	 */
 	public double getPathLength() {
+		if (pathLength >= 0.0)
+			return pathLength;
+
 		double res = 0.0;
 
 		for (int i = 1; i < points.size(); ++i)
 			res += points.get(i - 1).distance(points.get(i));
 
+		pathLength = res;
 		return res;
 	}
 
+	/**
+	 * Get the centroid (average point) of this stroke. The value is cached
+	 * until {@link #flagExternalUpdate()} is called.
+	 * 
+	 * @return centroid, or null if the stroke has no points
+	 */
+	public Point getCentroid() {
+		double[] c = centroid;
+		if (c == null) {
+			if (points.isEmpty())
+				return null;
+			double sumX = 0.0, sumY = 0.0;
+			for (Point p : points) {
+				sumX += p.getX();
+				sumY += p.getY();
+			}
+			c = new double[] { sumX / points.size(), sumY / points.size() };
+			centroid = c;
+		}
+		return new Point(c[0], c[1]);
+	}
+
+	@Override
+	protected Polygon calculateConvexHull() {
+		return calculateConvexHull(points);
+	}
+
 	/**
 	 * Get the number of points in this stroke
 	 * 
@@ -0,0 +1,643 @@
+/**
+ * RTree.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * R-tree (Guttman, quadratic split) of items indexed by axis-aligned bounding
+ * rectangles. Supports insertion, removal, rectangle range queries, point
+ * hit-tests and k-nearest-neighbor queries, all in logarithmic time for
+ * reasonably distributed data.
+ * <p>
+ * Items are identified by {@link Object#equals(Object)}; inserting an item
+ * that is already in the tree replaces its rectangle. Rectangles are closed,
+ * so items with zero width or height (points, horizontal or vertical lines)
+ * are found by queries that touch them.
+ * 
+ * @param <T>
+ *            type of the indexed items
+ */
+public class RTree<T> {
+
+	/**
+	 * Default maximum number of entries per node
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 8;
+
+	/**
+	 * Maximum number of entries per node
+	 */
+	private final int m_maxEntries;
+
+	/**
+	 * Minimum number of entries per (non-root) node
+	 */
+	private final int m_minEntries;
+
+	/**
+	 * Root node
+	 */
+	private Node<T> m_root;
+
+	/**
+	 * Item nodes, by item
+	 */
+	private final Map<T, Node<T>> m_items = new HashMap<T, Node<T>>();
+
+	/**
+	 * Orders query candidates by distance
+	 */
+	private static final Comparator<Candidate<?>> DISTANCE_ORDER = new Comparator<Candidate<?>>() {
+
+		@Override
+		public int compare(Candidate<?> c1, Candidate<?> c2) {
+			return Double.compare(c1.distance, c2.distance);
+		}
+	};
+
+	/**
+	 * Create an empty tree with the default node size
+	 */
+	public RTree() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Create an empty tree
+	 * 
+	 * @param maxEntries
+	 *            maximum number of entries per node (at least 4)
+	 */
+	public RTree(int maxEntries) {
+		if (maxEntries < 4)
+			throw new IllegalArgumentException(
+					"Nodes must hold at least 4 entries");
+		m_maxEntries = maxEntries;
+		m_minEntries = Math.max(2, (int) (maxEntries * 0.4));
+		clear();
+	}
+
+	/**
+	 * Get the number of items in the tree
+	 * 
+	 * @return number of items
+	 */
+	public int size() {
+		return m_items.size();
+	}
+
+	/**
+	 * Determine if an item is in the tree
+	 * 
+	 * @param item
+	 *            item
+	 * @return true if the item is in the tree
+	 */
+	public boolean contains(T item) {
+		return m_items.containsKey(item);
+	}
+
+	/**
+	 * Remove all items
+	 */
+	public void clear() {
+		m_root = new Node<T>(true);
+		m_items.clear();
+	}
+
+	/**
+	 * Add an item to the tree (replacing its rectangle if it is already in the
+	 * tree)
+	 * 
+	 * @param item
+	 *            item to add
+	 * @param minX
+	 *            left of the item's rectangle
+	 * @param minY
+	 *            top of the item's rectangle
+	 * @param maxX
+	 *            right of the item's rectangle
+	 * @param maxY
+	 *            bottom of the item's rectangle
+	 */
+	public void insert(T item, double minX, double minY, double maxX,
+			double maxY) {
+		if (!(minX <= maxX && minY <= maxY))
+			throw new IllegalArgumentException("Invalid rectangle: [" + minX
+					+ ", " + minY + ", " + maxX + ", " + maxY + "]");
+		remove(item);
+		Node<T> e = new Node<T>(item, minX, minY, maxX, maxY);
+		m_items.put(item, e);
+		insert(e);
+	}
+
+	/**
+	 * Remove an item from the tree
+	 * 
+	 * @param item
+	 *            item to remove
+	 * @return true if the item was in the tree
+	 */
+	public boolean remove(T item) {
+		Node<T> e = m_items.remove(item);
+		if (e == null)
+			return false;
+		Node<T> leaf = e.parent;
+		leaf.children.remove(e);
+		condense(leaf);
+		return true;
+	}
+
+	/**
+	 * Find the items whose rectangles intersect (or touch) the given rectangle
+	 * 
+	 * @param minX
+	 *            left of the query rectangle
+	 * @param minY
+	 *            top of the query rectangle
+	 * @param maxX
+	 *            right of the query rectangle
+	 * @param maxY
+	 *            bottom of the query rectangle
+	 * @return intersecting items, in no particular order
+	 */
+	public List<T> search(double minX, double minY, double maxX, double maxY) {
+		List<T> res = new ArrayList<T>();
+		if (!m_items.isEmpty())
+			search(m_root, minX, minY, maxX, maxY, res);
+		return res;
+	}
+
+	/**
+	 * Find the items whose rectangles contain the given point
+	 * 
+	 * @param x
+	 *            x value of the point
+	 * @param y
+	 *            y value of the point
+	 * @return items containing the point, in no particular order
+	 */
+	public List<T> search(double x, double y) {
+		return search(x, y, x, y);
+	}
+
+	/**
+	 * Find the k items whose rectangles are closest to the given point (items
+	 * whose rectangles contain the point have a distance of 0)
+	 * 
+	 * @param x
+	 *            x value of the point
+	 * @param y
+	 *            y value of the point
+	 * @param k
+	 *            maximum number of items to return
+	 * @return closest items, closest first
+	 */
+	public List<T> nearest(double x, double y, int k) {
+		List<T> res = new ArrayList<T>();
+		if (m_items.isEmpty() || k <= 0)
+			return res;
+
+		// best-first search: nodes are expanded in order of their distance, so
+		// items come off the queue in order of their distance
+		PriorityQueue<Candidate<T>> queue = new PriorityQueue<Candidate<T>>(
+				2 * m_maxEntries, DISTANCE_ORDER);
+		queue.add(new Candidate<T>(m_root, 0.0));
+		while (!queue.isEmpty() && res.size() < k) {
+			Node<T> n = queue.poll().node;
+			if (n.item != null) {
+				res.add(n.item);
+				continue;
+			}
+			for (Node<T> c : n.children)
+				queue.add(new Candidate<T>(c, distance(x, y, c.minX, c.minY,
+						c.maxX, c.maxY)));
+		}
+		return res;
+	}
+
+	/**
+	 * Distance from a point to a (closed) rectangle; 0 if the point is inside
+	 * 
+	 * @param x
+	 *            x value of the point
+	 * @param y
+	 *            y value of the point
+	 * @param minX
+	 *            left of the rectangle
+	 * @param minY
+	 *            top of the rectangle
+	 * @param maxX
+	 *            right of the rectangle
+	 * @param maxY
+	 *            bottom of the rectangle
+	 * @return distance between the point and the rectangle
+	 */
+	public static double distance(double x, double y, double minX,
+			double minY, double maxX, double maxY) {
+		double dx = Math.max(0.0, Math.max(minX - x, x - maxX));
+		double dy = Math.max(0.0, Math.max(minY - y, y - maxY));
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Recursive range search
+	 * 
+	 * @param n
+	 *            node to search
+	 * @param minX
+	 *            left of the query rectangle
+	 * @param minY
+	 *            top of the query rectangle
+	 * @param maxX
+	 *            right of the query rectangle
+	 * @param maxY
+	 *            bottom of the query rectangle
+	 * @param res
+	 *            list to add the found items to
+	 */
+	private void search(Node<T> n, double minX, double minY, double maxX,
+			double maxY, List<T> res) {
+		for (Node<T> c : n.children) {
+			if (c.minX > maxX || c.maxX < minX || c.minY > maxY
+					|| c.maxY < minY)
+				continue;
+			if (c.item != null)
+				res.add(c.item);
+			else
+				search(c, minX, minY, maxX, maxY, res);
+		}
+	}
+
+	/**
+	 * Insert an item node into the leaf that needs the least enlargement
+	 * 
+	 * @param e
+	 *            item node
+	 */
+	private void insert(Node<T> e) {
+		Node<T> n = m_root;
+		while (!n.leaf) {
+			Node<T> best = null;
+			double bestEnlargement = Double.POSITIVE_INFINITY;
+			double bestArea = Double.POSITIVE_INFINITY;
+			for (Node<T> c : n.children) {
+				double area = c.area();
+				double enlargement = c.unionArea(e) - area;
+				if (enlargement < bestEnlargement
+						|| (enlargement == bestEnlargement && area < bestArea)) {
+					best = c;
+					bestEnlargement = enlargement;
+					bestArea = area;
+				}
+			}
+			n = best;
+		}
+		n.add(e);
+		adjust(n);
+	}
+
+	/**
+	 * Split overflowing nodes and update rectangles from the given node up to
+	 * the root
+	 * 
+	 * @param n
+	 *            node that changed
+	 */
+	private void adjust(Node<T> n) {
+		while (n != null) {
+			if (n.children.size() > m_maxEntries) {
+				Node<T> sibling = split(n);
+				if (n == m_root) {
+					m_root = new Node<T>(false);
+					m_root.add(n);
+					m_root.add(sibling);
+					m_root.recalculate();
+					return;
+				}
+				n.parent.add(sibling);
+			} else
+				n.recalculate();
+			n = n.parent;
+		}
+	}
+
+	/**
+	 * Fix the tree after an item node has been removed from the given leaf.
+	 * Nodes left with too few entries are removed and their items inserted
+	 * again.
+	 * 
+	 * @param leaf
+	 *            leaf the item was removed from
+	 */
+	private void condense(Node<T> leaf) {
+		List<Node<T>> orphans = new ArrayList<Node<T>>();
+		Node<T> n = leaf;
+		while (n != m_root) {
+			Node<T> parent = n.parent;
+			if (n.children.size() < m_minEntries) {
+				parent.children.remove(n);
+				collectItems(n, orphans);
+			} else
+				n.recalculate();
+			n = parent;
+		}
+		m_root.recalculate();
+		while (!m_root.leaf && m_root.children.size() == 1) {
+			m_root = m_root.children.get(0);
+			m_root.parent = null;
+		}
+		if (!m_root.leaf && m_root.children.isEmpty())
+			m_root = new Node<T>(true);
+		for (Node<T> e : orphans)
+			insert(e);
+	}
+
+	/**
+	 * Collect all item nodes below the given node
+	 * 
+	 * @param n
+	 *            node
+	 * @param items
+	 *            list to add the item nodes to
+	 */
+	private void collectItems(Node<T> n, List<Node<T>> items) {
+		if (n.leaf)
+			items.addAll(n.children);
+		else
+			for (Node<T> c : n.children)
+				collectItems(c, items);
+	}
+
+	/**
+	 * Split an overflowing node in two (quadratic split)
+	 * 
+	 * @param n
+	 *            node to split
+	 * @return new sibling holding part of the entries of n
+	 */
+	private Node<T> split(Node<T> n) {
+		List<Node<T>> entries = n.children;
+		Node<T> sibling = new Node<T>(n.leaf);
+		n.children = new ArrayList<Node<T>>(m_maxEntries + 1);
+
+		// pick the pair of entries that would waste the most area together
+		int seed1 = 0, seed2 = 1;
+		double worst = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < entries.size(); i++) {
+			for (int j = i + 1; j < entries.size(); j++) {
+				Node<T> a = entries.get(i);
+				Node<T> b = entries.get(j);
+				double waste = a.unionArea(b) - a.area() - b.area();
+				if (waste > worst) {
+					worst = waste;
+					seed1 = i;
+					seed2 = j;
+				}
+			}
+		}
+		n.add(entries.get(seed1));
+		sibling.add(entries.get(seed2));
+		n.recalculate();
+		sibling.recalculate();
+		entries.remove(seed2);
+		entries.remove(seed1);
+
+		while (!entries.isEmpty()) {
+			// make sure both nodes end up with the minimum number of entries
+			if (n.children.size() + entries.size() == m_minEntries) {
+				for (Node<T> e : entries)
+					n.add(e);
+				break;
+			}
+			if (sibling.children.size() + entries.size() == m_minEntries) {
+				for (Node<T> e : entries)
+					sibling.add(e);
+				break;
+			}
+
+			// assign the entry with the strongest preference first
+			int next = 0;
+			double maxDiff = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < entries.size(); i++) {
+				Node<T> e = entries.get(i);
+				double diff = Math.abs((n.unionArea(e) - n.area())
+						- (sibling.unionArea(e) - sibling.area()));
+				if (diff > maxDiff) {
+					maxDiff = diff;
+					next = i;
+				}
+			}
+			Node<T> e = entries.remove(next);
+			double d1 = n.unionArea(e) - n.area();
+			double d2 = sibling.unionArea(e) - sibling.area();
+			Node<T> target;
+			if (d1 != d2)
+				target = (d1 < d2) ? n : sibling;
+			else if (n.area() != sibling.area())
+				target = (n.area() < sibling.area()) ? n : sibling;
+			else
+				target = (n.children.size() <= sibling.children.size()) ? n
+						: sibling;
+			target.add(e);
+			target.include(e);
+		}
+		n.recalculate();
+		sibling.recalculate();
+		return sibling;
+	}
+
+	/**
+	 * Tree node. Item nodes hold an item and no children; leaves hold item
+	 * nodes; other nodes hold nodes.
+	 */
+	private static class Node<T> {
+
+		/**
+		 * Bounding rectangle
+		 */
+		double minX, minY, maxX, maxY;
+
+		/**
+		 * Parent node
+		 */
+		Node<T> parent;
+
+		/**
+		 * Child nodes (null for item nodes)
+		 */
+		List<Node<T>> children;
+
+		/**
+		 * Item (null unless this is an item node)
+		 */
+		T item;
+
+		/**
+		 * True if the children are item nodes
+		 */
+		boolean leaf;
+
+		/**
+		 * Create an empty node
+		 * 
+		 * @param leaf
+		 *            true if the node will hold item nodes
+		 */
+		Node(boolean leaf) {
+			this.leaf = leaf;
+			children = new ArrayList<Node<T>>();
+			recalculate();
+		}
+
+		/**
+		 * Create an item node
+		 * 
+		 * @param item
+		 *            item
+		 * @param minX
+		 *            left
+		 * @param minY
+		 *            top
+		 * @param maxX
+		 *            right
+		 * @param maxY
+		 *            bottom
+		 */
+		Node(T item, double minX, double minY, double maxX, double maxY) {
+			this.item = item;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		/**
+		 * Add a child node (the rectangle is not updated)
+		 * 
+		 * @param c
+		 *            child
+		 */
+		void add(Node<T> c) {
+			children.add(c);
+			c.parent = this;
+		}
+
+		/**
+		 * Grow the rectangle to include the rectangle of another node
+		 * 
+		 * @param c
+		 *            other node
+		 */
+		void include(Node<T> c) {
+			minX = Math.min(minX, c.minX);
+			minY = Math.min(minY, c.minY);
+			maxX = Math.max(maxX, c.maxX);
+			maxY = Math.max(maxY, c.maxY);
+		}
+
+		/**
+		 * Recalculate the rectangle from the children
+		 */
+		void recalculate() {
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+			for (Node<T> c : children)
+				include(c);
+		}
+
+		/**
+		 * Area of the rectangle
+		 * 
+		 * @return area
+		 */
+		double area() {
+			return (children != null && children.isEmpty()) ? 0.0
+					: (maxX - minX) * (maxY - minY);
+		}
+
+		/**
+		 * Area of the rectangle enclosing this node and another node
+		 * 
+		 * @param c
+		 *            other node
+		 * @return area of the union
+		 */
+		double unionArea(Node<T> c) {
+			if (children != null && children.isEmpty())
+				return c.area();
+			return (Math.max(maxX, c.maxX) - Math.min(minX, c.minX))
+					* (Math.max(maxY, c.maxY) - Math.min(minY, c.minY));
+		}
+	}
+
+	/**
+	 * Node waiting in the nearest neighbor queue
+	 */
+	private static class Candidate<T> {
+
+		/**
+		 * Node
+		 */
+		final Node<T> node;
+
+		/**
+		 * Distance from the query point to the node's rectangle
+		 */
+		final double distance;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param node
+		 *            node
+		 * @param distance
+		 *            distance from the query point
+		 */
+		Candidate(Node<T> node, double distance) {
+			this.node = node;
+			this.distance = distance;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * TimeBudget.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.core.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time allotted to one recognition (or segmentation) call. Long running loops
+ * check {@link #isOverTime()} between steps and stop early, returning the best
+ * results found so far. The time each stage of the call used is recorded so
+ * callers can see where the budget went.
+ * <p>
+ * Times are in milliseconds, from {@link System#currentTimeMillis()}. Stage
+ * times can be added from several threads.
+ */
+public class TimeBudget {
+
+	/**
+	 * Time the budget started
+	 */
+	private final long m_startTime;
+
+	/**
+	 * Maximum time allotted
+	 */
+	private final long m_maxTime;
+
+	/**
+	 * True once a check has found the budget used up
+	 */
+	private volatile boolean m_expired = false;
+
+	/**
+	 * Time used by each stage, in the order the stages first ran
+	 */
+	private final Map<String, Long> m_stageTimes = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Start a budget of the given length
+	 *
+	 * @param maxTime
+	 *            maximum time allotted, in milliseconds
+	 */
+	public TimeBudget(long maxTime) {
+		m_startTime = System.currentTimeMillis();
+		m_maxTime = maxTime;
+	}
+
+	/**
+	 * Check whether the budget has been used up
+	 *
+	 * @return true if the allotted time has passed
+	 */
+	public boolean isOverTime() {
+		if (!m_expired && timeRemaining() <= 0)
+			m_expired = true;
+		return m_expired;
+	}
+
+	/**
+	 * Check whether any check has found the budget used up, meaning the
+	 * results may be incomplete
+	 *
+	 * @return true if work was cut short
+	 */
+	public boolean isExpired() {
+		return m_expired;
+	}
+
+	/**
+	 * Get the time left in the budget
+	 *
+	 * @return remaining time, negative if the budget has been exceeded
+	 */
+	public long timeRemaining() {
+		return m_maxTime - getElapsedTime();
+	}
+
+	/**
+	 * Get the time used since the budget started
+	 *
+	 * @return elapsed time
+	 */
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - m_startTime;
+	}
+
+	/**
+	 * Get the maximum time allotted
+	 *
+	 * @return maximum time
+	 */
+	public long getMaxTime() {
+		return m_maxTime;
+	}
+
+	/**
+	 * Add time used by a stage. Time added to a stage more than once is
+	 * summed.
+	 *
+	 * @param stage
+	 *            name of the stage
+	 * @param startTime
+	 *            time the stage started, from
+	 *            {@link System#currentTimeMillis()}
+	 */
+	public void addStageTime(String stage, long startTime) {
+		long time = System.currentTimeMillis() - startTime;
+		synchronized (m_stageTimes) {
+			Long soFar = m_stageTimes.get(stage);
+			m_stageTimes.put(stage, soFar == null ? time : soFar + time);
+		}
+	}
+
+	/**
+	 * Get the time each stage used
+	 *
+	 * @return time per stage, in the order the stages first ran
+	 */
+	public Map<String, Long> getStageTimes() {
+		synchronized (m_stageTimes) {
+			return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(
+					m_stageTimes));
+		}
+	}
+
+	/**
+	 * Get the fraction of the budget each stage used
+	 *
+	 * @return fraction of the maximum time per stage
+	 */
+	public Map<String, Double> getStageFractions() {
+		Map<String, Double> fractions = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, Long> stage : getStageTimes().entrySet()) {
+			fractions.put(stage.getKey(), m_maxTime > 0 ? stage.getValue()
+					/ (double) m_maxTime : 1.0);
+		}
+		return fractions;
+	}
+
+	@Override
+	public String toString() {
+		return "used " + getElapsedTime() + " of " + m_maxTime + " ms"
+				+ (m_expired ? " (expired)" : "") + " " + getStageTimes();
+	}
+}
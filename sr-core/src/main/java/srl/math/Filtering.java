@@ -67,17 +67,60 @@ public class Filtering {
 		}
 
 		double[] output = new double[input.length];
+		medianFilter(input, windowSize, output, new double[windowSize]);
+		return output;
+	}
 
-		// loop over each position in the output to calculate the filtered
-		// results
-		for (int i = 0; i < output.length; i++) {
-			double[] window = getWindow(input, windowSize, i);
+	/**
+	 * Perform median filtering as {@link #medianFilter(double[], int)}, writing
+	 * the results into the given output array without allocating. The window
+	 * is kept sorted as it slides, so each step costs a binary search and a
+	 * shift of at most windowSize values instead of a sort.
+	 * 
+	 * @param input
+	 *            Data to filter, cannot be null
+	 * @param windowSize
+	 *            Odd, and less than input.length
+	 * @param output
+	 *            Receives the filtered data, at least input.length long
+	 * @param window
+	 *            Scratch space, at least windowSize long
+	 */
+	public static void medianFilter(double[] input, int windowSize,
+			double[] output, double[] window) {
+		medianFilter(input, input.length, windowSize, output, window);
+	}
 
-			// median
-			output[i] = Statistics.median(window);
-		}
+	/**
+	 * Perform median filtering as
+	 * {@link #medianFilter(double[], int, double[], double[])} on the first
+	 * length values of the input only, so reused buffers larger than the data
+	 * can be filtered.
+	 * 
+	 * @param input
+	 *            Data to filter, cannot be null
+	 * @param length
+	 *            Number of values of the input to filter
+	 * @param windowSize
+	 *            Odd, and less than length
+	 * @param output
+	 *            Receives the filtered data, at least length long
+	 * @param window
+	 *            Scratch space, at least windowSize long
+	 */
+	public static void medianFilter(double[] input, int length,
+			int windowSize, double[] output, double[] window) {
+		if (copyShortInput(input, length, output))
+			return;
+		checkWindow(input, length, windowSize, output, window);
 
-		return output;
+		int half = windowSize / 2;
+		fillSortedWindow(input, length, windowSize, window);
+		output[0] = window[half];
+		for (int i = 1; i < length; i++) {
+			slideSortedWindow(input, length, windowSize, window, i);
+			output[i] = window[half];
+		}
 	}
 
 	/**
@@ -115,16 +158,71 @@ public class Filtering {
 		}
 
 		double[] output = new double[input.length];
+		averageFilter(input, windowSize, output);
+		return output;
+	}
 
-		// loop over each position in the output to calculate the filtered
-		// results
-		for (int i = 0; i < output.length; i++) {
-			double[] window = getWindow(input, windowSize, i);
+	/**
+	 * Perform average filtering as {@link #averageFilter(double[], int)},
+	 * writing the results into the given output array without allocating. A
+	 * running sum of the window is kept, so each step costs one addition and
+	 * one subtraction. The results can differ from summing each window afresh
+	 * in the last bits.
+	 * 
+	 * @param input
+	 *            Data to filter, cannot be null
+	 * @param windowSize
+	 *            Odd, and less than input.length
+	 * @param output
+	 *            Receives the filtered data, at least input.length long
+	 */
+	public static void averageFilter(double[] input, int windowSize,
+			double[] output) {
+		if (copyShortInput(input, input.length, output))
+			return;
+		checkWindow(input, input.length, windowSize, output, null);
 
-			output[i] = Statistics.mean(window);
-		}
+		int half = windowSize / 2;
+		// NaN and infinite values would never leave the running sum, so they
+		// are counted instead
+		int nan = 0, posInf = 0, negInf = 0;
+		double sum = 0;
+		// j is the index of the value entering the window
+		for (int j = -half; j < input.length + half; j++) {
+			double entering = clamped(input, input.length, j);
+			if (Double.isNaN(entering))
+				nan++;
+			else if (entering == Double.POSITIVE_INFINITY)
+				posInf++;
+			else if (entering == Double.NEGATIVE_INFINITY)
+				negInf++;
+			else
+				sum += entering;
 
-		return output;
+			if (j > half) {
+				double leaving = clamped(input, input.length, j - windowSize);
+				if (Double.isNaN(leaving))
+					nan--;
+				else if (leaving == Double.POSITIVE_INFINITY)
+					posInf--;
+				else if (leaving == Double.NEGATIVE_INFINITY)
+					negInf--;
+				else
+					sum -= leaving;
+			}
+
+			if (j >= half) {
+				int center = j - half;
+				if (nan > 0 || (posInf > 0 && negInf > 0))
+					output[center] = Double.NaN;
+				else if (posInf > 0)
+					output[center] = Double.POSITIVE_INFINITY;
+				else if (negInf > 0)
+					output[center] = Double.NEGATIVE_INFINITY;
+				else
+					output[center] = sum / (double) windowSize;
+			}
+		}
 	}
 
 	/**
@@ -161,16 +259,95 @@ public class Filtering {
 		}
 
 		double[] output = new double[input.length];
+		modeFilter(input, windowSize, output, new double[windowSize]);
+		return output;
+	}
 
-		// loop over each position in the output to calculate the filtered
-		// results
-		for (int i = 0; i < output.length; i++) {
-			double[] window = getWindow(input, windowSize, i);
+	/**
+	 * Perform mode filtering as {@link #modeFilter(double[], int)}, writing the
+	 * results into the given output array without allocating. The window is
+	 * kept sorted as it slides, so equal values sit together and can be
+	 * counted with a binary search. The highest count and the mode are updated
+	 * as values enter and leave, and the window is only rescanned when the
+	 * value leaving may have been the mode.
+	 * 
+	 * @param input
+	 *            Data to filter, cannot be null
+	 * @param windowSize
+	 *            Odd, and less than input.length
+	 * @param output
+	 *            Receives the filtered data, at least input.length long
+	 * @param window
+	 *            Scratch space, at least windowSize long
+	 */
+	public static void modeFilter(double[] input, int windowSize,
+			double[] output, double[] window) {
+		if (copyShortInput(input, input.length, output))
+			return;
+		checkWindow(input, input.length, windowSize, output, window);
 
-			output[i] = Statistics.mode(window);
-		}
+		int half = windowSize / 2;
+		fillSortedWindow(input, input.length, windowSize, window);
 
-		return output;
+		// the highest count in the window, how many distinct values have it,
+		// and the smallest of them (as Statistics.mode breaks ties)
+		int maxCount = 0;
+		int numAtMax = 0;
+		double mode = 0;
+		boolean stale = true;
+
+		for (int i = 0; i < input.length; i++) {
+			if (i > 0) {
+				double leaving = clamped(input, input.length, i - half - 1);
+				double entering = clamped(input, input.length, i + half);
+				if (Double.compare(leaving, entering) != 0) {
+					if (!stale) {
+						int count = countOf(window, windowSize, leaving);
+						if (count == maxCount) {
+							numAtMax--;
+							stale = numAtMax == 0
+									|| Double.compare(leaving, mode) == 0;
+						}
+					}
+					removeSorted(window, windowSize, leaving);
+					insertSorted(window, windowSize - 1, entering);
+					if (!stale) {
+						int count = countOf(window, windowSize, entering);
+						if (count > maxCount) {
+							maxCount = count;
+							numAtMax = 1;
+							mode = entering;
+						} else if (count == maxCount) {
+							numAtMax++;
+							mode = Math.min(mode, entering);
+						}
+					}
+				}
+			}
+
+			if (stale) {
+				maxCount = 0;
+				numAtMax = 0;
+				int runStart = 0;
+				for (int w = 1; w <= windowSize; w++) {
+					if (w < windowSize
+							&& Double.compare(window[w], window[runStart]) == 0)
+						continue;
+					int count = w - runStart;
+					if (count > maxCount) {
+						maxCount = count;
+						numAtMax = 1;
+						mode = window[runStart];
+					} else if (count == maxCount) {
+						numAtMax++;
+						mode = Math.min(mode, window[runStart]);
+					}
+					runStart = w;
+				}
+				stale = false;
+			}
+			output[i] = mode;
+		}
 	}
 
 	/**
@@ -253,6 +430,149 @@ public class Filtering {
 		return window;
 	}
 
+	/**
+	 * Handle input too short to filter the way the allocating methods do, by
+	 * passing it through unchanged.
+	 * 
+	 * @return true if the input was short and has been copied to the output
+	 */
+	private static boolean copyShortInput(double[] input, int length,
+			double[] output) {
+		if (input == null) {
+			throw new NullPointerException("Input cannot be null");
+		}
+		if (output == null) {
+			throw new NullPointerException("Output cannot be null");
+		}
+		if (length > 2)
+			return false;
+		if (output != input)
+			System.arraycopy(input, 0, output, 0, length);
+		return true;
+	}
+
+	/**
+	 * Check the window size and buffers for the allocation-free filters, with
+	 * the same limits as {@link #getWindow(double[], int, int)}.
+	 */
+	private static void checkWindow(double[] input, int length,
+			int windowSize, double[] output, double[] window) {
+		if (windowSize < 1 || windowSize >= length || windowSize % 2 == 0) {
+			throw new IllegalArgumentException(
+					"Window size must be ODD number >=1, < data.length; window size = "
+							+ windowSize + " data length = " + length);
+		}
+		if (length > input.length) {
+			throw new IllegalArgumentException(
+					"Length cannot be more than the input length");
+		}
+		if (output.length < length) {
+			throw new IllegalArgumentException(
+					"Output must be at least as long as the input");
+		}
+		if (output == input) {
+			throw new IllegalArgumentException(
+					"Output cannot be the input array");
+		}
+		if (window != null && window.length < windowSize) {
+			throw new IllegalArgumentException(
+					"Window buffer must be at least windowSize long");
+		}
+	}
+
+	/**
+	 * @return data[idx], repeating the edge values beyond either end of the
+	 *         first length values
+	 */
+	private static double clamped(double[] data, int length, int idx) {
+		if (idx < 0)
+			return data[0];
+		if (idx >= length)
+			return data[length - 1];
+		return data[idx];
+	}
+
+	/**
+	 * Fill the window with the values of the first window, in sorted order.
+	 */
+	private static void fillSortedWindow(double[] data, int length,
+			int windowSize, double[] window) {
+		int half = windowSize / 2;
+		for (int w = 0; w < windowSize; w++) {
+			insertSorted(window, w, clamped(data, length, w - half));
+		}
+	}
+
+	/**
+	 * Move the sorted window from the one centered at i - 1 to the one
+	 * centered at i.
+	 */
+	private static void slideSortedWindow(double[] data, int length,
+			int windowSize, double[] window, int i) {
+		int half = windowSize / 2;
+		double leaving = clamped(data, length, i - half - 1);
+		double entering = clamped(data, length, i + half);
+		if (Double.compare(leaving, entering) == 0)
+			return;
+		removeSorted(window, windowSize, leaving);
+		insertSorted(window, windowSize - 1, entering);
+	}
+
+	/**
+	 * Insert a value into the first size values of the sorted array, which
+	 * must have room for one more. Values are ordered as Arrays.sort orders
+	 * them.
+	 */
+	private static void insertSorted(double[] sorted, int size, double value) {
+		int idx = lowerBound(sorted, size, value);
+		System.arraycopy(sorted, idx, sorted, idx + 1, size - idx);
+		sorted[idx] = value;
+	}
+
+	/**
+	 * Remove one occurrence of a value from the first size values of the
+	 * sorted array. The value must be present.
+	 */
+	private static void removeSorted(double[] sorted, int size, double value) {
+		int idx = lowerBound(sorted, size, value);
+		System.arraycopy(sorted, idx + 1, sorted, idx, size - idx - 1);
+	}
+
+	/**
+	 * @return how many of the first size values of the sorted array equal the
+	 *         value
+	 */
+	private static int countOf(double[] sorted, int size, double value) {
+		int low = lowerBound(sorted, size, value);
+		int high = size;
+		// upper bound, searching only from the first occurrence
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Double.compare(sorted[mid], value) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low - lowerBound(sorted, size, value);
+	}
+
+	/**
+	 * @return the index of the first of the first size values of the sorted
+	 *         array that is not less than the value
+	 */
+	private static int lowerBound(double[] sorted, int size, double value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Double.compare(sorted[mid], value) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
 	/**
 	 * Get a default window size of the closest odd number to the sqrt of the
 	 * size (number of values) of the input
@@ -262,7 +582,19 @@ public class Filtering {
 	 * @return default window size
 	 */
 	protected static int getDefaultWindowSize(double[] input) {
-		double sqrt = Math.sqrt(input.length);
+		return getDefaultWindowSize(input.length);
+	}
+
+	/**
+	 * Get a default window size of the closest odd number to the sqrt of the
+	 * number of values to filter
+	 * 
+	 * @param length
+	 *            number of values
+	 * @return default window size
+	 */
+	public static int getDefaultWindowSize(int length) {
+		double sqrt = Math.sqrt(length);
 		int window = (int) Math.round(sqrt);
 
 		// window is even but we need odd window size; round to nearest odd
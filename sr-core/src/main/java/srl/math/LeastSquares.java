@@ -159,6 +159,30 @@ public class LeastSquares {
 		return err;
 	}
 
+	/**
+	 * Return the total least squares error between a range of the points and
+	 * the input line
+	 * 
+	 * @param x
+	 *            x values
+	 * @param y
+	 *            y values
+	 * @param from
+	 *            index of the first point (inclusive)
+	 * @param to
+	 *            index of the last point (exclusive)
+	 * @param line
+	 *            line to find the LSE to
+	 * @return total least squares error between the input points and line
+	 */
+	public static double error(double[] x, double[] y, int from, int to,
+			Line2D line) {
+		double err = 0.0;
+		for (int i = from; i < to; i++)
+			err += line.ptSegDist(x[i], y[i]);
+		return err;
+	}
+
 	/**
 	 * Return the total least squares error between the array of points and the
 	 * input line
@@ -213,6 +237,31 @@ public class LeastSquares {
 		return err;
 	}
 
+	/**
+	 * Return the total least squares error squared between a range of the
+	 * point arrays and the input line
+	 * 
+	 * @param x
+	 *            x values
+	 * @param y
+	 *            y values
+	 * @param from
+	 *            index of the first point (inclusive)
+	 * @param to
+	 *            index of the last point (exclusive)
+	 * @param line
+	 *            line to find the LSE to
+	 * @return total least squares error squared between the input points and
+	 *         line
+	 */
+	public static double squaredError(double[] x, double[] y, int from,
+			int to, Line2D line) {
+		double err = 0.0;
+		for (int i = from; i < to; i++)
+			err += line.ptSegDistSq(x[i], y[i]);
+		return err;
+	}
+
 	/**
 	 * Return the total least squares error between the array of points and the
 	 * input line
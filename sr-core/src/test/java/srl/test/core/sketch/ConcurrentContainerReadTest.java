@@ -0,0 +1,116 @@
+package srl.test.core.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+
+public class ConcurrentContainerReadTest {
+	static final int THREADS = 8;
+
+	ExecutorService executor;
+
+	Sketch sketch;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+		sketch = new Sketch();
+		long time = 0;
+		for (int s = 0; s < 200; s++) {
+			Stroke stroke = new Stroke();
+			for (int p = 0; p < 5; p++)
+				stroke.addPoint(new Point(s * 10 + p, p * 3, time++));
+			sketch.add(stroke);
+			if (s % 10 == 0) {
+				Shape shape = new Shape();
+				shape.add(stroke.clone());
+				sketch.add(shape);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Threads reading a freshly copied sketch all build its child index at
+	 * once; each of them must see the complete index
+	 */
+	@Test
+	public void testConcurrentFirstReads() throws Exception {
+		final List<Stroke> strokes = sketch.getStrokes();
+		final List<Shape> shapes = sketch.getShapes();
+		for (int round = 0; round < 200; round++) {
+			final Sketch copy = new Sketch(sketch);
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Void>> reads = new ArrayList<Future<Void>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int thread = t;
+				reads.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						read(copy, strokes, shapes, thread);
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> read : reads)
+				read.get();
+		}
+	}
+
+	private static void read(Sketch copy, List<Stroke> strokes,
+			List<Shape> shapes, int thread) {
+		// start with different methods, so different readers trigger the
+		// rebuild
+		switch (thread % 4) {
+		case 0:
+			assertEquals(strokes.size(), copy.getNumStrokes());
+			break;
+		case 1:
+			assertEquals(shapes.size(), copy.getShapes().size());
+			break;
+		case 2:
+			assertNull(copy.get(new Stroke().getId()));
+			break;
+		default:
+			copy.getBoundingBox();
+		}
+		for (Stroke stroke : strokes) {
+			SComponent found = copy.get(stroke.getId());
+			assertEquals(stroke.getId(), found.getId());
+		}
+		List<Stroke> copyStrokes = copy.getStrokes();
+		assertEquals(strokes.size(), copyStrokes.size());
+		for (int s = 0; s < strokes.size(); s++) {
+			assertEquals(strokes.get(s).getId(), copyStrokes.get(s).getId());
+			assertSame(copyStrokes.get(s), copy.get(copyStrokes.get(s).getId()));
+		}
+		for (Shape shape : shapes) {
+			Stroke inner = shape.getFirstStroke();
+			assertEquals(inner.getId(), copy.get(inner.getId(), true).getId());
+		}
+	}
+}
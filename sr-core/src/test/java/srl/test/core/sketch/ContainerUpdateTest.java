@@ -0,0 +1,76 @@
+package srl.test.core.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Sketch;
+import srl.core.sketch.Stroke;
+
+public class ContainerUpdateTest {
+	Sketch sketch;
+
+	Shape shape;
+
+	Stroke stroke;
+
+	long time;
+
+	@Before
+	public void setUp() {
+		sketch = new Sketch();
+		sketch.setSpatialIndexEnabled(true);
+		shape = new Shape();
+		stroke = new Stroke();
+		stroke.addPoint(new Point(0, 0, time++));
+		stroke.addPoint(new Point(10, 10, time++));
+		shape.add(stroke);
+		sketch.add(shape);
+		sketch.add(new Stroke(stroke));
+	}
+
+	/**
+	 * Points added to a stroke while it is drawn, between queries of the
+	 * containers holding it
+	 */
+	@Test
+	public void testContainersSeePointsAddedBetweenQueries() {
+		for (int i = 1; i <= 50; i++) {
+			long generation = sketch.getGeneration();
+			for (int p = 0; p < i % 4; p++)
+				stroke.addPoint(new Point(10 + i * 2 + p, 10, time++));
+			double maxX = stroke.getBoundingBox().getMaxX();
+			if (i % 4 != 0)
+				assertTrue(sketch.getGeneration() > generation);
+			if (i % 3 == 0)
+				assertEquals(maxX, shape.getBoundingBox().getMaxX(), 0.0);
+			assertEquals(maxX, sketch.getBoundingBox().getMaxX(), 0.0);
+			assertEquals(stroke.getNumPoints() + 2, sketch.getPoints().size());
+			assertEquals(stroke.getTimeEnd(), sketch.getTimeEnd());
+			assertTrue(sketch.getComponentsAt(maxX, 10, 0).contains(shape));
+		}
+	}
+
+	/**
+	 * A change is reported to every container holding the stroke, including
+	 * one that took the stroke after an earlier change
+	 */
+	@Test
+	public void testLateOwnerSeesChanges() {
+		stroke.addPoint(new Point(20, 10, time++));
+		Sketch other = new Sketch();
+		other.setSpatialIndexEnabled(true);
+		other.add(stroke);
+		stroke.addPoint(new Point(30, 10, time++));
+		assertEquals(30, other.getBoundingBox().getMaxX(), 0.0);
+		assertTrue(other.getComponentsAt(30, 10, 0).contains(stroke));
+		stroke.addPoint(new Point(40, 10, time++));
+		assertEquals(40, shape.getBoundingBox().getMaxX(), 0.0);
+		assertEquals(40, sketch.getBoundingBox().getMaxX(), 0.0);
+		assertEquals(40, other.getBoundingBox().getMaxX(), 0.0);
+	}
+}
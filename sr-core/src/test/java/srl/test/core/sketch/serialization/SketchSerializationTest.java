@@ -1,10 +1,12 @@
 package srl.test.core.sketch.serialization;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
 
 import org.junit.After;
 import org.junit.Before;
@@ -12,6 +14,8 @@ import org.junit.Test;
 import org.openawt.Color;
 import org.openawt.svg.Style;
 
+import srl.core.serialization.BinarySketchReader;
+import srl.core.serialization.BinarySketchWriter;
 import srl.core.sketch.Point;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Sketch;
@@ -73,4 +77,47 @@ public class SketchSerializationTest {
 		assertTrue("XML Cycle Sketch serialization did not end up equal",sketch2.equalsByContent(sketch));
 		
 	}
+
+	@Test
+	public void testBinarySerialize() throws Exception{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		sketch.serializeBinary(out);
+		
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		Sketch sketch2 = Sketch.deserializeBinary(in);
+		assertTrue("Binary Sketch serialization did not end up equal",sketch2.equalsByContent(sketch));
+		assertEquals("Title was not kept","Sketch 1",sketch2.getAttribute("Title"));
+		assertEquals("Pressure was not kept",.5,sketch2.getStroke(0).getPoint(2).getPressure(),0.0);
+	}
+
+	@Test
+	public void testBinaryReadStroke() throws Exception{
+		Stroke stroke = new Stroke();
+		stroke.addPoint(new Point(1.25,-3.5,100));
+		stroke.addPoint(new Point(Math.PI,2e9,90));
+		sketch.add(stroke);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinarySketchWriter writer = new BinarySketchWriter(out);
+		writer.write(sketch);
+		writer.close();
+		
+		BinarySketchReader reader = new BinarySketchReader(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(2,reader.getNumStrokes());
+		assertTrue("Binary stroke did not end up equal",reader.readStroke(1).equalsByContent(stroke));
+		assertEquals(Math.PI,reader.readStroke(1).getPoint(1).getX(),0.0);
+	}
+
+	@Test
+	public void testBinaryFileSerialize() throws Exception{
+		File f = File.createTempFile("sketch", ".bin");
+		try {
+			sketch.serializeBinary(f);
+			Sketch sketch2 = Sketch.deserializeBinary(f);
+			assertTrue("Binary file Sketch serialization did not end up equal",sketch2.equalsByContent(sketch));
+		}
+		finally {
+			f.delete();
+		}
+	}
 }
@@ -0,0 +1,96 @@
+package srl.test.math;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.math.Filtering;
+import srl.math.Statistics;
+
+public class FilteringTest {
+
+	@Test
+	public void testMedianFilter() {
+		Random random = new Random(14);
+		for (int t = 0; t < 200; t++) {
+			double[] input = randomInput(random);
+			for (int windowSize = 1; windowSize < input.length; windowSize += 2) {
+				double[] output = Filtering.medianFilter(input, windowSize);
+				for (int i = 0; i < input.length; i++) {
+					double expected = Statistics.median(Filtering.getWindow(
+							input, windowSize, i));
+					assertEquals(expected, output[i], 0.0);
+				}
+
+				// the length overload on a larger, reused buffer
+				double[] padded = new double[input.length + 5];
+				System.arraycopy(input, 0, padded, 0, input.length);
+				double[] reused = new double[padded.length];
+				Filtering.medianFilter(padded, input.length, windowSize,
+						reused, new double[windowSize]);
+				for (int i = 0; i < input.length; i++)
+					assertEquals(output[i], reused[i], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testModeFilter() {
+		Random random = new Random(41);
+		for (int t = 0; t < 200; t++) {
+			double[] input = randomInput(random);
+			for (int windowSize = 1; windowSize < input.length; windowSize += 2) {
+				double[] output = Filtering.modeFilter(input, windowSize);
+				for (int i = 0; i < input.length; i++) {
+					double expected = Statistics.mode(Filtering.getWindow(
+							input, windowSize, i));
+					assertEquals(expected, output[i], 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAverageFilter() {
+		Random random = new Random(7);
+		for (int t = 0; t < 200; t++) {
+			double[] input = randomInput(random);
+			for (int windowSize = 1; windowSize < input.length; windowSize += 2) {
+				double[] output = Filtering.averageFilter(input, windowSize);
+				for (int i = 0; i < input.length; i++) {
+					double expected = Statistics.mean(Filtering.getWindow(
+							input, windowSize, i));
+					assertEquals(expected, output[i], 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAverageFilterNonFinite() {
+		double inf = Double.POSITIVE_INFINITY;
+		double[] input = { 1, 2, Double.NaN, 4, 5, 6, 7, inf, 9, 10, -inf,
+				12, 13, 14 };
+		double[] output = Filtering.averageFilter(input, 3);
+		for (int i = 0; i < input.length; i++) {
+			double expected = Statistics.mean(Filtering.getWindow(input, 3, i));
+			assertEquals(expected, output[i], 1e-12);
+		}
+	}
+
+	/**
+	 * @return 3 to 40 values with repeats, so that mode ties occur
+	 */
+	private static double[] randomInput(Random random) {
+		double[] input = new double[3 + random.nextInt(38)];
+		for (int i = 0; i < input.length; i++) {
+			if (random.nextInt(3) == 0)
+				input[i] = random.nextInt(4);
+			else
+				input[i] = random.nextGaussian();
+		}
+		return input;
+	}
+}
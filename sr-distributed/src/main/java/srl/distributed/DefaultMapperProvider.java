@@ -37,14 +37,21 @@ package srl.distributed;
 import srl.core.sketch.Sketch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
-public class DefaultMapperProvider implements ObjectMapperProvider{
+public class DefaultMapperProvider implements BinaryMapperProvider{
 	private static ObjectMapper mapper;
+	private static ObjectMapper binaryMapper;
 	static {
 		mapper = Sketch.buildJSONSerializer();
+		binaryMapper = Sketch.buildJSONSerializer(new SmileFactory());
 	}
 	@Override
 	public ObjectMapper getMapper() {
 		return mapper; 
 	}
+	@Override
+	public ObjectMapper getBinaryMapper() {
+		return binaryMapper;
+	}
 }
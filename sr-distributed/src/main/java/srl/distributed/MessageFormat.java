@@ -0,0 +1,106 @@
+/*******************************************************************************
+ *  Revision History:<br>
+ *  SRL Member - File created
+ *
+ *  <p>
+ *  <pre>
+ *  This work is released under the BSD License:
+ *  (C) 2012 Sketch Recognition Lab, Texas A&M University (hereafter SRL @ TAMU)
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *      * Redistributions of source code must retain the above copyright
+ *        notice, this list of conditions and the following disclaimer.
+ *      * Redistributions in binary form must reproduce the above copyright
+ *        notice, this list of conditions and the following disclaimer in the
+ *        documentation and/or other materials provided with the distribution.
+ *      * Neither the name of the Sketch Recognition Lab, Texas A&M University 
+ *        nor the names of its contributors may be used to endorse or promote 
+ *        products derived from this software without specific prior written 
+ *        permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  </pre>
+ *  
+ *******************************************************************************/
+package srl.distributed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The encodings messages can be sent in, chosen by content type. JSON is
+ * readable and always available. SMILE is Jackson's binary form of the same
+ * data model, which is smaller and faster to parse for point-dense sketches,
+ * and needs a BinaryMapperProvider.
+ */
+public enum MessageFormat {
+	JSON("application/json"),
+	SMILE("application/x-jackson-smile");
+	
+	private final String contentType;
+	
+	private MessageFormat(String contentType){
+		this.contentType = contentType;
+	}
+	
+	public String getContentType(){
+		return contentType;
+	}
+	
+	public boolean isBinary(){
+		return this != JSON;
+	}
+	
+	/**
+	 * @return the mapper for this format, or null if the provider does not
+	 * support it
+	 */
+	public ObjectMapper getMapper(ObjectMapperProvider provider){
+		if(!isBinary())
+			return provider.getMapper();
+		if(provider instanceof BinaryMapperProvider)
+			return ((BinaryMapperProvider)provider).getBinaryMapper();
+		return null;
+	}
+	
+	/**
+	 * Finds the format for a content type, ignoring any parameters such as the
+	 * charset.
+	 * @return the format, or null if the content type is not one of them
+	 */
+	public static MessageFormat forContentType(String contentType){
+		if(contentType == null)
+			return null;
+		int end = contentType.indexOf(';');
+		String type = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+		for(MessageFormat format : values()){
+			if(format.contentType.equalsIgnoreCase(type))
+				return format;
+		}
+		return null;
+	}
+	
+	/**
+	 * Picks the first format named in an Accept header.
+	 * @return the format, or null if none is named
+	 */
+	public static MessageFormat forAccept(String accept){
+		if(accept == null)
+			return null;
+		for(String type : accept.split(",")){
+			MessageFormat format = forContentType(type);
+			if(format != null)
+				return format;
+		}
+		return null;
+	}
+}
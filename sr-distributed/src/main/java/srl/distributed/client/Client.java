@@ -45,6 +45,17 @@ import java.io.ObjectOutputStream;
 import java.io.Writer;
 import java.net.URL;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -56,6 +67,8 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
@@ -67,8 +80,11 @@ import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 
 import srl.distributed.DefaultMapperProvider;
+import srl.distributed.MessageFormat;
 import srl.distributed.ObjectMapperProvider;
 import srl.distributed.client.exceptions.ClientException;
+import srl.distributed.messages.BatchRequest;
+import srl.distributed.messages.BatchResponse;
 import srl.distributed.messages.ClientErrorResponse;
 import srl.distributed.messages.Request;
 import srl.distributed.messages.Response;
@@ -76,26 +92,38 @@ import srl.distributed.messages.Response;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 
-
+/**
+ * Sends requests to a JsonRequestServlet. Requests may be sent synchronously
+ * from any number of threads, or asynchronously through the sendRequestAsync
+ * methods, which run on a pool of at most getMaxConcurrentRequests() threads.
+ * The connection pool is sized to match, so that many requests can be in flight
+ * at once.
+ */
 public class Client {
 	private static final int DEFAULT_TIMEOUT = 10000;
+	private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
 	private DefaultHttpClient httpClient = new DefaultHttpClient();
 	
-	private Writer messageLog = null;
-	private boolean messageTimingEnabled = false;
-	private Timing messageTiming = new Timing();
-	private ObjectMapperProvider mapperProvider = new DefaultMapperProvider();
+	private volatile Writer messageLog = null;
+	private volatile boolean messageTimingEnabled = false;
+	private volatile Timing messageTiming = new Timing();
+	private volatile ObjectMapperProvider mapperProvider = new DefaultMapperProvider();
+	private volatile MessageFormat messageFormat = MessageFormat.JSON;
 
 	private URL serverAddress;
 	
-	private boolean connected;
+	private final AtomicBoolean connected = new AtomicBoolean(false);
 	
 	private Object lock = new Object();
 	
+	private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+	private ThreadPoolExecutor executor;
+	
 	public Client(URL address){
 		serverAddress = address;
 		httpClient = getNewHttpClient();
 		setTimeout(DEFAULT_TIMEOUT);
+		setMaxConcurrentRequests(DEFAULT_MAX_CONCURRENT_REQUESTS);
 	}
 	public void loadCookies(File file){
 		try {
@@ -123,6 +151,22 @@ public class Client {
 	public void setObjectMapperProvider(ObjectMapperProvider provider){
 		mapperProvider = provider;
 	}
+	public MessageFormat getMessageFormat(){
+		return messageFormat;
+	}
+	/**
+	 * Sets the encoding requests are sent in and responses are asked for. A
+	 * binary format needs a BinaryMapperProvider.
+	 */
+	public void setMessageFormat(MessageFormat format){
+		if(format.getMapper(mapperProvider) == null)
+			throw new IllegalArgumentException("The object mapper provider does not support "+format);
+		messageFormat = format;
+	}
+	/**
+	 * Logging needs the text of each message, so while it is enabled requests
+	 * and responses go through an intermediate String instead of being streamed.
+	 */
 	public void setMessageLoggingEnabled(File file) throws IOException{
 		messageLog = new FileWriter(file);
 	}
@@ -132,91 +176,259 @@ public class Client {
 	public void setMessageTimingEnabled(boolean enabled){
 		messageTimingEnabled = enabled;
 	}
+	/**
+	 * @return the timing of the most recently completed request. When the
+	 * request is streamed, its serialization time is the time spent writing
+	 * it to the connection, which is part of the transmission time.
+	 */
 	public Timing getMessageTiming(){
 		return messageTiming;
 	}
+	/**
+	 * @return true if the most recently completed request got a response from
+	 * the server. Requests in flight do not change it, so concurrent requests
+	 * cannot clear it for one another.
+	 */
 	public boolean connected(){
+		return connected.get();
+	}
+	private void setTimeout(int timeout){
+		setTimeout(httpClient.getParams(), timeout);
+	}
+	private static void setTimeout(HttpParams params, int timeout){
+		HttpConnectionParams.setConnectionTimeout(params, timeout);
+		HttpConnectionParams.setSoTimeout(params, timeout);
+	}
+	
+	public int getMaxConcurrentRequests(){
+		synchronized(lock){
+			return maxConcurrentRequests;
+		}
+	}
+	/**
+	 * Sets how many asynchronous requests may be in flight at once. Further
+	 * requests are queued until one of them completes. The connection pool is
+	 * resized to allow that many connections to the server.
+	 * @param max the number of concurrent requests, at least 1
+	 */
+	public void setMaxConcurrentRequests(int max){
+		if(max < 1)
+			throw new IllegalArgumentException("At least one concurrent request is required");
 		synchronized(lock){
-			return connected;
+			maxConcurrentRequests = max;
+			if(executor != null){
+				if(max > executor.getMaximumPoolSize()){
+					executor.setMaximumPoolSize(max);
+					executor.setCorePoolSize(max);
+				}
+				else{
+					executor.setCorePoolSize(max);
+					executor.setMaximumPoolSize(max);
+				}
+			}
+		}
+		ClientConnectionManager ccm = httpClient.getConnectionManager();
+		if(ccm instanceof ThreadSafeClientConnManager){
+			ThreadSafeClientConnManager pool = (ThreadSafeClientConnManager)ccm;
+			pool.setMaxTotal(Math.max(max, pool.getMaxTotal()));
+			pool.setDefaultMaxPerRoute(max);
 		}
 	}
-	private void setConnected(boolean connected){
+	/**
+	 * Stops the threads used for asynchronous requests. Requests already
+	 * submitted are still sent. A later asynchronous request starts a new pool.
+	 */
+	public void shutdown(){
 		synchronized(lock){
-			this.connected = connected;
+			if(executor != null){
+				executor.shutdown();
+				executor = null;
+			}
 		}
 	}
-	private void setTimeout(int timeout){
-		HttpParams params = httpClient.getParams();
-		HttpConnectionParams.setConnectionTimeout(params, timeout);
-		HttpConnectionParams.setSoTimeout(params, timeout);
+	private ExecutorService getExecutor(){
+		synchronized(lock){
+			if(executor == null){
+				executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+						60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ClientThreadFactory());
+				executor.allowCoreThreadTimeOut(true);
+			}
+			return executor;
+		}
 	}
-	public synchronized <T extends Response> T sendRequest(Request request, Class<T> requestClass){
+	
+	public <T extends Response> T sendRequest(Request request, Class<T> requestClass){
 		return (T)sendRequest(request);
 	}
-	public synchronized <T extends Response> T sendRequest(Request request, Class<T> requestClass, int timeout){
+	public <T extends Response> T sendRequest(Request request, Class<T> requestClass, int timeout){
 		return (T)sendRequest(request,timeout);
 	}
-	public synchronized Response sendRequest(Request request, int timeout){
-		setTimeout(timeout);
-		Response response = sendRequest(request);
-		setTimeout(DEFAULT_TIMEOUT);
-		return response;
+	public Response sendRequest(Request request, int timeout){
+		return execute(request, timeout);
+	}
+	public Response sendRequest(Request request){
+		return execute(request, -1);
+	}
+	
+	public Future<Response> sendRequestAsync(Request request){
+		return sendRequestAsync(request, -1, null);
+	}
+	public Future<Response> sendRequestAsync(Request request, int timeout){
+		return sendRequestAsync(request, timeout, null);
+	}
+	public <T extends Response> Future<T> sendRequestAsync(Request request, Class<T> responseClass){
+		return sendRequestAsync(request, responseClass, -1, null);
+	}
+	public <T extends Response> Future<T> sendRequestAsync(Request request, Class<T> responseClass, int timeout){
+		return sendRequestAsync(request, responseClass, timeout, null);
+	}
+	public Future<Response> sendRequestAsync(Request request, Callback<Response> callback){
+		return sendRequestAsync(request, -1, callback);
+	}
+	public Future<Response> sendRequestAsync(Request request, int timeout, Callback<Response> callback){
+		return sendRequestAsync(request, Response.class, timeout, callback);
+	}
+	/**
+	 * Sends the request on one of the client's request threads. As with
+	 * sendRequest, failures are reported as a ClientErrorResponse rather than
+	 * thrown, so the future always completes with a response.
+	 * @param timeout the connection and socket timeout in milliseconds, or -1
+	 * for the client default
+	 * @param callback called with the response on the request thread, may be null
+	 */
+	public <T extends Response> Future<T> sendRequestAsync(final Request request, Class<T> responseClass,
+			final int timeout, final Callback<? super T> callback){
+		return getExecutor().submit(new Callable<T>(){
+			@Override
+			public T call() throws Exception {
+				T response = (T)execute(request, timeout);
+				if(callback != null)
+					callback.callback(response);
+				return response;
+			}
+		});
 	}
 	
+	/**
+	 * Sends the requests in one BatchRequest and returns their responses in
+	 * the same order. If the batch as a whole fails, each request is answered
+	 * with that failure.
+	 */
+	public List<Response> sendBatch(List<? extends Request> requests){
+		return unpackBatch(sendRequest(new BatchRequest(requests)), requests.size());
+	}
+	public List<Response> sendBatch(List<? extends Request> requests, int timeout){
+		return unpackBatch(sendRequest(new BatchRequest(requests), timeout), requests.size());
+	}
+	static List<Response> unpackBatch(Response response, int count){
+		if(response instanceof BatchResponse){
+			List<Response> responses = ((BatchResponse)response).getResponses();
+			if(responses != null && responses.size() == count)
+				return responses;
+			response = new ClientErrorResponse(new ClientException(
+					"Batch of "+count+" requests answered with "+(responses == null ? 0 : responses.size())+" responses"));
+		}
+		List<Response> responses = new ArrayList<Response>(count);
+		for(int i = 0; i < count; i++)
+			responses.add(response);
+		return responses;
+	}
 	
-	public synchronized Response sendRequest(Request request){
-		setConnected(false);
+	private Response execute(Request request, int timeout){
+		boolean reachedServer = false;
 		HttpPost post = new HttpPost(serverAddress.toString());
+		if(timeout >= 0)
+			setTimeout(post.getParams(), timeout);
 		HttpEntity responseEntity = null;
 		Response message = null;
-		ObjectMapper mapper = mapperProvider.getMapper();
+		ObjectMapperProvider provider = mapperProvider;
+		MessageFormat format = messageFormat;
+		ObjectMapper mapper = format.getMapper(provider);
+		Writer log = messageLog;
+		boolean timed = messageTimingEnabled;
+		Timing timing = new Timing();
 		
-		messageTiming.reset();
+		timing.reset();
 		
 		try {
-			if(messageTimingEnabled)
-				messageTiming.startSerialization();
+			if(timed && log != null)
+				timing.startSerialization();
 			
-			String requestVal = mapper.writeValueAsString(request);
+			if(mapper == null)
+				throw new ClientException("The object mapper provider does not support "+format);
 			
-			if(messageTimingEnabled)
-				messageTiming.endSerialization();
-			
-			if(messageLog!=null){
-				messageLog.append("//REQUEST\n");
-				messageLog.append(requestVal+"\n");
-				messageLog.flush();
+			HttpEntity entity;
+			if(log != null){
+				// binary messages are logged as JSON so the log stays readable
+				String requestVal = provider.getMapper().writeValueAsString(request);
+				synchronized(log){
+					log.append("//REQUEST\n");
+					log.append(requestVal+"\n");
+					log.flush();
+				}
+				AbstractHttpEntity bufferedEntity;
+				if(format.isBinary())
+					bufferedEntity = new ByteArrayEntity(mapper.writeValueAsBytes(request));
+				else
+					bufferedEntity = new StringEntity(requestVal);
+				bufferedEntity.setContentType(format.getContentType());
+				entity = bufferedEntity;
+			}
+			else{
+				// serialized as it is written to the connection, so the
+				// entity times the write itself, within the transmission
+				MessageEntity streamedEntity = new MessageEntity(mapper, request, format.getContentType());
+				if(timed)
+					streamedEntity.setTiming(timing);
+				entity = streamedEntity;
 			}
-			if(messageTimingEnabled)
-				messageTiming.startTransmission();
+			post.setHeader("Accept", format.getContentType());
+			
+			if(timed && log != null)
+				timing.endSerialization();
+			if(timed)
+				timing.startTransmission();
 			
-			StringEntity entity = new StringEntity(requestVal);
 			post.setEntity(entity);
-			entity.setContentType("application/json");
-			HttpResponse response;
-			synchronized(httpClient){
-				response = httpClient.execute(post);
-			}
+			HttpResponse response = httpClient.execute(post);
 			
-			if(messageTimingEnabled)
-				messageTiming.endTransmission();
-			if(messageTimingEnabled)
-				messageTiming.startDeserialization();
+			if(timed)
+				timing.endTransmission();
+			if(timed)
+				timing.startDeserialization();
 			responseEntity = response.getEntity();
-			InputStream inStream = responseEntity.getContent();
 			
-			if(responseEntity.getContentType() != null){
-				if(messageLog==null)
-					message = mapper.readValue(inStream,Response.class);
+			if(responseEntity != null && responseEntity.getContentType() != null){
+				// the server may answer in another format than was asked for
+				MessageFormat responseFormat = MessageFormat.forContentType(responseEntity.getContentType().getValue());
+				if(responseFormat == null)
+					responseFormat = MessageFormat.JSON;
+				ObjectMapper responseMapper = responseFormat.getMapper(provider);
+				if(responseMapper == null)
+					throw new ClientException("The object mapper provider does not support "+responseFormat);
+				
+				String entityVal = null;
+				if(log==null){
+					InputStream inStream = responseEntity.getContent();
+					message = responseMapper.readValue(inStream,Response.class);
+					inStream.close();
+				}
+				else if(responseFormat.isBinary()){
+					message = responseMapper.readValue(EntityUtils.toByteArray(responseEntity), Response.class);
+					entityVal = provider.getMapper().writeValueAsString(message);
+				}
 				else{
-					String entityVal = EntityUtils.toString(responseEntity);
-					messageLog.append("//RESPONSE\n");
-					messageLog.append(entityVal+"\n");
-					messageLog.flush();
-					message = mapper.readValue(entityVal, Response.class);
+					entityVal = EntityUtils.toString(responseEntity);
+					message = responseMapper.readValue(entityVal, Response.class);
+				}
+				if(log!=null){
+					synchronized(log){
+						log.append("//RESPONSE\n");
+						log.append(entityVal+"\n");
+						log.flush();
+					}
 				}
-				inStream.close();
-				setConnected(true);
+				reachedServer = true;
 			}
 			else{
 				throw new ClientException("Able to connect but response is not from Server. Incorrect URL?");
@@ -232,14 +444,16 @@ public class Client {
 		}
 		finally{
 			try {
-				if(responseEntity!=null)
-					responseEntity.consumeContent();
+				EntityUtils.consume(responseEntity);
 			} catch (IOException e) {
 				message = new ClientErrorResponse(e);
 			}
 		}
-		if(messageTimingEnabled)
-			messageTiming.endDeserialization();
+		connected.set(reachedServer);
+		if(timed){
+			timing.endDeserialization();
+			messageTiming = timing;
+		}
 		return message;
 	}
 	private DefaultHttpClient getNewHttpClient() {
@@ -266,6 +480,17 @@ public class Client {
 	    }
 	}
 	
+	private static class ClientThreadFactory implements ThreadFactory {
+		private static final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "srl-client-"+count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
 	public static class Timing {
 		long serializationStart,serializationEnd;
 		long transmissionStart,transmissionEnd;
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ *  Revision History:<br>
+ *  SRL Member - File created
+ *
+ *  <p>
+ *  <pre>
+ *  This work is released under the BSD License:
+ *  (C) 2012 Sketch Recognition Lab, Texas A&M University (hereafter SRL @ TAMU)
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *      * Redistributions of source code must retain the above copyright
+ *        notice, this list of conditions and the following disclaimer.
+ *      * Redistributions in binary form must reproduce the above copyright
+ *        notice, this list of conditions and the following disclaimer in the
+ *        documentation and/or other materials provided with the distribution.
+ *      * Neither the name of the Sketch Recognition Lab, Texas A&M University 
+ *        nor the names of its contributors may be used to endorse or promote 
+ *        products derived from this software without specific prior written 
+ *        permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  </pre>
+ *  
+ *******************************************************************************/
+package srl.distributed.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import srl.distributed.messages.Message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * HTTP entity that serializes a message straight to the connection's output
+ * stream, so the message is never held as an intermediate String. The content
+ * length is unknown, so the entity is sent chunked. It is repeatable, since
+ * the message can be serialized again if the request has to be retried.
+ */
+public class MessageEntity extends AbstractHttpEntity {
+	private final ObjectMapper mapper;
+	private final Message message;
+	private volatile Client.Timing timing;
+
+	public MessageEntity(ObjectMapper mapper, Message message, String contentType) {
+		this.mapper = mapper;
+		this.message = message;
+		setContentType(contentType);
+		setChunked(true);
+	}
+
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * Records the time spent writing the message as its serialization time.
+	 * @param timing the timing to record in, or null to not time the writes
+	 */
+	public void setTiming(Client.Timing timing) {
+		this.timing = timing;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		Client.Timing timing = this.timing;
+		if (timing != null)
+			timing.startSerialization();
+		// the connection owns the stream, so only flush it
+		JsonGenerator generator = mapper.getFactory().createGenerator(out);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		mapper.writeValue(generator, message);
+		generator.close();
+		if (timing != null)
+			timing.endSerialization();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ *  Revision History:<br>
+ *  SRL Member - File created
+ *
+ *  <p>
+ *  <pre>
+ *  This work is released under the BSD License:
+ *  (C) 2012 Sketch Recognition Lab, Texas A&M University (hereafter SRL @ TAMU)
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *      * Redistributions of source code must retain the above copyright
+ *        notice, this list of conditions and the following disclaimer.
+ *      * Redistributions in binary form must reproduce the above copyright
+ *        notice, this list of conditions and the following disclaimer in the
+ *        documentation and/or other materials provided with the distribution.
+ *      * Neither the name of the Sketch Recognition Lab, Texas A&M University 
+ *        nor the names of its contributors may be used to endorse or promote 
+ *        products derived from this software without specific prior written 
+ *        permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  </pre>
+ *  
+ *******************************************************************************/
+package srl.distributed.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import srl.distributed.messages.BatchRequest;
+import srl.distributed.messages.ClientErrorResponse;
+import srl.distributed.messages.Request;
+import srl.distributed.messages.Response;
+
+/**
+ * Coalesces requests submitted within a short window into one BatchRequest.
+ * The window starts with the first request after a send, and the batch is sent
+ * when the window closes or when it reaches the maximum batch size, whichever
+ * comes first. A batch holding a single request is sent on its own.
+ * <pre>
+ * RequestBatcher batcher = new RequestBatcher(client, 5, 32);
+ * Future&lt;Response&gt; response = batcher.submit(request);
+ * </pre>
+ */
+public class RequestBatcher {
+	private final Client client;
+	private final long windowMillis;
+	private final int maxBatchSize;
+	private final ScheduledExecutorService timer;
+	
+	private List<Request> pendingRequests = new ArrayList<Request>();
+	private List<PendingResponse> pendingResponses = new ArrayList<PendingResponse>();
+	private ScheduledFuture<?> window;
+	private boolean closed = false;
+	
+	/**
+	 * @param client the client the batches are sent through
+	 * @param windowMillis how long to wait for further requests after the first
+	 * @param maxBatchSize the most requests sent in one batch
+	 */
+	public RequestBatcher(Client client, long windowMillis, int maxBatchSize){
+		if(windowMillis < 0 || maxBatchSize < 1)
+			throw new IllegalArgumentException("Need a non-negative window and a batch size of at least 1");
+		this.client = client;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "srl-request-batcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public Future<Response> submit(Request request){
+		return submit(request, null);
+	}
+	
+	/**
+	 * Queues the request for the next batch.
+	 * @param callback called with the response once it arrives, may be null
+	 */
+	public Future<Response> submit(Request request, Callback<Response> callback){
+		PendingResponse response = new PendingResponse(callback);
+		boolean sendNow;
+		synchronized(this){
+			if(closed)
+				throw new IllegalStateException("Batcher has been closed");
+			pendingRequests.add(request);
+			pendingResponses.add(response);
+			sendNow = pendingRequests.size() >= maxBatchSize;
+			if(!sendNow && pendingRequests.size() == 1){
+				window = timer.schedule(new Runnable(){
+					@Override
+					public void run() {
+						flush();
+					}
+				}, windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if(sendNow)
+			flush();
+		return response;
+	}
+	
+	/**
+	 * Sends the pending requests without waiting for the window to close.
+	 */
+	public void flush(){
+		final List<Request> requests;
+		final List<PendingResponse> responses;
+		synchronized(this){
+			if(pendingRequests.isEmpty())
+				return;
+			requests = pendingRequests;
+			responses = pendingResponses;
+			pendingRequests = new ArrayList<Request>();
+			pendingResponses = new ArrayList<PendingResponse>();
+			if(window != null){
+				window.cancel(false);
+				window = null;
+			}
+		}
+		try{
+			if(requests.size() == 1){
+				client.sendRequestAsync(requests.get(0), new Callback<Response>(){
+					@Override
+					public void callback(Response data) {
+						settle(responses, Collections.singletonList(data));
+					}
+				});
+			}
+			else{
+				client.sendRequestAsync(new BatchRequest(requests), new Callback<Response>(){
+					@Override
+					public void callback(Response data) {
+						settle(responses, Client.unpackBatch(data, responses.size()));
+					}
+				});
+			}
+		}
+		catch(RuntimeException e){
+			// the request never left, e.g. the client's executor has been shut down
+			settle(responses, Collections.nCopies(responses.size(), (Response)new ClientErrorResponse(e)));
+		}
+	}
+	
+	/**
+	 * Completes every future before running any callback, so a callback that
+	 * throws cannot leave the rest of the batch waiting.
+	 */
+	private static void settle(List<PendingResponse> responses, List<Response> results){
+		boolean[] completed = new boolean[responses.size()];
+		for(int i = 0; i < responses.size(); i++)
+			completed[i] = responses.get(i).complete(results.get(i));
+		for(int i = 0; i < responses.size(); i++){
+			if(!completed[i])
+				continue;
+			try{
+				responses.get(i).runCallback();
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Sends any pending requests and stops accepting new ones.
+	 */
+	public void close(){
+		synchronized(this){
+			closed = true;
+		}
+		flush();
+		timer.shutdown();
+	}
+	
+	/**
+	 * The response to one request of a batch. Cancelling it only stops waiting:
+	 * the request is still sent with the rest of its batch, but its response is
+	 * dropped and the callback is not called.
+	 */
+	private static class PendingResponse implements Future<Response> {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final Callback<Response> callback;
+		private volatile Response response;
+		private volatile boolean cancelled = false;
+		
+		PendingResponse(Callback<Response> callback){
+			this.callback = callback;
+		}
+		
+		/**
+		 * @return false if the response was already set or cancelled
+		 */
+		synchronized boolean complete(Response response){
+			if(done.getCount() == 0)
+				return false;
+			this.response = response;
+			done.countDown();
+			return true;
+		}
+		
+		void runCallback(){
+			if(callback != null)
+				callback.callback(response);
+		}
+
+		@Override
+		public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			if(done.getCount() == 0)
+				return false;
+			cancelled = true;
+			done.countDown();
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public Response get() throws InterruptedException, ExecutionException {
+			done.await();
+			if(cancelled)
+				throw new CancellationException();
+			return response;
+		}
+
+		@Override
+		public Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(!done.await(timeout, unit))
+				throw new TimeoutException();
+			if(cancelled)
+				throw new CancellationException();
+			return response;
+		}
+	}
+}
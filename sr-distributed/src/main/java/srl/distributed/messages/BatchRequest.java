@@ -0,0 +1,152 @@
+/*******************************************************************************
+ *  Revision History:<br>
+ *  SRL Member - File created
+ *
+ *  <p>
+ *  <pre>
+ *  This work is released under the BSD License:
+ *  (C) 2012 Sketch Recognition Lab, Texas A&M University (hereafter SRL @ TAMU)
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *      * Redistributions of source code must retain the above copyright
+ *        notice, this list of conditions and the following disclaimer.
+ *      * Redistributions in binary form must reproduce the above copyright
+ *        notice, this list of conditions and the following disclaimer in the
+ *        documentation and/or other materials provided with the distribution.
+ *      * Neither the name of the Sketch Recognition Lab, Texas A&M University 
+ *        nor the names of its contributors may be used to endorse or promote 
+ *        products derived from this software without specific prior written 
+ *        permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  </pre>
+ *  
+ *******************************************************************************/
+package srl.distributed.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import srl.distributed.server.ServerRequest;
+import srl.distributed.server.ServiceContext;
+
+/**
+ * Carries several requests in one message. The server performs the requests in
+ * parallel on the executor of the ServiceContext, if it has one, and answers with a BatchResponse holding one response per request,
+ * in the same order. A request that fails is answered with an ErrorResponse in
+ * its place rather than failing the whole batch, with the same detail the
+ * servlet would give it on its own (see ServiceContext.errorResponse). If any
+ * request is unauthorized the whole batch is answered with an
+ * UnauthorizedResponse, which the servlet turns into 403 as it does for a
+ * single request. Batches may not be nested.
+ */
+public class BatchRequest extends ServerRequest {
+	private List<Request> requests = new ArrayList<Request>();
+	
+	private BatchRequest(){}
+	
+	public BatchRequest(List<? extends Request> requests){
+		this.requests.addAll(requests);
+	}
+
+	/**
+	 * @return the requests
+	 */
+	public List<Request> getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @param requests the requests to set
+	 */
+	public void setRequests(List<Request> requests) {
+		this.requests = requests;
+	}
+
+	@Override
+	public Response performService(final ServiceContext context) {
+		final List<Request> items = requests;
+		final Response[] results = new Response[items.size()];
+		final AtomicInteger next = new AtomicInteger();
+		// each helper, and the calling thread, takes the next item not yet started
+		Runnable helper = new Runnable(){
+			@Override
+			public void run() {
+				int i;
+				while((i = next.getAndIncrement()) < results.length)
+					results[i] = performItem(items.get(i), context);
+			}
+		};
+		List<Future<?>> helpers = new ArrayList<Future<?>>();
+		ExecutorService executor = context.getExecutor();
+		if(executor != null){
+			try{
+				for(int i = 1; i < results.length; i++)
+					helpers.add(executor.submit(helper));
+			}
+			catch(RejectedExecutionException e){
+				// the pool is full, so the calling thread performs the rest
+			}
+		}
+		helper.run();
+		
+		// every item has been started, so only helpers still performing one are
+		// waited for; those still queued are cancelled rather than holding up
+		// the batch behind other requests
+		Throwable failure = null;
+		for(Future<?> future : helpers){
+			future.cancel(false);
+			try {
+				future.get();
+			} catch (CancellationException e) {
+				// it never started
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+				break;
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			}
+		}
+		
+		List<Response> responses = new ArrayList<Response>(results.length);
+		for(Response result : results)
+			responses.add(result != null ? result : context.errorResponse(failure));
+		for(Response response : responses){
+			if(response instanceof UnauthorizedResponse)
+				return response;
+		}
+		return new BatchResponse(responses);
+	}
+	
+	private static Response performItem(Request request, ServiceContext context){
+		try{
+			if(request instanceof BatchRequest)
+				return new ErrorResponse("Batch requests may not be nested");
+			if(!(request instanceof ServerRequest))
+				return new ErrorResponse("Request cannot be performed by the server: "
+						+ (request == null ? null : request.getClass().getName()));
+			Response response = ((ServerRequest)request).performService(context);
+			return response;
+		}
+		catch(Throwable e){
+			return context.errorResponse(e);
+		}
+	}
+}
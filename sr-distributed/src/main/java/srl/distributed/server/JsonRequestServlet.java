@@ -35,24 +35,70 @@
 package srl.distributed.server;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import srl.distributed.DefaultMapperProvider;
+import srl.distributed.MessageFormat;
 import srl.distributed.ObjectMapperProvider;
-import srl.distributed.messages.ErrorResponse;
 import srl.distributed.messages.Response;
 import srl.distributed.messages.UnauthorizedResponse;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+/**
+ * Reads a ServerRequest from the body of a POST, performs it and writes the
+ * Response back. Messages are JSON unless the content type names another
+ * MessageFormat. The response uses the first format in the Accept header that
+ * the mapper provider supports, and otherwise the format of the request.
+ * <p>
+ * By default every request gets an HttpSession and is handled on the container
+ * thread. A servlet may instead be made stateless, so that no session is
+ * created, and may dispatch requests asynchronously onto a bounded pool of
+ * worker threads. Asynchronous dispatch needs the servlet to be registered with
+ * async support. When the pool and its queue are full, further requests are
+ * refused with 503 Service Unavailable so that clients back off. A request
+ * still waiting for a worker when the async timeout (60 seconds by default)
+ * expires is also answered with 503; once a worker has started handling a
+ * request, the worker answers it. The items of a BatchRequest are spread over the
+ * same pool, and are performed on the request's own thread when the pool is
+ * full or dispatch is synchronous.
+ * <p>
+ * Both modes may also be set with the init parameters "stateless" (true or
+ * false), "workerThreads", "workerQueueSize" and "asyncTimeout" (in
+ * milliseconds).
+ */
 @SuppressWarnings("serial")
 public class JsonRequestServlet extends HttpServlet{
-	private boolean debugActive;
+	public static final String INIT_STATELESS = "stateless";
+	public static final String INIT_WORKER_THREADS = "workerThreads";
+	public static final String INIT_WORKER_QUEUE_SIZE = "workerQueueSize";
+	public static final String INIT_ASYNC_TIMEOUT = "asyncTimeout";
+	private static final int DEFAULT_QUEUE_PER_WORKER = 16;
+	private static final long DEFAULT_ASYNC_TIMEOUT = 60000L;
+	private static final int RETRY_AFTER_SECONDS = 1;
+	
+	private volatile boolean debugActive = true;
+	private volatile boolean stateless = false;
 	private ObjectMapperProvider mapperProvider = new DefaultMapperProvider();
+	private volatile ThreadPoolExecutor workers;
+	private volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
 
 	public void setDebugMode(boolean debug){
 		this.debugActive = debug;
@@ -61,45 +107,219 @@ public class JsonRequestServlet extends HttpServlet{
 	public ObjectMapperProvider getObjectMapperProvider(){
 		return mapperProvider;
 	}
-
+	
+	/**
+	 * @param stateless if true no HttpSession is created for requests
+	 */
+	public void setStateless(boolean stateless){
+		this.stateless = stateless;
+	}
+	
+	public boolean isStateless(){
+		return stateless;
+	}
+	
+	/**
+	 * Handles requests asynchronously on a pool of worker threads.
+	 * @param threads the number of worker threads
+	 * @param queueSize how many requests may wait for a worker before further
+	 * requests are refused
+	 */
+	public synchronized void setAsyncDispatch(int threads, int queueSize){
+		if(threads < 1 || queueSize < 0)
+			throw new IllegalArgumentException("Need at least one worker and a non-negative queue size");
+		BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueSize);
+		ThreadPoolExecutor old = workers;
+		workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue, new WorkerThreadFactory());
+		if(old != null)
+			old.shutdown();
+	}
+	
+	/**
+	 * Returns to handling requests on the container thread.
+	 */
+	public synchronized void setSynchronousDispatch(){
+		if(workers != null){
+			workers.shutdown();
+			workers = null;
+		}
+	}
+	
+	public boolean isAsyncDispatch(){
+		return workers != null;
+	}
+	
+	/**
+	 * @param timeout how long, in milliseconds, an asynchronously dispatched
+	 * request may wait for a worker before it is answered with 503
+	 */
+	public void setAsyncTimeout(long timeout){
+		if(timeout <= 0)
+			throw new IllegalArgumentException("The async timeout must be positive");
+		asyncTimeout = timeout;
+	}
+	
+	public long getAsyncTimeout(){
+		return asyncTimeout;
+	}
+	
 	@Override
-	protected void doPost(HttpServletRequest req, HttpServletResponse resp){
-		setDebugMode(true);
-
+	public void init() throws ServletException {
+		String statelessParam = getInitParameter(INIT_STATELESS);
+		if(statelessParam != null)
+			setStateless(Boolean.parseBoolean(statelessParam));
+		String threadsParam = getInitParameter(INIT_WORKER_THREADS);
+		if(threadsParam != null){
+			try{
+				int threads = Integer.parseInt(threadsParam.trim());
+				String queueParam = getInitParameter(INIT_WORKER_QUEUE_SIZE);
+				int queueSize = queueParam != null ? Integer.parseInt(queueParam.trim()) : threads * DEFAULT_QUEUE_PER_WORKER;
+				setAsyncDispatch(threads, queueSize);
+			}
+			catch(IllegalArgumentException e){
+				throw new ServletException("Invalid worker configuration", e);
+			}
+		}
+		String timeoutParam = getInitParameter(INIT_ASYNC_TIMEOUT);
+		if(timeoutParam != null){
+			try{
+				setAsyncTimeout(Long.parseLong(timeoutParam.trim()));
+			}
+			catch(IllegalArgumentException e){
+				throw new ServletException("Invalid async timeout", e);
+			}
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		setSynchronousDispatch();
+		super.destroy();
+	}
 
-		ObjectMapper mapper = getObjectMapperProvider().getMapper();
+	@Override
+	protected void doPost(final HttpServletRequest req, final HttpServletResponse resp){
+		ThreadPoolExecutor pool = workers;
+		if(pool == null || !req.isAsyncSupported()){
+			handle(req, resp);
+			return;
+		}
 		
-		HttpSession session = req.getSession(true);
-		session.getId();
-
-		session.setAttribute("request_path", req.getServletPath());
+		final AsyncContext async = req.startAsync(req, resp);
+		// claimed once, by the worker before it starts or by the timeout
+		final AtomicBoolean answered = new AtomicBoolean(false);
+		async.setTimeout(asyncTimeout);
+		async.addListener(new AsyncListener(){
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				// a worker is handling the request and completes it
+				if(!answered.compareAndSet(false, true))
+					return;
+				try{
+					resp.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+					resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				}
+				finally{
+					async.complete();
+				}
+			}
+			@Override
+			public void onComplete(AsyncEvent event) {
+			}
+			@Override
+			public void onError(AsyncEvent event) {
+			}
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+		});
+		try{
+			pool.execute(new Runnable(){
+				@Override
+				public void run() {
+					// a request that timed out while queued is not handled
+					if(!answered.compareAndSet(false, true))
+						return;
+					try{
+						handle(req, resp);
+					}
+					finally{
+						async.complete();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			answered.set(true);
+			try {
+				resp.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+				resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+			finally{
+				async.complete();
+			}
+		}
+	}
+	
+	private void handle(HttpServletRequest req, HttpServletResponse resp){
+		ObjectMapperProvider provider = getObjectMapperProvider();
+		MessageFormat requestFormat = MessageFormat.forContentType(req.getContentType());
+		if(requestFormat == null)
+			requestFormat = MessageFormat.JSON;
+		ObjectMapper mapper = requestFormat.getMapper(provider);
+		if(mapper == null){
+			try {
+				resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		// answer in the format the client accepts, or else the one it sent
+		MessageFormat responseFormat = MessageFormat.forAccept(req.getHeader("Accept"));
+		if(responseFormat == null || responseFormat.getMapper(provider) == null)
+			responseFormat = requestFormat;
+		ObjectMapper responseMapper = responseFormat.getMapper(provider);
+		
+		if(!stateless){
+			HttpSession session = req.getSession(true);
+			session.setAttribute("request_path", req.getServletPath());
+		}
 
+		ServiceContext context = new ServiceContext(req, debugActive, workers);
 		try {
 			Response responseMessage;
 			try{
 				ServerRequest requestMessage = mapper.readValue(req.getInputStream(), ServerRequest.class);
 
-				responseMessage = requestMessage.performService(new ServiceContext(req));
+				responseMessage = requestMessage.performService(context);
 			} 
 			catch (Throwable e){
-				if(debugActive){
-					responseMessage = new ErrorResponse(e);
-					e.printStackTrace();
-				}
-				else{
-					responseMessage = new ErrorResponse(e.getMessage());
-				}
+				responseMessage = context.errorResponse(e);
 			}
 			if(responseMessage instanceof UnauthorizedResponse){
 				resp.sendError(403);
 			}
 			else{
-				resp.setContentType("application/json");
-				mapper.writeValue(resp.getOutputStream(), responseMessage);
+				resp.setContentType(responseFormat.getContentType());
+				responseMapper.writeValue(resp.getOutputStream(), responseMessage);
 			}
 		}
 		catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
+	
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "srl-servlet-worker-"+count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
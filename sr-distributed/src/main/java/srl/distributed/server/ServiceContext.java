@@ -1,13 +1,61 @@
 package srl.distributed.server;
 
+import java.util.concurrent.ExecutorService;
+
 import javax.servlet.http.HttpServletRequest;
 
+import srl.distributed.messages.ErrorResponse;
+
 public class ServiceContext {
 	private HttpServletRequest request;
+	private boolean debug;
+	private ExecutorService executor;
 	public ServiceContext(HttpServletRequest request){
+		this(request, false);
+	}
+	/**
+	 * @param debug if true, errors are answered with their class and stack
+	 * trace, otherwise only with their message
+	 */
+	public ServiceContext(HttpServletRequest request, boolean debug){
+		this(request, debug, null);
+	}
+	/**
+	 * @param executor the pool that parts of a request, such as the items of a
+	 * BatchRequest, may be performed on, or null to perform them on the calling
+	 * thread
+	 */
+	public ServiceContext(HttpServletRequest request, boolean debug, ExecutorService executor){
 		this.request = request;
+		this.debug = debug;
+		this.executor = executor;
 	}
+	/**
+	 * The items of a BatchRequest may be performed on several threads at once
+	 * and share this request, which is not thread-safe. They should only read
+	 * from it, and synchronize on it for anything else.
+	 */
 	public HttpServletRequest getRequest(){
 		return request;
 	}
+	public boolean isDebug(){
+		return debug;
+	}
+	/**
+	 * @return the pool to perform parts of the request on, or null
+	 */
+	public ExecutorService getExecutor(){
+		return executor;
+	}
+	/**
+	 * Builds the response for a request that failed. Outside debug mode only
+	 * the message of the error is sent, so clients do not see server internals.
+	 */
+	public ErrorResponse errorResponse(Throwable e){
+		if(debug){
+			e.printStackTrace();
+			return new ErrorResponse(e);
+		}
+		return new ErrorResponse(e.getMessage());
+	}
 }
@@ -0,0 +1,479 @@
+/**
+ * RecognitionResultCache.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openawt.svg.Style;
+
+import srl.core.sketch.Alias;
+import srl.core.sketch.Interpretation;
+import srl.core.sketch.SComponent;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionResult;
+
+/**
+ * Bounded, least recently used cache of recognition results keyed by stroke
+ * content (see {@link StrokeKey}). Entries are evicted when the cache is full
+ * or when they are older than the maximum age. Results are copied on the way
+ * in and out and re-bound to the stroke being recognized, so callers are free
+ * to modify the results they get back. The cache can be shared by many
+ * threads.
+ */
+public class RecognitionResultCache {
+
+	/**
+	 * Default maximum number of cached results
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	/**
+	 * Default maximum age of a cached result (in milliseconds)
+	 */
+	public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000L;
+
+	/**
+	 * Default grid size that point coordinates are quantized to
+	 */
+	public static final double DEFAULT_QUANTUM = 0.01;
+
+	/**
+	 * Maximum number of cached results
+	 */
+	private final int m_maxEntries;
+
+	/**
+	 * Maximum age of a cached result in milliseconds (0 for no limit)
+	 */
+	private final long m_maxAge;
+
+	/**
+	 * Grid size that point coordinates are quantized to
+	 */
+	private final double m_quantum;
+
+	/**
+	 * Cached entries, in access order
+	 */
+	private final LinkedHashMap<StrokeKey, CachedResult> m_entries;
+
+	/**
+	 * Number of lookups that found a result
+	 */
+	private long m_hits = 0;
+
+	/**
+	 * Number of lookups that did not find a result
+	 */
+	private long m_misses = 0;
+
+	/**
+	 * Number of entries evicted because of size or age
+	 */
+	private long m_evictions = 0;
+
+	/**
+	 * Create a cache with the default size, age and quantization
+	 */
+	public RecognitionResultCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE);
+	}
+
+	/**
+	 * Create a cache with the default quantization
+	 * 
+	 * @param maxEntries
+	 *            maximum number of cached results
+	 * @param maxAge
+	 *            maximum age of a cached result in milliseconds (0 for no
+	 *            limit)
+	 */
+	public RecognitionResultCache(int maxEntries, long maxAge) {
+		this(maxEntries, maxAge, DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxEntries
+	 *            maximum number of cached results
+	 * @param maxAge
+	 *            maximum age of a cached result in milliseconds (0 for no
+	 *            limit)
+	 * @param quantum
+	 *            grid size that point coordinates are quantized to
+	 */
+	public RecognitionResultCache(int maxEntries, long maxAge, double quantum) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException(
+					"Cache must hold at least one entry");
+		if (quantum <= 0)
+			throw new IllegalArgumentException("Quantum must be positive");
+		m_maxEntries = maxEntries;
+		m_maxAge = maxAge;
+		m_quantum = quantum;
+		m_entries = new LinkedHashMap<StrokeKey, CachedResult>(16, 0.75f,
+				true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<StrokeKey, CachedResult> eldest) {
+				if (size() > m_maxEntries) {
+					m_evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Create the key for a stroke recognized with a configuration with the
+	 * given fingerprint
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @param fingerprint
+	 *            configuration fingerprint
+	 * @return key for the stroke
+	 */
+	public StrokeKey createKey(Stroke stroke, long fingerprint) {
+		return new StrokeKey(stroke, fingerprint, m_quantum);
+	}
+
+	/**
+	 * Look up the result for a stroke
+	 * 
+	 * @param stroke
+	 *            stroke to look up
+	 * @param fingerprint
+	 *            fingerprint of the configuration the stroke is recognized
+	 *            with
+	 * @return copy of the cached result bound to the given stroke, or null if
+	 *         there is none
+	 */
+	public IRecognitionResult get(Stroke stroke, long fingerprint) {
+		return get(createKey(stroke, fingerprint), stroke);
+	}
+
+	/**
+	 * Look up the result for a key
+	 * 
+	 * @param key
+	 *            key created for the stroke
+	 * @param stroke
+	 *            stroke being recognized; the returned result refers to this
+	 *            stroke
+	 * @return copy of the cached result bound to the given stroke, or null if
+	 *         there is none
+	 */
+	public IRecognitionResult get(StrokeKey key, Stroke stroke) {
+		CachedResult entry;
+		synchronized (this) {
+			entry = m_entries.get(key);
+			if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+				m_entries.remove(key);
+				m_evictions++;
+				entry = null;
+			}
+			if (entry == null) {
+				m_misses++;
+				return null;
+			}
+			m_hits++;
+		}
+
+		// cached results are never modified, so copy outside of the lock
+		return copyResult(entry.result, entry.stroke, stroke);
+	}
+
+	/**
+	 * Cache the result for a stroke
+	 * 
+	 * @param stroke
+	 *            recognized stroke
+	 * @param fingerprint
+	 *            fingerprint of the configuration the stroke was recognized
+	 *            with
+	 * @param result
+	 *            recognition result
+	 */
+	public void put(Stroke stroke, long fingerprint, IRecognitionResult result) {
+		put(createKey(stroke, fingerprint), stroke, result);
+	}
+
+	/**
+	 * Cache the result for a key
+	 * 
+	 * @param key
+	 *            key created for the stroke
+	 * @param stroke
+	 *            recognized stroke
+	 * @param result
+	 *            recognition result
+	 */
+	public void put(StrokeKey key, Stroke stroke, IRecognitionResult result) {
+		if (result == null)
+			return;
+		CachedResult entry = new CachedResult(stroke, copyResult(result,
+				stroke, stroke), System.currentTimeMillis());
+		synchronized (this) {
+			m_entries.put(key, entry);
+			removeExpired(entry.time);
+		}
+	}
+
+	/**
+	 * Remove all cached results (the counters are kept)
+	 */
+	public synchronized void clear() {
+		m_entries.clear();
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counters
+	 */
+	public synchronized void resetCounters() {
+		m_hits = 0;
+		m_misses = 0;
+		m_evictions = 0;
+	}
+
+	/**
+	 * Get the number of cached results
+	 * 
+	 * @return number of cached results
+	 */
+	public synchronized int size() {
+		return m_entries.size();
+	}
+
+	/**
+	 * Get the number of lookups that found a result
+	 * 
+	 * @return number of hits
+	 */
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	/**
+	 * Get the number of lookups that did not find a result
+	 * 
+	 * @return number of misses
+	 */
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	/**
+	 * Get the number of results evicted because the cache was full or they
+	 * were too old
+	 * 
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+		return m_evictions;
+	}
+
+	/**
+	 * Get the fraction of lookups that found a result
+	 * 
+	 * @return hit ratio (0 if there have been no lookups)
+	 */
+	public synchronized double getHitRatio() {
+		long lookups = m_hits + m_misses;
+		return (lookups == 0) ? 0.0 : (double) m_hits / lookups;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "RecognitionResultCache [size=" + m_entries.size() + ", hits="
+				+ m_hits + ", misses=" + m_misses + ", evictions="
+				+ m_evictions + "]";
+	}
+
+	/**
+	 * Determine if an entry is older than the maximum age
+	 * 
+	 * @param entry
+	 *            entry to check
+	 * @param now
+	 *            current time
+	 * @return true if the entry has expired
+	 */
+	private boolean isExpired(CachedResult entry, long now) {
+		return m_maxAge > 0 && now - entry.time > m_maxAge;
+	}
+
+	/**
+	 * Remove expired entries from the least recently used end of the cache
+	 * 
+	 * @param now
+	 *            current time
+	 */
+	private void removeExpired(long now) {
+		if (m_maxAge <= 0)
+			return;
+		Iterator<CachedResult> it = m_entries.values().iterator();
+		while (it.hasNext()) {
+			if (!isExpired(it.next(), now))
+				break;
+			it.remove();
+			m_evictions++;
+		}
+	}
+
+	/**
+	 * Copy a recognition result, replacing references to one stroke with
+	 * another
+	 * 
+	 * @param result
+	 *            result to copy
+	 * @param from
+	 *            stroke the result refers to
+	 * @param to
+	 *            stroke the copy should refer to
+	 * @return copy of the result
+	 */
+	private static IRecognitionResult copyResult(IRecognitionResult result,
+			Stroke from, Stroke to) {
+		IRecognitionResult copy = new RecognitionResult();
+		for (Shape shape : result.getNBestList())
+			copy.addShapeToNBestList(copyShape(shape, from, to));
+		return copy;
+	}
+
+	/**
+	 * Copy a shape (and its sub-shapes and strokes), replacing references to
+	 * one stroke with another. Sub-strokes of the replaced stroke are copied
+	 * and given the new stroke as their parent.
+	 * 
+	 * @param shape
+	 *            shape to copy
+	 * @param from
+	 *            stroke the shape refers to
+	 * @param to
+	 *            stroke the copy should refer to
+	 * @return copy of the shape
+	 */
+	private static Shape copyShape(Shape shape, Stroke from, Stroke to) {
+		Shape copy = new Shape();
+		List<Interpretation> interpretations = new ArrayList<Interpretation>();
+		for (Interpretation i : shape.getNBestList())
+			interpretations.add(i.clone());
+		copy.setNBestList(interpretations);
+		for (Alias a : shape.getAliases())
+			copy.addAlias(a.clone());
+		for (Map.Entry<String, String> attr : shape.getAttributes().entrySet())
+			copy.setAttribute(attr.getKey(), attr.getValue());
+		if (shape.getStyle() != null)
+			copy.setStyle((Style) shape.getStyle().clone());
+		copy.setBeautificationType(shape.getBeautificationType());
+		copy.setBeautifiedShape(shape.getBeautifiedShape());
+		copy.setBeautifiedImage(shape.getBeautifiedImage(),
+				shape.getBeautifiedImageBoundingBox());
+
+		for (SComponent c : shape) {
+			if (c instanceof Shape) {
+				copy.add(copyShape((Shape) c, from, to));
+			} else if (c == from) {
+				copy.add(to);
+			} else if (c instanceof Stroke) {
+				Stroke s = new Stroke((Stroke) c);
+				s.setId(SComponent.nextID());
+				Stroke parent = ((Stroke) c).getParent();
+				s.setParent((parent == from) ? to : parent);
+				copy.add(s);
+			} else {
+				copy.add(c.clone());
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Cached result
+	 */
+	private static class CachedResult {
+
+		/**
+		 * Stroke the result refers to
+		 */
+		final Stroke stroke;
+
+		/**
+		 * Private copy of the result
+		 */
+		final IRecognitionResult result;
+
+		/**
+		 * Time the result was cached
+		 */
+		final long time;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param stroke
+		 *            stroke the result refers to
+		 * @param result
+		 *            private copy of the result
+		 * @param time
+		 *            time the result was cached
+		 */
+		CachedResult(Stroke stroke, IRecognitionResult result, long time) {
+			this.stroke = stroke;
+			this.result = result;
+			this.time = time;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * StrokeKey.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.cache;
+
+import java.util.Arrays;
+import java.util.List;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+
+/**
+ * Content based key for a stroke. Two strokes have equal keys when their
+ * points (quantized to a given grid size) and times are the same and they
+ * were recognized with the same configuration fingerprint, regardless of
+ * whether they are the same stroke object.
+ */
+public final class StrokeKey {
+
+	/**
+	 * Quantized x, y and time values of the points (three values per point)
+	 */
+	private final long[] m_values;
+
+	/**
+	 * Fingerprint of the configuration the stroke is recognized with
+	 */
+	private final long m_fingerprint;
+
+	/**
+	 * 64-bit hash of the values and the fingerprint
+	 */
+	private final long m_hash;
+
+	/**
+	 * Create a key for the given stroke
+	 * 
+	 * @param stroke
+	 *            stroke to create the key for
+	 * @param fingerprint
+	 *            fingerprint of the configuration the stroke is recognized
+	 *            with
+	 * @param quantum
+	 *            grid size the point coordinates are quantized to
+	 */
+	public StrokeKey(Stroke stroke, long fingerprint, double quantum) {
+		List<Point> points = stroke.getPoints();
+		m_values = new long[points.size() * 3];
+		m_fingerprint = fingerprint;
+
+		// FNV-1a over the quantized values
+		long hash = 0xcbf29ce484222325L ^ fingerprint;
+		int j = 0;
+		for (Point p : points) {
+			m_values[j++] = Math.round(p.getX() / quantum);
+			m_values[j++] = Math.round(p.getY() / quantum);
+			m_values[j++] = p.getTime();
+		}
+		for (int i = 0; i < m_values.length; i++) {
+			hash ^= m_values[i];
+			hash *= 0x100000001b3L;
+		}
+		m_hash = hash;
+	}
+
+	/**
+	 * Get the number of points in the stroke this key was created for
+	 * 
+	 * @return number of points
+	 */
+	public int getNumPoints() {
+		return m_values.length / 3;
+	}
+
+	/**
+	 * Get the configuration fingerprint of this key
+	 * 
+	 * @return configuration fingerprint
+	 */
+	public long getFingerprint() {
+		return m_fingerprint;
+	}
+
+	/**
+	 * Get the 64-bit content hash of this key
+	 * 
+	 * @return content hash
+	 */
+	public long getContentHash() {
+		return m_hash;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (m_hash ^ (m_hash >>> 32));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o instanceof StrokeKey) {
+			StrokeKey other = (StrokeKey) o;
+			return other.m_hash == m_hash
+					&& other.m_fingerprint == m_fingerprint
+					&& Arrays.equals(other.m_values, m_values);
+		}
+		return false;
+	}
+}
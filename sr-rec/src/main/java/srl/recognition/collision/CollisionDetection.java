@@ -38,10 +38,13 @@
 package srl.recognition.collision;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import srl.core.sketch.Point;
 import srl.core.sketch.Stroke;
+import srl.core.util.Pair;
 
 public class CollisionDetection {
 	
@@ -55,78 +58,98 @@ public class CollisionDetection {
 	}
 	
 	public static boolean detectCollision(Stroke s, Point p) {
-		if (s.getNumPoints() == 1) {
-			return detectCollision(s.getPoint(0), p);			
-		} else if (s.getNumPoints() > 0) {
-			List<Point> firstHalf = new ArrayList<Point>();
-			List<Point> secondHalf = new ArrayList<Point>();
-			List<Point> tmp = s.getPoints();
-			
-			for (int i = 0; i < tmp.size(); i++) {
-				if (i < (tmp.size()/2)) {
-					firstHalf.add(tmp.get(i));
-				} else {
-					secondHalf.add(tmp.get(i));
-				}
+		for (int i = 0; i < s.getNumPoints(); i++) {
+			if (s.getPoint(i).distance(p) < POINT_THRESHOLD) {
+				return true;
 			}
-			
-			
-			Stroke firstS1 = new Stroke(firstHalf);
-			Stroke lastS1 = new Stroke(secondHalf);
-			
-			return detectCollision(firstS1, p) || detectCollision(lastS1, p);
-		} else {
-			return false;
 		}
+		return false;
 	}
 	
+	/**
+	 * Determine if any point of one stroke is within POINT_THRESHOLD of any
+	 * point of the other.
+	 */
 	public static boolean detectCollision(Stroke s1, Stroke s2) {
-		if (s1.getNumPoints() == 1 && s2.getNumPoints() == 1) {
-			return detectCollision(s1.getPoint(0), s2.getPoint(0));			
-		} else if (s1.getNumPoints() == 1 && s2.getNumPoints() > 1) {
-			return detectCollision(s2, s1.getFirstPoint());
-		} else if (s1.getNumPoints() > 1 && s2.getNumPoints() == 1) {
-			return detectCollision(s1, s2.getFirstPoint());
-		} else if (s1.getNumPoints() > 1 && s2.getNumPoints() > 1) {
-			List<Point> s1_firstHalf = new ArrayList<Point>();
-			List<Point> s1_secondHalf = new ArrayList<Point>();
-			List<Point> s1_tmp = s1.getPoints();
-			
-			for (int i = 0; i < s1_tmp.size(); i++) {
-				if (i < (s1_tmp.size()/2)) {
-					s1_firstHalf.add(s1_tmp.get(i));
-				} else {
-					s1_secondHalf.add(s1_tmp.get(i));
-				}
+		if (s1.getNumPoints() == 0 || s2.getNumPoints() == 0) {
+			return false;
+		}
+		return new StrokeBoundingHierarchy(s1).collides(
+				new StrokeBoundingHierarchy(s2), POINT_THRESHOLD);
+	}
+	
+	/**
+	 * Find every pair of strokes that collide, as
+	 * {@link #detectCollision(Stroke, Stroke)} decides. The strokes are swept
+	 * in order of their left edge, so only strokes whose bounding boxes come
+	 * within POINT_THRESHOLD of each other are tested point by point.
+	 * 
+	 * @param strokes
+	 *            strokes to test, such as the strokes of a sketch
+	 * @return the colliding pairs, with the earlier stroke of the list first,
+	 *         ordered by the position of the first and then the second stroke
+	 */
+	public static List<Pair<Stroke, Stroke>> findCollisions(List<Stroke> strokes) {
+		double threshold = POINT_THRESHOLD;
+		int n = strokes.size();
+		StrokeBoundingHierarchy[] hierarchies = new StrokeBoundingHierarchy[n];
+		Integer[] order = new Integer[n];
+		int numOrdered = 0;
+		for (int i = 0; i < n; i++) {
+			hierarchies[i] = new StrokeBoundingHierarchy(strokes.get(i));
+			if (!hierarchies[i].isEmpty()) {
+				order[numOrdered++] = i;
+			}
+		}
+		final StrokeBoundingHierarchy[] sortBy = hierarchies;
+		Arrays.sort(order, 0, numOrdered, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(sortBy[a].getMinX(), sortBy[b].getMinX());
 			}
-			
-			
-			Stroke firstS1 = new Stroke(s1_firstHalf);
-			Stroke lastS1 = new Stroke(s1_secondHalf);
-			
-			List<Point> s2_firstHalf = new ArrayList<Point>();
-			List<Point> s2_secondHalf = new ArrayList<Point>();
-			List<Point> s2_tmp = s2.getPoints();
-			
-			for (int i = 0; i < s2_tmp.size(); i++) {
-				if (i < (s2_tmp.size()/2)) {
-					s2_firstHalf.add(s2_tmp.get(i));
-				} else {
-					s2_secondHalf.add(s2_tmp.get(i));
+		});
+		
+		// pairs are packed into longs, first index in the high half, so that
+		// sorting them gives the documented order
+		long[] found = new long[16];
+		int numFound = 0;
+		int[] active = new int[Math.max(1, numOrdered)];
+		int numActive = 0;
+		for (int k = 0; k < numOrdered; k++) {
+			int current = order[k];
+			StrokeBoundingHierarchy h = hierarchies[current];
+			int kept = 0;
+			for (int a = 0; a < numActive; a++) {
+				int other = active[a];
+				StrokeBoundingHierarchy o = hierarchies[other];
+				// strokes are sorted by left edge, so a stroke this far to
+				// the left cannot reach the current or any later stroke
+				if (h.getMinX() - o.getMaxX() >= threshold) {
+					continue;
+				}
+				active[kept++] = other;
+				double gapY = Math.max(h.getMinY() - o.getMaxY(),
+						o.getMinY() - h.getMaxY());
+				if (gapY < threshold && h.collides(o, threshold)) {
+					if (numFound == found.length) {
+						found = Arrays.copyOf(found, found.length * 2);
+					}
+					int first = Math.min(current, other);
+					int second = Math.max(current, other);
+					found[numFound++] = ((long) first << 32) | second;
 				}
 			}
-			
-			
-			Stroke firstS2 = new Stroke(s2_firstHalf);
-			Stroke lastS2 = new Stroke(s2_secondHalf);
-			
-			return detectCollision(firstS1, firstS2) || 
-				   detectCollision(lastS1, firstS2) || 
-				   detectCollision(lastS1, lastS2) || 
-				   detectCollision(firstS1, lastS2);
-		} else {
-			return false;
+			numActive = kept;
+			active[numActive++] = current;
+		}
+		
+		Arrays.sort(found, 0, numFound);
+		List<Pair<Stroke, Stroke>> pairs = new ArrayList<Pair<Stroke, Stroke>>(numFound);
+		for (int i = 0; i < numFound; i++) {
+			pairs.add(new Pair<Stroke, Stroke>(strokes.get((int) (found[i] >>> 32)),
+					strokes.get((int) found[i])));
 		}
+		return pairs;
 	}
 
 }
@@ -0,0 +1,244 @@
+/**
+ * StrokeBoundingHierarchy.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.collision;
+
+import srl.core.sketch.PackedStroke;
+import srl.core.sketch.Stroke;
+
+/**
+ * Bounding volume hierarchy over the points of a stroke. Runs of consecutive
+ * points are grouped under bounding boxes, halving the point range at each
+ * level, so that two strokes can be tested for points within a threshold of
+ * each other without visiting pairs whose boxes are further apart.
+ * <p>
+ * Nodes are stored in flat arrays. The hierarchy reads the stroke's
+ * {@link PackedStroke} and is not updated if the stroke changes afterwards.
+ */
+public final class StrokeBoundingHierarchy {
+
+	/**
+	 * Most points held by a leaf
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	private final double[] m_x;
+
+	private final double[] m_y;
+
+	private final double[] m_minX;
+
+	private final double[] m_minY;
+
+	private final double[] m_maxX;
+
+	private final double[] m_maxY;
+
+	/**
+	 * Index of the left child, or -1 for a leaf
+	 */
+	private final int[] m_left;
+
+	private final int[] m_right;
+
+	/**
+	 * First point of each node, inclusive
+	 */
+	private final int[] m_start;
+
+	/**
+	 * Last point of each node, exclusive
+	 */
+	private final int[] m_end;
+
+	private int m_numNodes;
+
+	/**
+	 * Build the hierarchy for a stroke.
+	 * 
+	 * @param stroke
+	 *            stroke to build for, cannot be null
+	 */
+	public StrokeBoundingHierarchy(Stroke stroke) {
+		this(stroke.getPackedStroke());
+	}
+
+	/**
+	 * Build the hierarchy for packed stroke points.
+	 * 
+	 * @param points
+	 *            points to build for, cannot be null
+	 */
+	public StrokeBoundingHierarchy(PackedStroke points) {
+		m_x = points.getX();
+		m_y = points.getY();
+		int n = points.size();
+		int leaves = Math.max(1, (n + LEAF_SIZE - 1) / LEAF_SIZE);
+		// halving a run longer than LEAF_SIZE leaves at least LEAF_SIZE / 2
+		// points in every leaf, so there are at most 2 * leaves leaves
+		int capacity = 4 * leaves;
+		m_minX = new double[capacity];
+		m_minY = new double[capacity];
+		m_maxX = new double[capacity];
+		m_maxY = new double[capacity];
+		m_left = new int[capacity];
+		m_right = new int[capacity];
+		m_start = new int[capacity];
+		m_end = new int[capacity];
+		if (n > 0)
+			build(0, n);
+	}
+
+	/**
+	 * @return true if the stroke has no points
+	 */
+	public boolean isEmpty() {
+		return m_numNodes == 0;
+	}
+
+	/**
+	 * @return smallest x of all points, the root's box
+	 */
+	public double getMinX() {
+		return m_minX[0];
+	}
+
+	/**
+	 * @return smallest y of all points, the root's box
+	 */
+	public double getMinY() {
+		return m_minY[0];
+	}
+
+	/**
+	 * @return largest x of all points, the root's box
+	 */
+	public double getMaxX() {
+		return m_maxX[0];
+	}
+
+	/**
+	 * @return largest y of all points, the root's box
+	 */
+	public double getMaxY() {
+		return m_maxY[0];
+	}
+
+	/**
+	 * Determine if any point of this stroke is closer than the threshold to
+	 * any point of the other stroke. Gives the same answer as comparing
+	 * {@link srl.core.sketch.Point#distance(srl.core.sketch.Point)} for every
+	 * pair of points.
+	 * 
+	 * @param other
+	 *            hierarchy of the other stroke
+	 * @param threshold
+	 *            distance below which two points collide
+	 * @return true if some pair of points is closer than the threshold
+	 */
+	public boolean collides(StrokeBoundingHierarchy other, double threshold) {
+		if (isEmpty() || other.isEmpty())
+			return false;
+		return collides(0, other, 0, threshold);
+	}
+
+	private int build(int start, int end) {
+		int node = m_numNodes++;
+		m_start[node] = start;
+		m_end[node] = end;
+		if (end - start <= LEAF_SIZE) {
+			double minX = m_x[start], maxX = minX;
+			double minY = m_y[start], maxY = minY;
+			for (int i = start + 1; i < end; i++) {
+				minX = Math.min(minX, m_x[i]);
+				maxX = Math.max(maxX, m_x[i]);
+				minY = Math.min(minY, m_y[i]);
+				maxY = Math.max(maxY, m_y[i]);
+			}
+			m_minX[node] = minX;
+			m_minY[node] = minY;
+			m_maxX[node] = maxX;
+			m_maxY[node] = maxY;
+			m_left[node] = -1;
+			m_right[node] = -1;
+			return node;
+		}
+		int mid = start + (end - start) / 2;
+		int left = build(start, mid);
+		int right = build(mid, end);
+		m_left[node] = left;
+		m_right[node] = right;
+		m_minX[node] = Math.min(m_minX[left], m_minX[right]);
+		m_minY[node] = Math.min(m_minY[left], m_minY[right]);
+		m_maxX[node] = Math.max(m_maxX[left], m_maxX[right]);
+		m_maxY[node] = Math.max(m_maxY[left], m_maxY[right]);
+		return node;
+	}
+
+	private boolean collides(int a, StrokeBoundingHierarchy other, int b,
+			double threshold) {
+		double gapX = Math.max(0,
+				Math.max(m_minX[a] - other.m_maxX[b], other.m_minX[b] - m_maxX[a]));
+		double gapY = Math.max(0,
+				Math.max(m_minY[a] - other.m_maxY[b], other.m_minY[b] - m_maxY[a]));
+		// no pair of points can be closer than the boxes
+		if (Math.sqrt(gapX * gapX + gapY * gapY) >= threshold)
+			return false;
+
+		boolean leafA = m_left[a] < 0;
+		boolean leafB = other.m_left[b] < 0;
+		if (leafA && leafB) {
+			for (int i = m_start[a]; i < m_end[a]; i++) {
+				for (int j = other.m_start[b]; j < other.m_end[b]; j++) {
+					double dx = m_x[i] - other.m_x[j];
+					double dy = m_y[i] - other.m_y[j];
+					if (Math.sqrt(dx * dx + dy * dy) < threshold)
+						return true;
+				}
+			}
+			return false;
+		}
+		// descend into the larger of the two nodes
+		if (leafB || (!leafA && m_end[a] - m_start[a] >= other.m_end[b]
+				- other.m_start[b])) {
+			return collides(m_left[a], other, b, threshold)
+					|| collides(m_right[a], other, b, threshold);
+		}
+		return collides(a, other, other.m_left[b], threshold)
+				|| collides(a, other, other.m_right[b], threshold);
+	}
+}
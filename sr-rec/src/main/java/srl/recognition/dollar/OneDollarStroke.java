@@ -40,10 +40,8 @@ import java.util.List;
 
 import srl.core.sketch.BoundingBox;
 import srl.core.sketch.Point;
-import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
-import srl.recognition.RecognitionResult;
 
 
 /**
@@ -346,30 +344,28 @@ public class OneDollarStroke extends Stroke {
 	 * Recognize THIS one dollar stroke using the given list of templates. The
 	 * n-best list in the recognition results is trimmed
 	 * {@link IRecognitionResult#trimToNInterpretations(int)} to
-	 * {@link #S_NUM_NBEST_RESULTS}
+	 * {@link #S_NUM_NBEST_RESULTS}. When recognizing many strokes against the
+	 * same templates, build a {@link OneDollarTemplateIndex} once and use
+	 * {@link #recognize(OneDollarTemplateIndex)}.
 	 * 
 	 * @param templates
 	 *            The templates to match this stroke against
 	 */
 	public void recognize(List<OneDollarStroke> templates) {
-		m_recognitionResults = new RecognitionResult();
-		
-		for (OneDollarStroke T : templates) {
-			double d = distanceAtBestAngle(T, -1 * MAX_DEGREE, MAX_DEGREE,
-			        DELTA_DEGREE);
-			
-			d /= RESAMPLE_SIZE;
-			
-			double conf = 1 - d / 0.5;
-			conf *= SQUARE_SIZE_FACTOR;
-			
-			Shape recShape = new Shape();
-			recShape.setInterpretation(T.getName(), conf);
-			
-			m_recognitionResults.addShapeToNBestList(recShape);
-		}
-		
-		m_recognitionResults.trimToNInterpretations(S_NUM_NBEST_RESULTS);
+		recognize(new OneDollarTemplateIndex(templates));
+	}
+	
+
+	/**
+	 * Recognize THIS one dollar stroke using an index of templates. The
+	 * results are the same as for {@link #recognize(List)} with the indexed
+	 * templates.
+	 * 
+	 * @param templates
+	 *            The indexed templates to match this stroke against
+	 */
+	public void recognize(OneDollarTemplateIndex templates) {
+		m_recognitionResults = templates.recognize(this, S_NUM_NBEST_RESULTS);
 	}
 	public static final double SQUARE_SIZE_FACTOR = Math.sqrt(2 * SQUARE_SIZE * SQUARE_SIZE);
 	
@@ -0,0 +1,493 @@
+/**
+ * OneDollarTemplateIndex.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University
+ *       nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written
+ *       permission.
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.dollar;
+
+import java.util.Arrays;
+import java.util.List;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionResult;
+
+/**
+ * Index of $1 templates for recognizing strokes against large template
+ * libraries. The template points are stored in flat primitive arrays, and two
+ * rotation invariant lower bounds on the $1 path distance rule out most
+ * templates before the golden section search over rotations is run:
+ * <ul>
+ * <li>the distance between the rotated stroke and template centroids, which
+ * costs a few operations per template</li>
+ * <li>the difference between the distances of matching points from the
+ * rotation center, which costs one pass over the points</li>
+ * </ul>
+ * Templates are visited in order of the first bound so the n-best threshold
+ * tightens quickly, and shapes are only created for the n best templates. The
+ * results are the same as comparing the stroke against every template with
+ * {@link OneDollarStroke#distanceAtBestAngle}.
+ * <p>
+ * Templates must not be added while strokes are being recognized. Once built,
+ * an index can be used by many threads at once.
+ */
+public class OneDollarTemplateIndex {
+
+	/**
+	 * Number of points in each template
+	 */
+	private static final int NUM_POINTS = OneDollarStroke.RESAMPLE_SIZE;
+
+	/**
+	 * Relative slack applied to the lower bounds, so that rounding errors
+	 * never rule out a template that would have been in the n-best list
+	 */
+	private static final double BOUND_RELATIVE_SLACK = 1e-9;
+
+	/**
+	 * Absolute slack applied to the lower bounds
+	 */
+	private static final double BOUND_ABSOLUTE_SLACK = 1e-6;
+
+	/**
+	 * Template x coordinates. Template t occupies indices
+	 * [t * NUM_POINTS, (t + 1) * NUM_POINTS).
+	 */
+	private double[] m_x = new double[0];
+
+	/**
+	 * Template y coordinates, laid out like {@link #m_x}
+	 */
+	private double[] m_y = new double[0];
+
+	/**
+	 * Sum of the x coordinates of each template
+	 */
+	private double[] m_sumX = new double[0];
+
+	/**
+	 * Sum of the y coordinates of each template
+	 */
+	private double[] m_sumY = new double[0];
+
+	/**
+	 * Name of each template
+	 */
+	private String[] m_names = new String[0];
+
+	/**
+	 * Number of templates in the index
+	 */
+	private int m_size = 0;
+
+	/**
+	 * Create an empty index
+	 */
+	public OneDollarTemplateIndex() {
+		// Do nothing
+	}
+
+	/**
+	 * Create an index of the given templates
+	 * 
+	 * @param templates
+	 *            templates to index
+	 */
+	public OneDollarTemplateIndex(List<OneDollarStroke> templates) {
+		ensureCapacity(templates.size());
+		for (OneDollarStroke template : templates)
+			add(template);
+	}
+
+	/**
+	 * Add a template to the index
+	 * 
+	 * @param template
+	 *            template to add
+	 */
+	public void add(OneDollarStroke template) {
+		List<Point> points = template.getTemplatePoints();
+		if (points.size() != NUM_POINTS)
+			throw new IllegalArgumentException("Template has "
+					+ points.size() + " points, expected " + NUM_POINTS);
+
+		ensureCapacity(m_size + 1);
+		int offset = m_size * NUM_POINTS;
+		double sumX = 0.0, sumY = 0.0;
+		for (int i = 0; i < NUM_POINTS; i++) {
+			Point p = points.get(i);
+			m_x[offset + i] = p.x;
+			m_y[offset + i] = p.y;
+			sumX += p.x;
+			sumY += p.y;
+		}
+		m_sumX[m_size] = sumX;
+		m_sumY[m_size] = sumY;
+		m_names[m_size] = template.getName();
+		m_size++;
+	}
+
+	/**
+	 * Get the number of templates in the index
+	 * 
+	 * @return number of templates
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Get the name of a template
+	 * 
+	 * @param template
+	 *            index of the template, in the order templates were added
+	 * @return name of the template
+	 */
+	public String getName(int template) {
+		if (template < 0 || template >= m_size)
+			throw new IndexOutOfBoundsException("Template " + template
+					+ " of " + m_size);
+		return m_names[template];
+	}
+
+	/**
+	 * Recognize a stroke against the templates in the index
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param n
+	 *            number of interpretations to return
+	 * @return recognition result holding the n best templates, sorted by
+	 *         decreasing confidence
+	 */
+	public IRecognitionResult recognize(OneDollarStroke stroke, int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("n must be positive");
+
+		List<Point> points = stroke.getTemplatePoints();
+		int numPoints = points.size();
+		if (numPoints != NUM_POINTS)
+			throw new IllegalArgumentException("Stroke has " + numPoints
+					+ " points, expected " + NUM_POINTS);
+
+		// the stroke is rotated around its centroid, so keep the points
+		// relative to it
+		Point c = stroke.getCentroid();
+		double cx = c.x, cy = c.y;
+		double[] ux = new double[numPoints];
+		double[] uy = new double[numPoints];
+		double[] uDist = new double[numPoints];
+		double uSumX = 0.0, uSumY = 0.0;
+		for (int i = 0; i < numPoints; i++) {
+			Point p = points.get(i);
+			ux[i] = p.x - cx;
+			uy[i] = p.y - cy;
+			uDist[i] = Math.sqrt(ux[i] * ux[i] + uy[i] * uy[i]);
+			uSumX += ux[i];
+			uSumY += uy[i];
+		}
+		double uSumDist = Math.sqrt(uSumX * uSumX + uSumY * uSumY);
+
+		// centroid bound for each template, used to order the search
+		double[] centroidBound = new double[m_size];
+		long[] order = new long[m_size];
+		for (int t = 0; t < m_size; t++) {
+			double vx = m_sumX[t] - numPoints * cx;
+			double vy = m_sumY[t] - numPoints * cy;
+			centroidBound[t] = Math.abs(uSumDist
+					- Math.sqrt(vx * vx + vy * vy));
+			order[t] = ((long) Float.floatToIntBits((float) centroidBound[t]) << 32)
+					| t;
+		}
+		Arrays.sort(order);
+
+		// n best templates so far, best first
+		int numBest = 0;
+		int[] bestTemplate = new int[Math.min(n, m_size)];
+		double[] bestConf = new double[bestTemplate.length];
+
+		for (int k = 0; k < m_size; k++) {
+			int t = (int) (order[k] & 0xffffffffL);
+
+			if (numBest == bestTemplate.length) {
+				double worstConf = bestConf[numBest - 1];
+				if (Double.compare(confidence(slack(centroidBound[t])),
+						worstConf) < 0)
+					continue;
+				if (Double.compare(confidence(slack(radialBound(t, cx, cy,
+						uDist))), worstConf) < 0)
+					continue;
+			}
+
+			double conf = confidence(distanceAtBestAngle(t, cx, cy, ux, uy,
+					-1 * OneDollarStroke.MAX_DEGREE,
+					OneDollarStroke.MAX_DEGREE, OneDollarStroke.DELTA_DEGREE));
+
+			// insert into the n best, ranked as the n-best list sorts them:
+			// by confidence, then later templates first
+			int pos = numBest;
+			while (pos > 0 && isBetter(conf, t, bestConf[pos - 1],
+					bestTemplate[pos - 1]))
+				pos--;
+			if (pos == bestTemplate.length)
+				continue;
+			int last = Math.min(numBest, bestTemplate.length - 1);
+			System.arraycopy(bestConf, pos, bestConf, pos + 1, last - pos);
+			System.arraycopy(bestTemplate, pos, bestTemplate, pos + 1, last
+					- pos);
+			bestConf[pos] = conf;
+			bestTemplate[pos] = t;
+			if (numBest < bestTemplate.length)
+				numBest++;
+		}
+
+		// create shapes in the order the templates were added, so the n-best
+		// list sorts them as if every template had been compared
+		int[] byTemplate = new int[numBest];
+		for (int i = 0; i < numBest; i++)
+			byTemplate[i] = i;
+		sortByTemplate(byTemplate, bestTemplate);
+
+		IRecognitionResult result = new RecognitionResult();
+		for (int i : byTemplate) {
+			Shape recShape = new Shape();
+			recShape.setInterpretation(m_names[bestTemplate[i]], bestConf[i]);
+			result.addShapeToNBestList(recShape);
+		}
+		result.trimToNInterpretations(n);
+
+		return result;
+	}
+
+	/**
+	 * $1 distance between the rotated stroke and a template at the best
+	 * angle, found with a golden section search. This follows
+	 * {@link OneDollarStroke#distanceAtBestAngle} step for step.
+	 * 
+	 * @param t
+	 *            template index
+	 * @param cx
+	 *            x coordinate the stroke is rotated around
+	 * @param cy
+	 *            y coordinate the stroke is rotated around
+	 * @param ux
+	 *            x coordinates of the stroke relative to the rotation center
+	 * @param uy
+	 *            y coordinates of the stroke relative to the rotation center
+	 * @param thetaA
+	 *            lower end of the rotation range
+	 * @param thetaB
+	 *            upper end of the rotation range
+	 * @param thetaD
+	 *            rotation tolerance
+	 * @return distance at the best angle found
+	 */
+	private double distanceAtBestAngle(int t, double cx, double cy,
+			double[] ux, double[] uy, double thetaA, double thetaB,
+			double thetaD) {
+		final double phi = OneDollarStroke.PHI;
+		double x1 = phi * thetaA + (1 - phi) * thetaB;
+		double x2 = (1 - phi) * thetaA + phi * thetaB;
+
+		double f1 = distanceAtAngle(t, cx, cy, ux, uy, x1);
+		double f2 = distanceAtAngle(t, cx, cy, ux, uy, x2);
+		while (Math.abs(thetaA - thetaB) > thetaD) {
+			if (f1 < f2) {
+				thetaB = x2;
+				x2 = x1;
+				f2 = f1;
+				x1 = phi * thetaA + (1 - phi) * thetaB;
+				f1 = distanceAtAngle(t, cx, cy, ux, uy, x1);
+			} else {
+				thetaA = x1;
+				x1 = x2;
+				f1 = f2;
+				x2 = (1 - phi) * thetaA + phi * thetaB;
+				f2 = distanceAtAngle(t, cx, cy, ux, uy, x2);
+			}
+		}
+		if (f1 < f2)
+			return f1;
+		else
+			return f2;
+	}
+
+	/**
+	 * Sum of the point to point distances between the stroke, rotated by
+	 * theta, and a template
+	 * 
+	 * @param t
+	 *            template index
+	 * @param cx
+	 *            x coordinate the stroke is rotated around
+	 * @param cy
+	 *            y coordinate the stroke is rotated around
+	 * @param ux
+	 *            x coordinates of the stroke relative to the rotation center
+	 * @param uy
+	 *            y coordinates of the stroke relative to the rotation center
+	 * @param theta
+	 *            angle to rotate the stroke by, in radians
+	 * @return path distance
+	 */
+	private double distanceAtAngle(int t, double cx, double cy, double[] ux,
+			double[] uy, double theta) {
+		double cosTheta = Math.cos(theta);
+		double sinTheta = Math.sin(theta);
+
+		int offset = t * NUM_POINTS;
+		double d = 0;
+		for (int i = 0; i < ux.length; i++) {
+			double dx = (ux[i] * cosTheta - uy[i] * sinTheta + cx)
+					- m_x[offset + i];
+			double dy = (ux[i] * sinTheta + uy[i] * cosTheta + cy)
+					- m_y[offset + i];
+			d += Math.sqrt(dx * dx + dy * dy);
+		}
+		return d;
+	}
+
+	/**
+	 * Lower bound on the path distance at any rotation. Rotating the stroke
+	 * around the center does not change the distance of each point from it,
+	 * so each point is at least as far from its template point as the
+	 * difference between their distances from the center.
+	 * 
+	 * @param t
+	 *            template index
+	 * @param cx
+	 *            x coordinate the stroke is rotated around
+	 * @param cy
+	 *            y coordinate the stroke is rotated around
+	 * @param uDist
+	 *            distance of each stroke point from the rotation center
+	 * @return lower bound on the path distance
+	 */
+	private double radialBound(int t, double cx, double cy, double[] uDist) {
+		int offset = t * NUM_POINTS;
+		double bound = 0.0;
+		for (int i = 0; i < uDist.length; i++) {
+			double vx = m_x[offset + i] - cx;
+			double vy = m_y[offset + i] - cy;
+			bound += Math.abs(uDist[i] - Math.sqrt(vx * vx + vy * vy));
+		}
+		return bound;
+	}
+
+	/**
+	 * Loosen a lower bound to allow for rounding errors
+	 * 
+	 * @param bound
+	 *            lower bound on a path distance
+	 * @return slightly smaller bound
+	 */
+	private static double slack(double bound) {
+		return bound * (1.0 - BOUND_RELATIVE_SLACK) - BOUND_ABSOLUTE_SLACK;
+	}
+
+	/**
+	 * Convert a path distance to a confidence, as {@link OneDollarStroke}
+	 * does. Smaller distances never give smaller confidences.
+	 * 
+	 * @param d
+	 *            path distance
+	 * @return confidence
+	 */
+	private static double confidence(double d) {
+		d /= OneDollarStroke.RESAMPLE_SIZE;
+
+		double conf = 1 - d / 0.5;
+		conf *= OneDollarStroke.SQUARE_SIZE_FACTOR;
+		return conf;
+	}
+
+	/**
+	 * Check if a template ranks before another in the n-best list. The list
+	 * is sorted by increasing confidence with a stable sort and then
+	 * reversed, so equal confidences put the later template first.
+	 * 
+	 * @param conf
+	 *            confidence of the first template
+	 * @param t
+	 *            index of the first template
+	 * @param otherConf
+	 *            confidence of the second template
+	 * @param other
+	 *            index of the second template
+	 * @return true if the first template ranks before the second
+	 */
+	private static boolean isBetter(double conf, int t, double otherConf,
+			int other) {
+		int cmp = Double.compare(conf, otherConf);
+		return cmp > 0 || (cmp == 0 && t > other);
+	}
+
+	/**
+	 * Sort positions in the n-best arrays by template index (insertion sort,
+	 * since there are only n of them)
+	 * 
+	 * @param positions
+	 *            positions to sort
+	 * @param templates
+	 *            template index at each position
+	 */
+	private static void sortByTemplate(int[] positions, int[] templates) {
+		for (int i = 1; i < positions.length; i++) {
+			int pos = positions[i];
+			int j = i - 1;
+			while (j >= 0 && templates[positions[j]] > templates[pos]) {
+				positions[j + 1] = positions[j];
+				j--;
+			}
+			positions[j + 1] = pos;
+		}
+	}
+
+	/**
+	 * Grow the arrays to hold at least the given number of templates
+	 * 
+	 * @param capacity
+	 *            number of templates
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= m_names.length)
+			return;
+		int newCapacity = Math.max(capacity, m_names.length * 2);
+		m_x = Arrays.copyOf(m_x, newCapacity * NUM_POINTS);
+		m_y = Arrays.copyOf(m_y, newCapacity * NUM_POINTS);
+		m_sumX = Arrays.copyOf(m_sumX, newCapacity);
+		m_sumY = Arrays.copyOf(m_sumY, newCapacity);
+		m_names = Arrays.copyOf(m_names, newCapacity);
+	}
+}
@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import srl.core.sketch.BoundingBox;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
+import srl.core.util.lists.DisjointSet;
 import srl.recognition.handwriting.HandwritingRecognizer;
 
 
@@ -57,96 +58,142 @@ public class HandwritingGrouper {
 
 	}
 
-	public List<Shape> group(List<Stroke> strokes) {
+	/**
+	 * Get the box used to decide whether a stroke joins another group. The box
+	 * grows with the ratio of the stroke height to the width of the stroke's
+	 * group, so it changes as the group grows.
+	 * 
+	 * @param stroke
+	 *            stroke to get the box for
+	 * @param groupWidth
+	 *            width of the group the stroke is in
+	 * @return grown bounding box of the stroke
+	 */
+	public BoundingBox getGroupingBox(Stroke stroke, double groupWidth) {
+		double ratioHW1 = (stroke.getBoundingBox().getHeight() + 1)
+				/ (groupWidth + 1);
+		double growW1 = 1.00;
+		growW1 = Math.max(growW1, growW1 * ratioHW1);
+		double growH1 = .05;
+		growH1 = Math.max(growH1, growH1 / ratioHW1);
+		BoundingBox bb1 = stroke.getBoundingBox().increment();
+		if (bb1.getWidth() > 3 * bb1.getHeight())
+			bb1 = bb1.growHeight(growH1 * 2);
+		else
+			bb1 = bb1.growHeight(growH1);
+		bb1 = bb1.growWidth(growW1);
+		return bb1;
+	}
 
-		ArrayList<Shape> shapegroups = new ArrayList<Shape>();
-		for (int i = 0; i < strokes.size(); i++) {
-			Shape textShape = new Shape();
-			textShape.add(strokes.get(i));
-			shapegroups.add(textShape);
+	/**
+	 * Group strokes whose grouping boxes (see
+	 * {@link #getGroupingBox(Stroke, double)}) intersect. Groups are merged
+	 * one pair at a time: the earliest group that touches another group takes
+	 * in the earliest group it touches, and the boxes of its strokes are
+	 * updated for its new width.
+	 * <p>
+	 * Groups are tracked in a {@link DisjointSet}, and the boxes in a
+	 * {@link StrokeBoxGrid}, so only nearby strokes are compared. Groups
+	 * before the current one are known to touch nothing; when a merge makes
+	 * one of them touch the merged group, the search steps back to it.
+	 * 
+	 * @param strokes
+	 *            strokes to group
+	 * @return groups, in the order of their first stroke
+	 */
+	public List<Shape> group(List<Stroke> strokes) {
+		int n = strokes.size();
+		Shape[] shapes = new Shape[n];
+		List<List<Integer>> members = new ArrayList<List<Integer>>(n);
+		BoundingBox[] boxes = new BoundingBox[n];
+		double sumWidth = 0;
+		double sumHeight = 0;
+		for (int i = 0; i < n; i++) {
+			shapes[i] = new Shape();
+			shapes[i].add(strokes.get(i));
+			List<Integer> member = new ArrayList<Integer>();
+			member.add(i);
+			members.add(member);
+			boxes[i] = getGroupingBox(strokes.get(i), shapes[i]
+					.getBoundingBox().getWidth());
+			sumWidth += boxes[i].getWidth();
+			sumHeight += boxes[i].getHeight();
 		}
 
-		boolean merged = true;
-		while (merged) {
-			merged = false;
-			ArrayList<Shape> newshapes = new ArrayList<Shape>();
-			newshapes.addAll(shapegroups);
+		StrokeBoxGrid grid = new StrokeBoxGrid(sumWidth / n, sumHeight / n, n);
+		for (int i = 0; i < n; i++)
+			grid.set(i, boxes[i]);
+		DisjointSet groups = new DisjointSet(n);
+		int[] candidates = new int[n];
+
+		int current = 0;
+		while (current < n) {
+			if (groups.find(current) != current) {
+				current++;
+				continue;
+			}
+			int other = firstTouchingGroup(current, members.get(current),
+					grid, groups, candidates);
+			if (other < 0) {
+				current++;
+				continue;
+			}
+			if (other < current) {
+				// the last merge made an earlier group touch this one
+				current = other;
+				continue;
+			}
 
-			for (int i = 0; i < newshapes.size(); i++) {
-				Shape shape1 = newshapes.get(i);
+			log.debug("Bouding Boxes Intersect");
+			for (Stroke stroke : shapes[other].getStrokes())
+				shapes[current].add(stroke);
+			groups.union(current, other);
+			members.get(current).addAll(members.get(other));
+			shapes[other] = null;
 
-				for (int k = 0; k < newshapes.size(); k++) {
-					Shape shape2 = newshapes.get(k);
+			double width = shapes[current].getBoundingBox().getWidth();
+			for (int s : members.get(current))
+				grid.set(s, getGroupingBox(strokes.get(s), width));
+		}
 
-					if (shape1 == shape2) {
-						continue;
-					}
-					// This right here, is the whole grouping function
-					// if (shape1.getBoundingBox().growWidth(.5).growHeight(.1)
-					// .intersects(
-					// shape2.getBoundingBox().growWidth(.5)
-					// .growHeight(.1))) {
-
-					for (int j = 0; j < shape1.getStrokes().size(); j++) {
-						Stroke stroke1 = shape1.getStrokes().get(j);
-
-						if (merged)
-							break;
-
-						double ratioHW1 = (stroke1.getBoundingBox().getHeight() + 1)
-								/ (shape1.getBoundingBox().getWidth() + 1);
-						double growW1 = 1.00;
-						growW1 = Math.max(growW1, growW1 * ratioHW1);
-						double growH1 = .05;
-						growH1 = Math.max(growH1, growH1 / ratioHW1);
-						BoundingBox bb1 = stroke1.getBoundingBox().increment();
-						if (bb1.getWidth() > 3 * bb1.getHeight())
-							bb1 = bb1.growHeight(growH1 * 2);
-						else
-							bb1 = bb1.growHeight(growH1);
-						bb1 = bb1.growWidth(growW1);
-
-						for (int l = 0; l < shape2.getStrokes().size(); l++) {
-							Stroke stroke2 = shape2.getStrokes().get(l);
-
-							double ratioHW2 = (stroke2.getBoundingBox()
-									.getHeight() + 1)
-									/ (shape2.getBoundingBox().getWidth() + 1);
-							double growW2 = 1.00;
-							growW2 = Math.max(growW2, growW2 * ratioHW2);
-							double growH2 = .05;
-							growH2 = Math.max(growH2, growH2 / ratioHW2);
-							BoundingBox bb2 = stroke2.getBoundingBox()
-									.increment();
-							if (bb2.getWidth() > 3 * bb2.getHeight())
-								bb2 = bb2.growHeight(growH2 * 2);
-							else
-								bb2 = bb2.growHeight(growH2);
-							bb2 = bb2.growWidth(growW2);
-							if (bb1.intersects(bb2)) {
-								log.debug("Bouding Boxes Intersect");
-								merged = true;
-							}
-						}
-					}
-					if (merged) {
-						for (int l = 0; l < shape2.getStrokes().size(); l++) {
-							Stroke stroke = shape2.getStrokes().get(l);
-							shape1.add(stroke);
-						}
-						shapegroups.remove(shape2);
-						merged = true;
-						break;
-					}
+		ArrayList<Shape> shapegroups = new ArrayList<Shape>();
+		for (int i = 0; i < n; i++) {
+			if (shapes[i] != null)
+				shapegroups.add(shapes[i]);
+		}
+		return shapegroups;
+	}
 
-				}
-				if (merged) {
-					break;
-				}
+	/**
+	 * Find the earliest group whose strokes' grouping boxes intersect those of
+	 * the given group
+	 * 
+	 * @param group
+	 *            root of the group
+	 * @param members
+	 *            strokes of the group
+	 * @param grid
+	 *            grouping boxes of all strokes
+	 * @param groups
+	 *            group of each stroke
+	 * @param candidates
+	 *            scratch space for grid queries
+	 * @return root of the earliest touching group, or -1 if none
+	 */
+	private int firstTouchingGroup(int group, List<Integer> members,
+			StrokeBoxGrid grid, DisjointSet groups, int[] candidates) {
+		int first = Integer.MAX_VALUE;
+		for (int s : members) {
+			BoundingBox box = grid.get(s);
+			int count = grid.query(box, candidates);
+			for (int c = 0; c < count; c++) {
+				int root = groups.find(candidates[c]);
+				if (root != group && root < first
+						&& box.intersects(grid.get(candidates[c])))
+					first = root;
 			}
 		}
-
-		return shapegroups;
+		return first == Integer.MAX_VALUE ? -1 : first;
 	}
 
 	public List<Shape> groupIntersection(List<Stroke> strokes) {
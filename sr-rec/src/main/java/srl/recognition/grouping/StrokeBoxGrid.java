@@ -0,0 +1,289 @@
+/**
+ * StrokeBoxGrid.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.grouping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.BoundingBox;
+
+/**
+ * Uniform grid of numbered bounding boxes, used to find the boxes that may
+ * intersect a given box without testing every box. Each box is stored in
+ * every cell it covers. Boxes that would cover too many cells are kept in a
+ * separate list that every query returns.
+ * <p>
+ * Queries return candidates only; callers still test them with
+ * {@link BoundingBox#intersects(org.openawt.geom.Rectangle2D)}. Every box that
+ * intersects the query box is returned.
+ */
+public class StrokeBoxGrid {
+
+	/**
+	 * Most cells a box may cover before it is kept in the list of large boxes
+	 */
+	private static final int MAX_CELLS_PER_BOX = 64;
+
+	/**
+	 * Width of a cell
+	 */
+	private final double m_cellWidth;
+
+	/**
+	 * Height of a cell
+	 */
+	private final double m_cellHeight;
+
+	/**
+	 * Box stored under each number, or null
+	 */
+	private final BoundingBox[] m_boxes;
+
+	/**
+	 * Cell range of each stored box (min x, min y, max x, max y); unused for
+	 * large boxes
+	 */
+	private final int[][] m_cellRanges;
+
+	/**
+	 * Flags boxes kept in the list of large boxes
+	 */
+	private final boolean[] m_large;
+
+	/**
+	 * Boxes stored in each cell
+	 */
+	private final Map<Long, List<Integer>> m_cells = new HashMap<Long, List<Integer>>();
+
+	/**
+	 * Boxes that cover too many cells
+	 */
+	private final List<Integer> m_largeBoxes = new ArrayList<Integer>();
+
+	/**
+	 * Query number each box was last returned by, so it is returned once
+	 */
+	private final int[] m_seen;
+
+	/**
+	 * Number of the current query
+	 */
+	private int m_query = 0;
+
+	/**
+	 * Cell range of the current query
+	 */
+	private final int[] m_queryRange = new int[4];
+
+	/**
+	 * Create an empty grid
+	 *
+	 * @param cellWidth
+	 *            width of a cell; typical box widths work well
+	 * @param cellHeight
+	 *            height of a cell; typical box heights work well
+	 * @param numBoxes
+	 *            boxes are numbered 0 to numBoxes - 1
+	 */
+	public StrokeBoxGrid(double cellWidth, double cellHeight, int numBoxes) {
+		m_cellWidth = validCellSize(cellWidth);
+		m_cellHeight = validCellSize(cellHeight);
+		m_boxes = new BoundingBox[numBoxes];
+		m_cellRanges = new int[numBoxes][4];
+		m_large = new boolean[numBoxes];
+		m_seen = new int[numBoxes];
+	}
+
+	/**
+	 * @return the cell size, or 1 if it is not a positive number
+	 */
+	private static double validCellSize(double size) {
+		if (size > 0 && !Double.isInfinite(size))
+			return size;
+		return 1.0;
+	}
+
+	/**
+	 * Store a box, replacing any box stored under the same number
+	 *
+	 * @param id
+	 *            number of the box
+	 * @param box
+	 *            box to store
+	 */
+	public void set(int id, BoundingBox box) {
+		remove(id);
+		m_boxes[id] = box;
+		int[] range = m_cellRanges[id];
+		if (!cellRange(box, range)) {
+			m_large[id] = true;
+			m_largeBoxes.add(id);
+			return;
+		}
+		m_large[id] = false;
+		for (int cx = range[0]; cx <= range[2]; cx++) {
+			for (int cy = range[1]; cy <= range[3]; cy++) {
+				Long key = key(cx, cy);
+				List<Integer> cell = m_cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<Integer>(4);
+					m_cells.put(key, cell);
+				}
+				cell.add(id);
+			}
+		}
+	}
+
+	/**
+	 * Remove a stored box
+	 *
+	 * @param id
+	 *            number of the box
+	 */
+	public void remove(int id) {
+		if (m_boxes[id] == null)
+			return;
+		Integer boxed = id;
+		if (m_large[id]) {
+			m_largeBoxes.remove(boxed);
+		} else {
+			int[] range = m_cellRanges[id];
+			for (int cx = range[0]; cx <= range[2]; cx++) {
+				for (int cy = range[1]; cy <= range[3]; cy++) {
+					Long key = key(cx, cy);
+					List<Integer> cell = m_cells.get(key);
+					cell.remove(boxed);
+					if (cell.isEmpty())
+						m_cells.remove(key);
+				}
+			}
+		}
+		m_boxes[id] = null;
+	}
+
+	/**
+	 * Get a stored box
+	 *
+	 * @param id
+	 *            number of the box
+	 * @return the box, or null if none is stored
+	 */
+	public BoundingBox get(int id) {
+		return m_boxes[id];
+	}
+
+	/**
+	 * Find the stored boxes that may intersect the given box
+	 *
+	 * @param box
+	 *            box to query
+	 * @param result
+	 *            receives the numbers of the candidate boxes; must have room
+	 *            for every box
+	 * @return number of candidates written to the result
+	 */
+	public int query(BoundingBox box, int[] result) {
+		int count = 0;
+		m_query++;
+		int[] range = m_queryRange;
+		if (!cellRange(box, range)) {
+			for (int id = 0; id < m_boxes.length; id++) {
+				if (m_boxes[id] != null)
+					result[count++] = id;
+			}
+			return count;
+		}
+		for (int cx = range[0]; cx <= range[2]; cx++) {
+			for (int cy = range[1]; cy <= range[3]; cy++) {
+				List<Integer> cell = m_cells.get(key(cx, cy));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					int id = cell.get(i);
+					if (m_seen[id] != m_query) {
+						m_seen[id] = m_query;
+						result[count++] = id;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < m_largeBoxes.size(); i++)
+			result[count++] = m_largeBoxes.get(i);
+		return count;
+	}
+
+	/**
+	 * Find the range of cells a box covers. The edges used are the ones
+	 * {@link BoundingBox#intersects(org.openawt.geom.Rectangle2D)} compares,
+	 * so boxes that intersect share a cell.
+	 *
+	 * @param box
+	 *            box to find the cells of
+	 * @param range
+	 *            receives min x, min y, max x and max y cell
+	 * @return false if the box covers too many cells to store in them
+	 */
+	private boolean cellRange(BoundingBox box, int[] range) {
+		double minX = Math.floor(box.getMinX() / m_cellWidth);
+		double minY = Math.floor(box.getMinY() / m_cellHeight);
+		double maxX = Math.floor(box.getMaxX() / m_cellWidth);
+		double maxY = Math.floor(box.getMaxY() / m_cellHeight);
+
+		// also catches NaN and values outside the int range
+		if (!((maxX - minX + 1) * (maxY - minY + 1) <= MAX_CELLS_PER_BOX)
+				|| !(Math.abs(minX) < Integer.MAX_VALUE)
+				|| !(Math.abs(maxX) < Integer.MAX_VALUE)
+				|| !(Math.abs(minY) < Integer.MAX_VALUE)
+				|| !(Math.abs(maxY) < Integer.MAX_VALUE))
+			return false;
+		range[0] = (int) minX;
+		range[1] = (int) minY;
+		range[2] = (int) maxX;
+		range[3] = (int) maxY;
+		return true;
+	}
+
+	/**
+	 * @return key of the cell in the cell map
+	 */
+	private static Long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+}
@@ -59,6 +59,24 @@ public class AllPossibleGroupings {
 
 	private static int MAXNUMBEROFSTROKESPERLETTER = 5;
 
+	/**
+	 * Get the maximum number of letters a grouping may have
+	 * 
+	 * @return maximum number of letters
+	 */
+	public static int getMaxNumberOfLetters() {
+		return MAXNUMBEROFLETTERS;
+	}
+
+	/**
+	 * Get the maximum number of strokes (or stroke groups) per letter
+	 * 
+	 * @return maximum number of strokes per letter
+	 */
+	public static int getMaxNumberOfStrokesPerLetter() {
+		return MAXNUMBEROFSTROKESPERLETTER;
+	}
+
 	/**
 	 * @param args
 	 */
@@ -0,0 +1,339 @@
+/**
+ * CharacterGroupingSearch.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.handwriting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Stroke;
+import srl.recognition.recognizer.OverTime;
+import srl.recognition.recognizer.OverTimeException;
+
+/**
+ * Searches the ways a row of stroke groups can be split into characters. Each
+ * character is a run of consecutive groups, with the same limits on the
+ * number of characters and groups per character as
+ * {@link AllPossibleGroupings#computepossibiliites(int)}, and a character may
+ * not start left of the right edge of the character before it.
+ * <p>
+ * Groupings are built one character at a time, left to right. Each run of
+ * groups is recognized the first time it is reached and the result is reused
+ * by every grouping that contains it. Before the partial groupings that end
+ * at a group are extended, only the best ones (by mean character confidence)
+ * are kept, so the work grows with the beam width instead of with the number
+ * of groupings. With an unlimited beam width every valid grouping is found.
+ */
+public class CharacterGroupingSearch {
+
+	/**
+	 * Beam width that keeps every partial grouping
+	 */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private static Logger log = LoggerFactory
+			.getLogger(CharacterGroupingSearch.class);
+
+	/**
+	 * Recognizer for the characters
+	 */
+	private final HandwritingRecognizer m_recognizer;
+
+	/**
+	 * Stroke groups to split into characters, in order
+	 */
+	private final List<List<Stroke>> m_groups;
+
+	/**
+	 * Number of partial groupings kept at each group
+	 */
+	private int m_beamWidth = UNLIMITED;
+
+	/**
+	 * Most groups in one character
+	 */
+	private int m_maxGroupsPerCharacter = AllPossibleGroupings
+			.getMaxNumberOfStrokesPerLetter();
+
+	/**
+	 * Most characters in one grouping
+	 */
+	private int m_maxCharacters = AllPossibleGroupings.getMaxNumberOfLetters();
+
+	/**
+	 * Recognized character for each run of groups, by start and length - 1;
+	 * null until the run is first reached
+	 */
+	private Character[][] m_characters;
+
+	/**
+	 * Highest confidence of each recognized character
+	 */
+	private double[][] m_confidence;
+
+	/**
+	 * Right edge of each recognized character
+	 */
+	private double[][] m_maxX;
+
+	/**
+	 * Horizontal center of each recognized character
+	 */
+	private double[][] m_centerX;
+
+	/**
+	 * Number of runs of groups recognized by the last search
+	 */
+	private int m_numRecognized;
+
+	/**
+	 * Create a search over the given stroke groups
+	 * 
+	 * @param recognizer
+	 *            recognizer for the characters
+	 * @param groups
+	 *            stroke groups to split into characters, sorted left to right
+	 */
+	public CharacterGroupingSearch(HandwritingRecognizer recognizer,
+			List<List<Stroke>> groups) {
+		m_recognizer = recognizer;
+		m_groups = groups;
+	}
+
+	/**
+	 * Set the number of partial groupings kept at each group
+	 * 
+	 * @param beamWidth
+	 *            beam width, or {@link #UNLIMITED} to find every grouping
+	 */
+	public void setBeamWidth(int beamWidth) {
+		if (beamWidth < 1)
+			throw new IllegalArgumentException("Beam width must be positive");
+		m_beamWidth = beamWidth;
+	}
+
+	/**
+	 * Get the number of partial groupings kept at each group
+	 * 
+	 * @return beam width
+	 */
+	public int getBeamWidth() {
+		return m_beamWidth;
+	}
+
+	/**
+	 * Get the number of runs of groups recognized by the last search
+	 * 
+	 * @return number of calls to the character recognizer
+	 */
+	public int getNumRecognized() {
+		return m_numRecognized;
+	}
+
+	/**
+	 * Find the groupings of the stroke groups into characters
+	 * 
+	 * @param maxTime
+	 *            maximum allotted time
+	 * @return the groupings found, best first; empty if there are none
+	 * @throws OverTimeException
+	 *             if the search exceeds the {@code maxTime}
+	 */
+	public List<CharacterGroup> search(long maxTime) throws OverTimeException {
+
+		// Store the start time
+		long startTime = System.currentTimeMillis();
+
+		int n = m_groups.size();
+		m_characters = new Character[n][m_maxGroupsPerCharacter];
+		m_confidence = new double[n][m_maxGroupsPerCharacter];
+		m_maxX = new double[n][m_maxGroupsPerCharacter];
+		m_centerX = new double[n][m_maxGroupsPerCharacter];
+		m_numRecognized = 0;
+
+		// partial groupings, by the number of groups they cover
+		List<List<Partial>> partials = new ArrayList<List<Partial>>(n + 1);
+		for (int i = 0; i <= n; i++)
+			partials.add(new ArrayList<Partial>());
+		partials.get(0).add(new Partial(null, 0, 0));
+
+		for (int start = 0; start < n; start++) {
+			List<Partial> beam = prune(partials.get(start));
+			partials.set(start, null);
+
+			for (Partial partial : beam) {
+				if (partial.m_numCharacters >= m_maxCharacters)
+					continue;
+				for (int length = 1; length <= m_maxGroupsPerCharacter
+						&& start + length <= n; length++) {
+					recognize(start, length, startTime, maxTime);
+					if (partial.m_previous != null
+							&& m_centerX[start][length - 1] < m_maxX[partial.m_start][partial.m_length - 1])
+						continue;
+					partials.get(start + length).add(
+							new Partial(partial, start, length));
+				}
+			}
+			OverTime.overTimeCheck(startTime, maxTime, log);
+		}
+
+		List<Partial> complete = prune(sort(partials.get(n)));
+		List<CharacterGroup> groupings = new ArrayList<CharacterGroup>(
+				complete.size());
+		for (Partial partial : complete)
+			groupings.add(toCharacterGroup(partial));
+		return groupings;
+	}
+
+	/**
+	 * Recognize a run of groups, if it has not been recognized yet
+	 */
+	private void recognize(int start, int length, long startTime,
+			long maxTime) throws OverTimeException {
+		if (m_characters[start][length - 1] != null)
+			return;
+
+		List<Stroke> chargroup = new ArrayList<Stroke>();
+		for (int g = start; g < start + length; g++)
+			chargroup.addAll(m_groups.get(g));
+
+		Character c = m_recognizer.characterRecognizer(chargroup, OverTime
+				.timeRemaining(startTime, maxTime));
+		BoundingBox bb = c.getBoundingBox();
+		m_characters[start][length - 1] = c;
+		m_confidence[start][length - 1] = c.getHighestConfidence();
+		m_maxX[start][length - 1] = bb.getMaxX();
+		m_centerX[start][length - 1] = bb.getCenterX();
+		m_numRecognized++;
+	}
+
+	/**
+	 * Keep the best partial groupings, up to the beam width
+	 */
+	private List<Partial> prune(List<Partial> partials) {
+		if (partials.size() <= m_beamWidth)
+			return partials;
+		return new ArrayList<Partial>(sort(partials).subList(0, m_beamWidth));
+	}
+
+	/**
+	 * Sort partial groupings best first; equal ones keep their order
+	 */
+	private static List<Partial> sort(List<Partial> partials) {
+		Collections.sort(partials, new Comparator<Partial>() {
+
+			@Override
+			public int compare(Partial p1, Partial p2) {
+				return Double.compare(p2.getScore(), p1.getScore());
+			}
+		});
+		return partials;
+	}
+
+	/**
+	 * Build the characters of a complete grouping, in order
+	 */
+	private CharacterGroup toCharacterGroup(Partial partial) {
+		List<Character> characters = new ArrayList<Character>(
+				partial.m_numCharacters);
+		for (Partial p = partial; p.m_previous != null; p = p.m_previous)
+			characters.add(m_characters[p.m_start][p.m_length - 1]);
+		Collections.reverse(characters);
+
+		CharacterGroup group = new CharacterGroup();
+		for (Character c : characters)
+			group.add(c);
+		return group;
+	}
+
+	/**
+	 * A grouping of the first groups into characters. Partial groupings share
+	 * their common beginnings.
+	 */
+	private class Partial {
+
+		/**
+		 * Grouping before the last character, or null for the empty grouping
+		 */
+		private final Partial m_previous;
+
+		/**
+		 * First group of the last character
+		 */
+		private final int m_start;
+
+		/**
+		 * Number of groups in the last character
+		 */
+		private final int m_length;
+
+		private final int m_numCharacters;
+
+		/**
+		 * Sum of the character confidences
+		 */
+		private final double m_sumConfidence;
+
+		public Partial(Partial previous, int start, int length) {
+			m_previous = previous;
+			m_start = start;
+			m_length = length;
+			if (previous == null) {
+				m_numCharacters = 0;
+				m_sumConfidence = 0;
+			} else {
+				m_numCharacters = previous.m_numCharacters + 1;
+				m_sumConfidence = previous.m_sumConfidence
+						+ m_confidence[start][length - 1];
+			}
+		}
+
+		/**
+		 * @return mean character confidence
+		 */
+		public double getScore() {
+			return m_numCharacters == 0 ? 0 : m_sumConfidence
+					/ m_numCharacters;
+		}
+	}
+}
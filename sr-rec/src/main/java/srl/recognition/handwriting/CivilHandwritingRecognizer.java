@@ -36,7 +36,6 @@
 
 package srl.recognition.handwriting;
 
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,6 +46,7 @@ import srl.core.sketch.Shape;
 import srl.core.sketch.Sketch;
 import srl.core.sketch.Stroke;
 import srl.recognition.grouping.CivilGrouper;
+import srl.recognition.recognizer.ModelRegistry;
 import srl.recognition.recognizer.OverTime;
 import srl.recognition.recognizer.OverTimeException;
 import weka.classifiers.functions.MultilayerPerceptron;
@@ -93,18 +93,19 @@ public class CivilHandwritingRecognizer {
 	private static Logger log = LoggerFactory
 			.getLogger(CivilHandwritingRecognizer.class);
 
+	/**
+	 * Model of the CivilSketch characters
+	 */
+	private static final String MODEL = "models/civilHWR-MLP_8-2010-04-15.model";
+
 	/**
 	 * Default constructor that initializes the models.
 	 */
 	public CivilHandwritingRecognizer() {
 
-		try {
-			InputStream stream = CivilHandwritingRecognizer.class.getResourceAsStream("models/civilHWR-MLP_8-2010-04-15.model");
-			m_mlp = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read(stream);
-		} catch (Exception e) {
-			log.error(e.toString(),e);
-		}
+		m_mlp = ModelRegistry.getShared().getModel(
+				CivilHandwritingRecognizer.class, MODEL,
+				MultilayerPerceptron.class);
 
 		m_targetAttribute = BuildTargetAttribute.buildCivilAttribute();
 		m_dataSet = BuildTargetAttribute.createCivilInstancesDataSet();
@@ -112,6 +113,17 @@ public class CivilHandwritingRecognizer {
 		m_strokesSubmitted = new ArrayList<Stroke>();
 	}
 
+	/**
+	 * Read the model into the shared {@link ModelRegistry}, so creating the
+	 * first recognizer is fast. Call this once at startup.
+	 * 
+	 * @return true if the model was read
+	 */
+	public static boolean preloadModel() {
+		return ModelRegistry.getShared().preload(
+				CivilHandwritingRecognizer.class, MODEL);
+	}
+
 	/**
 	 * Recognize a series of strokes as a character.
 	 * 
@@ -140,7 +152,11 @@ public class CivilHandwritingRecognizer {
 				m_dataSet);
 
 		try {
-			distribution = m_mlp.distributionForInstance(characterInstance);
+			// the model is shared, and the network caches node values while
+			// classifying
+			synchronized (m_mlp) {
+				distribution = m_mlp.distributionForInstance(characterInstance);
+			}
 			OverTime.overTimeCheck(startTime, maxTime, log);
 		} catch (OverTimeException ote) {
 			// Don't log it
@@ -53,6 +53,7 @@ import srl.core.util.Pair;
 import srl.core.util.lists.DisjointSet;
 import srl.recognition.grouping.CivilGrouper;
 import srl.recognition.grouping.HandwritingGrouper;
+import srl.recognition.recognizer.ModelRegistry;
 import srl.recognition.recognizer.OverTime;
 import srl.recognition.recognizer.OverTimeException;
 import weka.classifiers.functions.MultilayerPerceptron;
@@ -108,29 +109,44 @@ public class HandwritingRecognizer {
 
 	private List<Stroke> m_strokesSubmitted;
 
+	/**
+	 * Number of partial groupings kept at each stroke group when splitting
+	 * text into characters
+	 */
+	private int m_groupingBeamWidth = 64;
+
 	/**
 	 * Logger
 	 */
 	private static Logger log = LoggerFactory.getLogger(HandwritingRecognizer.class);
 
+	/**
+	 * Model used for echelon symbols
+	 */
+	private static final String ECHELON_MODEL = "models/2009-03-10-11.02-PixelCount11ECHELON500-1.model";
+
+	/**
+	 * Model used for inner (letter) symbols
+	 */
+	private static final String INNER_MODEL = "models/2009-03-14-11.19-PixelCount11INNER1000-1.model";
+
+	/**
+	 * Model used for CivilSketch handwriting
+	 */
+	private static final String CIVIL_MODEL = "models/civilHWR-MLP_8-2010-04-15.model";
+
 	/**
 	 * Default constructor that initializes the models.
 	 */
 	public HandwritingRecognizer() {
 
-		try {
-			m_mlpEchelon = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read("models/2009-03-10-11.02-PixelCount11ECHELON500-1.model");
-		} catch (Exception e) {
-			log.error(e.toString());
-		}
+		m_mlpEchelon = ModelRegistry.getShared().getModel(
+				HandwritingRecognizer.class, ECHELON_MODEL,
+				MultilayerPerceptron.class);
 
-		try {
-			m_mlpInner = (MultilayerPerceptron) weka.core.SerializationHelper
-					.read("models/2009-03-14-11.19-PixelCount11INNER1000-1.model");
-		} catch (Exception e) {
-			log.error(e.toString());
-		}
+		m_mlpInner = ModelRegistry.getShared().getModel(
+				HandwritingRecognizer.class, INNER_MODEL,
+				MultilayerPerceptron.class);
 
 		m_targetInnerAttribute = BuildTargetAttribute
 				.buildUppercaseLetterAttribute();
@@ -160,14 +176,11 @@ public class HandwritingRecognizer {
 
 		if (hwrType == HWRType.CIVIL) {
 
-			try {
-				m_mlp = (MultilayerPerceptron) weka.core.SerializationHelper
-						.read(getClass().getClassLoader().getResourceAsStream("models/civilHWR-MLP_8-2010-04-15.model"));
+			m_mlp = ModelRegistry.getShared().getModel(
+					HandwritingRecognizer.class, CIVIL_MODEL,
+					MultilayerPerceptron.class);
 
-				m_mlpInner = m_mlpEchelon = m_mlp;
-			} catch (Exception e) {
-				log.error(e.toString());
-			}
+			m_mlpInner = m_mlpEchelon = m_mlp;
 		}
 
 		m_targetInnerAttribute = BuildTargetAttribute.buildCivilAttribute();
@@ -181,6 +194,23 @@ public class HandwritingRecognizer {
 		m_strokesSubmitted = new ArrayList<Stroke>();
 	}
 
+	/**
+	 * Read the models used by recognizers of the given type into the shared
+	 * {@link ModelRegistry}, so creating the first recognizer is fast. Call
+	 * this once at startup.
+	 * 
+	 * @param hwrType
+	 *            type of handwriting recognizer that will be created
+	 * @return true if every model was read
+	 */
+	public static boolean preloadModels(HWRType hwrType) {
+		if (hwrType == HWRType.CIVIL)
+			return ModelRegistry.getShared().preload(
+					HandwritingRecognizer.class, CIVIL_MODEL);
+		return ModelRegistry.getShared().preload(HandwritingRecognizer.class,
+				ECHELON_MODEL, INNER_MODEL);
+	}
+
 	/**
 	 * Recognize a series of strokes as a character.
 	 * 
@@ -221,7 +251,11 @@ public class HandwritingRecognizer {
 							/ holderSketch.getBoundingBox().width);
 
 			try {
-				distribution = m_mlp.distributionForInstance(characterInstance);
+				// models are shared, and the network caches node values
+				// while classifying
+				synchronized (m_mlp) {
+					distribution = m_mlp.distributionForInstance(characterInstance);
+				}
 				OverTime.overTimeCheck(startTime, maxTime, log);
 			} catch (OverTimeException ote) {
 				// Don't log it
@@ -236,7 +270,9 @@ public class HandwritingRecognizer {
 					holderSketch, m_dataSet);
 
 			try {
-				distribution = m_mlp.distributionForInstance(characterInstance);
+				synchronized (m_mlp) {
+					distribution = m_mlp.distributionForInstance(characterInstance);
+				}
 				OverTime.overTimeCheck(startTime, maxTime, log);
 			} catch (OverTimeException ote) {
 				// Don't log it
@@ -382,60 +418,24 @@ public class HandwritingRecognizer {
 
 		// first pregroup
 		List<List<Stroke>> groupings = this.pregroupStrokes(list);
-
-		ArrayList<ArrayList<Integer>> what = AllPossibleGroupings
-				.computepossibiliites(groupings.size());
 		OverTime.overTimeCheck(startTime, maxTime, log);
 
-		log.debug("Number Of Possible Groupings : " + what.size());
+		CharacterGroupingSearch search = new CharacterGroupingSearch(this,
+				groupings);
+		search.setBeamWidth(m_groupingBeamWidth);
+		List<CharacterGroup> candidates = search.search(OverTime
+				.timeRemaining(startTime, maxTime));
+
+		log.debug("Number Of Groupings Kept : " + candidates.size()
+				+ ", Characters Recognized : " + search.getNumRecognized());
 
 		HandwritingInterpretations hi = new HandwritingInterpretations(
 				m_dictionaryType);
 
-		boolean submitted = false;
-		for (ArrayList<Integer> aLI : what) {
-			CharacterGroup characters = new CharacterGroup();
-			int start = 0;
-			int end = 0;
-			boolean jumpOut = false;
-
-			for (Integer i : aLI) {
-				end += i;
-				List<Stroke> chargroup = new ArrayList<Stroke>();
-				for (int groupCount = start; groupCount < end; groupCount++) {
-					chargroup.addAll(groupings.get(groupCount));
-				}
-
-				Character c = characterRecognizer(chargroup, OverTime
-						.timeRemaining(startTime, maxTime));
-				log.debug("Integer " + i + " Character " + c.getBestResult()
-						+ " Confidence " + c.getHighestConfidence());
-				int size = characters.m_characters.size();
-				Character prevChar = null;
-				if (size > 0) {
-					prevChar = characters.m_characters.get(size - 1);
-				}
-				characters.add(c);
-				if (prevChar != null) {
-					double maxXPrev = prevChar.getBoundingBox().getMaxX();
-					double centerCur = c.getBoundingBox().getCenterX();
-					if (centerCur < maxXPrev) {
-						jumpOut = true;
-						break;
-					}
-				}
-				start += i;
-			}
-
-			if (!jumpOut) {
-				hi.submitCharacters(characters);
-				submitted = true;
-			} else {
-				log.debug("Cancelling");
-			}
-
+		for (CharacterGroup characters : candidates) {
+			hi.submitCharacters(characters);
 		}
-		if (!submitted) {
+		if (candidates.isEmpty()) {
 			hi.submitCharacters(new CharacterGroup());
 		}
 
@@ -1063,6 +1063,24 @@ public class HandwritingRecognizer {
 
 	}
 
+	/**
+	 * Set the number of partial groupings kept at each stroke group when text
+	 * is split into characters. Larger widths try more groupings.
+	 * 
+	 * @param beamWidth
+	 *            beam width, or {@link CharacterGroupingSearch#UNLIMITED} to
+	 *            try every grouping
+	 */
+	public void setGroupingBeamWidth(int beamWidth) {
+		if (beamWidth < 1)
+			throw new IllegalArgumentException("Beam width must be positive");
+		m_groupingBeamWidth = beamWidth;
+	}
+
+	public int getGroupingBeamWidth() {
+		return m_groupingBeamWidth;
+	}
+
 	public void setHWRType(HWRType type) {
 		m_dictionaryType = type;
 	}
@@ -108,7 +108,8 @@ public class LineFit extends Fit {
 
 		// test 1: least squares error between the stroke points and the line
 		// formed by the endpoints
-		m_lsqe = LeastSquares.error(m_features.getPoints(), (Line2D) m_shape.getShape());
+		m_lsqe = LeastSquares.error(m_features.getPackedPoints().getX(),
+				m_features.getPackedPoints().getY(), (Line2D) m_shape.getShape());
 		m_ratio = m_features.getEndptStrokeLengthRatio();
 		if (m_features.getStrokeLength() > 25.0) {
 			if (m_lsqe / m_features.getStrokeLength() > 1.4) {
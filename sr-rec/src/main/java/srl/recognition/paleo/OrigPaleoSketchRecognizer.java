@@ -37,17 +37,24 @@
  */
 package srl.recognition.paleo;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import srl.core.exception.InvalidParametersException;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
+import srl.core.util.TimeBudget;
 import srl.recognition.IRecognitionResult;
 import srl.recognition.RecognitionResult;
-import srl.recognition.recognizer.IRecognizer;
+import srl.recognition.recognizer.ITimedRecognizer;
+import srl.recognition.recognizer.OverTimeException;
 import srl.segmentation.combination.PolylineCombinationSegmenter;
 import srl.segmentation.paleo.PaleoSegmenter;
 import srl.segmentation.paleo.VSegmenter;
@@ -63,7 +70,7 @@ import srl.segmentation.paleo.WaveSegmenter;
  * @author bpaulson
  */
 public class OrigPaleoSketchRecognizer implements
-		IRecognizer<Stroke, IRecognitionResult> {
+		ITimedRecognizer<Stroke, IRecognitionResult> {
 
 	// scores used for complex fitting
 	protected static final int LINE_SCORE = 1;
@@ -215,6 +222,23 @@ public class OrigPaleoSketchRecognizer implements
 	 */
 	private Map<String, Double> m_monitoredValues = new HashMap<String, Double>();
 
+	/**
+	 * Executor used to calculate the fits in parallel (null if the fits should
+	 * be calculated sequentially on the calling thread)
+	 */
+	protected ExecutorService m_executor;
+
+	/**
+	 * Time budget of the timed recognition in progress (null if recognition
+	 * is not timed)
+	 */
+	protected volatile TimeBudget m_budget;
+
+	/**
+	 * Time budget of the last timed recognition
+	 */
+	private TimeBudget m_lastBudget;
+
 	/**
 	 * Default constructor. Every fit is on, and no stroke is loaded.
 	 */
@@ -366,13 +390,20 @@ public class OrigPaleoSketchRecognizer implements
 		m_fits = new FitList();
 
 		// calculate all fits
-		calculateAllFits();
+		long stageStart = System.currentTimeMillis();
+		if (m_executor != null)
+			calculateAllFitsParallel();
+		else
+			calculateAllFits();
+		addStageTime("fits", stageStart);
 
 		// order fits
+		stageStart = System.currentTimeMillis();
 		orderFits();
 
 		// remove fits not present in the config file
 		removeUnwantedFits();
+		addStageTime("ordering", stageStart);
 
 		// create list of shapes to return (in the form of recognition results)
 		double n = 0;
@@ -422,8 +453,105 @@ public class OrigPaleoSketchRecognizer implements
 	}
 
 	/**
-	 * Get the list of fits used by the recognizer
+	 * Recognize the active stroke, giving up on the fits that have not been
+	 * calculated when the time runs out. The fits are checked in turn, so a
+	 * single fit that is already running is allowed to finish. The result is
+	 * built from the fits calculated so far; {@link #getTimeBudget()} tells
+	 * how long the fits and the ordering took.
+	 * 
+	 * @param maxTime
+	 *            maximum time in milliseconds
+	 * @return recognition result from the fits calculated in time
+	 * @throws OverTimeException
+	 *             if the time ran out before any interpretation was found
+	 */
+	public IRecognitionResult recognizeTimed(long maxTime)
+			throws OverTimeException {
+		m_budget = new TimeBudget(maxTime);
+		try {
+			IRecognitionResult result = recognize();
+			if (m_budget.isExpired()
+					&& (result == null || result.getNBestList().isEmpty()))
+				throw new OverTimeException(
+						"No fit was calculated before running out of time ("
+								+ m_budget + ")");
+			return result;
+		} finally {
+			m_lastBudget = m_budget;
+			m_budget = null;
+		}
+	}
+
+	/**
+	 * Get the time budget of the last call to {@link #recognizeTimed(long)}
 	 * 
+	 * @return last time budget, or null if recognition has not been timed
+	 */
+	public TimeBudget getTimeBudget() {
+		return m_lastBudget;
+	}
+
+	/**
+	 * Check whether more fits may be calculated
+	 * 
+	 * @return true if recognition is not timed or time is left
+	 */
+	protected boolean hasTimeLeft() {
+		TimeBudget budget = m_budget;
+		return budget == null || !budget.isOverTime();
+	}
+
+	/**
+	 * Record the time used by a stage of a timed recognition
+	 * 
+	 * @param stage
+	 *            name of the stage
+	 * @param startTime
+	 *            time the stage started
+	 */
+	private void addStageTime(String stage, long startTime) {
+		TimeBudget budget = m_budget;
+		if (budget != null)
+			budget.addStageTime(stage, startTime);
+	}
+
+	/**
+	 * Recognize the given stroke without modifying the state of this
+	 * recognizer. The stroke, its features and all fits are kept in a context
+	 * that only lives for this call, so one instance can be used by many
+	 * threads at once.
+	 *
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param config
+	 *            configuration file for the fits to return
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(Stroke stroke, PaleoConfig config) {
+		OrigPaleoSketchRecognizer context = createContext(config);
+		context.setStroke(stroke);
+		return context.recognize();
+	}
+
+	/**
+	 * Creates the recognizer that holds the per-stroke state of a single
+	 * {@link #recognize(Stroke, PaleoConfig)} call. The context shares the
+	 * executor of this recognizer.
+	 *
+	 * @param config
+	 *            configuration file for the fits to return
+	 * @return recognition context
+	 */
+	public OrigPaleoSketchRecognizer createContext(PaleoConfig config) {
+		OrigPaleoSketchRecognizer context = new OrigPaleoSketchRecognizer(
+				config);
+		context.setExecutor(m_executor);
+		return context;
+	}
+
+	/**
+	 * Get the list of fits used by the recognizer
+	 *
 	 * @return list of fits
 	 */
 	public FitList getFits() {
@@ -431,49 +559,265 @@ public class OrigPaleoSketchRecognizer implements
 	}
 
 	/**
-	 * Calculates all of the various shape fits
+	 * Calculates all of the various shape fits. During a timed recognition the
+	 * fits not yet started when the time runs out are skipped.
 	 */
 	protected void calculateAllFits() {
-		if (m_config.isLineTestOn())
+		if (m_config.isLineTestOn() && hasTimeLeft())
 			calcLineFit();
-		if (m_config.isArcTestOn())
+		if (m_config.isArcTestOn() && hasTimeLeft())
 			calcArcFit();
-		if (m_config.isCurveTestOn())
+		if (m_config.isCurveTestOn() && hasTimeLeft())
 			calcCurveFit();
-		if (m_config.isArrowTestOn())
+		if (m_config.isArrowTestOn() && hasTimeLeft())
 			calcArrowFit();
-		if (m_config.isPolylineTestOn())
+		if (m_config.isPolylineTestOn() && hasTimeLeft())
 			calcPolylineFit();
-		if (m_config.isEllipseTestOn())
+		if (m_config.isEllipseTestOn() && hasTimeLeft())
 			calcEllipseFit();
-		if (m_config.isCircleTestOn())
+		if (m_config.isCircleTestOn() && hasTimeLeft())
 			calcCircleFit();
-		if (m_config.isSpiralTestOn())
+		if (m_config.isSpiralTestOn() && hasTimeLeft())
 			calcSpiralFit();
-		if (m_config.isHelixTestOn())
+		if (m_config.isHelixTestOn() && hasTimeLeft())
 			calcHelixFit();
-		if (m_config.isPolygonTestOn())
+		if (m_config.isPolygonTestOn() && hasTimeLeft())
 			calcPolygonFit();
-		if (m_config.isRectangleTestOn())
+		if (m_config.isRectangleTestOn() && hasTimeLeft())
 			calcRectangleFit();
-		if (m_config.isSquareTestOn())
+		if (m_config.isSquareTestOn() && hasTimeLeft())
 			calcSquareFit();
-		if (m_config.isDiamondTestOn())
+		if (m_config.isDiamondTestOn() && hasTimeLeft())
 			calcDiamondFit();
-		if (m_config.isDotTestOn())
+		if (m_config.isDotTestOn() && hasTimeLeft())
 			calcDotFit();
-		if (m_config.isWaveTestOn())
+		if (m_config.isWaveTestOn() && hasTimeLeft())
 			calcWaveFit();
-		if (m_config.isGullTestOn())
+		if (m_config.isGullTestOn() && hasTimeLeft())
 			calcGullFit();
-		if (m_config.isBlobTestOn())
+		if (m_config.isBlobTestOn() && hasTimeLeft())
 			calcBlobFit();
-		if (m_config.isInfinityTestOn())
+		if (m_config.isInfinityTestOn() && hasTimeLeft())
 			calcInfinityFit();
-		if (m_config.isNBCTestOn())
+		if (m_config.isNBCTestOn() && hasTimeLeft())
 			calcNBCFit();
 	}
 
+	/**
+	 * Calculates all of the various shape fits on the executor. Fits that
+	 * build on each other (circle, spiral, helix; rectangle, square; polyline,
+	 * polygon, gull) are evaluated as chains, and the segmentations and
+	 * ellipse fit they share are calculated first so that no fit is ever
+	 * calculated by two tasks. The resulting fits are identical to the ones
+	 * computed by {@link #calculateAllFits()}.
+	 */
+	protected void calculateAllFitsParallel() {
+		final boolean line = m_config.isLineTestOn();
+		final boolean arc = m_config.isArcTestOn();
+		final boolean curve = m_config.isCurveTestOn();
+		final boolean arrow = m_config.isArrowTestOn();
+		final boolean polyline = m_config.isPolylineTestOn();
+		final boolean ellipse = m_config.isEllipseTestOn();
+		final boolean circle = m_config.isCircleTestOn();
+		final boolean spiral = m_config.isSpiralTestOn();
+		final boolean helix = m_config.isHelixTestOn();
+		final boolean polygon = m_config.isPolygonTestOn();
+		final boolean rectangle = m_config.isRectangleTestOn();
+		final boolean square = m_config.isSquareTestOn();
+		final boolean diamond = m_config.isDiamondTestOn();
+		final boolean dot = m_config.isDotTestOn();
+		final boolean wave = m_config.isWaveTestOn();
+		final boolean gull = m_config.isGullTestOn();
+		final boolean blob = m_config.isBlobTestOn();
+		final boolean infinity = m_config.isInfinityTestOn();
+		final boolean nbc = m_config.isNBCTestOn();
+
+		// shared prerequisites
+		List<FitTask> shared = new ArrayList<FitTask>();
+		if (m_segmentation == null
+				&& (polyline || arrow || polygon || rectangle || square
+						|| diamond || gull)) {
+			shared.add(new FitTask() {
+				void calc() {
+					calcSegmentation();
+				}
+			});
+		}
+		if (m_waveSegmentation == null && (wave || gull || nbc)) {
+			shared.add(new FitTask() {
+				void calc() {
+					calcWaveSegmentation();
+				}
+			});
+		}
+		if (ellipse
+				|| (m_ellipseFit instanceof NullFit && (circle || spiral
+						|| helix || rectangle || square))) {
+			shared.add(new FitTask() {
+				void calc() {
+					calcEllipseFit();
+				}
+			});
+		}
+		invokeFits(shared);
+
+		// independent fits and dependency chains
+		List<FitTask> fits = new ArrayList<FitTask>();
+		if (polyline || polygon || gull) {
+			fits.add(new FitTask() {
+				void calc() {
+					if (polyline && hasTimeLeft())
+						calcPolylineFit();
+					if (polygon && hasTimeLeft())
+						calcPolygonFit();
+					if (gull && hasTimeLeft())
+						calcGullFit();
+				}
+			});
+		}
+		if (circle || spiral || helix) {
+			fits.add(new FitTask() {
+				void calc() {
+					if (circle && hasTimeLeft())
+						calcCircleFit();
+					if (spiral && hasTimeLeft())
+						calcSpiralFit();
+					if (helix && hasTimeLeft())
+						calcHelixFit();
+				}
+			});
+		}
+		if (rectangle || square) {
+			fits.add(new FitTask() {
+				void calc() {
+					if (rectangle && hasTimeLeft())
+						calcRectangleFit();
+					if (square && hasTimeLeft())
+						calcSquareFit();
+				}
+			});
+		}
+		if (line) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcLineFit();
+				}
+			});
+		}
+		if (arc) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcArcFit();
+				}
+			});
+		}
+		if (curve) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcCurveFit();
+				}
+			});
+		}
+		if (arrow) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcArrowFit();
+				}
+			});
+		}
+		if (diamond) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcDiamondFit();
+				}
+			});
+		}
+		if (dot) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcDotFit();
+				}
+			});
+		}
+		if (wave) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcWaveFit();
+				}
+			});
+		}
+		if (blob) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcBlobFit();
+				}
+			});
+		}
+		if (infinity) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcInfinityFit();
+				}
+			});
+		}
+		if (nbc) {
+			fits.add(new FitTask() {
+				void calc() {
+					calcNBCFit();
+				}
+			});
+		}
+		invokeFits(fits);
+	}
+
+	/**
+	 * Runs the given fit tasks on the executor and waits for all of them to
+	 * finish. The calling thread evaluates the first task itself.
+	 *
+	 * @param tasks
+	 *            tasks to run
+	 */
+	private void invokeFits(List<FitTask> tasks) {
+		if (tasks.isEmpty())
+			return;
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		try {
+			for (int i = 1; i < tasks.size(); i++)
+				futures.add(m_executor.submit(tasks.get(i)));
+			tasks.get(0).call();
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while calculating fits", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<Void> future : futures)
+				future.cancel(true);
+		}
+	}
+
+	/**
+	 * Single unit of fit calculation submitted to the executor
+	 */
+	private abstract class FitTask implements Callable<Void> {
+
+		abstract void calc();
+
+		@Override
+		public Void call() {
+			if (hasTimeLeft())
+				calc();
+			return null;
+		}
+	}
+
 	/**
 	 * Get a fit by its string name
 	 * 
@@ -856,7 +1200,7 @@ public class OrigPaleoSketchRecognizer implements
 		if (m_helixFit.passed()) {
 
 			// check to see if complex is better fit first
-			if (m_config.isComplexTestOn()) {
+			if (m_config.isComplexTestOn() && hasTimeLeft()) {
 				calcComplexFit();
 				if (((ComplexFit) m_complexFit).getSubFits().size() > 1) {
 					calcComplexScore();
@@ -934,7 +1278,7 @@ public class OrigPaleoSketchRecognizer implements
 				|| m_fits.get(0) instanceof PolylineFit) {
 
 			// check to see if complex is better fit first
-			if (m_config.isComplexTestOn()) {
+			if (m_config.isComplexTestOn() && hasTimeLeft()) {
 				calcComplexFit();
 				if (((ComplexFit) m_complexFit).getSubFits().size() > 1) {
 
@@ -1261,21 +1605,8 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate polyline fit
 	 */
 	protected void calcPolylineFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		if (m_segmentation == null)
+			calcSegmentation();
 		m_polylineFit = new PolylineFit(m_features, m_segmentation, m_config);
 	}
 
@@ -1326,21 +1657,8 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate arrow fit
 	 */
 	protected void calcArrowFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		if (m_segmentation == null)
+			calcSegmentation();
 		m_arrowFit = new ArrowFit(m_features, m_segmentation);
 		if (m_features.getOrigStroke().getSegmentations().size() > 0) {
 			Segmentation seg = m_features.getOrigStroke().getSegmentations()
@@ -1357,21 +1675,8 @@ public class OrigPaleoSketchRecognizer implements
 	protected void calcRectangleFit() {
 		if (m_ellipseFit instanceof NullFit)
 			calcEllipseFit();
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		if (m_segmentation == null)
+			calcSegmentation();
 		m_rectangleFit = new RectangleFit(m_features,
 				(EllipseFit) m_ellipseFit, m_segmentation);
 	}
@@ -1389,21 +1694,8 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate diamond fit
 	 */
 	protected void calcDiamondFit() {
-		if (m_segmentation == null) {
-			if (m_config.getHeuristics().MULTI_CF) {
-				try {
-					PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
-							m_config.getHeuristics().FILTER_DIR_GRAPH);
-					seg.setStroke(m_features.getOrigStroke());
-					m_segmentation = seg.getSegmentations().get(0);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			} else {
-				m_segmentation = new PaleoSegmenter(m_features)
-						.getSegmentations().get(0);
-			}
-		}
+		if (m_segmentation == null)
+			calcSegmentation();
 		m_diamondFit = new DiamondFit(m_features, m_config, m_segmentation);
 	}
 
@@ -1418,13 +1710,8 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate wave fit
 	 */
 	protected void calcWaveFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
-			}
-		}
+		if (m_waveSegmentation == null)
+			calcWaveSegmentation();
 		m_waveFit = new WaveFit(m_features, m_waveSegmentation);
 	}
 
@@ -1432,13 +1719,8 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate gull fit
 	 */
 	protected void calcGullFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
-			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
-			}
-		}
+		if (m_waveSegmentation == null)
+			calcWaveSegmentation();
 		if (m_polylineFit instanceof NullFit)
 			calcPolylineFit();
 		m_gullFit = new GullFit(m_features, m_waveSegmentation,
@@ -1463,14 +1745,40 @@ public class OrigPaleoSketchRecognizer implements
 	 * Calculate NBC fit
 	 */
 	protected void calcNBCFit() {
-		if (m_waveSegmentation == null) {
-			WaveSegmenter waveSeg = new WaveSegmenter(m_features);
+		if (m_waveSegmentation == null)
+			calcWaveSegmentation();
+		m_nbcFit = new NBCFit(m_features, m_waveSegmentation);
+	}
+
+	/**
+	 * Calculate the main corner finding segmentation (shared by the polyline,
+	 * arrow, rectangle and diamond fits)
+	 */
+	protected void calcSegmentation() {
+		if (m_config.getHeuristics().MULTI_CF) {
 			try {
-				m_waveSegmentation = waveSeg.getSegmentations().get(0);
-			} catch (InvalidParametersException e) {
+				PolylineCombinationSegmenter seg = new PolylineCombinationSegmenter(
+						m_config.getHeuristics().FILTER_DIR_GRAPH);
+				seg.setStroke(m_features.getOrigStroke());
+				m_segmentation = seg.getSegmentations().get(0);
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
+		} else {
+			m_segmentation = new PaleoSegmenter(m_features).getSegmentations()
+					.get(0);
+		}
+	}
+
+	/**
+	 * Calculate the wave segmentation (shared by the wave, gull and NBC fits)
+	 */
+	protected void calcWaveSegmentation() {
+		WaveSegmenter waveSeg = new WaveSegmenter(m_features);
+		try {
+			m_waveSegmentation = waveSeg.getSegmentations().get(0);
+		} catch (InvalidParametersException e) {
 		}
-		m_nbcFit = new NBCFit(m_features, m_waveSegmentation);
 	}
 
 	/**
@@ -1936,4 +2244,27 @@ public class OrigPaleoSketchRecognizer implements
 	public PaleoConfig getConfig() {
 		return m_config;
 	}
+
+	/**
+	 * Set the executor used to calculate independent fits in parallel. If
+	 * null (the default), all fits are calculated sequentially on the calling
+	 * thread. Since the calling thread waits for the submitted fits, the
+	 * executor should not be the same pool that calls {@link #recognize()}.
+	 * 
+	 * @param executor
+	 *            executor to calculate fits on, or null for sequential
+	 *            calculation
+	 */
+	public void setExecutor(ExecutorService executor) {
+		m_executor = executor;
+	}
+
+	/**
+	 * Get the executor used to calculate fits in parallel
+	 * 
+	 * @return executor, or null if fits are calculated sequentially
+	 */
+	public ExecutorService getExecutor() {
+		return m_executor;
+	}
 }
@@ -980,6 +980,28 @@ public class PaleoConfig implements Cloneable,Serializable {
 		return clonedConfig;
 	}
 
+	/**
+	 * Get a fingerprint of this config. Configs with the same tests turned on,
+	 * the same neural network setting and the same heuristics have the same
+	 * fingerprint, so it can be used to tell results recognized with
+	 * different configs apart (e.g. in a result cache).
+	 * 
+	 * @return fingerprint of this config
+	 */
+	public long getFingerprint() {
+		boolean[] flags = { m_line, m_arc, m_ellipse, m_circle, m_curve,
+				m_helix, m_spiral, m_arrow, m_complex, m_polyline, m_polygon,
+				m_rectangle, m_square, m_diamond, m_dot, m_wave, m_gull,
+				m_blob, m_infinity, m_nbc, useNN, m_heuristics != null };
+		long bits = 0L;
+		for (boolean flag : flags)
+			bits = (bits << 1) | (flag ? 1L : 0L);
+		bits <<= 32;
+		if (m_heuristics != null)
+			bits |= m_heuristics.getFingerprint();
+		return bits;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -108,6 +108,22 @@ public class PaleoHeuristics implements Serializable{
 	 */
 	public boolean M_VS_GULL_CHECK = false;
 
+	/**
+	 * Get a fingerprint of these heuristics; equal heuristics have the same
+	 * fingerprint
+	 * 
+	 * @return fingerprint (one bit per heuristic)
+	 */
+	public int getFingerprint() {
+		boolean[] flags = { ARC_DOWN, FILTER_DIR_GRAPH, LINE_TEST_COMBINE,
+				M_VS_GULL_CHECK, MULTI_CF, OVERTRACED_LINE_COMBINE,
+				SIM_SLOPE_POLYLINE_COMBINE, SMALL_POLYLINE_COMBINE, SMALL_V };
+		int bits = 0;
+		for (boolean flag : flags)
+			bits = (bits << 1) | (flag ? 1 : 0);
+		return bits;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -39,9 +39,13 @@ package srl.recognition.paleo;
 
 
 
+import java.util.concurrent.ExecutorService;
+
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.recognition.IRecognitionResult;
+import srl.recognition.cache.RecognitionResultCache;
+import srl.recognition.cache.StrokeKey;
 import srl.recognition.paleo.paleoNN.PaleoNNRecognizer;
 
 /**
@@ -52,7 +56,8 @@ import srl.recognition.paleo.paleoNN.PaleoNNRecognizer;
 public class PaleoSketchRecognizer {
 
 	/**
-	 * Original PaleoSketch
+	 * Original PaleoSketch (only used to create the per-stroke recognition
+	 * contexts, so that it can be shared by concurrent calls)
 	 */
 	private OrigPaleoSketchRecognizer m_paleo;
 
@@ -66,11 +71,21 @@ public class PaleoSketchRecognizer {
 	 */
 	private PaleoConfig m_config;
 
+	/**
+	 * Cache of previous results (null if results should not be cached)
+	 */
+	private RecognitionResultCache m_cache;
+
 	/**
 	 * Threshold for pruning poor confidence shapes
 	 */
 	public static final double LOW_CONFIDENCE = 0.001;
 
+	/**
+	 * Threshold this recognizer prunes poor confidence shapes with
+	 */
+	private volatile double m_pruneThreshold = LOW_CONFIDENCE;
+
 	/**
 	 * Neural network is only confident when confidence is above 98%
 	 */
@@ -97,13 +112,75 @@ public class PaleoSketchRecognizer {
 	 * @see org.ladder.recognition.recognizer.IRecognizer#recognize()
 	 */
 	public IRecognitionResult recognize(Stroke stroke) {
-		m_paleo.setStroke(stroke);
-		IRecognitionResult orig = m_paleo.recognize();
+		return recognize(stroke, m_config);
+	}
+
+	/**
+	 * Recognize the given stroke with the given config. No state is kept
+	 * between calls, so one recognizer (and its neural network) can be shared
+	 * by many threads at once. If a result cache is set, strokes with the same
+	 * content and config are only recognized once.
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param config
+	 *            paleo config to recognize with
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(Stroke stroke, PaleoConfig config) {
+		RecognitionResultCache cache = m_cache;
+		if (cache == null)
+			return recognizeUncached(stroke, config, m_pruneThreshold);
+
+		double threshold = m_pruneThreshold;
+		StrokeKey key = cache.createKey(stroke,
+				getCacheFingerprint(config, threshold));
+		IRecognitionResult result = cache.get(key, stroke);
+		if (result == null) {
+			result = recognizeUncached(stroke, config, threshold);
+			cache.put(key, stroke, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the fingerprint the results of this recognizer are cached under.
+	 * Cached results are pruned, so the pruning threshold is part of the
+	 * fingerprint; this also keeps them apart from the unpruned results the
+	 * neural network recognizer keeps when both share a cache.
+	 * 
+	 * @param config
+	 *            paleo config the stroke is recognized with
+	 * @param threshold
+	 *            threshold the results are pruned with
+	 * @return cache fingerprint
+	 */
+	private static long getCacheFingerprint(PaleoConfig config,
+			double threshold) {
+		return config.getFingerprint()
+				^ (Double.doubleToLongBits(threshold) * 0x9e3779b97f4a7c15L);
+	}
+
+	/**
+	 * Recognize the given stroke with the given config without using the
+	 * result cache
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param config
+	 *            paleo config to recognize with
+	 * @param threshold
+	 *            threshold to prune poor confidence shapes with
+	 * @return recognition result
+	 */
+	private IRecognitionResult recognizeUncached(Stroke stroke,
+			PaleoConfig config, double threshold) {
+		OrigPaleoSketchRecognizer paleo = m_paleo.createContext(config);
+		paleo.setStroke(stroke);
+		IRecognitionResult orig = paleo.recognize();
 		IRecognitionResult nn = null;
-		if(m_config.getNNEnabled()){
-			m_paleoNN.submitForRecognition(stroke);
-			m_paleoNN.setFeatures(m_paleo.getFeatures());
-			nn = m_paleoNN.recognize();
+		if(config.getNNEnabled()){
+			nn = getPaleoNN().recognize(stroke, config, paleo.getFeatures());
 		}
 
 		
@@ -123,7 +200,73 @@ public class PaleoSketchRecognizer {
 			}
 		}
 
-		return pruneBad(nn);
+		return pruneBad(nn, threshold);
+	}
+
+	/**
+	 * Set the executor used by the original Paleo recognizer to calculate its
+	 * fits in parallel (null for sequential calculation)
+	 * 
+	 * @param executor
+	 *            executor to calculate fits on
+	 */
+	public void setExecutor(ExecutorService executor) {
+		m_paleo.setExecutor(executor);
+	}
+
+	/**
+	 * Set the threshold shapes are pruned with: shapes with a lower confidence
+	 * are removed from the n-best list, unless they are the only one left
+	 * (default {@link #LOW_CONFIDENCE})
+	 * 
+	 * @param threshold
+	 *            pruning threshold
+	 */
+	public void setPruneThreshold(double threshold) {
+		m_pruneThreshold = threshold;
+	}
+
+	/**
+	 * Get the threshold shapes are pruned with
+	 * 
+	 * @return pruning threshold
+	 */
+	public double getPruneThreshold() {
+		return m_pruneThreshold;
+	}
+
+	/**
+	 * Set the cache used to remember the results of previously recognized
+	 * strokes (null to turn caching off). A cache can be shared by several
+	 * recognizers.
+	 * 
+	 * @param cache
+	 *            result cache
+	 */
+	public void setCache(RecognitionResultCache cache) {
+		m_cache = cache;
+	}
+
+	/**
+	 * Get the cache used to remember the results of previously recognized
+	 * strokes
+	 * 
+	 * @return result cache (null if results are not cached)
+	 */
+	public RecognitionResultCache getCache() {
+		return m_cache;
+	}
+
+	/**
+	 * Get the neural network recognizer, loading it if this recognizer was
+	 * created with a config that did not enable it
+	 * 
+	 * @return neural network recognizer
+	 */
+	private synchronized PaleoNNRecognizer getPaleoNN() {
+		if (m_paleoNN == null)
+			m_paleoNN = new PaleoNNRecognizer(m_config);
+		return m_paleoNN;
 	}
 
 	/**
@@ -131,12 +274,14 @@ public class PaleoSketchRecognizer {
 	 * 
 	 * @param r
 	 *            result to prune
+	 * @param threshold
+	 *            shapes with a lower confidence are pruned
 	 * @return pruned result
 	 */
-	private IRecognitionResult pruneBad(IRecognitionResult r) {
+	private IRecognitionResult pruneBad(IRecognitionResult r, double threshold) {
 		if (r != null) {
 			for (int i = r.getNBestList().size() - 1; i >= 0; i--) {
-				if (r.getNBestList().get(i).getInterpretation().confidence < LOW_CONFIDENCE
+				if (r.getNBestList().get(i).getInterpretation().confidence < threshold
 						&& r.getNBestList().size() > 1)
 					r.getNBestList().remove(i);
 			}
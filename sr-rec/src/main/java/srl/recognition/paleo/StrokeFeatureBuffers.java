@@ -0,0 +1,519 @@
+/**
+ * StrokeFeatureBuffers.java
+ *
+ * Revision History:<br>
+ * SRL Member - File created<br>
+ *
+ * <p>
+ *
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University
+ *       nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo;
+
+import java.util.List;
+
+import srl.core.sketch.Point;
+import srl.math.Filtering;
+
+/**
+ * Reusable primitive buffers used while constructing {@link StrokeFeatures}.
+ * The points of a stroke are copied into parallel coordinate arrays, duplicate
+ * points are dropped, and the direction, length and curvature values needed to
+ * find hooks are computed in place. Hooks are then trimmed by index range, and
+ * the final feature arrays are computed from the same buffers, so no
+ * intermediate point lists or feature arrays are created.
+ * <p>
+ * The buffers grow to fit the largest stroke seen and are kept for the next
+ * one. A buffer object must only be used by one thread at a time; use
+ * {@link #forCurrentThread()} to get the buffers of the calling thread.
+ */
+public class StrokeFeatureBuffers {
+
+	/**
+	 * Buffers of each thread
+	 */
+	private static final ThreadLocal<StrokeFeatureBuffers> s_threadBuffers = new ThreadLocal<StrokeFeatureBuffers>() {
+
+		@Override
+		protected StrokeFeatureBuffers initialValue() {
+			return new StrokeFeatureBuffers();
+		}
+	};
+
+	/**
+	 * x values of the points, after duplicates are removed
+	 */
+	private double[] m_x;
+
+	/**
+	 * y values of the points, after duplicates are removed
+	 */
+	private double[] m_y;
+
+	/**
+	 * Time values of the points, after duplicates are removed
+	 */
+	private long[] m_time;
+
+	/**
+	 * Index of each point in the original point list
+	 */
+	private int[] m_source;
+
+	/**
+	 * Flags points whose time was changed because it equaled the time of the
+	 * point before
+	 */
+	private boolean[] m_newTime;
+
+	/**
+	 * Direction of each segment, before unwrapping or smoothing
+	 */
+	private double[] m_rawDir;
+
+	/**
+	 * Length of each segment
+	 */
+	private double[] m_segLength;
+
+	/**
+	 * Unwrapped direction values
+	 */
+	private double[] m_dir;
+
+	/**
+	 * Smoothed direction values
+	 */
+	private double[] m_smoothDir;
+
+	/**
+	 * Running total of stroke length
+	 */
+	private double[] m_lengthSoFar;
+
+	/**
+	 * Running total of curvature
+	 */
+	private double[] m_totalCurvature;
+
+	/**
+	 * Scratch space for median filtering
+	 */
+	private double[] m_window;
+
+	/**
+	 * Number of points loaded, after duplicates are removed
+	 */
+	private int m_numPoints;
+
+	/**
+	 * Total length of the loaded stroke
+	 */
+	private double m_strokeLength;
+
+	/**
+	 * Average curvature of the loaded stroke, before hooks are removed
+	 */
+	private double m_avgCurvature;
+
+	/**
+	 * Ratio of maximum curvature to average curvature of the loaded stroke,
+	 * before hooks are removed
+	 */
+	private double m_maxCurvToAvgCurvRatio;
+
+	/**
+	 * Create empty buffers
+	 */
+	public StrokeFeatureBuffers() {
+		this(64);
+	}
+
+	/**
+	 * Create buffers that fit strokes of the given number of points without
+	 * growing
+	 * 
+	 * @param capacity
+	 *            initial number of points
+	 */
+	public StrokeFeatureBuffers(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Get the buffers of the calling thread
+	 * 
+	 * @return buffers only used by the calling thread
+	 */
+	public static StrokeFeatureBuffers forCurrentThread() {
+		return s_threadBuffers.get();
+	}
+
+	/**
+	 * Get the number of points the buffers hold without growing
+	 * 
+	 * @return capacity in points
+	 */
+	public int getCapacity() {
+		return m_x.length;
+	}
+
+	/**
+	 * Allocate the buffers for the given number of points
+	 * 
+	 * @param capacity
+	 *            number of points
+	 */
+	private void allocate(int capacity) {
+		m_x = new double[capacity];
+		m_y = new double[capacity];
+		m_time = new long[capacity];
+		m_source = new int[capacity];
+		m_newTime = new boolean[capacity];
+		m_rawDir = new double[capacity];
+		m_segLength = new double[capacity];
+		m_dir = new double[capacity];
+		m_smoothDir = new double[capacity];
+		m_lengthSoFar = new double[capacity];
+		m_totalCurvature = new double[capacity];
+		m_window = new double[(int) Math.ceil(Math.sqrt(capacity)) + 1];
+	}
+
+	/**
+	 * Load points into the buffers, removing immediately subsequent points in
+	 * the same location. If two points have the same time stamp, the time on
+	 * the first is changed to be interpolated between the two surrounding
+	 * points (see {@link #hasNewTime(int)}).
+	 * 
+	 * @param points
+	 *            points to load
+	 */
+	void load(List<Point> points) {
+		int size = points.size();
+		if (size > m_x.length)
+			allocate(Math.max(size, m_x.length + (m_x.length >> 1)));
+
+		Point p = points.get(0);
+		double prevX = p.getX();
+		double prevY = p.getY();
+		m_x[0] = prevX;
+		m_y[0] = prevY;
+		m_time[0] = p.getTime();
+		m_source[0] = 0;
+		m_newTime[0] = false;
+		int n = 1;
+
+		for (int i = 1; i < size; i++) {
+			p = points.get(i);
+			double x = p.getX();
+			double y = p.getY();
+
+			// same x and y value so the point is not kept
+			if (x == prevX && y == prevY)
+				continue;
+			prevX = x;
+			prevY = y;
+
+			m_x[n] = x;
+			m_y[n] = y;
+			m_time[n] = p.getTime();
+			m_source[n] = i;
+			m_newTime[n] = false;
+			n++;
+
+			// check for same time value
+			if (m_time[n - 1] == m_time[n - 2]) {
+				if (n == 2) {
+					m_time[1] = m_time[1] + 1;
+					m_newTime[1] = true;
+				} else {
+					m_time[n - 2] = m_time[n - 3] + m_time[n - 1] / 2;
+					m_newTime[n - 2] = true;
+				}
+			}
+		}
+		m_numPoints = n;
+	}
+
+	/**
+	 * Compute the direction, length and curvature values of the loaded points
+	 * that are needed to find hooks
+	 * 
+	 * @param smoothing
+	 *            true if the direction graph should be median filtered
+	 */
+	void computeHookValues(boolean smoothing) {
+		int numSegs = m_numPoints - 1;
+
+		// direction and length graphs
+		for (int i = 0; i < numSegs; i++) {
+			double dx = m_x[i + 1] - m_x[i];
+			double dy = m_y[i + 1] - m_y[i];
+			double dir = Math.atan2(dy, dx);
+			m_rawDir[i] = dir;
+			if (i > 0) {
+				while (dir - m_dir[i - 1] > Math.PI)
+					dir = dir - 2 * Math.PI;
+				while (m_dir[i - 1] - dir > Math.PI)
+					dir = dir + 2 * Math.PI;
+			}
+			m_dir[i] = dir;
+			m_segLength[i] = Math.sqrt(dy * dy + dx * dx);
+			if (i == 0)
+				m_lengthSoFar[i] = m_segLength[i];
+			else
+				m_lengthSoFar[i] = m_lengthSoFar[i - 1] + m_segLength[i];
+		}
+		if (numSegs > 0)
+			m_strokeLength = m_lengthSoFar[numSegs - 1];
+		else
+			m_strokeLength = 1.0;
+
+		double[] dir = m_dir;
+		if (smoothing) {
+			medianFilter(m_dir, numSegs, m_smoothDir);
+			dir = m_smoothDir;
+		}
+
+		// curvature graph
+		int numCurv = numSegs - 1;
+		double maxCurv = 0.0;
+		for (int i = 0; i < numCurv; i++) {
+			double curv = Math.abs(dir[i + 1] - dir[i])
+					/ (m_segLength[i] + m_segLength[i + 1]);
+			if (curv > maxCurv && i != 0)
+				maxCurv = curv;
+			if (i == 0)
+				m_totalCurvature[i] = curv;
+			else
+				m_totalCurvature[i] = m_totalCurvature[i - 1] + curv;
+		}
+		if (numCurv > 0) {
+			m_avgCurvature = m_totalCurvature[numCurv - 1] / numCurv;
+			m_maxCurvToAvgCurvRatio = maxCurv / m_avgCurvature;
+		} else {
+			m_avgCurvature = 0.0;
+			m_maxCurvToAvgCurvRatio = 0.0;
+		}
+	}
+
+	/**
+	 * Find the index of the first point after any hook at the start of the
+	 * stroke. Needs {@link #computeHookValues(boolean)}.
+	 * 
+	 * @return start of the stroke with the hook removed
+	 */
+	int findHookStart() {
+		if (!canHaveHooks())
+			return 0;
+
+		double hookcurvature = 0;
+		int startindex = 0;
+		for (int i = 1; i < m_numPoints - 1; i++) {
+
+			// only check for tails near endpoints; if we have gone too far into
+			// the stroke then we are no longer checking for hooks
+			if (m_lengthSoFar[i] > Thresholds.active.M_HOOK_MAXHOOKLENGTH
+					|| m_lengthSoFar[i] / m_strokeLength > Thresholds.active.M_HOOK_MAXHOOKPERCENT)
+				break;
+
+			// finding the maximum curvature value at the beginning of the
+			// stroke
+			if (Math.abs(m_totalCurvature[i]) > hookcurvature) {
+				hookcurvature = Math.abs(m_totalCurvature[i]);
+				startindex = i + 1;
+			}
+		}
+
+		// max curvature near start point is too small to denote a tail
+		if (hookcurvature < Thresholds.active.M_HOOK_MINHOOKCURVATURE)
+			startindex = 0;
+		return startindex;
+	}
+
+	/**
+	 * Find the index after the last point before any hook at the end of the
+	 * stroke. Needs {@link #computeHookValues(boolean)}.
+	 * 
+	 * @return end (exclusive) of the stroke with the hook removed
+	 */
+	int findHookEnd() {
+		if (!canHaveHooks())
+			return m_numPoints;
+
+		int lastCurv = m_numPoints - 3;
+		int lastLength = m_numPoints - 2;
+		double hookcurvature = 0;
+		int endindex = m_numPoints;
+		for (int i = 1; i < m_numPoints - 1; i++) {
+
+			int startIndex = lastCurv - i;
+			if (startIndex < 0)
+				startIndex = 0;
+
+			double c = m_totalCurvature[lastCurv] - m_totalCurvature[startIndex];
+			double l = m_lengthSoFar[lastLength] - m_lengthSoFar[lastLength - i];
+
+			// we have gone too far into the stroke so we stop
+			if (l > Thresholds.active.M_HOOK_MAXHOOKLENGTH
+					|| l / m_strokeLength > Thresholds.active.M_HOOK_MAXHOOKPERCENT)
+				break;
+
+			// finding max curvature value near end of the stroke
+			if (Math.abs(c) > hookcurvature) {
+				hookcurvature = Math.abs(c);
+				endindex = m_numPoints - i;
+			}
+		}
+
+		// max curvature near end point is too small to denote a tail
+		if (Math.abs(hookcurvature) < Thresholds.active.M_HOOK_MINHOOKCURVATURE)
+			endindex = m_numPoints;
+		return endindex;
+	}
+
+	/**
+	 * Conditions for not removing tails (basically if stroke is too small)
+	 * 
+	 * @return true if the loaded stroke is large enough to check for hooks
+	 */
+	private boolean canHaveHooks() {
+		return !(m_numPoints < Thresholds.active.M_HOOK_MINPOINTS
+				|| m_numPoints < 3
+				|| m_lengthSoFar[m_numPoints - 2] < Thresholds.active.M_HOOK_MINSTROKELENGTH
+				|| m_strokeLength < Thresholds.active.M_HOOK_MINSTROKELENGTH);
+	}
+
+	/**
+	 * Median filter the first length values of the input with the default
+	 * window size, as {@link Filtering#medianFilter(double[])}
+	 * 
+	 * @param input
+	 *            values to filter
+	 * @param length
+	 *            number of values to filter
+	 * @param output
+	 *            receives the filtered values
+	 */
+	void medianFilter(double[] input, int length, double[] output) {
+		Filtering.medianFilter(input, length,
+				Filtering.getDefaultWindowSize(length), output, m_window);
+	}
+
+	/**
+	 * Get the number of points loaded, after duplicates are removed
+	 * 
+	 * @return number of points
+	 */
+	int getNumPoints() {
+		return m_numPoints;
+	}
+
+	double[] getX() {
+		return m_x;
+	}
+
+	double[] getY() {
+		return m_y;
+	}
+
+	long[] getTime() {
+		return m_time;
+	}
+
+	/**
+	 * Get the index of a loaded point in the original point list
+	 * 
+	 * @param i
+	 *            index of the loaded point
+	 * @return index of the original point
+	 */
+	int getSource(int i) {
+		return m_source[i];
+	}
+
+	/**
+	 * Check whether the time of a loaded point differs from the time of its
+	 * original point
+	 * 
+	 * @param i
+	 *            index of the loaded point
+	 * @return true if the time was changed
+	 */
+	boolean hasNewTime(int i) {
+		return m_newTime[i];
+	}
+
+	/**
+	 * Get the direction of each segment of the loaded points, before
+	 * unwrapping or smoothing
+	 * 
+	 * @return direction of the segment starting at each point
+	 */
+	double[] getRawDir() {
+		return m_rawDir;
+	}
+
+	/**
+	 * Get the length of each segment of the loaded points
+	 * 
+	 * @return length of the segment starting at each point
+	 */
+	double[] getSegLength() {
+		return m_segLength;
+	}
+
+	/**
+	 * Get scratch space for direction values, at least as long as the number
+	 * of loaded points. It is free once hooks have been found.
+	 * 
+	 * @return scratch space
+	 */
+	double[] getDirScratch() {
+		return m_dir;
+	}
+
+	/**
+	 * Get a second scratch space, like {@link #getDirScratch()}
+	 * 
+	 * @return scratch space
+	 */
+	double[] getDirNoShiftScratch() {
+		return m_smoothDir;
+	}
+
+	double getAvgCurvature() {
+		return m_avgCurvature;
+	}
+
+	double getMaxCurvToAvgCurvRatio() {
+		return m_maxCurvToAvgCurvRatio;
+	}
+}
@@ -36,6 +36,7 @@
 package srl.recognition.paleo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.openawt.geom.Line2D;
@@ -43,6 +44,7 @@ import org.openawt.geom.Point2D;
 import org.openawt.geom.Rectangle2D;
 
 import srl.core.sketch.BoundingBox;
+import srl.core.sketch.PackedStroke;
 import srl.core.sketch.Point;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
@@ -70,6 +72,12 @@ public class StrokeFeatures{
 	 */
 	protected List<Point> m_points;
 
+	/**
+	 * Packed (primitive array) view of m_points; rebuilt whenever the points
+	 * are cleaned
+	 */
+	protected PackedStroke m_packed;
+
 	/**
 	 * Boolean specifying whether or not the stroke is a single point
 	 */
@@ -310,32 +318,46 @@ public class StrokeFeatures{
 	 *            (through median filtering) should take place
 	 */
 	public StrokeFeatures(Stroke stroke, boolean smoothDirGraph) {
+		this(stroke, smoothDirGraph, StrokeFeatureBuffers.forCurrentThread());
+	}
+
+	/**
+	 * Constructor - takes a stroke and will compute miscellaneous features,
+	 * using the given buffers for intermediate values
+	 * 
+	 * @param stroke
+	 *            stroke to compute features for
+	 * @param smoothDirGraph
+	 *            flag specifying whether or not direction graph smoothing
+	 *            (through median filtering) should take place
+	 * @param buffers
+	 *            buffers to reuse; must not be in use by another thread
+	 */
+	public StrokeFeatures(Stroke stroke, boolean smoothDirGraph,
+			StrokeFeatureBuffers buffers) {
 		m_stroke = stroke;
 		m_smoothing = smoothDirGraph;
 
-		// copy stroke points
-		m_points = new ArrayList<Point>();
-		for (int i = 0; i < m_stroke.getNumPoints(); i++)
-			m_points.add((Point) m_stroke.getPoints().get(i).clone());
-
 		// check for single point instance
-		if (m_points.size() <= 1) {
+		if (m_stroke.getNumPoints() <= 1) {
 			m_isPoint = true;
 		}
 
-		// remove points with consecutive, duplicate x/y values or time values;
-		// this is needed in order to avoid divide by zero when calculating
-		// derivatives
-		removeDuplicates();
-
-		// compute initial derivative values
-		computeValues();
+		// copy stroke points, removing points with consecutive, duplicate x/y
+		// values or time values; this is needed in order to avoid divide by
+		// zero when calculating derivatives
+		buffers.load(m_stroke.getPoints());
 
-		// remove tails/hooks
-		removeHooks();
+		// compute initial derivative values and find tails/hooks
+		buffers.computeHookValues(m_smoothing);
+		m_avgCurvature = buffers.getAvgCurvature();
+		m_maxCurvToAvgCurvRatio = buffers.getMaxCurvToAvgCurvRatio();
+		int start = buffers.findHookStart();
+		int end = buffers.findHookEnd();
 
-		// compute new derivative values after tails are removed
-		computeValues();
+		// compute new derivative values with tails removed
+		copyPoints(buffers, start, end);
+		computeValues(buffers, start, end);
 
 		// compute miscellaneous features that a are specific to PaleoSketch
 		computePaleoFeatures();
@@ -360,6 +382,15 @@ public class StrokeFeatures{
 		return m_points;
 	}
 
+	/**
+	 * Get the points of the stroke (after cleaning) as a packed view
+	 * 
+	 * @return packed view of the points of the stroke
+	 */
+	public PackedStroke getPackedPoints() {
+		return m_packed;
+	}
+
 	/**
 	 * Gets the first point in the original stroke
 	 * 
@@ -681,10 +712,7 @@ public class StrokeFeatures{
 	 * @return array of x values for the stroke
 	 */
 	protected double[] getXVals(Stroke stroke) {
-		double[] x_vals = new double[stroke.getNumPoints()];
-		for (int i = 0; i < stroke.getNumPoints(); i++)
-			x_vals[i] = stroke.getPoints().get(i).getX();
-		return x_vals;
+		return stroke.getPackedStroke().getX().clone();
 	}
 
 	/**
@@ -695,93 +723,88 @@ public class StrokeFeatures{
 	 * @return array of y values for the stroke
 	 */
 	protected double[] getYVals(Stroke stroke) {
-		double[] y_vals = new double[stroke.getNumPoints()];
-		for (int i = 0; i < stroke.getNumPoints(); i++)
-			y_vals[i] = stroke.getPoints().get(i).getY();
-		return y_vals;
+		return stroke.getPackedStroke().getY().clone();
 	}
 
 	/**
-	 * Removes immediately subsequent points in the same location. (i.e., if the
-	 * mouse hasn't moved, it doesn't create a new point) If two points have the
-	 * same time stamp, the time on the first is changed to be interpolated
-	 * between the two surrounding points.
-	 */
-	protected void removeDuplicates() {
-		List<Point> newPoints = new ArrayList<Point>();
-		newPoints.add(m_points.get(0));
-
-		// add non-duplicates to new point list
-		for (int i = 1; i < getNumPoints(); i++) {
-
-			// same x and y value so the point is not added to the new list
-			if (m_points.get(i - 1).getX() == m_points.get(i).getX()
-					&& m_points.get(i - 1).getY() == m_points.get(i).getY()) {
-				// do nothing
-			} else {
-				// add point to new list
-				newPoints.add(m_points.get(i));
-
-				// check for same time value
-				if (newPoints.size() > 1
-						&& newPoints.get(newPoints.size() - 1).getTime() == newPoints
-								.get(newPoints.size() - 2).getTime()) {
-					if (newPoints.size() == 2) {
-						newPoints.set(newPoints.size() - 1, new Point(newPoints
-								.get(newPoints.size() - 1).getX(), newPoints
-								.get(newPoints.size() - 1).getY(), newPoints
-								.get(newPoints.size() - 1).getTime() + 1));
-					} else {
-						newPoints.set(newPoints.size() - 2, new Point(newPoints
-								.get(newPoints.size() - 2).getX(), newPoints
-								.get(newPoints.size() - 2).getY(), newPoints
-								.get(newPoints.size() - 3).getTime()
-								+ newPoints.get(newPoints.size() - 1).getTime()
-								/ 2));
-					}
-				}
-			}
+	 * Copy the points in the given range of the buffers, which hold the stroke
+	 * points with duplicates removed
+	 * 
+	 * @param buffers
+	 *            buffers holding the cleaned points
+	 * @param start
+	 *            index of the first point to keep
+	 * @param end
+	 *            index after the last point to keep
+	 */
+	protected void copyPoints(StrokeFeatureBuffers buffers, int start, int end) {
+		double[] x = buffers.getX();
+		double[] y = buffers.getY();
+		long[] time = buffers.getTime();
+		List<Point> origPoints = m_stroke.getPoints();
+		m_points = new ArrayList<Point>(Math.max(end - start, 0));
+		for (int i = start; i < end; i++) {
+			if (buffers.hasNewTime(i))
+				m_points.add(new Point(x[i], y[i], time[i]));
+			else
+				m_points.add(origPoints.get(buffers.getSource(i)).clone());
 		}
-		m_points = newPoints;
+		m_packed = new PackedStroke(Arrays.copyOfRange(x, start, end),
+				Arrays.copyOfRange(y, start, end), Arrays.copyOfRange(time,
+						start, end));
 	}
 
 	/**
-	 * Computes various derivatives
-	 */
-	protected void computeValues() {
-		m_dir = new double[getNumPoints() - 1];
-		m_dirNoShift = new double[getNumPoints() - 1];
-		m_segLength = new double[getNumPoints() - 1];
-		m_lengthSoFar = new double[getNumPoints() - 1];
-		if (getNumPoints() > 1) {
-			m_2lengthSoFar = new double[getNumPoints() - 2];
-			m_curvature = new double[getNumPoints() - 2];
-			m_curvNoAbs = new double[getNumPoints() - 2];
-			m_totalCurvature = new double[getNumPoints() - 2];
+	 * Computes various derivatives of the points in the given range of the
+	 * buffers. The segment directions and lengths are taken from the buffers
+	 * rather than computed again.
+	 * 
+	 * @param buffers
+	 *            buffers holding the cleaned points and their segments
+	 * @param start
+	 *            index of the first point
+	 * @param end
+	 *            index after the last point
+	 */
+	protected void computeValues(StrokeFeatureBuffers buffers, int start,
+			int end) {
+		int numPoints = end - start;
+		double[] rawDir = buffers.getRawDir();
+		double[] segLength = buffers.getSegLength();
+		m_dir = new double[numPoints - 1];
+		m_dirNoShift = new double[numPoints - 1];
+		m_segLength = new double[numPoints - 1];
+		m_lengthSoFar = new double[numPoints - 1];
+		if (numPoints > 1) {
+			m_2lengthSoFar = new double[numPoints - 2];
+			m_curvature = new double[numPoints - 2];
+			m_curvNoAbs = new double[numPoints - 2];
+			m_totalCurvature = new double[numPoints - 2];
 		} else {
-			m_2lengthSoFar = new double[getNumPoints() - 1];
-			m_curvature = new double[getNumPoints() - 1];
-			m_curvNoAbs = new double[getNumPoints() - 1];
-			m_totalCurvature = new double[getNumPoints() - 1];
+			m_2lengthSoFar = new double[numPoints - 1];
+			m_curvature = new double[numPoints - 1];
+			m_curvNoAbs = new double[numPoints - 1];
+			m_totalCurvature = new double[numPoints - 1];
 		}
 		m_max_curv = 0.0;
 		m_max_curv_index = 0;
 
-		// compute direction graph
-		for (int i = 0; i < getNumPoints() - 1; i++) {
-			m_dir[i] = Math.atan2(m_points.get(i + 1).getY()
-					- m_points.get(i).getY(), m_points.get(i + 1).getX()
-					- m_points.get(i).getX());
-			m_dirNoShift[i] = m_dir[i];
-			while ((i > 0) && (m_dir[i] - m_dir[i - 1] > Math.PI))
-				m_dir[i] = m_dir[i] - 2 * Math.PI;
-			while ((i > 0) && (m_dir[i - 1] - m_dir[i] > Math.PI))
-				m_dir[i] = m_dir[i] + 2 * Math.PI;
-			m_segLength[i] = Math.sqrt((m_points.get(i + 1).getY() - m_points
-					.get(i).getY())
-					* (m_points.get(i + 1).getY() - m_points.get(i).getY())
-					+ (m_points.get(i + 1).getX() - m_points.get(i).getX())
-					* (m_points.get(i + 1).getX() - m_points.get(i).getX()));
+		// compute direction graph; when smoothing, the unsmoothed values are
+		// kept in scratch buffers and filtered into m_dir and m_dirNoShift
+		double[] dir = m_smoothing ? buffers.getDirScratch() : m_dir;
+		double[] dirNoShift = m_smoothing ? buffers.getDirNoShiftScratch()
+				: m_dirNoShift;
+		for (int i = 0; i < numPoints - 1; i++) {
+			double d = rawDir[start + i];
+			dirNoShift[i] = d;
+			if (i > 0) {
+				while (d - dir[i - 1] > Math.PI)
+					d = d - 2 * Math.PI;
+				while (dir[i - 1] - d > Math.PI)
+					d = d + 2 * Math.PI;
+			}
+			dir[i] = d;
+			m_segLength[i] = segLength[start + i];
 			if (i == 0)
 				m_lengthSoFar[i] = m_segLength[i];
 			else
@@ -794,19 +817,19 @@ public class StrokeFeatures{
 
 		// perform smoothing if desired
 		if (m_smoothing) {
-			m_dir = Filtering.medianFilter(m_dir);
-			m_dirNoShift = Filtering.medianFilter(m_dirNoShift);
+			buffers.medianFilter(dir, m_dir.length, m_dir);
+			buffers.medianFilter(dirNoShift, m_dirNoShift.length, m_dirNoShift);
 		}
 
 		// compute curvature graph
-		for (int i = 0; i < getNumPoints() - 2; i++) {
+		for (int i = 0; i < numPoints - 2; i++) {
 			m_2lengthSoFar[i] = m_lengthSoFar[i + 1];
-			m_curvature[i] = Math.abs(m_dir[i + 1] - m_dir[i])
-					/ (m_segLength[i] + m_segLength[i + 1]);
 			m_curvNoAbs[i] = (m_dir[i + 1] - m_dir[i])
 					/ (m_segLength[i] + m_segLength[i + 1]);
-			if (Math.abs(m_curvature[i]) > m_max_curv && i != 0) {
-				m_max_curv = Math.abs(m_curvature[i]);
+			m_curvature[i] = Math.abs(m_dir[i + 1] - m_dir[i])
+					/ (m_segLength[i] + m_segLength[i + 1]);
+			if (m_curvature[i] > m_max_curv && i != 0) {
+				m_max_curv = m_curvature[i];
 				m_max_curv_index = i;
 			}
 			if (i == 0)
@@ -821,77 +844,6 @@ public class StrokeFeatures{
 		}
 	}
 
-	/**
-	 * Tail/hook removal code
-	 */
-	protected void removeHooks() {
-		// conditions for not removing tails (basically if stroke is too small)
-		if (getNumPoints() < Thresholds.active.M_HOOK_MINPOINTS || m_totalCurvature.length == 0
-				|| m_lengthSoFar[getNumPoints() - 2] < Thresholds.active.M_HOOK_MINSTROKELENGTH
-				|| m_strokelength < Thresholds.active.M_HOOK_MINSTROKELENGTH)
-			return;
-
-		double hookcurvature = 0;
-		int startindex = 0;
-
-		// check for hooks at the beginning of the stroke
-		for (int i = 1; i < getNumPoints() - 1; i++) {
-
-			// only check for tails near endpoints; if we have gone too far into
-			// the stroke then we are no longer checking for hooks
-			if (m_lengthSoFar[i] > Thresholds.active.M_HOOK_MAXHOOKLENGTH
-					|| m_lengthSoFar[i] / m_strokelength > Thresholds.active.M_HOOK_MAXHOOKPERCENT)
-				break;
-
-			// finding the maximum curvature value at the beginning of the
-			// stroke
-			if (Math.abs(m_totalCurvature[i]) > hookcurvature) {
-				hookcurvature = Math.abs(m_totalCurvature[i]);
-				startindex = i + 1;
-			}
-		}
-
-		// max curvature near start point is too small to denote a tail
-		if (hookcurvature < Thresholds.active.M_HOOK_MINHOOKCURVATURE)
-			startindex = 0;
-
-		// check for hooks at the end of the stroke
-		hookcurvature = 0;
-		int endindex = getNumPoints();
-		for (int i = 1; i < getNumPoints() - 1; i++) {
-
-			int startIndex = m_totalCurvature.length - 1 - i;
-			if (startIndex < 0)
-				startIndex = 0;
-
-			double c = m_totalCurvature[m_totalCurvature.length - 1]
-					- m_totalCurvature[startIndex];
-			double l = m_lengthSoFar[m_lengthSoFar.length - 1]
-					- m_lengthSoFar[m_lengthSoFar.length - 1 - i];
-
-			// we have gone too far into the stroke so we stop
-			if (l > Thresholds.active.M_HOOK_MAXHOOKLENGTH
-					|| l / m_strokelength > Thresholds.active.M_HOOK_MAXHOOKPERCENT)
-				break;
-
-			// finding max curvature value near end of the stroke
-			if (Math.abs(c) > hookcurvature) {
-				hookcurvature = Math.abs(c);
-				endindex = getNumPoints() - i;
-			}
-		}
-
-		// max curvature near end point is too small to denote a tail
-		if (Math.abs(hookcurvature) < Thresholds.active.M_HOOK_MINHOOKCURVATURE)
-			endindex = getNumPoints();
-
-		// update size, x, y, and time values with tails removed
-		List<Point> newPoints = new ArrayList<Point>();
-		for (int i = startindex; i < endindex; i++)
-			newPoints.add(m_points.get(i));
-		m_points = newPoints;
-	}
-
 	/**
 	 * Computes miscellaneous PaleoSketch features
 	 */
@@ -949,11 +901,13 @@ public class StrokeFeatures{
 	protected void calcTotalRotation() {
 		double sum = 0;
 		double deltaX, deltaY, deltaX1, deltaY1;
-		for (int i = 1; i < m_points.size() - 1; i++) {
-			deltaX = m_points.get(i + 1).getX() - m_points.get(i).getX();
-			deltaY = m_points.get(i + 1).getY() - m_points.get(i).getY();
-			deltaX1 = m_points.get(i).getX() - m_points.get(i - 1).getX();
-			deltaY1 = m_points.get(i).getY() - m_points.get(i - 1).getY();
+		double[] x = m_packed.getX();
+		double[] y = m_packed.getY();
+		for (int i = 1; i < x.length - 1; i++) {
+			deltaX = x[i + 1] - x[i];
+			deltaY = y[i + 1] - y[i];
+			deltaX1 = x[i] - x[i - 1];
+			deltaY1 = y[i] - y[i - 1];
 
 			// check for divide by zero; add or subtract PI/2 accordingly (this
 			// is the limit of atan as it approaches infinity)
@@ -1119,15 +1073,17 @@ public class StrokeFeatures{
 	 */
 	protected void calcBestFitLine() {
 		double sx = 0, sx2 = 0, sy = 0, sy2 = 0, sxy = 0;
+		double[] x = m_packed.getX();
+		double[] y = m_packed.getY();
 
 		// calculate sum of the x values, y values, x^2 values, y^2 values and
 		// x*y values (those needed to compute least squares line)
-		for (int i = 0; i < m_points.size(); i++) {
-			sx += m_points.get(i).getX();
-			sx2 += Math.pow(m_points.get(i).getX(), 2);
-			sy += m_points.get(i).getY();
-			sy2 += Math.pow(m_points.get(i).getY(), 2);
-			sxy += m_points.get(i).getX() * m_points.get(i).getY();
+		for (int i = 0; i < x.length; i++) {
+			sx += x[i];
+			sx2 += Math.pow(x[i], 2);
+			sy += y[i];
+			sy2 += Math.pow(y[i], 2);
+			sxy += x[i] * y[i];
 		}
 		Line2D l1 = new Line2D.Double();
 		Line2D l2 = new Line2D.Double();
@@ -1137,14 +1093,14 @@ public class StrokeFeatures{
 			// compute least squares line and error in the x direction
 			l1 = LeastSquares.bestFitLine(sx, sx2, sy, sxy, m_points.size(),
 					m_bounds);
-			err1 = LeastSquares.error(m_points, l1);
+			err1 = LeastSquares.error(x, y, l1);
 		} catch (Exception e) {
 		}
 		try {
 			// compute least squares line and error in the y direction
 			l2 = LeastSquares.bestFitLine(sy, sy2, sx, sxy, m_points.size(),
 					m_bounds);
-			err2 = LeastSquares.error(m_points, l2);
+			err2 = LeastSquares.error(x, y, l2);
 		} catch (Exception e) {
 		}
 
@@ -1348,7 +1304,7 @@ public class StrokeFeatures{
 	 * @return segmenter which breaks the stroke up at every 2pi interval in the
 	 *         direction graph
 	 */
-	public RevolutionSegmenter getRevSegmenter() {
+	public synchronized RevolutionSegmenter getRevSegmenter() {
 		if (m_rev_segments == null)
 			m_rev_segments = new RevolutionSegmenter(this);
 		return m_rev_segments;
@@ -0,0 +1,449 @@
+/**
+ * EndpointIndex.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2011 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.multistroke;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+
+/**
+ * Uniform grid of stroke endpoints, used to find the strokes that may be
+ * connected to a new stroke without comparing it to every stroke in the
+ * sketch. The path length and size of each indexed stroke are also kept so
+ * they do not have to be recomputed for every comparison.
+ */
+public class EndpointIndex {
+
+	/**
+	 * Default size of a grid cell
+	 */
+	public static final double DEFAULT_CELL_SIZE = 64.0;
+
+	/**
+	 * Size of a grid cell
+	 */
+	private final double m_cellSize;
+
+	/**
+	 * Grid cells (keyed by packed cell coordinates) holding the strokes that
+	 * have an endpoint in them
+	 */
+	private final Map<Long, List<Stroke>> m_cells = new HashMap<Long, List<Stroke>>();
+
+	/**
+	 * Indexed strokes, in the order they were added
+	 */
+	private final Map<Stroke, Entry> m_entries = new LinkedHashMap<Stroke, Entry>();
+
+	/**
+	 * Largest path length of any stroke added to the index
+	 */
+	private double m_maxPathLength = 0.0;
+
+	/**
+	 * Largest bounding box side of any stroke added to the index
+	 */
+	private double m_maxSize = 0.0;
+
+	/**
+	 * Number of strokes added so far (used to order query results)
+	 */
+	private long m_counter = 0;
+
+	/**
+	 * Orders strokes by the time they were added to the index
+	 */
+	private final Comparator<Stroke> m_addedOrder = new Comparator<Stroke>() {
+
+		@Override
+		public int compare(Stroke s1, Stroke s2) {
+			long o1 = m_entries.get(s1).order;
+			long o2 = m_entries.get(s2).order;
+			return (o1 < o2) ? -1 : ((o1 == o2) ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Create an index with the default cell size
+	 */
+	public EndpointIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param cellSize
+	 *            size of a grid cell
+	 */
+	public EndpointIndex(double cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("Cell size must be positive");
+		m_cellSize = cellSize;
+	}
+
+	/**
+	 * Add a stroke to the index (does nothing if it is already indexed)
+	 * 
+	 * @param stroke
+	 *            stroke to add
+	 */
+	public void add(Stroke stroke) {
+		if (stroke.getNumPoints() == 0 || m_entries.containsKey(stroke))
+			return;
+		Entry e = new Entry(stroke, m_counter++);
+		m_entries.put(stroke, e);
+		m_maxPathLength = Math.max(m_maxPathLength, e.pathLength);
+		m_maxSize = Math.max(m_maxSize, e.size);
+		addToCell(cellOf(e.first), stroke);
+		if (cellOf(e.last) != cellOf(e.first))
+			addToCell(cellOf(e.last), stroke);
+	}
+
+	/**
+	 * Remove a stroke from the index
+	 * 
+	 * @param stroke
+	 *            stroke to remove
+	 */
+	public void remove(Stroke stroke) {
+		Entry e = m_entries.remove(stroke);
+		if (e == null)
+			return;
+		removeFromCell(cellOf(e.first), stroke);
+		removeFromCell(cellOf(e.last), stroke);
+	}
+
+	/**
+	 * Determine if a stroke is indexed
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return true if the stroke is in the index
+	 */
+	public boolean contains(Stroke stroke) {
+		return m_entries.containsKey(stroke);
+	}
+
+	/**
+	 * Get the number of indexed strokes
+	 * 
+	 * @return number of strokes
+	 */
+	public int size() {
+		return m_entries.size();
+	}
+
+	/**
+	 * Remove all strokes from the index
+	 */
+	public void clear() {
+		m_cells.clear();
+		m_entries.clear();
+		m_maxPathLength = 0.0;
+		m_maxSize = 0.0;
+	}
+
+	/**
+	 * Get the path length of a stroke (cached if the stroke is indexed)
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return path length
+	 */
+	public double getPathLength(Stroke stroke) {
+		Entry e = m_entries.get(stroke);
+		return (e != null) ? e.pathLength : stroke.getPathLength();
+	}
+
+	/**
+	 * Get the larger side of the bounding box of a stroke (cached if the
+	 * stroke is indexed)
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @return larger of the bounding box width and height
+	 */
+	public double getSize(Stroke stroke) {
+		Entry e = m_entries.get(stroke);
+		return (e != null) ? e.size : Math.max(
+				stroke.getBoundingBox().height, stroke.getBoundingBox().width);
+	}
+
+	/**
+	 * Get the largest path length of any stroke added to the index (strokes
+	 * that have been removed still count, so this is an upper bound)
+	 * 
+	 * @return largest path length
+	 */
+	public double getMaxPathLength() {
+		return m_maxPathLength;
+	}
+
+	/**
+	 * Get the largest bounding box side of any stroke added to the index
+	 * (strokes that have been removed still count, so this is an upper bound)
+	 * 
+	 * @return largest bounding box side
+	 */
+	public double getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * Get the strokes with an endpoint within the given distance of a point
+	 * 
+	 * @param p
+	 *            point
+	 * @param radius
+	 *            search distance
+	 * @return strokes near the point, in the order they were added
+	 */
+	public List<Stroke> getStrokesNear(Point p, double radius) {
+		List<Point> pts = new ArrayList<Point>(1);
+		pts.add(p);
+		return getStrokesNear(pts, radius);
+	}
+
+	/**
+	 * Get the strokes with an endpoint within the given distance of either
+	 * endpoint of a stroke (the stroke itself is not returned)
+	 * 
+	 * @param stroke
+	 *            stroke
+	 * @param radius
+	 *            search distance
+	 * @return strokes near the endpoints, in the order they were added
+	 */
+	public List<Stroke> getStrokesNear(Stroke stroke, double radius) {
+		List<Point> pts = new ArrayList<Point>(2);
+		pts.add(stroke.getFirstPoint());
+		pts.add(stroke.getLastPoint());
+		List<Stroke> near = getStrokesNear(pts, radius);
+		near.remove(stroke);
+		return near;
+	}
+
+	/**
+	 * Get the strokes with an endpoint within the given distance of any of the
+	 * given points
+	 * 
+	 * @param pts
+	 *            points
+	 * @param radius
+	 *            search distance
+	 * @return strokes near the points, in the order they were added
+	 */
+	private List<Stroke> getStrokesNear(List<Point> pts, double radius) {
+		List<Stroke> near = new ArrayList<Stroke>();
+		if (m_entries.isEmpty())
+			return near;
+
+		long span = (long) Math.ceil(radius / m_cellSize);
+		if ((2 * span + 1) * (2 * span + 1) * pts.size() > m_entries.size()) {
+			// searching the cells would take longer than checking every stroke
+			for (Entry e : m_entries.values()) {
+				if (isNear(e, pts, radius))
+					near.add(e.stroke);
+			}
+			return near;
+		}
+
+		Map<Stroke, Stroke> found = new HashMap<Stroke, Stroke>();
+		for (Point p : pts) {
+			long cx = (long) Math.floor(p.getX() / m_cellSize);
+			long cy = (long) Math.floor(p.getY() / m_cellSize);
+			for (long x = cx - span; x <= cx + span; x++) {
+				for (long y = cy - span; y <= cy + span; y++) {
+					List<Stroke> cell = m_cells.get(key(x, y));
+					if (cell == null)
+						continue;
+					for (Stroke s : cell) {
+						if (!found.containsKey(s)
+								&& isNear(m_entries.get(s), pts, radius)) {
+							found.put(s, s);
+							near.add(s);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(near, m_addedOrder);
+		return near;
+	}
+
+	/**
+	 * Determine if either endpoint of an indexed stroke is within the given
+	 * distance of any of the points
+	 * 
+	 * @param e
+	 *            indexed stroke
+	 * @param pts
+	 *            points
+	 * @param radius
+	 *            search distance
+	 * @return true if an endpoint is near
+	 */
+	private boolean isNear(Entry e, List<Point> pts, double radius) {
+		for (Point p : pts) {
+			if (p.distance(e.first) <= radius || p.distance(e.last) <= radius)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the key of the cell that contains a point
+	 * 
+	 * @param p
+	 *            point
+	 * @return cell key
+	 */
+	private long cellOf(Point p) {
+		return key((long) Math.floor(p.getX() / m_cellSize),
+				(long) Math.floor(p.getY() / m_cellSize));
+	}
+
+	/**
+	 * Pack cell coordinates into a key
+	 * 
+	 * @param x
+	 *            cell column
+	 * @param y
+	 *            cell row
+	 * @return cell key
+	 */
+	private static long key(long x, long y) {
+		return (x << 32) ^ (y & 0xffffffffL);
+	}
+
+	/**
+	 * Add a stroke to a cell
+	 * 
+	 * @param key
+	 *            cell key
+	 * @param stroke
+	 *            stroke
+	 */
+	private void addToCell(long key, Stroke stroke) {
+		List<Stroke> cell = m_cells.get(key);
+		if (cell == null) {
+			cell = new ArrayList<Stroke>(2);
+			m_cells.put(key, cell);
+		}
+		cell.add(stroke);
+	}
+
+	/**
+	 * Remove a stroke from a cell
+	 * 
+	 * @param key
+	 *            cell key
+	 * @param stroke
+	 *            stroke
+	 */
+	private void removeFromCell(long key, Stroke stroke) {
+		List<Stroke> cell = m_cells.get(key);
+		if (cell == null)
+			return;
+		cell.remove(stroke);
+		if (cell.isEmpty())
+			m_cells.remove(key);
+	}
+
+	/**
+	 * Indexed stroke
+	 */
+	private static class Entry {
+
+		/**
+		 * Indexed stroke
+		 */
+		final Stroke stroke;
+
+		/**
+		 * Copy of the first point (endpoints may be renamed later)
+		 */
+		final Point first;
+
+		/**
+		 * Copy of the last point
+		 */
+		final Point last;
+
+		/**
+		 * Path length of the stroke
+		 */
+		final double pathLength;
+
+		/**
+		 * Larger side of the bounding box of the stroke
+		 */
+		final double size;
+
+		/**
+		 * Order the stroke was added in
+		 */
+		final long order;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param s
+		 *            stroke
+		 * @param order
+		 *            order the stroke was added in
+		 */
+		Entry(Stroke s, long order) {
+			stroke = s;
+			first = new Point(s.getFirstPoint().getX(), s.getFirstPoint()
+					.getY());
+			last = new Point(s.getLastPoint().getX(), s.getLastPoint().getY());
+			pathLength = s.getPathLength();
+			size = Math.max(s.getBoundingBox().height, s.getBoundingBox().width);
+			this.order = order;
+		}
+	}
+}
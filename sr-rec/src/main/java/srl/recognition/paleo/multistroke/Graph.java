@@ -112,10 +112,21 @@ public class Graph {
 	 *            node to remove
 	 */
 	public void removeNode(GraphNode node) {
-		for (List<GraphNode> list : m_adjList.values())
-			list.remove(node);
-		m_adjList.remove(node);
-		m_nodes.remove(node);
+		// edges are stored in both directions, so only the lists of the
+		// adjacent nodes can contain this node
+		List<GraphNode> adjacent = m_adjList.remove(node);
+		if (adjacent != null) {
+			for (GraphNode w : adjacent) {
+				List<GraphNode> list = m_adjList.get(w);
+				if (list != null)
+					list.remove(node);
+			}
+		}
+		// the node list holds an entry per edge added, and the nodes of a
+		// combined stroke share their endpoints with the strokes it replaced,
+		// so remove every entry rather than leave nodes without edges
+		while (m_nodes.remove(node))
+			;
 	}
 
 	/**
@@ -39,20 +39,24 @@ package srl.recognition.paleo.multistroke;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import srl.core.sketch.Interpretation;
 import srl.core.sketch.Point;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.core.util.IsAConstants;
+import srl.core.util.TimeBudget;
 import srl.recognition.IRecognitionResult;
 import srl.recognition.paleo.Fit;
 import srl.recognition.recognizer.IRecognizer;
+import srl.recognition.recognizer.ITimedRecognizer;
+import srl.recognition.recognizer.OverTimeException;
 
 
 /**
@@ -61,7 +65,7 @@ import srl.recognition.recognizer.IRecognizer;
  * @author bpaulson
  */
 public class MultiStrokePaleoRecognizer implements
-		IRecognizer<List<Stroke>, List<IRecognitionResult>> {
+		ITimedRecognizer<List<Stroke>, List<IRecognitionResult>> {
 
 	/**
 	 * Flag that turns off/on debug statements
@@ -99,7 +103,8 @@ public class MultiStrokePaleoRecognizer implements
 	private IRecognizer<Stroke, IRecognitionResult> m_paleo;
 
 	/**
-	 * Maps previously recognized strokes with their recognized shapes
+	 * Maps previously recognized strokes with their recognized shapes, in the
+	 * order they were recognized
 	 */
 	private Map<Stroke, IRecognitionResult> m_recognitionMap;
 
@@ -108,6 +113,18 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	private int m_strokeNum = 0;
 
+	/**
+	 * Flag denoting if the graph should be updated incrementally (only the
+	 * strokes near a new stroke are tested for connections)
+	 */
+	private boolean m_incremental = false;
+
+	/**
+	 * Endpoint index of the previously recognized strokes (only kept up to
+	 * date in incremental mode)
+	 */
+	private EndpointIndex m_index = new EndpointIndex();
+
 	/**
 	 * Flag denoting a shape that has is a combination of multiple strokes
 	 */
@@ -119,6 +136,17 @@ public class MultiStrokePaleoRecognizer implements
 	 */
 	private static final boolean USE_PERFECT_RECOGNITION = false;
 
+	/**
+	 * Time budget of the timed recognition in progress (null if recognition
+	 * is not timed)
+	 */
+	private TimeBudget m_budget = null;
+
+	/**
+	 * Time budget of the last timed recognition
+	 */
+	private TimeBudget m_lastBudget = null;
+
 	/**
 	 * Constructor
 	 * 
@@ -200,8 +228,7 @@ public class MultiStrokePaleoRecognizer implements
 	 *            graph
 	 */
 	private void removeNodes(Stroke s, Graph graph) {
-		for (int i = graph.getNodes().size() - 1; i >= 0; i--) {
-			GraphNode n = graph.getNodes().get(i);
+		for (GraphNode n : new ArrayList<GraphNode>(graph.getNodes())) {
 			if (n.getStroke().equals(s))
 				graph.removeNode(n);
 		}
@@ -241,6 +268,60 @@ public class MultiStrokePaleoRecognizer implements
 		return m_arrowGraph;
 	}
 
+	/**
+	 * Set whether the connectivity graph should be updated incrementally.
+	 * Incremental mode only compares a new stroke against strokes with nearby
+	 * endpoints, instead of rescanning every stroke each time a stroke is
+	 * recognized. Strokes are compared in the order they were recognized in
+	 * both modes, so the graph and the results are the same either way.
+	 * 
+	 * @param incremental
+	 *            true for incremental updates
+	 */
+	public void setIncremental(boolean incremental) {
+		if (incremental && !m_incremental) {
+			m_index.clear();
+			for (Stroke s : m_recognitionMap.keySet())
+				m_index.add(s);
+		}
+		m_incremental = incremental;
+	}
+
+	/**
+	 * Determine if the connectivity graph is updated incrementally
+	 * 
+	 * @return true if incremental mode is on
+	 */
+	public boolean isIncremental() {
+		return m_incremental;
+	}
+
+	/**
+	 * Store the recognition result of a stroke
+	 * 
+	 * @param s
+	 *            stroke
+	 * @param result
+	 *            recognition result
+	 */
+	private void putResult(Stroke s, IRecognitionResult result) {
+		m_recognitionMap.put(s, result);
+		if (m_incremental)
+			m_index.add(s);
+	}
+
+	/**
+	 * Remove the recognition result of a stroke
+	 * 
+	 * @param s
+	 *            stroke
+	 * @return removed result (null if there was none)
+	 */
+	private IRecognitionResult removeResult(Stroke s) {
+		m_index.remove(s);
+		return m_recognitionMap.remove(s);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -252,6 +333,7 @@ public class MultiStrokePaleoRecognizer implements
 		// step 1: process strokes in queue as single strokes
 		int size = m_strokeQueue.size();
 		for (int q = 0; q < size; q++) {
+			long stageStart = System.currentTimeMillis();
 			Stroke st = m_strokeQueue.get(0);
 			addStroke(st);
 			m_paleo.submitForRecognition(st);
@@ -266,34 +348,37 @@ public class MultiStrokePaleoRecognizer implements
 				}
 			}
 
-			m_recognitionMap.remove(st);
-			m_recognitionMap.put(st, shs);
+			removeResult(st);
+			putResult(st, shs);
 
 			// key set copy - needed to avoid concurrent modification in arrow
-			// check
-			Set<Stroke> strSet = new TreeSet<Stroke>();
-			for (Stroke s : m_recognitionMap.keySet())
-				strSet.add(s);
+			// check (made later, and only if needed, in incremental mode)
+			Set<Stroke> strSet = null;
+			if (!m_incremental)
+				strSet = getStrokeSet();
 
 			if (M_DEBUG)
 				System.out.println(st.getInterpretation().label + ": "
 						+ shs.getBestShape().getInterpretation().label + " "
 						+ shs.getBestShape().getInterpretation().confidence);
 			m_strokeQueue.remove(0);
+			addStageTime("single-stroke", stageStart);
 
 			// step 2: find closed loops and process those strokes first
-			if (getGraph().getNodes().size() > 0) {
+			stageStart = System.currentTimeMillis();
+			if (getGraph().getNodes().size() > 0 && hasTimeLeft()) {
 				List<GraphCycle> gc = TarjanAlgorithm.findCycles(getGraph());
 				Collections.sort(gc);
 
-				for (int i = 0; i < gc.size(); i++) {
+				for (int i = 0; i < gc.size() && hasTimeLeft(); i++) {
 					if (M_DEBUG)
 						System.out.print(i + ": " + gc.get(i));
 
 					// make sure graph still contains nodes
 					boolean missingStroke = false;
 					for (Stroke s : gc.get(i).getStrokes()) {
-						if (!containsStroke(s, m_graph)) {
+						if (m_incremental ? !m_index.contains(s)
+								: !containsStroke(s, m_graph)) {
 							if (M_DEBUG)
 								System.out
 										.println(" aborted - stroke not in graph");
@@ -311,7 +396,9 @@ public class MultiStrokePaleoRecognizer implements
 					List<Shape> origShapes = getShapes(gc.get(i));
 					Stroke str = combineStrokes(gc.get(i).getStrokes());
 					m_paleo.submitForRecognition(str);
-					IRecognitionResult shapes = m_paleo.recognize();
+					IRecognitionResult shapes = recognizeCombined();
+					if (shapes == null)
+						break;
 					List<Shape> subshapes = new ArrayList<Shape>();
 					for (Shape sh : shapes.getNBestList()) {
 						sh.setShapes(subshapes);
@@ -474,7 +561,7 @@ public class MultiStrokePaleoRecognizer implements
 					// add strokes to recognized map and remove from queue
 					for (Stroke s : gc.get(i).getStrokes()) {
 						// remove old recognition results from map
-						IRecognitionResult old = m_recognitionMap.remove(s);
+						IRecognitionResult old = removeResult(s);
 
 						// add old shape as a subshape to new shape
 						if (old != null)
@@ -491,14 +578,18 @@ public class MultiStrokePaleoRecognizer implements
 					}
 
 					// add new result
-					m_recognitionMap.put(str, shapes);
+					putResult(str, shapes);
 					addStroke(str);
 				}
 			}
 
+			addStageTime("cycles", stageStart);
+
 			// step 3: see if we have a polyline2 and if so, check for arrows
+			stageStart = System.currentTimeMillis();
 			IRecognitionResult r = m_recognitionMap.get(st);
 			if (r != null
+					&& hasTimeLeft()
 					&& r.getBestShape() != null
 					&& r.getBestShape().getInterpretation().label != null
 					&& r.getBestShape().getInterpretation().label
@@ -519,7 +610,17 @@ public class MultiStrokePaleoRecognizer implements
 				}
 
 				// see if any strokes are close to midpoint of arrow head
-				for (Stroke s : strSet) {
+				Set<Stroke> candidates = strSet;
+				if (m_incremental) {
+					double radius = Math.max(10.0,
+							(m_index.getMaxPathLength() + st.getPathLength())
+									* 0.1);
+					candidates = new TreeSet<Stroke>(m_index.getStrokesNear(
+							midPt, radius));
+				}
+				for (Stroke s : candidates) {
+					if (!hasTimeLeft())
+						break;
 					if (s.equals(st))
 						continue;
 					double dis = midPt.distance(s.getLastPoint());
@@ -539,7 +640,9 @@ public class MultiStrokePaleoRecognizer implements
 
 						// see if we have an arrow now
 						m_paleo.submitForRecognition(c);
-						IRecognitionResult shapes = m_paleo.recognize();
+						IRecognitionResult shapes = recognizeCombined();
+						if (shapes == null)
+							break;
 						removeInterpretation(shapes, Fit.COMPLEX);
 						List<Shape> subshapes = new ArrayList<Shape>();
 						for (Shape sh : shapes.getNBestList()) {
@@ -572,8 +675,7 @@ public class MultiStrokePaleoRecognizer implements
 							for (Stroke s1 : strList) {
 
 								// remove old recognition results from map
-								IRecognitionResult old = m_recognitionMap
-										.remove(s1);
+								IRecognitionResult old = removeResult(s1);
 
 								// add old shape as a subshape to new shape
 								if (old != null)
@@ -590,7 +692,7 @@ public class MultiStrokePaleoRecognizer implements
 							}
 
 							// add new result
-							m_recognitionMap.put(c, shapes);
+							putResult(c, shapes);
 							addStroke(c);
 						}
 					}
@@ -601,13 +703,18 @@ public class MultiStrokePaleoRecognizer implements
 			// step 4: see if we have a line and if so, check for arrow with
 			// existing poly2
 			if (r != null
+					&& hasTimeLeft()
 					&& r.getBestShape() != null
 					&& r.getBestShape().getInterpretation().label != null
 					&& r.getBestShape().getInterpretation().label
 							.equalsIgnoreCase(Fit.LINE)) {
 
 				// find poly2s
+				if (strSet == null)
+					strSet = getStrokeSet();
 				for (Stroke s : strSet) {
+					if (!hasTimeLeft())
+						break;
 					IRecognitionResult r2 = m_recognitionMap.get(s);
 					if (s.equals(st)
 							|| r2 == null
@@ -650,7 +757,9 @@ public class MultiStrokePaleoRecognizer implements
 
 						// see if we have an arrow now
 						m_paleo.submitForRecognition(c);
-						IRecognitionResult shapes = m_paleo.recognize();
+						IRecognitionResult shapes = recognizeCombined();
+						if (shapes == null)
+							break;
 						removeInterpretation(shapes, Fit.COMPLEX);
 						List<Shape> subshapes = new ArrayList<Shape>();
 						for (Shape sh : shapes.getNBestList()) {
@@ -678,8 +787,7 @@ public class MultiStrokePaleoRecognizer implements
 							for (Stroke s1 : strList) {
 
 								// remove old recognition results from map
-								IRecognitionResult old = m_recognitionMap
-										.remove(s1);
+								IRecognitionResult old = removeResult(s1);
 
 								// add old shape as a subshape to new shape
 								if (old != null)
@@ -696,12 +804,13 @@ public class MultiStrokePaleoRecognizer implements
 							}
 
 							// add new result
-							m_recognitionMap.put(c, shapes);
+							putResult(c, shapes);
 							addStroke(c);
 						}
 					}
 				}
 			}
+			addStageTime("arrows", stageStart);
 		}
 
 		List<IRecognitionResult> results = new ArrayList<IRecognitionResult>();
@@ -712,6 +821,85 @@ public class MultiStrokePaleoRecognizer implements
 		return results;
 	}
 
+	/**
+	 * Recognize the queued strokes within the given time. Every queued stroke
+	 * is still recognized on its own, but searching for closed cycles and
+	 * arrows to combine stops when the time runs out, and the results found so
+	 * far are returned. {@link #getTimeBudget()} tells how long each stage
+	 * took.
+	 * 
+	 * @param maxTime
+	 *            maximum time in milliseconds
+	 * @return recognition results
+	 */
+	@Override
+	public List<IRecognitionResult> recognizeTimed(long maxTime) {
+		m_budget = new TimeBudget(maxTime);
+		try {
+			return recognize();
+		} finally {
+			m_lastBudget = m_budget;
+			m_budget = null;
+		}
+	}
+
+	/**
+	 * Get the time budget of the last call to {@link #recognizeTimed(long)}
+	 * 
+	 * @return last time budget, or null if recognition has not been timed
+	 */
+	public TimeBudget getTimeBudget() {
+		return m_lastBudget;
+	}
+
+	/**
+	 * Check whether more strokes may be combined
+	 * 
+	 * @return true if recognition is not timed or time is left
+	 */
+	private boolean hasTimeLeft() {
+		return m_budget == null || !m_budget.isOverTime();
+	}
+
+	/**
+	 * Record the time used by a stage of a timed recognition
+	 * 
+	 * @param stage
+	 *            name of the stage
+	 * @param startTime
+	 *            time the stage started
+	 */
+	private void addStageTime(String stage, long startTime) {
+		if (m_budget != null)
+			m_budget.addStageTime(stage, startTime);
+	}
+
+	/**
+	 * Recognize the combined stroke submitted to the low-level recognizer. If
+	 * recognition is timed and the low-level recognizer supports it, it only
+	 * gets the time that is left.
+	 * 
+	 * @return recognition result, or null if the time ran out before it was
+	 *         complete
+	 */
+	@SuppressWarnings("unchecked")
+	private IRecognitionResult recognizeCombined() {
+		if (m_budget == null || !(m_paleo instanceof ITimedRecognizer))
+			return m_paleo.recognize();
+		long remaining = m_budget.timeRemaining();
+		if (remaining <= 0)
+			return null;
+		try {
+			IRecognitionResult result = ((ITimedRecognizer<Stroke, IRecognitionResult>) m_paleo)
+					.recognizeTimed(remaining);
+
+			// only combine strokes based on a complete recognition
+			return m_budget.isOverTime() ? null : result;
+		} catch (OverTimeException ote) {
+			return null;
+		}
+	}
+
 	/**
 	 * Removes an interpretation from a list of interpretations
 	 * 
@@ -1022,7 +1210,10 @@ public class MultiStrokePaleoRecognizer implements
 	 *            stroke to add
 	 */
 	public void addStroke(Stroke stroke) {
-		// step 1 (optional): label stroke
+		// step 1 (optional): label stroke (combined strokes have no
+		// interpretation yet)
+		if (stroke.getInterpretation() == null)
+			stroke.addInterpretation(new Interpretation());
 		if (stroke.getInterpretation().label == null
 				|| stroke.getInterpretation().label.equalsIgnoreCase("")) {
 			((Point) stroke.getFirstPoint()).setName(m_strokeNum + "A");
@@ -1042,14 +1233,23 @@ public class MultiStrokePaleoRecognizer implements
 		// step 2: add to graph if connected
 		List<Stroke> allStrokes = new ArrayList<Stroke>();
 		allStrokes.add(stroke);
-		allStrokes.addAll(m_recognitionMap.keySet());
+		double strokeLength = m_index.getPathLength(stroke);
+		double strokeSize = m_index.getSize(stroke);
+		if (m_incremental) {
+			// endpoints further away than the largest possible threshold
+			// cannot be connected
+			double radius = Math.max(8.0, Math.min(
+					(strokeLength + m_index.getMaxPathLength()) / 2.0
+							* THRESHOLD,
+					(strokeSize + m_index.getMaxSize()) * THRESHOLD / 1.5));
+			allStrokes.addAll(m_index.getStrokesNear(stroke, radius));
+		} else
+			allStrokes.addAll(m_recognitionMap.keySet());
 		for (int i = 0; i < allStrokes.size(); i++) {
 			Stroke str = allStrokes.get(i);
-			double pathLength = (stroke.getPathLength() + str.getPathLength()) / 2.0;
+			double pathLength = (strokeLength + m_index.getPathLength(str)) / 2.0;
 			double threshold = pathLength * THRESHOLD;
-			double threshold2 = ((Math.max(stroke.getBoundingBox().height,
-					stroke.getBoundingBox().width)) + (Math.max(
-					str.getBoundingBox().height, str.getBoundingBox().width)))
+			double threshold2 = (strokeSize + m_index.getSize(str))
 					* THRESHOLD / 1.5;
 
 			// dont test stroke against itself
@@ -1100,6 +1300,18 @@ public class MultiStrokePaleoRecognizer implements
 		}
 	}
 
+	/**
+	 * Get the previously recognized strokes, ordered by time
+	 * 
+	 * @return copy of the recognized strokes
+	 */
+	private Set<Stroke> getStrokeSet() {
+		Set<Stroke> strSet = new TreeSet<Stroke>();
+		for (Stroke s : m_recognitionMap.keySet())
+			strSet.add(s);
+		return strSet;
+	}
+
 	/**
 	 * Cuts the stroke at a certain index
 	 * 
@@ -1134,7 +1346,8 @@ public class MultiStrokePaleoRecognizer implements
 		m_strokeQueue = new ArrayList<Stroke>();
 		m_graph = new Graph();
 		m_arrowGraph = new Graph();
-		m_recognitionMap = new HashMap<Stroke, IRecognitionResult>();
+		m_recognitionMap = new LinkedHashMap<Stroke, IRecognitionResult>();
+		m_index.clear();
 	}
 
 	/**
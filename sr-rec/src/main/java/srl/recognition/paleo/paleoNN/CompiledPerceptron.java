@@ -0,0 +1,342 @@
+/**
+ * CompiledPerceptron.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.paleoNN;
+
+import java.io.Serializable;
+
+/**
+ * A trained multilayer perceptron flattened into plain arrays, so it can
+ * classify {@code double[]} feature vectors without WEKA. Networks are built
+ * by {@link PerceptronExporter} and give the same class distribution as
+ * {@link weka.classifiers.functions.MultilayerPerceptron#distributionForInstance(weka.core.Instance)}:
+ * the same missing value replacement and attribute normalization, the same
+ * units, and the same order of operations.
+ * <p>
+ * The network holds no state while classifying, so one instance can be used
+ * by many threads at once.
+ * <p>
+ * Values are numbered with the features first (after normalization), then
+ * every unit in an order where each unit comes after its inputs. Unit
+ * {@code u} reads the values {@code m_inputs[m_inputStarts[u]]} to
+ * {@code m_inputs[m_inputStarts[u + 1] - 1]}. Its weights start at
+ * {@code m_inputStarts[u] + u}, with the bias first.
+ */
+public class CompiledPerceptron implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of features the network takes
+	 */
+	private final int m_numFeatures;
+
+	/**
+	 * Value subtracted from each feature before scaling
+	 */
+	private final double[] m_featureBases;
+
+	/**
+	 * Value each feature is divided by after subtracting its base
+	 */
+	private final double[] m_featureRanges;
+
+	/**
+	 * Value used for each feature when it is missing (NaN), or null to leave
+	 * missing features as NaN
+	 */
+	private final double[] m_missingValues;
+
+	/**
+	 * Start of the inputs of each unit, plus the total number of inputs
+	 */
+	private final int[] m_inputStarts;
+
+	/**
+	 * Value read by each input of each unit
+	 */
+	private final int[] m_inputs;
+
+	/**
+	 * Bias and input weights of each unit
+	 */
+	private final double[] m_weights;
+
+	/**
+	 * Flags units whose output is their weighted sum; other units squash it
+	 * with a sigmoid
+	 */
+	private final boolean[] m_linear;
+
+	/**
+	 * Value holding the output of each class
+	 */
+	private final int[] m_outputs;
+
+	/**
+	 * Create a network from its arrays. The arrays are kept, not copied.
+	 *
+	 * @param featureBases
+	 *            value subtracted from each feature before scaling
+	 * @param featureRanges
+	 *            value each feature is divided by after subtracting its base
+	 * @param missingValues
+	 *            value used for each missing feature, or null
+	 * @param inputStarts
+	 *            start of the inputs of each unit, plus the total number of
+	 *            inputs
+	 * @param inputs
+	 *            value read by each input of each unit
+	 * @param weights
+	 *            bias and input weights of each unit
+	 * @param linear
+	 *            flags linear units
+	 * @param outputs
+	 *            value holding the output of each class
+	 */
+	public CompiledPerceptron(double[] featureBases, double[] featureRanges,
+			double[] missingValues, int[] inputStarts, int[] inputs,
+			double[] weights, boolean[] linear, int[] outputs) {
+		m_numFeatures = featureBases.length;
+		int numUnits = linear.length;
+		if (featureRanges.length != m_numFeatures
+				|| (missingValues != null && missingValues.length != m_numFeatures)
+				|| inputStarts.length != numUnits + 1
+				|| inputs.length != inputStarts[numUnits]
+				|| weights.length != inputs.length + numUnits)
+			throw new IllegalArgumentException("Network arrays do not match");
+		for (int u = 0; u < numUnits; u++) {
+			for (int i = inputStarts[u]; i < inputStarts[u + 1]; i++) {
+				if (inputs[i] < 0 || inputs[i] >= m_numFeatures + u)
+					throw new IllegalArgumentException("Unit " + u
+							+ " reads a value that is not computed before it");
+			}
+		}
+		for (int output : outputs) {
+			if (output < 0 || output >= m_numFeatures + numUnits)
+				throw new IllegalArgumentException("Output " + output
+						+ " is not a value of the network");
+		}
+		m_featureBases = featureBases;
+		m_featureRanges = featureRanges;
+		m_missingValues = missingValues;
+		m_inputStarts = inputStarts;
+		m_inputs = inputs;
+		m_weights = weights;
+		m_linear = linear;
+		m_outputs = outputs;
+	}
+
+	/**
+	 * @return number of features the network takes
+	 */
+	public int getNumFeatures() {
+		return m_numFeatures;
+	}
+
+	/**
+	 * @return number of classes the network distinguishes
+	 */
+	public int getNumClasses() {
+		return m_outputs.length;
+	}
+
+	/**
+	 * @return number of units (hidden and output) in the network
+	 */
+	public int getNumUnits() {
+		return m_linear.length;
+	}
+
+	/**
+	 * Get the length of the scratch buffer
+	 * {@link #distribution(double[], double[], double[])} needs
+	 *
+	 * @return number of values the network computes
+	 */
+	public int getNumValues() {
+		return m_numFeatures + m_linear.length;
+	}
+
+	/**
+	 * Classify a feature vector
+	 *
+	 * @param features
+	 *            features, in the order of the attributes the network was
+	 *            trained on, without the class
+	 * @return probability of each class, or null if every output was zero
+	 *         (WEKA falls back to its default model then)
+	 */
+	public double[] distribution(double[] features) {
+		double[] result = new double[m_outputs.length];
+		if (!distribution(features, new double[getNumValues()], result))
+			return null;
+		return result;
+	}
+
+	/**
+	 * Classify a feature vector without allocating
+	 *
+	 * @param features
+	 *            features, in the order of the attributes the network was
+	 *            trained on, without the class
+	 * @param values
+	 *            scratch buffer of at least {@link #getNumValues()} values
+	 * @param result
+	 *            receives the probability of each class
+	 * @return false if every output was zero, in which case the result is not
+	 *         a distribution
+	 */
+	public boolean distribution(double[] features, double[] values,
+			double[] result) {
+		checkFeatures(features);
+		for (int f = 0; f < m_numFeatures; f++)
+			values[f] = normalize(f, features[f]);
+
+		int value = m_numFeatures;
+		for (int u = 0; u < m_linear.length; u++, value++) {
+			int start = m_inputStarts[u];
+			int end = m_inputStarts[u + 1];
+			int w = start + u;
+			double sum = m_weights[w++];
+			for (int i = start; i < end; i++, w++)
+				sum += values[m_inputs[i]] * m_weights[w];
+			values[value] = m_linear[u] ? sum : sigmoid(sum);
+		}
+
+		for (int c = 0; c < m_outputs.length; c++)
+			result[c] = values[m_outputs[c]];
+		return normalizeDistribution(result);
+	}
+
+	/**
+	 * Classify many feature vectors at once. Each weight is read once for the
+	 * whole batch, and the inner loops run over the batch, which is much
+	 * faster than classifying the vectors one at a time. The results are
+	 * identical to {@link #distribution(double[])}.
+	 *
+	 * @param features
+	 *            feature vectors to classify
+	 * @return probability of each class for each vector; the entry is null
+	 *         if every output was zero for that vector
+	 */
+	public double[][] distributions(double[][] features) {
+		int batch = features.length;
+		double[][] values = new double[getNumValues()][batch];
+		for (int b = 0; b < batch; b++) {
+			checkFeatures(features[b]);
+			for (int f = 0; f < m_numFeatures; f++)
+				values[f][b] = normalize(f, features[b][f]);
+		}
+
+		int value = m_numFeatures;
+		for (int u = 0; u < m_linear.length; u++, value++) {
+			int start = m_inputStarts[u];
+			int end = m_inputStarts[u + 1];
+			int w = start + u;
+			double[] sums = values[value];
+			double bias = m_weights[w++];
+			for (int b = 0; b < batch; b++)
+				sums[b] = bias;
+			for (int i = start; i < end; i++, w++) {
+				double[] in = values[m_inputs[i]];
+				double weight = m_weights[w];
+				for (int b = 0; b < batch; b++)
+					sums[b] += in[b] * weight;
+			}
+			if (!m_linear[u]) {
+				for (int b = 0; b < batch; b++)
+					sums[b] = sigmoid(sums[b]);
+			}
+		}
+
+		double[][] results = new double[batch][];
+		for (int b = 0; b < batch; b++) {
+			double[] result = new double[m_outputs.length];
+			for (int c = 0; c < m_outputs.length; c++)
+				result[c] = values[m_outputs[c]][b];
+			if (normalizeDistribution(result))
+				results[b] = result;
+		}
+		return results;
+	}
+
+	/**
+	 * Check the length of a feature vector
+	 */
+	private void checkFeatures(double[] features) {
+		if (features.length != m_numFeatures)
+			throw new IllegalArgumentException("Expected " + m_numFeatures
+					+ " features, got " + features.length);
+	}
+
+	/**
+	 * @return the feature after missing value replacement and normalization
+	 */
+	private double normalize(int f, double feature) {
+		if (Double.isNaN(feature) && m_missingValues != null)
+			feature = m_missingValues[f];
+		return (feature - m_featureBases[f]) / m_featureRanges[f];
+	}
+
+	/**
+	 * Sigmoid squashing function, clipped as WEKA's SigmoidUnit clips it
+	 */
+	private static double sigmoid(double value) {
+		if (value < -45)
+			return 0;
+		else if (value > 45)
+			return 1;
+		return 1 / (1 + Math.exp(-value));
+	}
+
+	/**
+	 * Scale the outputs so they sum to one
+	 *
+	 * @return false if they sum to zero or less
+	 */
+	private static boolean normalizeDistribution(double[] result) {
+		double count = 0;
+		for (int c = 0; c < result.length; c++)
+			count += result[c];
+		if (count <= 0)
+			return false;
+		for (int c = 0; c < result.length; c++)
+			result[c] /= count;
+		return true;
+	}
+}
@@ -37,10 +37,9 @@
  */
 package srl.recognition.paleo.paleoNN;
 
-import java.io.InputStream;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,16 +47,20 @@ import org.slf4j.LoggerFactory;
 import srl.core.sketch.Shape;
 import srl.core.sketch.Stroke;
 import srl.patternrec.classifiers.core.CResult;
+import srl.patternrec.classifiers.core.FVector;
 import srl.patternrec.classifiers.core.Classifiable;
 import srl.patternrec.classifiers.core.Classifier;
 import srl.recognition.IRecognitionResult;
 import srl.recognition.RecognitionResult;
+import srl.recognition.cache.RecognitionResultCache;
+import srl.recognition.cache.StrokeKey;
 import srl.recognition.paleo.ComplexFitNN;
 import srl.recognition.paleo.Fit;
 import srl.recognition.paleo.PaleoConfig;
 import srl.recognition.paleo.PaleoFeatureExtractor;
 import srl.recognition.paleo.StrokeFeatures;
 import srl.recognition.recognizer.IRecognizer;
+import srl.recognition.recognizer.ModelRegistry;
 import weka.classifiers.functions.MultilayerPerceptron;
 import weka.core.Instance;
 
@@ -70,10 +73,20 @@ public class PaleoNNRecognizer extends Classifier implements
 IRecognizer<Stroke, IRecognitionResult> {
 
 	/**
-	 * Neural net
+	 * Model of the neural net
+	 */
+	private static final String MODEL = "models/paleo.limited.model";
+
+	/**
+	 * Neural net (shared by every recognizer)
 	 */
 	private MultilayerPerceptron m_nn;
 
+	/**
+	 * Compiled form of each neural net
+	 */
+	private static final Map<MultilayerPerceptron, CompiledNN> s_compiledNNs = new WeakHashMap<MultilayerPerceptron, CompiledNN>();
+
 	/**
 	 * Stroke features
 	 */
@@ -95,9 +108,10 @@ IRecognizer<Stroke, IRecognitionResult> {
 	private Stroke m_stroke;
 
 	/**
-	 * Keeps a history of previously recognized strokes
+	 * Keeps a history of previously recognized strokes (created when history
+	 * is turned on)
 	 */
-	private Map<Stroke, IRecognitionResult> m_history = new HashMap<Stroke, IRecognitionResult>();
+	private RecognitionResultCache m_history;
 
 	/**
 	 * Flag denoting if complex test should be performed
@@ -108,6 +122,12 @@ IRecognizer<Stroke, IRecognitionResult> {
 	 * Flag denoting if history should be turned on
 	 */
 	private boolean m_historyOn = false;
+
+	/**
+	 * Flag denoting if the compiled neural net should be used instead of
+	 * WEKA when it gives the same results
+	 */
+	private boolean m_fastInference = true;
 	
 	private Logger log = LoggerFactory.getLogger(PaleoNNRecognizer.class);
 
@@ -119,10 +139,64 @@ IRecognizer<Stroke, IRecognitionResult> {
 	 */
 	public PaleoNNRecognizer(PaleoConfig config) {
 
-		resetNN();
+		loadNN();
 		m_config = config;
 	}
 
+	/**
+	 * Constructor for a recognizer that shares an already loaded neural
+	 * network (used to hold the state of a single recognition call)
+	 * 
+	 * @param config
+	 *            paleo config file
+	 * @param nn
+	 *            neural network to share
+	 */
+	private PaleoNNRecognizer(PaleoConfig config, MultilayerPerceptron nn) {
+		m_nn = nn;
+		m_config = config;
+	}
+
+	/**
+	 * Recognize the given stroke without modifying the state of this
+	 * recognizer. The stroke, its features and fits are kept in a context
+	 * that only lives for this call and shares this recognizer's neural
+	 * network, so one instance can be used by many threads at once.
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param config
+	 *            paleo config file to recognize with
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(Stroke stroke, PaleoConfig config) {
+		return recognize(stroke, config, null);
+	}
+
+	/**
+	 * Recognize the given stroke without modifying the state of this
+	 * recognizer, reusing already computed stroke features
+	 * 
+	 * @param stroke
+	 *            stroke to recognize
+	 * @param config
+	 *            paleo config file to recognize with
+	 * @param features
+	 *            features of the stroke (null if they should be computed)
+	 * @return recognition result
+	 */
+	public IRecognitionResult recognize(Stroke stroke, PaleoConfig config,
+			StrokeFeatures features) {
+		PaleoNNRecognizer context = new PaleoNNRecognizer(config, m_nn);
+		context.m_history = m_history;
+		context.m_historyOn = m_historyOn;
+		context.m_fastInference = m_fastInference;
+		context.submitForRecognition(stroke);
+		if (features != null)
+			context.setFeatures(features);
+		return context.recognize();
+	}
+
 	/**
 	 * Set the stroke features
 	 * 
@@ -134,25 +208,124 @@ IRecognizer<Stroke, IRecognitionResult> {
 		m_pfe = new PaleoFeatureExtractor(m_features, m_config);
 	}
 
+	/**
+	 * Turn the compiled neural net on or off. When on, strokes are
+	 * classified by a {@link CompiledPerceptron} instead of WEKA, as long as
+	 * the net can be compiled and gives the same results as WEKA on the
+	 * first stroke it is used for.
+	 * 
+	 * @param flag
+	 *            true if the compiled net should be used
+	 */
+	public void setFastInference(boolean flag) {
+		m_fastInference = flag;
+	}
+
+	/**
+	 * Get the neural net compiled for classifying without WEKA, for example
+	 * to classify the features of many strokes at once with
+	 * {@link CompiledPerceptron#distributions(double[][])}. The compiled net
+	 * may not have been checked against WEKA yet; {@link #recognize()} checks
+	 * it on the first stroke it classifies and stops using it if it differs.
+	 * 
+	 * @return compiled neural net, or null if the net cannot be compiled or
+	 *         has been found to differ from WEKA
+	 */
+	public CompiledPerceptron getCompiledNN() {
+		return m_nn != null ? getCompiledNN(m_nn, null) : null;
+	}
+
+	/**
+	 * Get the compiled form of a neural net, compiling it the first time
+	 * 
+	 * @param nn
+	 *            neural net
+	 * @param check
+	 *            extractor whose stroke the compiled net must classify as
+	 *            WEKA does before it is used, or null
+	 * @return compiled neural net, or null if it should not be used
+	 */
+	private CompiledPerceptron getCompiledNN(MultilayerPerceptron nn,
+			PaleoFeatureExtractor check) {
+		synchronized (s_compiledNNs) {
+			CompiledNN entry = s_compiledNNs.get(nn);
+			if (entry == null) {
+				entry = new CompiledNN();
+				try {
+					entry.compiled = PerceptronExporter.compile(nn);
+				} catch (Exception ex) {
+					log.warn("Cannot compile PaleoNN model, using WEKA", ex);
+				}
+				s_compiledNNs.put(nn, entry);
+			}
+			if (check != null && entry.compiled != null && !entry.verified) {
+				try {
+					if (!PerceptronExporter.matches(nn, entry.compiled,
+							check.getInstance(null))) {
+						log.warn("Compiled PaleoNN model does not match WEKA, using WEKA");
+						entry.compiled = null;
+					}
+				} catch (Exception ex) {
+					log.warn("Cannot check compiled PaleoNN model, using WEKA",
+							ex);
+					entry.compiled = null;
+				}
+				entry.verified = true;
+			}
+			return entry.compiled;
+		}
+	}
+
+	/**
+	 * Turn the history of previously recognized strokes on or off
+	 * 
+	 * @param flag
+	 *            true if history should be kept
+	 */
 	public void setHistoryOn(boolean flag) {
 		m_historyOn = flag;
+		if (m_historyOn && m_history == null)
+			m_history = new RecognitionResultCache();
 	}
 
 	/**
-	 * Resets the neural network
-	 * @throws Exception 
+	 * Set the cache used to keep the history of previously recognized strokes
+	 * (turns history on if the cache is not null)
+	 * 
+	 * @param history
+	 *            result cache
 	 */
-	private void resetNN() {
-		try{
-		InputStream is = PaleoNNRecognizer.class
-				.getResourceAsStream("models/paleo.limited.model");
-		if (is != null)
-			m_nn = (MultilayerPerceptron) weka.core.SerializationHelper
-			.read(is);
-		}
-		catch(Exception ex){
-			log.error("Error loading PaleoNN Model", ex);
-		}
+	public void setHistory(RecognitionResultCache history) {
+		m_history = history;
+		m_historyOn = (history != null);
+	}
+
+	/**
+	 * Get the cache used to keep the history of previously recognized strokes
+	 * 
+	 * @return result cache (null if history was never turned on)
+	 */
+	public RecognitionResultCache getHistory() {
+		return m_history;
+	}
+
+	/**
+	 * Get the neural network from the shared {@link ModelRegistry}
+	 */
+	private void loadNN() {
+		m_nn = ModelRegistry.getShared().getModel(PaleoNNRecognizer.class,
+				MODEL, MultilayerPerceptron.class);
+	}
+
+	/**
+	 * Read the neural network into the shared {@link ModelRegistry}, so
+	 * creating the first recognizer is fast. Call this once at startup.
+	 * 
+	 * @return true if the model was read
+	 */
+	public static boolean preloadModel() {
+		return ModelRegistry.getShared().preload(PaleoNNRecognizer.class,
+				MODEL);
 	}
 
 	/*
@@ -162,12 +335,16 @@ IRecognizer<Stroke, IRecognitionResult> {
 	 */
 	@Override
 	public IRecognitionResult recognize() {
-		if (m_nn == null || m_stroke == null)
+		MultilayerPerceptron nn = m_nn;
+		if (nn == null || m_stroke == null)
 			return null;
 
 		// see if this stroke has been recognized before
-		if (m_historyOn) {
-			IRecognitionResult r = m_history.get(m_stroke);
+		RecognitionResultCache history = m_historyOn ? m_history : null;
+		StrokeKey key = null;
+		if (history != null) {
+			key = history.createKey(m_stroke, m_config.getFingerprint());
+			IRecognitionResult r = history.get(key, m_stroke);
 			if (r != null)
 				return r;
 		}
@@ -178,8 +355,24 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 		IRecognitionResult r = new RecognitionResult();
 		try {
-			Instance testInstance = m_pfe.getInstance(null);
-			double[] results = m_nn.distributionForInstance(testInstance);
+			double[] results = null;
+			CompiledPerceptron compiled = m_fastInference ? getCompiledNN(nn,
+					m_pfe) : null;
+			if (compiled != null) {
+				FVector fv = m_pfe.getFeatureVector();
+				double[] features = new double[fv.getNumFeatures()];
+				for (int i = 0; i < features.length; i++)
+					features[i] = fv.getFeature(i);
+				results = compiled.distribution(features);
+			}
+			if (results == null) {
+				Instance testInstance = m_pfe.getInstance(null);
+				// the network caches node values while classifying, so a
+				// shared network can only be used by one thread at a time
+				synchronized (nn) {
+					results = nn.distributionForInstance(testInstance);
+				}
+			}
 			for (int i = 0; i < results.length; i++) {
 				String name = (String) m_pfe.getClassLabels().elementAt(i);
 				Fit f = null;
@@ -297,9 +490,10 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 		r.sortNBestList();
 
-		// check for bad NN state (typically happens on small dots?)
+		// the net gives NaN confidences for degenerate features (typically
+		// small dots), so call the stroke a dot. The net itself is shared and
+		// read-only, so there is no state to reset.
 		if (Double.isNaN(r.getBestShape().getInterpretation().confidence)) {
-			resetNN();
 			r = new RecognitionResult();
 			Fit f = m_pfe.getFit(Fit.DOT);
 			Shape fitShape = new Shape();
@@ -313,8 +507,8 @@ IRecognizer<Stroke, IRecognitionResult> {
 		}
 
 		// add to history
-		if (m_historyOn)
-			m_history.put(m_stroke, r);
+		if (history != null)
+			history.put(key, m_stroke, r);
 
 		return r;
 	}
@@ -374,7 +568,7 @@ IRecognizer<Stroke, IRecognitionResult> {
 	 * Clears history of recognized strokes
 	 */
 	public void clear() {
-		if (m_historyOn)
+		if (m_history != null)
 			m_history.clear();
 	}
 
@@ -408,4 +602,21 @@ IRecognizer<Stroke, IRecognitionResult> {
 		// TODO Auto-generated method stub
 
 	}
+
+	/**
+	 * Compiled form of a neural net, and whether it has been checked against
+	 * WEKA
+	 */
+	private static class CompiledNN {
+
+		/**
+		 * Compiled net, or null if the net must be run through WEKA
+		 */
+		CompiledPerceptron compiled = null;
+
+		/**
+		 * True once the compiled net has been checked against WEKA on a stroke
+		 */
+		boolean verified = false;
+	}
 }
@@ -0,0 +1,360 @@
+/**
+ * PerceptronExporter.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.paleo.paleoNN;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.functions.neural.LinearUnit;
+import weka.classifiers.functions.neural.NeuralConnection;
+import weka.classifiers.functions.neural.NeuralMethod;
+import weka.classifiers.functions.neural.NeuralNode;
+import weka.classifiers.functions.neural.SigmoidUnit;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+/**
+ * Compiles a trained WEKA {@link MultilayerPerceptron} into a
+ * {@link CompiledPerceptron}. WEKA does not expose the normalization or the
+ * wiring of a trained network, so they are read from its fields. The field
+ * names are those of the WEKA 3.6 series; a network that cannot be read, or
+ * that uses something the compiled network does not support, is rejected
+ * with an exception and should be used through WEKA instead.
+ * <p>
+ * Supported networks have a nominal class and numeric attributes only (so
+ * the nominal to binary filter leaves instances unchanged), with sigmoid or
+ * linear units wired in any feed forward layout.
+ */
+public class PerceptronExporter {
+
+	/**
+	 * Largest difference from WEKA's class probabilities accepted by
+	 * {@link #matches(MultilayerPerceptron, CompiledPerceptron, Instance)}
+	 */
+	public static final double TOLERANCE = 1e-9;
+
+	/**
+	 * Compile a trained network
+	 *
+	 * @param mlp
+	 *            trained network
+	 * @return the compiled network
+	 * @throws Exception
+	 *             if the network is not trained, cannot be read or is not
+	 *             supported
+	 */
+	public static CompiledPerceptron compile(MultilayerPerceptron mlp)
+			throws Exception {
+		if (Boolean.TRUE.equals(getOptionalField(mlp, "m_useDefaultModel")))
+			throw new Exception("Network uses its default model");
+
+		Instances header = (Instances) getField(mlp, "m_instances");
+		if (header == null)
+			throw new Exception("Network has not been trained");
+		int classIndex = header.classIndex();
+		if (classIndex < 0 || !header.classAttribute().isNominal())
+			throw new Exception("Only networks with a nominal class are supported");
+
+		// the attributes before any filter; missing values are replaced
+		// before nominal attributes are made binary
+		Filter replaceMissing = (Filter) getOptionalField(mlp,
+				"m_ReplaceMissingValues");
+		Instances original = replaceMissing != null ? replaceMissing
+				.getOutputFormat() : header;
+		if (original.numAttributes() != header.numAttributes()
+				|| original.classIndex() != classIndex)
+			throw new Exception("Only numeric attributes are supported");
+		for (int a = 0; a < original.numAttributes(); a++) {
+			if (a != classIndex && !original.attribute(a).isNumeric())
+				throw new Exception("Only numeric attributes are supported");
+		}
+
+		int numFeatures = header.numAttributes() - 1;
+		double[] bases = new double[numFeatures];
+		double[] ranges = new double[numFeatures];
+		double[] attributeBases = (double[]) getField(mlp, "m_attributeBases");
+		double[] attributeRanges = (double[]) getField(mlp,
+				"m_attributeRanges");
+		boolean normalize = mlp.getNormalizeAttributes();
+		for (int f = 0; f < numFeatures; f++) {
+			int a = attributeIndex(f, classIndex);
+			bases[f] = normalize ? attributeBases[a] : 0;
+			ranges[f] = normalize && attributeRanges[a] != 0 ? attributeRanges[a]
+					: 1;
+		}
+
+		double[] missingValues = null;
+		if (replaceMissing != null) {
+			double[] means = (double[]) getField(replaceMissing,
+					"m_ModesAndMeans");
+			missingValues = new double[numFeatures];
+			for (int f = 0; f < numFeatures; f++)
+				missingValues[f] = means[attributeIndex(f, classIndex)];
+		}
+
+		Object[] outputEnds = (Object[]) getField(mlp, "m_outputs");
+		if (outputEnds.length != header.numClasses())
+			throw new Exception("Expected one output per class");
+		Wiring wiring = new Wiring(numFeatures, classIndex);
+		int[] outputs = new int[outputEnds.length];
+		for (int c = 0; c < outputEnds.length; c++)
+			outputs[c] = wiring.valueOf((NeuralConnection) outputEnds[c]);
+		return wiring.build(bases, ranges, missingValues, outputs);
+	}
+
+	/**
+	 * Check that a compiled network gives the same class probabilities as
+	 * WEKA for an instance
+	 *
+	 * @param mlp
+	 *            trained network
+	 * @param compiled
+	 *            network compiled from it
+	 * @param instance
+	 *            instance to classify, with the class last as in the
+	 *            training data
+	 * @return true if every probability is within {@link #TOLERANCE}
+	 * @throws Exception
+	 *             if WEKA cannot classify the instance
+	 */
+	public static boolean matches(MultilayerPerceptron mlp,
+			CompiledPerceptron compiled, Instance instance) throws Exception {
+		double[] expected;
+		synchronized (mlp) {
+			expected = mlp.distributionForInstance(instance);
+		}
+		double[] actual = compiled.distribution(features(instance,
+				instance.numAttributes() - 1));
+		if (actual == null || actual.length != expected.length)
+			return false;
+		for (int c = 0; c < expected.length; c++) {
+			if (!(Math.abs(actual[c] - expected[c]) <= TOLERANCE))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the features of an instance, leaving out the class
+	 *
+	 * @param instance
+	 *            instance to read
+	 * @param classIndex
+	 *            index of the class attribute
+	 * @return feature vector for a {@link CompiledPerceptron}
+	 */
+	public static double[] features(Instance instance, int classIndex) {
+		double[] features = new double[instance.numAttributes() - 1];
+		for (int f = 0; f < features.length; f++)
+			features[f] = instance.value(attributeIndex(f, classIndex));
+		return features;
+	}
+
+	/**
+	 * @return index of the attribute holding a feature
+	 */
+	private static int attributeIndex(int feature, int classIndex) {
+		return feature < classIndex ? feature : feature + 1;
+	}
+
+	/**
+	 * Numbers the inputs and units of a network, each unit after its inputs,
+	 * and collects their wiring
+	 */
+	private static class Wiring {
+
+		private final int m_numFeatures;
+
+		private final int m_classIndex;
+
+		/**
+		 * Value number of each connection already visited
+		 */
+		private final Map<NeuralConnection, Integer> m_values = new IdentityHashMap<NeuralConnection, Integer>();
+
+		private final List<Integer> m_inputStarts = new ArrayList<Integer>();
+
+		private final List<Integer> m_inputs = new ArrayList<Integer>();
+
+		private final List<Double> m_weights = new ArrayList<Double>();
+
+		private final List<Boolean> m_linear = new ArrayList<Boolean>();
+
+		public Wiring(int numFeatures, int classIndex) {
+			m_numFeatures = numFeatures;
+			m_classIndex = classIndex;
+		}
+
+		/**
+		 * Get the value number of a connection, adding it and everything it
+		 * reads if needed
+		 */
+		public int valueOf(NeuralConnection connection) throws Exception {
+			if (m_values.containsKey(connection)) {
+				Integer value = m_values.get(connection);
+				if (value == null)
+					throw new Exception("Network has a cycle");
+				return value;
+			}
+			// marks the connection as being visited
+			m_values.put(connection, null);
+			int value;
+
+			NeuralConnection[] inputs = connection.getInputs();
+			int numInputs = connection.getNumInputs();
+			if (connection instanceof NeuralNode) {
+				NeuralNode node = (NeuralNode) connection;
+				NeuralMethod method = node.getMethod();
+				boolean linear;
+				if (method instanceof SigmoidUnit)
+					linear = false;
+				else if (method instanceof LinearUnit)
+					linear = true;
+				else
+					throw new Exception("Unsupported unit "
+							+ method.getClass().getName());
+				int[] inputValues = new int[numInputs];
+				for (int i = 0; i < numInputs; i++)
+					inputValues[i] = valueOf(inputs[i]);
+				value = addUnit(inputValues, node.getWeights(), linear);
+			} else if (Boolean.TRUE.equals(getField(connection, "m_input"))) {
+				int link = (Integer) getField(connection, "m_link");
+				if (link == m_classIndex || link < 0
+						|| link > m_numFeatures)
+					throw new Exception("Input reads attribute " + link);
+				value = link < m_classIndex ? link : link - 1;
+			} else {
+				// an output end sums its inputs
+				int[] inputValues = new int[numInputs];
+				double[] weights = new double[numInputs + 1];
+				for (int i = 0; i < numInputs; i++) {
+					inputValues[i] = valueOf(inputs[i]);
+					weights[i + 1] = 1;
+				}
+				value = addUnit(inputValues, weights, true);
+			}
+			m_values.put(connection, value);
+			return value;
+		}
+
+		/**
+		 * Add a unit after its inputs
+		 *
+		 * @return value number of the unit
+		 */
+		private int addUnit(int[] inputValues, double[] weights, boolean linear) {
+			m_inputStarts.add(m_inputs.size());
+			m_weights.add(weights[0]);
+			for (int i = 0; i < inputValues.length; i++) {
+				m_inputs.add(inputValues[i]);
+				m_weights.add(weights[i + 1]);
+			}
+			m_linear.add(linear);
+			return m_numFeatures + m_linear.size() - 1;
+		}
+
+		public CompiledPerceptron build(double[] bases, double[] ranges,
+				double[] missingValues, int[] outputs) {
+			int numUnits = m_linear.size();
+			int[] inputStarts = new int[numUnits + 1];
+			for (int u = 0; u < numUnits; u++)
+				inputStarts[u] = m_inputStarts.get(u);
+			inputStarts[numUnits] = m_inputs.size();
+			int[] inputs = new int[m_inputs.size()];
+			for (int i = 0; i < inputs.length; i++)
+				inputs[i] = m_inputs.get(i);
+			double[] weights = new double[m_weights.size()];
+			for (int w = 0; w < weights.length; w++)
+				weights[w] = m_weights.get(w);
+			boolean[] linear = new boolean[numUnits];
+			for (int u = 0; u < numUnits; u++)
+				linear[u] = m_linear.get(u);
+			return new CompiledPerceptron(bases, ranges, missingValues,
+					inputStarts, inputs, weights, linear, outputs);
+		}
+	}
+
+	/**
+	 * Read a field of an object, even if it is private
+	 *
+	 * @throws Exception
+	 *             if there is no such field
+	 */
+	private static Object getField(Object object, String name)
+			throws Exception {
+		Field field = findField(object.getClass(), name);
+		if (field == null)
+			throw new Exception("Unsupported network: no field " + name
+					+ " in " + object.getClass().getName());
+		return field.get(object);
+	}
+
+	/**
+	 * Read a field of an object that may not exist in every WEKA version
+	 *
+	 * @return the value of the field, or null if there is no such field
+	 */
+	private static Object getOptionalField(Object object, String name)
+			throws Exception {
+		Field field = findField(object.getClass(), name);
+		return field != null ? field.get(object) : null;
+	}
+
+	/**
+	 * Find a field of a class or its superclasses and make it readable
+	 *
+	 * @return the field, or null if there is none
+	 */
+	private static Field findField(Class<?> type, String name) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				return field;
+			} catch (NoSuchFieldException e) {
+				// look in the superclass
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * ModelRegistry.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.recognition.recognizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide store of serialized WEKA models. Each model is read once, the
+ * first time it is asked for (or when it is preloaded), and the same instance
+ * is handed to every recognizer after that. This keeps recognizer
+ * construction cheap and keeps one copy of each model in memory no matter how
+ * many recognizers or worker threads there are.
+ * <p>
+ * Models are looked up on the classpath relative to the class that owns them,
+ * as {@link Class#getResourceAsStream(String)} does. If no such resource
+ * exists the path is tried as a file, for models kept outside the jar.
+ * <p>
+ * Shared models must be treated as read-only. WEKA classifiers such as
+ * {@link weka.classifiers.functions.MultilayerPerceptron} keep scratch state
+ * while classifying, so callers should synchronize on the model around each
+ * classification.
+ */
+public class ModelRegistry {
+
+	/**
+	 * Registry shared by all recognizers
+	 */
+	private static final ModelRegistry s_shared = new ModelRegistry();
+
+	/**
+	 * Models by resource name, in the order they were first asked for
+	 */
+	private final Map<String, ModelEntry> m_models = new LinkedHashMap<String, ModelEntry>();
+
+	/**
+	 * Logger
+	 */
+	private static Logger log = LoggerFactory.getLogger(ModelRegistry.class);
+
+	/**
+	 * Get the registry shared by all recognizers
+	 *
+	 * @return the shared registry
+	 */
+	public static ModelRegistry getShared() {
+		return s_shared;
+	}
+
+	/**
+	 * Get a model, reading it if it has not been read yet. Threads asking for
+	 * a model that is being read wait for it rather than reading it again. A
+	 * model that could not be read is read again the next time it is asked
+	 * for.
+	 *
+	 * @param owner
+	 *            class the path is relative to
+	 * @param path
+	 *            path of the model, relative to the package of the owner
+	 *            unless it starts with "/"
+	 * @return the shared model, or null if it could not be read
+	 */
+	public Object getModel(Class<?> owner, String path) {
+		return getEntry(owner, path).load();
+	}
+
+	/**
+	 * Get a model of the given type, reading it if it has not been read yet
+	 *
+	 * @param owner
+	 *            class the path is relative to
+	 * @param path
+	 *            path of the model, relative to the package of the owner
+	 *            unless it starts with "/"
+	 * @param type
+	 *            type the model should have
+	 * @return the shared model, or null if it could not be read or has a
+	 *         different type
+	 */
+	public <T> T getModel(Class<?> owner, String path, Class<T> type) {
+		Object model = getModel(owner, path);
+		if (model == null)
+			return null;
+		if (!type.isInstance(model)) {
+			log.error("Model " + resourceName(owner, path) + " is a "
+					+ model.getClass().getName() + ", not a " + type.getName());
+			return null;
+		}
+		return type.cast(model);
+	}
+
+	/**
+	 * Read models now, so the first recognition does not pay for it. Meant to
+	 * be called once at startup.
+	 *
+	 * @param owner
+	 *            class the paths are relative to
+	 * @param paths
+	 *            paths of the models
+	 * @return true if every model was read
+	 */
+	public boolean preload(Class<?> owner, String... paths) {
+		boolean loaded = true;
+		for (String path : paths) {
+			if (getModel(owner, path) == null)
+				loaded = false;
+		}
+		return loaded;
+	}
+
+	/**
+	 * Check whether a model has been read
+	 *
+	 * @param owner
+	 *            class the path is relative to
+	 * @param path
+	 *            path of the model
+	 * @return true if the model has been read successfully
+	 */
+	public boolean isLoaded(Class<?> owner, String path) {
+		ModelEntry entry;
+		synchronized (m_models) {
+			entry = m_models.get(resourceName(owner, path));
+		}
+		return entry != null && entry.getModel() != null;
+	}
+
+	/**
+	 * Get the time spent reading each model, including models that could not
+	 * be read
+	 *
+	 * @return read time in milliseconds per resource name, in the order the
+	 *         models were first asked for
+	 */
+	public Map<String, Long> getLoadTimes() {
+		// an entry still being read holds its own lock until it is done, so
+		// only copy the entries while holding the registry's lock
+		Map<String, ModelEntry> models;
+		synchronized (m_models) {
+			models = new LinkedHashMap<String, ModelEntry>(m_models);
+		}
+		Map<String, Long> times = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, ModelEntry> model : models.entrySet()) {
+			long time = model.getValue().getLoadTime();
+			if (time >= 0)
+				times.put(model.getKey(), time);
+		}
+		return Collections.unmodifiableMap(times);
+	}
+
+	/**
+	 * Drop every model, so the next request reads it again. Recognizers
+	 * already holding a model keep using it.
+	 */
+	public void clear() {
+		synchronized (m_models) {
+			m_models.clear();
+		}
+	}
+
+	/**
+	 * Get the entry for a model, creating it if needed
+	 */
+	private ModelEntry getEntry(Class<?> owner, String path) {
+		String name = resourceName(owner, path);
+		synchronized (m_models) {
+			ModelEntry entry = m_models.get(name);
+			if (entry == null) {
+				entry = new ModelEntry(owner, name, path);
+				m_models.put(name, entry);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Get the classpath name of a model, as
+	 * {@link Class#getResourceAsStream(String)} resolves it
+	 *
+	 * @param owner
+	 *            class the path is relative to
+	 * @param path
+	 *            path of the model
+	 * @return resource name, without a leading "/"
+	 */
+	static String resourceName(Class<?> owner, String path) {
+		if (path.startsWith("/"))
+			return path.substring(1);
+		String className = owner.getName();
+		int dot = className.lastIndexOf('.');
+		if (dot < 0)
+			return path;
+		return className.substring(0, dot).replace('.', '/') + "/" + path;
+	}
+
+	/**
+	 * One model, read the first time it is asked for
+	 */
+	private static class ModelEntry {
+
+		/**
+		 * Class whose class loader finds the model
+		 */
+		private final Class<?> m_owner;
+
+		/**
+		 * Classpath name of the model
+		 */
+		private final String m_name;
+
+		/**
+		 * Path of the model as given, tried as a file if the resource is
+		 * missing
+		 */
+		private final String m_path;
+
+		/**
+		 * The model, null until it has been read successfully
+		 */
+		private Object m_model = null;
+
+		/**
+		 * Time spent on the last attempt to read the model, -1 until it has
+		 * been tried
+		 */
+		private long m_loadTime = -1;
+
+		public ModelEntry(Class<?> owner, String name, String path) {
+			m_owner = owner;
+			m_name = name;
+			m_path = path;
+		}
+
+		public synchronized Object load() {
+			if (m_model == null) {
+				long startTime = System.currentTimeMillis();
+				m_model = read();
+				m_loadTime = System.currentTimeMillis() - startTime;
+				if (m_model != null)
+					log.debug("Loaded model " + m_name + " in " + m_loadTime
+							+ " ms");
+			}
+			return m_model;
+		}
+
+		public synchronized Object getModel() {
+			return m_model;
+		}
+
+		public synchronized long getLoadTime() {
+			return m_loadTime;
+		}
+
+		private Object read() {
+			InputStream is = m_owner.getResourceAsStream("/" + m_name);
+			try {
+				if (is != null)
+					return weka.core.SerializationHelper.read(is);
+				File file = new File(m_path);
+				if (file.isFile())
+					return weka.core.SerializationHelper.read(file.getPath());
+				log.error("Model " + m_name + " not found");
+			} catch (Exception e) {
+				log.error("Error loading model " + m_name, e);
+			} finally {
+				if (is != null) {
+					try {
+						is.close();
+					} catch (IOException e) {
+						// nothing left to read
+					}
+				}
+			}
+			return null;
+		}
+	}
+}
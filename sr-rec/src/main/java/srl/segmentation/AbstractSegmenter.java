@@ -2,10 +2,15 @@ package srl.segmentation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
+import srl.core.sketch.PackedStroke;
 import srl.core.sketch.Point;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
+import srl.core.util.TimeBudget;
+import srl.segmentation.combination.objectiveFunctions.IObjectiveFunction;
+import srl.segmentation.combination.objectiveFunctions.IncrementalObjectiveFunction;
 
 
 /**
@@ -21,6 +26,17 @@ public abstract class AbstractSegmenter {
 	 */
 	protected static final double S_SHORT_STROKE_THRESHOLD = 20.0;
 
+	/**
+	 * Maximum time in milliseconds for a call to getSegmentations() (0 for no
+	 * limit)
+	 */
+	private long m_maxTime = 0;
+
+	/**
+	 * Time budget of the last call to getSegmentations()
+	 */
+	private TimeBudget m_budget = null;
+
 	/**
 	 * Default constructor
 	 */
@@ -28,6 +44,81 @@ public abstract class AbstractSegmenter {
 		// Do nothing
 	}
 
+	/**
+	 * Stop segmenting if the current thread has been interrupted, e.g. because
+	 * a {@link SegmentationExecutor} timed out. Long running segmenters call
+	 * this between steps.
+	 * 
+	 * @throws CancellationException
+	 *             if the current thread has been interrupted
+	 */
+	public static void checkCancelled() {
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException("Segmentation cancelled");
+	}
+
+	/**
+	 * Set the maximum time for a call to getSegmentations(). Segmenters that
+	 * search for the best subset of corners stop when the time runs out and
+	 * use the best subset found so far; a forward search stopped before adding
+	 * a corner keeps only the endpoints.
+	 * 
+	 * @param maxTime
+	 *            maximum time in milliseconds, or 0 for no limit
+	 */
+	public void setMaxTime(long maxTime) {
+		m_maxTime = maxTime;
+	}
+
+	/**
+	 * Get the maximum time for a call to getSegmentations()
+	 * 
+	 * @return maximum time in milliseconds, or 0 for no limit
+	 */
+	public long getMaxTime() {
+		return m_maxTime;
+	}
+
+	/**
+	 * Get the time budget of the last call to getSegmentations(), giving the
+	 * time used by each of its stages
+	 * 
+	 * @return last time budget, or null if no maximum time was set
+	 */
+	public TimeBudget getTimeBudget() {
+		return m_budget;
+	}
+
+	/**
+	 * Start the time budget of a call to getSegmentations(), if a maximum time
+	 * is set
+	 */
+	protected void startTimeBudget() {
+		m_budget = m_maxTime > 0 ? new TimeBudget(m_maxTime) : null;
+	}
+
+	/**
+	 * Check whether the current call to getSegmentations() has run out of time
+	 * 
+	 * @return true if a maximum time is set and has passed
+	 */
+	protected boolean isOverTime() {
+		return m_budget != null && m_budget.isOverTime();
+	}
+
+	/**
+	 * Record the time used by a stage of the segmentation
+	 * 
+	 * @param stage
+	 *            name of the stage
+	 * @param startTime
+	 *            time the stage started
+	 */
+	protected void addStageTime(String stage, long startTime) {
+		if (m_budget != null)
+			m_budget.addStageTime(stage, startTime);
+	}
+
 	/**
 	 * Cleans a stroke by removing overlapping points. Also updates the time
 	 * values to ensure that no two times are similar.
@@ -83,16 +174,20 @@ public abstract class AbstractSegmenter {
 	 *         that array's index
 	 */
 	protected double[] calcPathLengths(Stroke stroke) {
+		return calcPathLengths(stroke.getPackedStroke());
+	}
 
-		double[] pathLengths = new double[stroke.getNumPoints()];
-		pathLengths[0] = 0.0;
-
-		for (int i = 1; i < stroke.getNumPoints(); i++) {
-			pathLengths[i] = pathLengths[i - 1]
-					+ stroke.getPoint(i - 1).distance(stroke.getPoint(i));
-		}
-
-		return pathLengths;
+	/**
+	 * Calculate the path lengths at each point of a packed stroke
+	 * 
+	 * @param stroke
+	 *            Packed stroke to calculate the path lengths for
+	 * @return An array of doubles corresponding to points in the stroke, where
+	 *         each double is the path length of the stroke up to the point in
+	 *         that array's index
+	 */
+	protected double[] calcPathLengths(PackedStroke stroke) {
+		return stroke.getLengthSoFar().clone();
 	}
 
 	/**
@@ -113,16 +208,36 @@ public abstract class AbstractSegmenter {
 	 */
 	protected boolean isLine(int p1, int p2, Stroke stroke,
 			double[] pathLengths, final double lineVsArcThreshold) {
+		return isLine(p1, p2, stroke.getPackedStroke(), pathLengths,
+				lineVsArcThreshold);
+	}
+
+	/**
+	 * Check to see if the segment of a packed stroke between two points is a
+	 * line
+	 * 
+	 * @param p1
+	 *            Index for point 1
+	 * @param p2
+	 *            Index for point 2
+	 * @param stroke
+	 *            Packed stroke that contains the segment
+	 * @param pathLengths
+	 *            Path length array storing the total stroke path length at each
+	 *            index of the point
+	 * @param lineVsArcThreshold
+	 *            The threshold for the straight-line distance / path distance
+	 * @return True if the segment of the stroke is a line, false otherwise
+	 */
+	protected boolean isLine(int p1, int p2, PackedStroke stroke,
+			double[] pathLengths, final double lineVsArcThreshold) {
 
 		// Local thresholds that shouldn't need changing.
 		// Correspond to the size of the segment
 		final double sizeThreshold = 10;
 		final double pointThreshold = 5;
 
-		Point pt1 = stroke.getPoint(p1);
-		Point pt2 = stroke.getPoint(p2);
-
-		double straightLineDistance = pt1.distance(pt2);
+		double straightLineDistance = stroke.distance(p1, p2);
 		double pathDistance = pathLengths[p2] - pathLengths[p1];
 
 		double lengthRatio = straightLineDistance / pathDistance;
@@ -217,6 +332,20 @@ public abstract class AbstractSegmenter {
 		return originalCorners;
 	}
 
+	/**
+	 * Objective function to use for one search over a stroke's corner subsets.
+	 * Segment errors are cached for the stroke, so each candidate subset only
+	 * fits the segments next to the corner it adds or removes.
+	 * 
+	 * @param objFunction
+	 *            Objective function of the segmenter
+	 * @return A new caching function, or objFunction if it cannot be cached
+	 */
+	protected IObjectiveFunction incrementalObjectiveFunction(
+			IObjectiveFunction objFunction) {
+		return IncrementalObjectiveFunction.wrap(objFunction);
+	}
+
 	/**
 	 * Get the corners (point indices) where the stroke should be split
 	 * 
@@ -224,7 +353,7 @@ public abstract class AbstractSegmenter {
 	 *            Segmentations from a segmenter
 	 * @return Indices where corners were found (can contain duplicates)
 	 */
-	protected List<Integer> getCornersFromSegmentations(
+	public static List<Integer> getCornersFromSegmentations(
 			List<Segmentation> segmentations) {
 
 		List<Integer> corners = new ArrayList<Integer>();
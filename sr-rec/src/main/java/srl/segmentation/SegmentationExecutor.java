@@ -0,0 +1,342 @@
+/**
+ * SegmentationExecutor.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.segmentation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import srl.core.sketch.ISegmenter;
+import srl.core.sketch.ISegmenterFactory;
+import srl.core.sketch.Segmentation;
+import srl.core.sketch.Stroke;
+
+/**
+ * Runs segmenters on a shared executor and returns their results as
+ * {@link Future}s. This replaces running a segmenter as a {@link Runnable} and
+ * polling {@link ISegmenter#getThreadedSegmentations()}: the future signals
+ * when the segmentations are ready, passes on any exception the segmenter
+ * throws, and can be cancelled.
+ * <p>
+ * A timeout bounds the time spent on one stroke. It is measured from when the
+ * segmenter starts on the stroke, so strokes waiting in a large batch do not
+ * time out before they run. When the timeout passes, the future is cancelled
+ * and the worker thread is interrupted. Segmenters that check for interrupts
+ * (see {@link AbstractSegmenter#checkCancelled()}) stop soon after; others run
+ * to completion, but their result is discarded.
+ * <p>
+ * A segmenter keeps state for its stroke, so the same segmenter must not be
+ * submitted again until its future is done. Use
+ * {@link #submitAll(ISegmenterFactory, Collection, long, TimeUnit)} to get a
+ * separate segmenter for each stroke.
+ */
+public class SegmentationExecutor {
+
+	/**
+	 * Timer that cancels segmentations when their timeout passes. Shared by
+	 * all executors, since it only ever runs cancellations.
+	 */
+	private static ScheduledThreadPoolExecutor s_deadlines = null;
+
+	/**
+	 * Executor that runs the segmenters
+	 */
+	private final ExecutorService m_executor;
+
+	/**
+	 * True if the executor was created here and should be shut down with this
+	 * object
+	 */
+	private final boolean m_ownsExecutor;
+
+	/**
+	 * Create a segmentation executor with one thread per available processor
+	 */
+	public SegmentationExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a segmentation executor with its own fixed size thread pool. The
+	 * threads are daemon threads, and are stopped by {@link #shutdown()}.
+	 *
+	 * @param numThreads
+	 *            Number of threads to segment strokes on
+	 */
+	public SegmentationExecutor(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException(
+					"Number of threads must be positive");
+		m_executor = Executors.newFixedThreadPool(numThreads,
+				new DaemonThreadFactory("srl-segmentation-"));
+		m_ownsExecutor = true;
+	}
+
+	/**
+	 * Create a segmentation executor that runs segmenters on an existing
+	 * executor. The executor is not shut down by {@link #shutdown()}.
+	 *
+	 * @param executor
+	 *            Executor to run the segmenters on
+	 */
+	public SegmentationExecutor(ExecutorService executor) {
+		if (executor == null)
+			throw new NullPointerException("executor");
+		m_executor = executor;
+		m_ownsExecutor = false;
+	}
+
+	/**
+	 * Segment a stroke with no time limit
+	 *
+	 * @param segmenter
+	 *            Segmenter to use. It must not be used elsewhere until the
+	 *            future is done.
+	 * @param stroke
+	 *            Stroke to segment
+	 * @return Future holding the segmentations. Its get() method throws an
+	 *         {@link ExecutionException} wrapping any exception thrown by the
+	 *         segmenter.
+	 */
+	public Future<List<Segmentation>> submit(ISegmenter segmenter,
+			Stroke stroke) {
+		return submit(segmenter, stroke, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Segment a stroke, cancelling the segmentation if it takes longer than
+	 * the timeout
+	 *
+	 * @param segmenter
+	 *            Segmenter to use. It must not be used elsewhere until the
+	 *            future is done.
+	 * @param stroke
+	 *            Stroke to segment
+	 * @param timeout
+	 *            Longest time the segmenter may run on the stroke, or 0 for no
+	 *            limit
+	 * @param unit
+	 *            Unit of the timeout
+	 * @return Future holding the segmentations. It is cancelled if the
+	 *         timeout passes.
+	 */
+	public Future<List<Segmentation>> submit(ISegmenter segmenter,
+			Stroke stroke, long timeout, TimeUnit unit) {
+		SegmentationTask task = new SegmentationTask(segmenter, stroke,
+				unit.toNanos(timeout));
+		m_executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Segment many strokes, each with a new segmenter from the factory
+	 *
+	 * @param factory
+	 *            Factory that creates a segmenter for each stroke
+	 * @param strokes
+	 *            Strokes to segment
+	 * @param timeout
+	 *            Longest time a segmenter may run on one stroke, or 0 for no
+	 *            limit
+	 * @param unit
+	 *            Unit of the timeout
+	 * @return Futures holding the segmentations, in the order of the strokes
+	 */
+	public List<Future<List<Segmentation>>> submitAll(
+			ISegmenterFactory factory, Collection<? extends Stroke> strokes,
+			long timeout, TimeUnit unit) {
+		List<Future<List<Segmentation>>> futures = new ArrayList<Future<List<Segmentation>>>(
+				strokes.size());
+		for (Stroke stroke : strokes)
+			futures.add(submit(factory.newSegmenter(), stroke, timeout, unit));
+		return futures;
+	}
+
+	/**
+	 * Segment many strokes and wait for all of them to finish
+	 *
+	 * @param factory
+	 *            Factory that creates a segmenter for each stroke
+	 * @param strokes
+	 *            Strokes to segment
+	 * @param timeout
+	 *            Longest time a segmenter may run on one stroke, or 0 for no
+	 *            limit
+	 * @param unit
+	 *            Unit of the timeout
+	 * @return Segmentations for each stroke, in the order of the strokes. The
+	 *         entry is null if the stroke timed out or its segmenter threw an
+	 *         exception.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting. All
+	 *             unfinished segmentations are cancelled.
+	 */
+	public List<List<Segmentation>> segmentAll(ISegmenterFactory factory,
+			Collection<? extends Stroke> strokes, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		List<Future<List<Segmentation>>> futures = submitAll(factory,
+				strokes, timeout, unit);
+		List<List<Segmentation>> results = new ArrayList<List<Segmentation>>(
+				futures.size());
+		try {
+			for (Future<List<Segmentation>> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (CancellationException e) {
+					results.add(null);
+				} catch (ExecutionException e) {
+					results.add(null);
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<List<Segmentation>> future : futures)
+				future.cancel(true);
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * Stop the thread pool, if it was created by this object. Segmentations
+	 * already submitted still run.
+	 */
+	public void shutdown() {
+		if (m_ownsExecutor)
+			m_executor.shutdown();
+	}
+
+	/**
+	 * Get the timer used to cancel segmentations, creating it if needed
+	 *
+	 * @return the deadline timer
+	 */
+	private static synchronized ScheduledThreadPoolExecutor getDeadlines() {
+		if (s_deadlines == null) {
+			s_deadlines = new ScheduledThreadPoolExecutor(1,
+					new DaemonThreadFactory("srl-segmentation-deadline-"));
+			s_deadlines.setRemoveOnCancelPolicy(true);
+		}
+		return s_deadlines;
+	}
+
+	/**
+	 * Segments one stroke, starting its deadline when it starts to run
+	 */
+	private static class SegmentationTask extends
+			FutureTask<List<Segmentation>> {
+
+		/**
+		 * Time limit in nanoseconds, 0 for none
+		 */
+		private final long m_timeoutNanos;
+
+		/**
+		 * Pending cancellation, if the task has a time limit and is running
+		 */
+		private volatile ScheduledFuture<?> m_deadline = null;
+
+		public SegmentationTask(final ISegmenter segmenter,
+				final Stroke stroke, long timeoutNanos) {
+			super(new Callable<List<Segmentation>>() {
+
+				@Override
+				public List<Segmentation> call() throws Exception {
+					AbstractSegmenter.checkCancelled();
+					segmenter.setStroke(stroke);
+					AbstractSegmenter.checkCancelled();
+					return segmenter.getSegmentations();
+				}
+			});
+			m_timeoutNanos = timeoutNanos;
+		}
+
+		@Override
+		public void run() {
+			if (m_timeoutNanos > 0 && !isDone()) {
+				m_deadline = getDeadlines().schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						cancel(true);
+					}
+				}, m_timeoutNanos, TimeUnit.NANOSECONDS);
+			}
+			super.run();
+		}
+
+		@Override
+		protected void done() {
+			ScheduledFuture<?> deadline = m_deadline;
+			if (deadline != null)
+				deadline.cancel(false);
+		}
+	}
+
+	/**
+	 * Creates named daemon threads, so idle pools do not keep the JVM alive
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String m_prefix;
+
+		private final AtomicInteger m_count = new AtomicInteger();
+
+		public DaemonThreadFactory(String prefix) {
+			m_prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, m_prefix + m_count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/**
+ * CandidateCornerPipeline.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.segmentation.combination;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import srl.core.exception.InvalidParametersException;
+import srl.core.sketch.ISegmenter;
+import srl.core.sketch.Point;
+import srl.core.sketch.Segmentation;
+import srl.core.sketch.Stroke;
+import srl.core.util.TimeBudget;
+import srl.segmentation.AbstractSegmenter;
+import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
+import srl.segmentation.kimSquared.KimSquaredSegmenter;
+import srl.segmentation.mergecf.MergeCFSegmenter;
+import srl.segmentation.paleo.PaleoSegmenter;
+import srl.segmentation.sezgin.SezginSegmenter;
+import srl.segmentation.shortstraw.ShortStrawSegmenter;
+
+/**
+ * Generates the candidate corners for a combination segmenter by running a set
+ * of segmenters on the same stroke and merging the corners they find. The
+ * merged corners are sorted and free of duplicates, so the result does not
+ * depend on the order in which the segmenters finish.
+ * <p>
+ * Segmenters can be disabled by name. If an executor is set the enabled
+ * segmenters run concurrently, so generating the candidates takes about as
+ * long as the slowest segmenter rather than the sum of all of them. The time
+ * each segmenter took on the last stroke is kept for profiling.
+ * <p>
+ * Segmenters that run concurrently are each given their own copy of the
+ * stroke, since a stroke computes some of its values lazily and is not safe to
+ * read from several threads. The segmenters keep state for the stroke they
+ * are given, so a pipeline must not be used by more than one thread at a time.
+ */
+public class CandidateCornerPipeline {
+
+	/**
+	 * Segmenters that generate candidate corners, in the order they were
+	 * added
+	 */
+	private List<ISegmenter> m_generators = new ArrayList<ISegmenter>();
+
+	/**
+	 * Names of the segmenters that should not be run
+	 */
+	private Set<String> m_disabled = new HashSet<String>();
+
+	/**
+	 * Executor used to run the segmenters concurrently (null if they should
+	 * run one after another)
+	 */
+	private ExecutorService m_executor = null;
+
+	/**
+	 * Nanoseconds each segmenter took on the last stroke, in the order they
+	 * were added
+	 */
+	private Map<String, Long> m_timings = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Create a pipeline with no segmenters
+	 */
+	public CandidateCornerPipeline() {
+		// Do nothing
+	}
+
+	/**
+	 * Create the pipeline used by the FSS combination segmenter: ShortStraw,
+	 * MergeCF, Douglas-Peucker, Paleo, Sezgin and KimSquared. MergeCF is
+	 * disabled, since its corners have never been used as candidates.
+	 * 
+	 * @param useSmoothing
+	 *            Flag denoting if direction graph smoothing should take place
+	 *            of not (needed for PaleoSegmenter)
+	 * @return the default pipeline
+	 */
+	public static CandidateCornerPipeline createDefault(boolean useSmoothing) {
+		CandidateCornerPipeline pipeline = new CandidateCornerPipeline();
+		ISegmenter mergeCF = new MergeCFSegmenter();
+		pipeline.addGenerator(new ShortStrawSegmenter());
+		pipeline.addGenerator(mergeCF);
+		pipeline.addGenerator(new DouglasPeuckerSegmenter());
+		pipeline.addGenerator(new PaleoSegmenter(useSmoothing));
+		pipeline.addGenerator(new SezginSegmenter());
+		pipeline.addGenerator(new KimSquaredSegmenter());
+		pipeline.setEnabled(mergeCF.getName(), false);
+		return pipeline;
+	}
+
+	/**
+	 * Add a segmenter whose corners are used as candidates
+	 * 
+	 * @param segmenter
+	 *            Segmenter to add
+	 */
+	public void addGenerator(ISegmenter segmenter) {
+		m_generators.add(segmenter);
+	}
+
+	/**
+	 * Get the segmenters in the pipeline, including disabled ones
+	 * 
+	 * @return the segmenters
+	 */
+	public List<ISegmenter> getGenerators() {
+		return Collections.unmodifiableList(m_generators);
+	}
+
+	/**
+	 * Enable or disable the segmenters with the given name
+	 * 
+	 * @param name
+	 *            Name of the segmenter, as given by {@link ISegmenter#getName()}
+	 * @param enabled
+	 *            True if the segmenter should be run
+	 */
+	public void setEnabled(String name, boolean enabled) {
+		if (enabled)
+			m_disabled.remove(name);
+		else
+			m_disabled.add(name);
+	}
+
+	/**
+	 * Check if the segmenters with the given name are run
+	 * 
+	 * @param name
+	 *            Name of the segmenter
+	 * @return True if the segmenter is run
+	 */
+	public boolean isEnabled(String name) {
+		return !m_disabled.contains(name);
+	}
+
+	/**
+	 * Set the executor used to run the segmenters concurrently. The executor
+	 * should not be the same bounded pool that runs the calling segmenter, or
+	 * the pipeline may wait on itself.
+	 * 
+	 * @param executor
+	 *            Executor to run the segmenters on, or null to run them one
+	 *            after another
+	 */
+	public void setExecutor(ExecutorService executor) {
+		m_executor = executor;
+	}
+
+	/**
+	 * Get the executor used to run the segmenters concurrently
+	 * 
+	 * @return executor, or null if the segmenters run one after another
+	 */
+	public ExecutorService getExecutor() {
+		return m_executor;
+	}
+
+	/**
+	 * Get the time each segmenter that ran took on the last stroke
+	 * 
+	 * @return nanoseconds per segmenter name, in the order the segmenters were
+	 *         added
+	 */
+	public Map<String, Long> getTimings() {
+		return Collections.unmodifiableMap(m_timings);
+	}
+
+	/**
+	 * Run the enabled segmenters on the stroke and merge their corners
+	 * 
+	 * @param stroke
+	 *            Stroke to find candidate corners for. It must not be changed
+	 *            while the segmenters run.
+	 * @return Sorted, distinct corner indices
+	 * @throws InvalidParametersException
+	 *             if a segmenter has not received the proper input
+	 */
+	public List<Integer> getCorners(Stroke stroke)
+			throws InvalidParametersException {
+		return getCorners(stroke, null);
+	}
+
+	/**
+	 * Run the enabled segmenters on the stroke within a time budget and merge
+	 * their corners. When the segmenters run one after another, those after
+	 * the first are skipped once the budget is used up. Concurrent segmenters
+	 * all run, since together they take about as long as the slowest.
+	 * 
+	 * @param stroke
+	 *            Stroke to find candidate corners for. It must not be changed
+	 *            while the segmenters run.
+	 * @param budget
+	 *            Time budget of the calling segmenter, or null for no limit
+	 * @return Sorted, distinct corner indices
+	 * @throws InvalidParametersException
+	 *             if a segmenter has not received the proper input
+	 */
+	public List<Integer> getCorners(Stroke stroke, TimeBudget budget)
+			throws InvalidParametersException {
+
+		List<ISegmenter> enabled = new ArrayList<ISegmenter>();
+		for (ISegmenter segmenter : m_generators) {
+			if (isEnabled(segmenter.getName()))
+				enabled.add(segmenter);
+		}
+
+		boolean concurrent = m_executor != null && enabled.size() > 1;
+		List<GeneratorTask> tasks = new ArrayList<GeneratorTask>(
+				enabled.size());
+		for (ISegmenter segmenter : enabled)
+			tasks.add(new GeneratorTask(segmenter, concurrent ? copyPoints(stroke)
+					: stroke));
+
+		if (!concurrent) {
+			for (int t = 0; t < tasks.size(); t++) {
+				if (t > 0 && budget != null && budget.isOverTime()) {
+					tasks = tasks.subList(0, t);
+					break;
+				}
+				tasks.get(t).call();
+			}
+		} else {
+			List<Future<GeneratorTask>> futures = new ArrayList<Future<GeneratorTask>>(
+					tasks.size());
+			for (GeneratorTask task : tasks)
+				futures.add(m_executor.submit(task));
+			try {
+				for (Future<GeneratorTask> future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				for (Future<GeneratorTask> future : futures)
+					future.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new CancellationException(
+						"Interrupted while generating candidate corners");
+			} catch (ExecutionException e) {
+				for (Future<GeneratorTask> future : futures)
+					future.cancel(true);
+				Throwable cause = e.getCause();
+				if (cause instanceof InvalidParametersException)
+					throw (InvalidParametersException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+
+		// Merge the corners in a fixed order
+		Set<Integer> allCorners = new TreeSet<Integer>();
+		m_timings = new LinkedHashMap<String, Long>();
+		for (GeneratorTask task : tasks) {
+			allCorners.addAll(task.m_corners);
+			m_timings.put(task.m_segmenter.getName(), task.m_nanos);
+		}
+
+		return new ArrayList<Integer>(allCorners);
+	}
+
+	/**
+	 * Copy the points of a stroke into a new stroke, so that a segmenter
+	 * running on another thread builds its own cached values
+	 * 
+	 * @param stroke
+	 *            Stroke to copy
+	 * @return A stroke with copies of the points and nothing else
+	 */
+	private static Stroke copyPoints(Stroke stroke) {
+		List<Point> points = new ArrayList<Point>(stroke.getNumPoints());
+		for (Point point : stroke.getPoints())
+			points.add(point.clone());
+		return new Stroke(points);
+	}
+
+	/**
+	 * Runs one segmenter on the stroke and keeps its corners and time
+	 */
+	private static class GeneratorTask implements Callable<GeneratorTask> {
+
+		private final ISegmenter m_segmenter;
+
+		private final Stroke m_stroke;
+
+		private List<Integer> m_corners;
+
+		private long m_nanos;
+
+		public GeneratorTask(ISegmenter segmenter, Stroke stroke) {
+			m_segmenter = segmenter;
+			m_stroke = stroke;
+		}
+
+		@Override
+		public GeneratorTask call() throws InvalidParametersException {
+			AbstractSegmenter.checkCancelled();
+			long start = System.nanoTime();
+			m_segmenter.setStroke(m_stroke);
+			List<Segmentation> segmentations = m_segmenter.getSegmentations();
+			m_corners = AbstractSegmenter
+					.getCornersFromSegmentations(segmentations);
+			m_nanos = System.nanoTime() - start;
+			return this;
+		}
+	}
+}
@@ -11,12 +11,6 @@ import srl.core.sketch.Stroke;
 import srl.segmentation.AbstractSegmenter;
 import srl.segmentation.combination.objectiveFunctions.IObjectiveFunction;
 import srl.segmentation.combination.objectiveFunctions.PolylineMSEObjectiveFunction;
-import srl.segmentation.douglaspeucker.DouglasPeuckerSegmenter;
-import srl.segmentation.kimSquared.KimSquaredSegmenter;
-import srl.segmentation.mergecf.MergeCFSegmenter;
-import srl.segmentation.paleo.PaleoSegmenter;
-import srl.segmentation.sezgin.SezginSegmenter;
-import srl.segmentation.shortstraw.ShortStrawSegmenter;
 
 
 /**
@@ -112,6 +106,11 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 	 */
 	private boolean m_useSmoothing;
 
+	/**
+	 * Segmenters that generate the initial corners
+	 */
+	private CandidateCornerPipeline m_candidatePipeline;
+
 	/**
 	 * Default constructor
 	 */
@@ -128,6 +127,8 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 	 */
 	public FSSCombinationSegmenter(boolean useSmoothing) {
 		m_useSmoothing = useSmoothing;
+		m_candidatePipeline = CandidateCornerPipeline
+				.createDefault(useSmoothing);
 	}
 
 	/**
@@ -214,28 +215,36 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 			throw new InvalidParametersException();
 		}
 
+		startTimeBudget();
+
+		long stageStart = System.currentTimeMillis();
 		List<Integer> allCorners = getInitialCorners();
+		addStageTime("candidates", stageStart);
 
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
+		stageStart = System.currentTimeMillis();
 		switch (m_fssType) {
 		case SFS:
-			subset = sfs(allCorners, m_stroke, m_objFunction);
+			subset = sfs(allCorners, m_stroke, objFunction);
 			break;
 		case SBS:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 			break;
 		case SFFS:
-			subset = sffs(allCorners, m_stroke, m_objFunction);
+			subset = sffs(allCorners, m_stroke, objFunction);
 			break;
 		case SBFS:
-			subset = sbfs(allCorners, m_stroke, m_objFunction);
+			subset = sbfs(allCorners, m_stroke, objFunction);
 			break;
 		default:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 		}
+		addStageTime("search", stageStart);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
 				subset, S_SEGMENTER_NAME, 0.80);
@@ -266,6 +275,16 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 		}
 	}
 
+	/**
+	 * Get the pipeline that generates the initial corners. Segmenters can be
+	 * added or disabled, and an executor set to run them concurrently.
+	 * 
+	 * @return the candidate corner pipeline
+	 */
+	public CandidateCornerPipeline getCandidatePipeline() {
+		return m_candidatePipeline;
+	}
+
 	/**
 	 * Gets a set of initial corners to use in conjunction with the FSS
 	 * algorithm.
@@ -275,54 +294,7 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 	 *             if a segmenter has not received the proper input.
 	 */
 	private List<Integer> getInitialCorners() throws InvalidParametersException {
-
-		List<Integer> allCorners = new ArrayList<Integer>();
-
-		ISegmenter segmenter;
-
-		// ShortStraw
-		segmenter = new ShortStrawSegmenter(m_stroke);
-		List<Segmentation> shortStrawSegs = segmenter.getSegmentations();
-		allCorners.addAll(getCornersFromSegmentations(shortStrawSegs));
-
-		// MergeCF
-		segmenter = new MergeCFSegmenter(m_stroke);
-		List<Segmentation> mergeCFSegs = segmenter.getSegmentations();
-		// allCorners.addAll(getCornersFromSegmentations(mergeCFSegs));
-
-		// Douglas-Peucker
-		segmenter = new DouglasPeuckerSegmenter(m_stroke);
-		List<Segmentation> dpSegs = segmenter.getSegmentations();
-		allCorners.addAll(getCornersFromSegmentations(dpSegs));
-
-		// Paleo
-		segmenter = new PaleoSegmenter(m_useSmoothing);
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> paleoSegs = segmenter.getSegmentations();
-		allCorners.addAll(getCornersFromSegmentations(paleoSegs));
-
-		// Sezgin
-		segmenter = new SezginSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> sezginSegs = segmenter.getSegmentations();
-		allCorners.addAll(getCornersFromSegmentations(sezginSegs));
-
-		// Kim
-		segmenter = new KimSquaredSegmenter();
-		segmenter.setStroke(m_stroke);
-		List<Segmentation> kimSegs = segmenter.getSegmentations();
-		allCorners.addAll(getCornersFromSegmentations(kimSegs));
-
-		// Remove overlapping corners
-		Collections.sort(allCorners);
-		for (int i = 1; i < allCorners.size(); i++) {
-			if (allCorners.get(i).equals(allCorners.get(i - 1))) {
-				allCorners.remove(i);
-				i--;
-			}
-		}
-
-		return allCorners;
+		return m_candidatePipeline.getCorners(m_stroke, getTimeBudget());
 	}
 
 	/**
@@ -349,7 +321,7 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 
 		List<Double> errorList = new ArrayList<Double>();
 
-		for (int i = 0; i < corners.size() - 2; i++) {
+		for (int i = 0; i < corners.size() - 2 && !isOverTime(); i++) {
 
 			List<Object> results = nextBestCorner(cornerSubset, corners,
 					stroke, objFunction);
@@ -361,6 +333,9 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 			errorList.add(error);
 		}
 
+		if (errorList.isEmpty())
+			return cornerSubset;
+
 		double bestError = errorList.get(errorList.size() - 1);
 		List<Integer> bestSubset = new ArrayList<Integer>();
 		for (int i = errorList.size() - 1; i >= 0; i--) {
@@ -399,7 +374,7 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 
 		List<Integer> cornerSubset = new ArrayList<Integer>(corners);
 
-		for (int i = 0; i < corners.size(); i++) {
+		for (int i = 0; i < corners.size() && !isOverTime(); i++) {
 
 			List<Object> results = prevBestSubset(cornerSubset, stroke,
 					objFunction);
@@ -413,6 +388,9 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 			cornerSubset = bestSubset;
 		}
 
+		if (errorList.isEmpty())
+			return corners;
+
 		double bestError = errorList.get(0);
 		List<Integer> bestSubset = new ArrayList<Integer>();
 		for (int i = 1; i < errorList.size(); i++) {
@@ -461,7 +439,7 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 
 		int n = 0;
 
-		while (cornerSubset.size() < corners.size()) {
+		while (cornerSubset.size() < corners.size() && !isOverTime()) {
 
 			// Go forward
 			List<Object> forwardResults = nextBestCorner(cornerSubset, corners,
@@ -560,7 +538,7 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 
 		int n = -1;
 
-		while (cornerSubset.size() > 2) {
+		while (cornerSubset.size() > 2 && !isOverTime()) {
 
 			// Go backward
 			List<Object> backResults = prevBestSubset(cornerSubset, stroke,
@@ -604,6 +582,9 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 			}
 		}
 
+		if (cornerSubsetList.isEmpty())
+			return corners;
+
 		List<Integer> bestSubset = null;
 
 		double d1Errors[] = new double[errorList.size()];
@@ -687,6 +668,8 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 	private List<Object> nextBestCorner(List<Integer> cornerSubset,
 			List<Integer> corners, Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -731,6 +714,8 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 	private List<Object> prevBestSubset(List<Integer> cornerSubset,
 			Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -819,9 +804,11 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTraining(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTraining(allCorners, m_stroke, objFunction,
 				knownNumCorners);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -949,9 +936,11 @@ public class FSSCombinationSegmenter extends AbstractSegmenter implements
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTesting(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTesting(allCorners, m_stroke, objFunction,
 				threshold);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -237,7 +237,11 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 			throw new InvalidParametersException();
 		}
 
+		startTimeBudget();
+
+		long stageStart = System.currentTimeMillis();
 		List<Integer> allCorners = getInitialCorners();
+		addStageTime("candidates", stageStart);
 
 		// uber hack - bypass if we have too many corners
 		if (allCorners.size() > 100)
@@ -245,24 +249,28 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
+		stageStart = System.currentTimeMillis();
 		switch (m_fssType) {
 		case SFS:
-			subset = sfs(allCorners, m_stroke, m_objFunction);
+			subset = sfs(allCorners, m_stroke, objFunction);
 			break;
 		case SBS:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 			break;
 		case SFFS:
-			subset = sffs(allCorners, m_stroke, m_objFunction);
+			subset = sffs(allCorners, m_stroke, objFunction);
 			break;
 		case SBFS:
-			subset = sbfs(allCorners, m_stroke, m_objFunction);
+			subset = sbfs(allCorners, m_stroke, objFunction);
 			break;
 		default:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 		}
+		addStageTime("search", stageStart);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
 				subset, S_SEGMENTER_NAME, 0.80);
@@ -307,6 +315,9 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		ISegmenter segmenter;
 
+		// Once the time budget is used up the remaining segmenters are
+		// skipped. ShortStraw always runs, so there are always candidates.
+
 		// ShortStraw
 		segmenter = new ShortStrawSegmenter(m_stroke);
 		m_shortStrawSegs = segmenter.getSegmentations();
@@ -314,25 +325,25 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		// Douglas-Peucker
 		segmenter = new DouglasPeuckerSegmenter(m_stroke);
-		m_dpSegs = segmenter.getSegmentations();
+		m_dpSegs = isOverTime() ? null : segmenter.getSegmentations();
 		allCorners.addAll(getCornersFromSegmentations(m_dpSegs));
 
 		// Paleo
 		segmenter = new PaleoSegmenter(m_useSmoothing);
 		segmenter.setStroke(m_stroke);
-		m_paleoSegs = segmenter.getSegmentations();
+		m_paleoSegs = isOverTime() ? null : segmenter.getSegmentations();
 		allCorners.addAll(getCornersFromSegmentations(m_paleoSegs));
 
 		// Sezgin
 		segmenter = new SezginSegmenter();
 		segmenter.setStroke(m_stroke);
-		m_sezginSegs = segmenter.getSegmentations();
+		m_sezginSegs = isOverTime() ? null : segmenter.getSegmentations();
 		allCorners.addAll(getCornersFromSegmentations(m_sezginSegs));
 
 		// Kim
 		segmenter = new KimSquaredSegmenter();
 		segmenter.setStroke(m_stroke);
-		m_kimSegs = segmenter.getSegmentations();
+		m_kimSegs = isOverTime() ? null : segmenter.getSegmentations();
 		allCorners.addAll(getCornersFromSegmentations(m_kimSegs));
 
 		// Remove overlapping corners
@@ -371,7 +382,7 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		List<Double> errorList = new ArrayList<Double>();
 
-		for (int i = 0; i < corners.size() - 2; i++) {
+		for (int i = 0; i < corners.size() - 2 && !isOverTime(); i++) {
 
 			List<Object> results = nextBestCorner(cornerSubset, corners,
 					stroke, objFunction);
@@ -383,6 +394,9 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 			errorList.add(error);
 		}
 
+		if (errorList.isEmpty())
+			return cornerSubset;
+
 		double bestError = errorList.get(errorList.size() - 1);
 		List<Integer> bestSubset = new ArrayList<Integer>();
 		for (int i = errorList.size() - 1; i >= 0; i--) {
@@ -421,7 +435,7 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		List<Integer> cornerSubset = new ArrayList<Integer>(corners);
 
-		for (int i = 0; i < corners.size(); i++) {
+		for (int i = 0; i < corners.size() && !isOverTime(); i++) {
 
 			List<Object> results = prevBestSubset(cornerSubset, stroke,
 					objFunction);
@@ -435,6 +449,9 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 			cornerSubset = bestSubset;
 		}
 
+		if (errorList.isEmpty())
+			return corners;
+
 		double bestError = errorList.get(0);
 		List<Integer> bestSubset = new ArrayList<Integer>();
 		for (int i = 1; i < errorList.size(); i++) {
@@ -483,7 +500,7 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		int n = 0;
 
-		while (cornerSubset.size() < corners.size()) {
+		while (cornerSubset.size() < corners.size() && !isOverTime()) {
 
 			// Go forward
 			List<Object> forwardResults = nextBestCorner(cornerSubset, corners,
@@ -582,7 +599,7 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 
 		int n = -1;
 
-		while (cornerSubset.size() > 2) {
+		while (cornerSubset.size() > 2 && !isOverTime()) {
 
 			// Go backward
 			List<Object> backResults = prevBestSubset(cornerSubset, stroke,
@@ -626,6 +643,9 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 			}
 		}
 
+		if (cornerSubsetList.isEmpty())
+			return corners;
+
 		List<Integer> bestSubset = null;
 
 		double d1Errors[] = new double[errorList.size()];
@@ -692,6 +712,8 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 	private List<Object> nextBestCorner(List<Integer> cornerSubset,
 			List<Integer> corners, Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -736,6 +758,8 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 	private List<Object> prevBestSubset(List<Integer> cornerSubset,
 			Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -824,9 +848,11 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTraining(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTraining(allCorners, m_stroke, objFunction,
 				knownNumCorners);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -954,9 +980,11 @@ public class FSSCombinationSegmenter2 extends AbstractSegmenter implements
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTesting(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTesting(allCorners, m_stroke, objFunction,
 				threshold);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -0,0 +1,81 @@
+/**
+ * ISegmentObjectiveFunction.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.segmentation.combination.objectiveFunctions;
+
+import srl.core.sketch.Stroke;
+
+/**
+ * Objective function whose value is a sum of independent errors, one for each
+ * segment between consecutive corners, followed by a normalization. The error
+ * of a segment depends only on its two corners, so it can be cached and reused
+ * as corners are added to and removed from a subset.
+ * 
+ * @see IncrementalObjectiveFunction
+ */
+public interface ISegmentObjectiveFunction extends IObjectiveFunction {
+
+	/**
+	 * Error of the stroke segment between two corners
+	 * 
+	 * @param start
+	 *            Index of the first corner
+	 * @param end
+	 *            Index of the second corner, greater than start
+	 * @param stroke
+	 *            Stroke that contains the segment
+	 * @return Error of the segment
+	 */
+	public double segmentError(int start, int end, Stroke stroke);
+
+	/**
+	 * Normalize the summed segment errors into the value of the objective
+	 * function
+	 * 
+	 * @param errorSum
+	 *            Sum of the segment errors, in corner order
+	 * @param firstCorner
+	 *            Index of the first corner
+	 * @param lastCorner
+	 *            Index of the last corner
+	 * @param stroke
+	 *            Stroke that contains the corners
+	 * @return Value of the objective function
+	 */
+	public double normalize(double errorSum, int firstCorner, int lastCorner,
+			Stroke stroke);
+}
@@ -0,0 +1,167 @@
+/**
+ * IncrementalObjectiveFunction.java
+ * 
+ * Revision History:<br>
+ * SRL Member - File created
+ * 
+ * <p>
+ * 
+ * <pre>
+ * This work is released under the BSD License:
+ * (C) 2008 Sketch Recognition Lab, Texas A&amp;M University (hereafter SRL @ TAMU)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sketch Recognition Lab, Texas A&amp;M University 
+ *       nor the names of its contributors may be used to endorse or promote 
+ *       products derived from this software without specific prior written 
+ *       permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY SRL @ TAMU ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL SRL @ TAMU BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+package srl.segmentation.combination.objectiveFunctions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import srl.core.sketch.Stroke;
+
+/**
+ * Evaluates a segment objective function with a cache of segment errors keyed
+ * by their (start, end) corners. When a corner is added to or removed from a
+ * subset only the two segments it touches are new, so each evaluation fits at
+ * most two segments and otherwise sums cached errors. The errors are summed in
+ * the same order as the wrapped function, so the values are identical.
+ * <p>
+ * The cache belongs to one stroke at a time and is cleared when a different
+ * stroke is given, or when the stroke's geometry changes. Instances are not
+ * thread-safe; use one per segmentation.
+ */
+public class IncrementalObjectiveFunction implements IObjectiveFunction {
+
+	/**
+	 * Objective function to evaluate segments with
+	 */
+	private ISegmentObjectiveFunction m_function;
+
+	/**
+	 * Stroke the cached errors belong to
+	 */
+	private Stroke m_stroke = null;
+
+	/**
+	 * Generation of the stroke when the errors were cached
+	 */
+	private long m_generation;
+
+	/**
+	 * Segment errors, keyed by start corner in the high and end corner in the
+	 * low 32 bits
+	 */
+	private Map<Long, Double> m_segmentErrors = new HashMap<Long, Double>();
+
+	/**
+	 * Constructor that takes the segment objective function to cache
+	 * 
+	 * @param function
+	 *            Objective function to evaluate segments with
+	 */
+	public IncrementalObjectiveFunction(ISegmentObjectiveFunction function) {
+		m_function = function;
+	}
+
+	/**
+	 * Wrap an objective function in an incremental one if it is evaluated
+	 * segment by segment.
+	 * 
+	 * @param function
+	 *            Objective function to wrap
+	 * @return An incremental objective function, or the given function if it
+	 *         cannot be cached
+	 */
+	public static IObjectiveFunction wrap(IObjectiveFunction function) {
+		if (function instanceof ISegmentObjectiveFunction) {
+			return new IncrementalObjectiveFunction(
+					(ISegmentObjectiveFunction) function);
+		}
+		return function;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * srl.segmentation.combination.objectiveFunctions.IObjectiveFunction
+	 * #solve(java.util.List, srl.core.sketch.Stroke)
+	 */
+	public double solve(List<Integer> corners, Stroke stroke) {
+
+		Collections.sort(corners);
+		double totalError = 0.0;
+
+		for (int c = 1; c < corners.size(); c++) {
+			totalError += segmentError(corners.get(c - 1), corners.get(c),
+					stroke);
+		}
+
+		int first = corners.isEmpty() ? 0 : corners.get(0);
+		int last = corners.isEmpty() ? 0 : corners.get(corners.size() - 1);
+
+		return m_function.normalize(totalError, first, last, stroke);
+	}
+
+	/**
+	 * Error of the segment between two corners, from the cache if it has been
+	 * computed before
+	 * 
+	 * @param start
+	 *            Index of the first corner
+	 * @param end
+	 *            Index of the second corner
+	 * @param stroke
+	 *            Stroke that contains the segment
+	 * @return Error of the segment
+	 */
+	public double segmentError(int start, int end, Stroke stroke) {
+
+		if (stroke != m_stroke || stroke.getGeneration() != m_generation) {
+			m_segmentErrors.clear();
+			m_stroke = stroke;
+			m_generation = stroke.getGeneration();
+		}
+
+		Long key = ((long) start << 32) | (end & 0xffffffffL);
+		Double error = m_segmentErrors.get(key);
+		if (error == null) {
+			error = m_function.segmentError(start, end, stroke);
+			m_segmentErrors.put(key, error);
+		}
+
+		return error;
+	}
+
+	/**
+	 * @return Number of segment errors currently cached
+	 */
+	public int getNumCachedSegments() {
+		return m_segmentErrors.size();
+	}
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import org.openawt.geom.Line2D;
 import org.openawt.geom.Rectangle2D;
 
+import srl.core.sketch.PackedStroke;
 import srl.core.sketch.Point;
 import srl.core.sketch.Stroke;
 import srl.math.LeastSquares;
@@ -18,7 +19,7 @@ import Jama.Matrix;
  * 
  * @author awolin
  */
-public class MSEObjectiveFunction implements IObjectiveFunction {
+public class MSEObjectiveFunction implements ISegmentObjectiveFunction {
 
 	/**
 	 * Threshold for line tests
@@ -63,66 +64,57 @@ public class MSEObjectiveFunction implements IObjectiveFunction {
 	public double solve(List<Integer> corners, Stroke stroke) {
 
 		Collections.sort(corners);
-		double[] pathLengths = calcPathLengths(stroke);
 		double totalError = 0.0;
 
 		for (int c = 1; c < corners.size(); c++) {
+			totalError += segmentError(corners.get(c - 1), corners.get(c),
+					stroke);
+		}
 
-			List<Point> actualSegment = stroke.getPoints().subList(
-					corners.get(c - 1), corners.get(c));
-
-			double err = 0.0;
+		return normalize(totalError, 0, 0, stroke);
+	}
 
-			if (isLine(corners.get(c - 1), corners.get(c), stroke, pathLengths,
-					S_LINETHRESHOLD)) {
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * srl.segmentation.combination.objectiveFunctions.ISegmentObjectiveFunction
+	 * #segmentError(int, int, srl.core.sketch.Stroke)
+	 */
+	public double segmentError(int c1, int c2, Stroke stroke) {
 
-				Point corner1 = stroke.getPoint(corners.get(c - 1));
-				Point corner2 = stroke.getPoint(corners.get(c));
+		PackedStroke packed = stroke.getPackedStroke();
+		double[] pathLengths = packed.getLengthSoFar();
+		double[] x = packed.getX();
+		double[] y = packed.getY();
 
-				Line2D.Double optimalLine = new Line2D.Double();
-				optimalLine.setLine(corner1.getX(), corner1.getY(),
-						corner2.getX(), corner2.getY());
+		if (isLine(c1, c2, packed, pathLengths, S_LINETHRESHOLD)) {
 
-				double lineErr = LeastSquares.error(actualSegment, optimalLine);
+			Line2D.Double optimalLine = new Line2D.Double();
+			optimalLine.setLine(x[c1], y[c1], x[c2], y[c2]);
 
-				err = lineErr;
-			} else {
+			return LeastSquares.error(x, y, c1, c2, optimalLine);
+		} else {
 
-				double curveErr = curveFitError(actualSegment, 4);
-				double arcErr = arcOrthogonalDistanceSquared(actualSegment);
+			List<Point> actualSegment = stroke.getPoints().subList(c1, c2);
 
-				err = Math.min(curveErr, arcErr);
-			}
+			double curveErr = curveFitError(actualSegment, 4);
+			double arcErr = arcOrthogonalDistanceSquared(actualSegment);
 
-			totalError += err;
+			return Math.min(curveErr, arcErr);
 		}
-
-		totalError = totalError / stroke.getNumPoints();
-
-		return totalError;
 	}
 
-	/**
-	 * Calculate the path lengths at each point, mainly for use in the
-	 * {@link #isLine(Stroke, int, int, double[])} test.
+	/*
+	 * (non-Javadoc)
 	 * 
-	 * @param stroke
-	 *            Stroke to calculate the path lengths for
-	 * @return An array of doubles corresponding to points in the stroke, where
-	 *         each double is the path length of the stroke up to the point in
-	 *         that array's index
+	 * @see
+	 * srl.segmentation.combination.objectiveFunctions.ISegmentObjectiveFunction
+	 * #normalize(double, int, int, srl.core.sketch.Stroke)
 	 */
-	private double[] calcPathLengths(Stroke stroke) {
-
-		double[] pathLengths = new double[stroke.getNumPoints()];
-		pathLengths[0] = 0.0;
-
-		for (int i = 1; i < stroke.getNumPoints(); i++) {
-			pathLengths[i] = pathLengths[i - 1]
-					+ stroke.getPoint(i - 1).distance(stroke.getPoint(i));
-		}
-
-		return pathLengths;
+	public double normalize(double errorSum, int firstCorner, int lastCorner,
+			Stroke stroke) {
+		return errorSum / stroke.getNumPoints();
 	}
 
 	/**
@@ -133,7 +125,7 @@ public class MSEObjectiveFunction implements IObjectiveFunction {
 	 * @param p2
 	 *            Index for point 2
 	 * @param stroke
-	 *            Stroke that contains the segment
+	 *            Packed stroke that contains the segment
 	 * @param pathLengths
 	 *            Path length array storing the total stroke path length at each
 	 *            index of the point
@@ -141,18 +133,15 @@ public class MSEObjectiveFunction implements IObjectiveFunction {
 	 *            The threshold for the straight-line distance / path distance
 	 * @return True if the segment of the stroke is a line, false otherwise
 	 */
-	private boolean isLine(int p1, int p2, Stroke stroke, double[] pathLengths,
-			final double lineVsArcThreshold) {
+	private boolean isLine(int p1, int p2, PackedStroke stroke,
+			double[] pathLengths, final double lineVsArcThreshold) {
 
 		// Local thresholds that shouldn't need changing.
 		// Correspond to the size of the segment
 		final double sizeThreshold = 10;
 		final double pointThreshold = 5;
 
-		Point pt1 = stroke.getPoint(p1);
-		Point pt2 = stroke.getPoint(p2);
-
-		double straightLineDistance = pt1.distance(pt2);
+		double straightLineDistance = stroke.distance(p1, p2);
 		double pathDistance = pathLengths[p2] - pathLengths[p1];
 
 		double lengthRatio = straightLineDistance / pathDistance;
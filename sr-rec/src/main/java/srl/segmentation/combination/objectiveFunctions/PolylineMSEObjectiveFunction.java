@@ -5,7 +5,7 @@ import java.util.List;
 
 import org.openawt.geom.Line2D;
 
-import srl.core.sketch.Point;
+import srl.core.sketch.PackedStroke;
 import srl.core.sketch.Stroke;
 import srl.math.LeastSquares;
 
@@ -16,7 +16,8 @@ import srl.math.LeastSquares;
  * 
  * @author awolin
  */
-public class PolylineMSEObjectiveFunction implements IObjectiveFunction {
+public class PolylineMSEObjectiveFunction implements
+		ISegmentObjectiveFunction {
 
 	/**
 	 * Default constructor
@@ -37,23 +38,10 @@ public class PolylineMSEObjectiveFunction implements IObjectiveFunction {
 
 		Collections.sort(corners);
 		double totalError = 0.0;
-		double numPoints = 0.0;
 
 		for (int c = 1; c < corners.size(); c++) {
-
-			Point corner1 = stroke.getPoint(corners.get(c - 1));
-			Point corner2 = stroke.getPoint(corners.get(c));
-
-			Line2D.Double optimalLine = new Line2D.Double();
-			optimalLine.setLine(corner1.getX(), corner1.getY(), corner2.getX(),
-					corner2.getY());
-
-			List<Point> actualSegment = stroke.getPoints().subList(
-					corners.get(c - 1), corners.get(c));
-			numPoints += actualSegment.size();
-
-			totalError += LeastSquares.squaredError(actualSegment, optimalLine);
-			// totalError += LeastSquares.error(actualSegment, optimalLine);
+			totalError += segmentError(corners.get(c - 1), corners.get(c),
+					stroke);
 		}
 
 		// Abs err threshold:
@@ -63,10 +51,50 @@ public class PolylineMSEObjectiveFunction implements IObjectiveFunction {
 		// Accuracy using unbiased threshold on entire dataset =
 		// 0.8703703703703703
 
-		totalError = totalError / numPoints;
+		int first = corners.isEmpty() ? 0 : corners.get(0);
+		int last = corners.isEmpty() ? 0 : corners.get(corners.size() - 1);
+
+		return normalize(totalError, first, last, stroke);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * srl.segmentation.combination.objectiveFunctions.ISegmentObjectiveFunction
+	 * #segmentError(int, int, srl.core.sketch.Stroke)
+	 */
+	public double segmentError(int start, int end, Stroke stroke) {
+
+		PackedStroke packed = stroke.getPackedStroke();
+		double[] x = packed.getX();
+		double[] y = packed.getY();
+
+		Line2D.Double optimalLine = new Line2D.Double();
+		optimalLine.setLine(x[start], y[start], x[end], y[end]);
+
+		return LeastSquares.squaredError(x, y, start, end, optimalLine);
+		// return LeastSquares.error(x, y, start, end, optimalLine);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * srl.segmentation.combination.objectiveFunctions.ISegmentObjectiveFunction
+	 * #normalize(double, int, int, srl.core.sketch.Stroke)
+	 */
+	public double normalize(double errorSum, int firstCorner, int lastCorner,
+			Stroke stroke) {
+
+		// each segment covers the points from its first corner up to, but
+		// not including, its second
+		double numPoints = lastCorner - firstCorner;
+
+		errorSum = errorSum / numPoints;
 
-		// totalError = Math.sqrt(totalError);
+		// errorSum = Math.sqrt(errorSum);
 
-		return totalError;
+		return errorSum;
 	}
 }
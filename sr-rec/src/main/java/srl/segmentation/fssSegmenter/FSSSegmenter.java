@@ -163,23 +163,25 @@ public class FSSSegmenter extends SezginSegmenter {
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
 		switch (m_fssType) {
 		case SFS:
-			subset = sfs(allCorners, m_stroke, m_objFunction);
+			subset = sfs(allCorners, m_stroke, objFunction);
 			break;
 		case SBS:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 			break;
 		case SFFS:
-			subset = sffs(allCorners, m_stroke, m_objFunction);
+			subset = sffs(allCorners, m_stroke, objFunction);
 			break;
 		case SBFS:
-			subset = sbfs(allCorners, m_stroke, m_objFunction);
+			subset = sbfs(allCorners, m_stroke, objFunction);
 			break;
 		default:
-			subset = sbs(allCorners, m_stroke, m_objFunction);
+			subset = sbs(allCorners, m_stroke, objFunction);
 		}
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -884,6 +886,8 @@ public class FSSSegmenter extends SezginSegmenter {
 	private List<Object> nextBestCorner(List<Integer> cornerSubset,
 			List<Integer> corners, Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -928,6 +932,8 @@ public class FSSSegmenter extends SezginSegmenter {
 	private List<Object> prevBestSubset(List<Integer> cornerSubset,
 			Stroke stroke, IObjectiveFunction objFunction) {
 
+		checkCancelled();
+
 		List<Double> errorValues = new ArrayList<Double>();
 		Collections.sort(cornerSubset);
 
@@ -1016,9 +1022,11 @@ public class FSSSegmenter extends SezginSegmenter {
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTraining(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTraining(allCorners, m_stroke, objFunction,
 				knownNumCorners);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -1146,9 +1154,11 @@ public class FSSSegmenter extends SezginSegmenter {
 		List<Integer> allCorners = getInitialCorners();
 		List<Integer> subset = new ArrayList<Integer>();
 
+		IObjectiveFunction objFunction = incrementalObjectiveFunction(m_objFunction);
+
 		// Find the best subset of corners using the given feature subset
 		// selection algorithm
-		subset = sbfsForCVTesting(allCorners, m_stroke, m_objFunction,
+		subset = sbfsForCVTesting(allCorners, m_stroke, objFunction,
 				threshold);
 
 		List<Segmentation> combinedSegmentations = segmentStroke(m_stroke,
@@ -43,6 +43,7 @@ import java.util.List;
 
 import srl.core.exception.InvalidParametersException;
 import srl.core.sketch.ISegmenter;
+import srl.core.sketch.PackedStroke;
 import srl.core.sketch.Point;
 import srl.core.sketch.Segmentation;
 import srl.core.sketch.Stroke;
@@ -332,20 +333,20 @@ public class ShortStrawSegmenter extends AbstractSegmenter implements
 					"ShortStraw has not received any stroke to segment");
 		}
 
+		PackedStroke packed = m_stroke.getPackedStroke();
+		int numPoints = packed.size();
+
 		// Initialize necessary variables
-		double[] straws = new double[m_stroke.getNumPoints()];
-		double[] sortedStraws = new double[m_stroke.getNumPoints()
-				- (S_WINDOW * 2)];
+		double[] straws = new double[numPoints];
+		double[] sortedStraws = new double[numPoints - (S_WINDOW * 2)];
 
 		// Calculate the straws
-		for (int i = S_WINDOW; i < m_stroke.getNumPoints() - S_WINDOW; i++) {
+		for (int i = S_WINDOW; i < numPoints - S_WINDOW; i++) {
 
 			if (S_OPTIMIZED) {
-				straws[i] = distanceSq(m_stroke.getPoint(i - S_WINDOW),
-						m_stroke.getPoint(i + S_WINDOW));
+				straws[i] = distanceSq(packed, i - S_WINDOW, i + S_WINDOW);
 			} else {
-				straws[i] = m_stroke.getPoint(i - S_WINDOW).distance(
-						m_stroke.getPoint(i + S_WINDOW));
+				straws[i] = packed.distance(i - S_WINDOW, i + S_WINDOW);
 			}
 
 			// For finding the median
@@ -412,13 +413,14 @@ public class ShortStrawSegmenter extends AbstractSegmenter implements
 			double[] straws) {
 
 		List<Integer> filteredCorners = new ArrayList<Integer>(corners);
+		PackedStroke packed = m_stroke.getPackedStroke();
 
 		// Calculate the path lengths at each point, for use in the isLine test
 		double[] pathLengths = null;
 		if (S_OPTIMIZED) {
 			pathLengths = optimizedPathLengths(m_stroke);
 		} else {
-			pathLengths = calcPathLengths(m_stroke);
+			pathLengths = packed.getLengthSoFar();
 		}
 
 		// Check to see if all of our segments pass a line test
@@ -431,7 +433,7 @@ public class ShortStrawSegmenter extends AbstractSegmenter implements
 				int c1 = filteredCorners.get(i - 1);
 				int c2 = filteredCorners.get(i);
 
-				if (!isLine(c1, c2, m_stroke, pathLengths, 0.95)) {
+				if (!isLine(c1, c2, packed, pathLengths, 0.95)) {
 
 					int newCorner = minDistBetweenIndices(c1, c2, straws);
 					filteredCorners.add(i, newCorner);
@@ -446,7 +448,7 @@ public class ShortStrawSegmenter extends AbstractSegmenter implements
 			int c1 = filteredCorners.get(i - 1);
 			int c3 = filteredCorners.get(i + 1);
 
-			if (isLine(c1, c3, m_stroke, pathLengths, 0.95)) {
+			if (isLine(c1, c3, packed, pathLengths, 0.95)) {
 				filteredCorners.remove(i);
 				i--;
 			}
@@ -510,15 +512,19 @@ public class ShortStrawSegmenter extends AbstractSegmenter implements
 	 * Distance squared algorithm. Euclidean distance squared, so that we do not
 	 * have to take the square root.
 	 * 
+	 * @param stroke
+	 *            Packed stroke containing the points
 	 * @param p1
-	 *            Point 1
+	 *            Index of point 1
 	 * @param p2
-	 *            Point 2
+	 *            Index of point 2
 	 * @return Distance from point 1 to point 2 squared
 	 */
-	private double distanceSq(Point p1, Point p2) {
-		double x2 = (p1.getX() - p2.getX()) * (p1.getX() - p2.getX());
-		double y2 = (p1.getY() - p2.getY()) * (p1.getY() - p2.getY());
+	private double distanceSq(PackedStroke stroke, int p1, int p2) {
+		double dx = stroke.getX(p1) - stroke.getX(p2);
+		double dy = stroke.getY(p1) - stroke.getY(p2);
+		double x2 = dx * dx;
+		double y2 = dy * dy;
 
 		return x2 + y2;
 	}
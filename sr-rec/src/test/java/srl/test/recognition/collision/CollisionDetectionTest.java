@@ -0,0 +1,94 @@
+package srl.test.recognition.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.core.util.Pair;
+import srl.recognition.collision.CollisionDetection;
+
+public class CollisionDetectionTest {
+
+	@Test
+	public void testDetectCollisionMatchesBruteForce() {
+		Random random = new Random(15);
+		int collisions = 0;
+		for (int pair = 0; pair < 500; pair++) {
+			Stroke s1 = randomStroke(random, 200);
+			Stroke s2 = randomStroke(random, 200);
+			boolean expected = bruteForce(s1, s2);
+			if (expected)
+				collisions++;
+			assertEquals(expected, CollisionDetection.detectCollision(s1, s2));
+			assertEquals(expected, CollisionDetection.detectCollision(s2, s1));
+		}
+		// both outcomes are covered
+		assertTrue(collisions > 0 && collisions < 500);
+	}
+
+	@Test
+	public void testFindCollisionsMatchesBruteForce() {
+		Random random = new Random(16);
+		for (int page = 0; page < 20; page++) {
+			List<Stroke> strokes = new ArrayList<Stroke>();
+			int numStrokes = random.nextInt(80);
+			for (int s = 0; s < numStrokes; s++)
+				strokes.add(randomStroke(random, 600));
+			// an empty stroke collides with nothing
+			if (page % 4 == 0)
+				strokes.add(random.nextInt(strokes.size() + 1), new Stroke());
+
+			List<Pair<Stroke, Stroke>> expected = new ArrayList<Pair<Stroke, Stroke>>();
+			for (int i = 0; i < strokes.size(); i++) {
+				for (int k = i + 1; k < strokes.size(); k++) {
+					if (bruteForce(strokes.get(i), strokes.get(k)))
+						expected.add(new Pair<Stroke, Stroke>(strokes.get(i),
+								strokes.get(k)));
+				}
+			}
+
+			List<Pair<Stroke, Stroke>> actual = CollisionDetection
+					.findCollisions(strokes);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSame(expected.get(i).getFirst(), actual.get(i).getFirst());
+				assertSame(expected.get(i).getLast(), actual.get(i).getLast());
+			}
+		}
+	}
+
+	private static boolean bruteForce(Stroke s1, Stroke s2) {
+		for (Point p1 : s1.getPoints()) {
+			for (Point p2 : s2.getPoints()) {
+				if (p1.distance(p2) < CollisionDetection.POINT_THRESHOLD)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a random walk of up to 40 points starting somewhere in a square
+	 *         of the given size
+	 */
+	private static Stroke randomStroke(Random random, int size) {
+		List<Point> points = new ArrayList<Point>();
+		double x = random.nextInt(size);
+		double y = random.nextInt(size);
+		int numPoints = 1 + random.nextInt(40);
+		for (int p = 0; p < numPoints; p++) {
+			points.add(new Point(x, y, p * 10L));
+			x += random.nextGaussian() * 4;
+			y += random.nextGaussian() * 4;
+		}
+		return new Stroke(points);
+	}
+}
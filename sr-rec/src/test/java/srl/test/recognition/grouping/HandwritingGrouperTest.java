@@ -0,0 +1,114 @@
+package srl.test.recognition.grouping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.core.sketch.BoundingBox;
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.recognition.grouping.HandwritingGrouper;
+
+public class HandwritingGrouperTest {
+
+	@Test
+	public void testGroupsMatchPairwiseMerge() {
+		HandwritingGrouper grouper = new HandwritingGrouper();
+		Random random = new Random(22);
+		for (int page = 0; page < 50; page++) {
+			List<Stroke> strokes = randomPage(random, 1 + random.nextInt(60));
+			List<Shape> expected = pairwiseGroup(grouper, strokes);
+			List<Shape> actual = grouper.group(strokes);
+			assertEquals(expected.size(), actual.size());
+			for (int g = 0; g < expected.size(); g++) {
+				List<Stroke> expectedStrokes = expected.get(g).getStrokes();
+				List<Stroke> actualStrokes = actual.get(g).getStrokes();
+				assertEquals(expectedStrokes.size(), actualStrokes.size());
+				for (int s = 0; s < expectedStrokes.size(); s++)
+					assertSame(expectedStrokes.get(s), actualStrokes.get(s));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyPage() {
+		assertEquals(0, new HandwritingGrouper().group(new ArrayList<Stroke>())
+				.size());
+	}
+
+	/**
+	 * The grouping loop from before the disjoint set and box grid: after each
+	 * merge every pair of groups is compared again
+	 */
+	private static List<Shape> pairwiseGroup(HandwritingGrouper grouper,
+			List<Stroke> strokes) {
+		List<Shape> shapegroups = new ArrayList<Shape>();
+		for (Stroke stroke : strokes) {
+			Shape shape = new Shape();
+			shape.add(stroke);
+			shapegroups.add(shape);
+		}
+
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < shapegroups.size() && !merged; i++) {
+				Shape shape1 = shapegroups.get(i);
+				for (int k = 0; k < shapegroups.size() && !merged; k++) {
+					Shape shape2 = shapegroups.get(k);
+					if (shape1 == shape2)
+						continue;
+					if (touches(grouper, shape1, shape2)) {
+						for (Stroke stroke : shape2.getStrokes())
+							shape1.add(stroke);
+						shapegroups.remove(k);
+						merged = true;
+					}
+				}
+			}
+		}
+		return shapegroups;
+	}
+
+	private static boolean touches(HandwritingGrouper grouper, Shape shape1,
+			Shape shape2) {
+		double width1 = shape1.getBoundingBox().getWidth();
+		double width2 = shape2.getBoundingBox().getWidth();
+		for (Stroke stroke1 : shape1.getStrokes()) {
+			BoundingBox box1 = grouper.getGroupingBox(stroke1, width1);
+			for (Stroke stroke2 : shape2.getStrokes()) {
+				if (box1.intersects(grouper.getGroupingBox(stroke2, width2)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return short strokes scattered along a few lines of text, so some
+	 *         groups merge and others do not
+	 */
+	private static List<Stroke> randomPage(Random random, int numStrokes) {
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		long time = 0;
+		for (int s = 0; s < numStrokes; s++) {
+			double x = random.nextInt(600);
+			double y = 100 * random.nextInt(4) + random.nextInt(30);
+			List<Point> points = new ArrayList<Point>();
+			int numPoints = 2 + random.nextInt(10);
+			for (int p = 0; p < numPoints; p++) {
+				points.add(new Point(x, y, time += 10));
+				x += random.nextInt(9) - 2;
+				y += random.nextInt(13) - 6;
+			}
+			strokes.add(new Stroke(points));
+		}
+		return strokes;
+	}
+}
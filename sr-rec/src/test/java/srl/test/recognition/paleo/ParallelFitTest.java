@@ -0,0 +1,107 @@
+package srl.test.recognition.paleo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.FitList;
+import srl.recognition.paleo.OrigPaleoSketchRecognizer;
+import srl.recognition.paleo.PaleoConfig;
+
+public class ParallelFitTest {
+	ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testParallelFitsMatchSequential() {
+		for (Stroke stroke : testStrokes()) {
+			FitList sequential = recognize(new Stroke(stroke), null);
+			FitList parallel = recognize(new Stroke(stroke), executor);
+			assertEquals(sequential.size(), parallel.size());
+			for (int i = 0; i < sequential.size(); i++) {
+				Fit expected = sequential.get(i);
+				Fit actual = parallel.get(i);
+				assertEquals(expected.getName(), actual.getName());
+				assertEquals(expected.getName(), expected.getError(),
+						actual.getError(), 0.0);
+				assertEquals(expected.getName(), expected.passed(),
+						actual.passed());
+			}
+		}
+	}
+
+	private FitList recognize(Stroke stroke, ExecutorService executor) {
+		OrigPaleoSketchRecognizer paleo = new OrigPaleoSketchRecognizer(
+				PaleoConfig.allOn());
+		paleo.setExecutor(executor);
+		paleo.setStroke(stroke);
+		paleo.recognize();
+		return paleo.getFits();
+	}
+
+	/**
+	 * @return a line, an arc, a circle, a spiral and a zig-zag
+	 */
+	static List<Stroke> testStrokes() {
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		long time = 0;
+
+		List<Point> line = new ArrayList<Point>();
+		for (int i = 0; i < 50; i++)
+			line.add(new Point(10 + i * 4, 20 + i * 2, time += 10));
+		strokes.add(new Stroke(line));
+
+		List<Point> arc = new ArrayList<Point>();
+		for (int i = 0; i < 60; i++) {
+			double t = Math.PI * i / 59;
+			arc.add(new Point(100 + 80 * Math.cos(t), 100 + 80 * Math.sin(t),
+					time += 10));
+		}
+		strokes.add(new Stroke(arc));
+
+		List<Point> circle = new ArrayList<Point>();
+		for (int i = 0; i < 80; i++) {
+			double t = 2 * Math.PI * i / 79;
+			circle.add(new Point(200 + 60 * Math.cos(t), 200 + 60 * Math
+					.sin(t), time += 10));
+		}
+		strokes.add(new Stroke(circle));
+
+		List<Point> spiral = new ArrayList<Point>();
+		for (int i = 0; i < 150; i++) {
+			double t = 6 * Math.PI * i / 149;
+			double r = 10 + 3 * t;
+			spiral.add(new Point(300 + r * Math.cos(t), 300 + r * Math.sin(t),
+					time += 10));
+		}
+		strokes.add(new Stroke(spiral));
+
+		List<Point> zigzag = new ArrayList<Point>();
+		for (int i = 0; i < 100; i++) {
+			double x = i * 3;
+			double y = (i / 20) % 2 == 0 ? (i % 20) * 4 : 80 - (i % 20) * 4;
+			zigzag.add(new Point(x, y, time += 10));
+		}
+		strokes.add(new Stroke(zigzag));
+		return strokes;
+	}
+}
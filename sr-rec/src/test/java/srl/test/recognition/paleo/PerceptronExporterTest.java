@@ -0,0 +1,87 @@
+package srl.test.recognition.paleo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import srl.recognition.paleo.paleoNN.CompiledPerceptron;
+import srl.recognition.paleo.paleoNN.PerceptronExporter;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instance;
+import weka.core.SerializationHelper;
+
+public class PerceptronExporterTest {
+
+	/**
+	 * The model PaleoNNRecognizer classifies with, relative to the module
+	 */
+	private static final String MODEL = "src/main/java/srl/recognition/paleo/paleoNN/models/paleo.limited.model";
+
+	MultilayerPerceptron mlp;
+
+	CompiledPerceptron compiled;
+
+	@Before
+	public void setUp() throws Exception {
+		mlp = (MultilayerPerceptron) SerializationHelper.read(MODEL);
+		compiled = PerceptronExporter.compile(mlp);
+	}
+
+	@Test
+	public void testDistributionMatchesWeka() throws Exception {
+		double[][] features = randomFeatures(new Random(25), 200);
+		for (double[] vector : features) {
+			double[] expected = mlp.distributionForInstance(instance(vector));
+			assertDistribution(expected, compiled.distribution(vector));
+		}
+	}
+
+	@Test
+	public void testBatchDistributionsMatchWeka() throws Exception {
+		double[][] features = randomFeatures(new Random(26), 200);
+		double[][] actual = compiled.distributions(features);
+		assertEquals(features.length, actual.length);
+		for (int b = 0; b < features.length; b++) {
+			double[] expected = mlp
+					.distributionForInstance(instance(features[b]));
+			assertDistribution(expected, actual[b]);
+		}
+	}
+
+	private static void assertDistribution(double[] expected, double[] actual) {
+		assertNotNull(actual);
+		assertEquals(expected.length, actual.length);
+		for (int c = 0; c < expected.length; c++)
+			assertEquals(expected[c], actual[c], PerceptronExporter.TOLERANCE);
+	}
+
+	/**
+	 * @return the features as an instance with the class last, as
+	 *         PaleoFeatureExtractor builds them for classification
+	 */
+	private static Instance instance(double[] features) {
+		double[] values = new double[features.length + 1];
+		System.arraycopy(features, 0, values, 0, features.length);
+		return new Instance(1.0, values);
+	}
+
+	/**
+	 * @return feature vectors of small and large values, some negative, some
+	 *         zero
+	 */
+	private double[][] randomFeatures(Random random, int count) {
+		double[][] features = new double[count][compiled.getNumFeatures()];
+		for (double[] vector : features) {
+			double scale = Math.pow(10, random.nextInt(5) - 2);
+			for (int f = 0; f < vector.length; f++) {
+				if (random.nextInt(10) > 0)
+					vector[f] = (random.nextDouble() * 2 - 0.5) * scale;
+			}
+		}
+		return features;
+	}
+}
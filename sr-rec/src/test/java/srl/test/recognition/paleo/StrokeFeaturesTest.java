@@ -0,0 +1,146 @@
+package srl.test.recognition.paleo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.recognition.paleo.StrokeFeatureBuffers;
+import srl.recognition.paleo.StrokeFeatures;
+
+public class StrokeFeaturesTest {
+
+	/**
+	 * Features of {@link #testStrokes()} as computed before the intermediate
+	 * values were kept in {@link StrokeFeatureBuffers}, without and with
+	 * smoothing: number of points, index of the max curvature, stroke length,
+	 * max curvature, average curvature, and the sums of the direction graph,
+	 * the curvature graph and the length so far
+	 */
+	private static final double[][] EXPECTED = {
+			{ 50, 0, 219.13466179497917, 0.0, 0.0, 22.718732841039472, 0.0,
+					5478.3665448744805 },
+			{ 50, 0, 219.13466179497917, 0.0, 0.0, 22.718732841039472, 0.0,
+					5478.3665448744805 },
+			{ 60, 14, 251.29772237259382, 0.006250738414836238,
+					0.006250738414834925, 185.35396656179782,
+					0.36254282806042565, 7538.931671177815 },
+			{ 60, 14, 251.29772237259382, 0.006250738414836238,
+					0.006250738414834925, 185.35396656179782,
+					0.36254282806042565, 7538.931671177815 },
+			{ 80, 18, 376.89176311885484, 0.008335530146886342,
+					0.008335530146884845, 372.27872945039036,
+					0.6501713514570179, 15075.670524754198 },
+			{ 80, 18, 376.89176311885484, 0.008335530146886342,
+					0.008335530146884845, 372.27872945039036,
+					0.6501713514570179, 15075.670524754198 },
+			{ 150, 1, 723.7906396078914, 0.0480275351338632,
+					0.01686075733004163, 1623.4912078188029,
+					2.495392084846161, 41120.69662186549 },
+			{ 150, 1, 723.7906396078914, 0.0480275351338632,
+					0.01686075733004163, 1623.4912078188029,
+					2.495392084846161, 41120.69662186549 },
+			{ 100, 19, 495.0, 0.18545904360032245, 0.007569756881645814,
+					17.61860914203063, 0.7418361744012898, 24750.0 },
+			{ 100, 19, 495.0, 0.18545904360032245, 0.007569756881645814,
+					17.61860914203063, 0.7418361744012898, 24750.0 },
+			{ 45, 42, 215.6880373144188, 0.12411913973682634,
+					0.010871548936944316, 9.402406650994852,
+					0.4674766042886056, 4703.41804218891 },
+			{ 45, 42, 215.6880373144188, 0.12411913973682634,
+					0.008675440013191586, 9.402406650994852,
+					0.37304392056723823, 4703.41804218891 } };
+
+	@Test
+	public void testFeaturesMatchPreviousResults() {
+		List<Stroke> strokes = testStrokes();
+		for (int s = 0; s < strokes.size(); s++) {
+			for (int smooth = 0; smooth < 2; smooth++) {
+				StrokeFeatures features = new StrokeFeatures(strokes.get(s),
+						smooth == 1);
+				double[] expected = EXPECTED[s * 2 + smooth];
+				String name = "stroke " + s + (smooth == 1 ? " smoothed" : "");
+				assertEquals(name, (int) expected[0], features.getNumPoints());
+				assertEquals(name, (int) expected[1],
+						features.getMaxCurvIndex());
+				assertEquals(name, expected[2], features.getStrokeLength(),
+						1e-9);
+				assertEquals(name, expected[3], features.getMaxCurv(), 1e-12);
+				assertEquals(name, expected[4], features.getAvgCurvature(),
+						1e-12);
+				assertEquals(name, expected[5], sum(features.getDir()), 1e-9);
+				assertEquals(name, expected[6], sum(features.getCurvature()),
+						1e-9);
+				assertEquals(name, expected[7],
+						sum(features.getLengthSoFar()), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void testReusedBuffersMatchFreshBuffers() {
+		// starts too small, so the buffers grow and are then reused for
+		// shorter strokes
+		StrokeFeatureBuffers reused = new StrokeFeatureBuffers(4);
+		for (int pass = 0; pass < 2; pass++) {
+			for (Stroke stroke : testStrokes()) {
+				for (boolean smooth : new boolean[] { false, true }) {
+					StrokeFeatures expected = new StrokeFeatures(stroke,
+							smooth, new StrokeFeatureBuffers());
+					StrokeFeatures actual = new StrokeFeatures(stroke, smooth,
+							reused);
+					assertEquals(expected.getNumPoints(),
+							actual.getNumPoints());
+					assertEquals(expected.getMaxCurvIndex(),
+							actual.getMaxCurvIndex());
+					assertArrayEquals(expected.getDir(), actual.getDir(), 0.0);
+					assertArrayEquals(expected.getDirNoShift(),
+							actual.getDirNoShift(), 0.0);
+					assertArrayEquals(expected.getCurvature(),
+							actual.getCurvature(), 0.0);
+					assertArrayEquals(expected.getLengthSoFar(),
+							actual.getLengthSoFar(), 0.0);
+					assertArrayEquals(expected.getLengthSoFar2nd(),
+							actual.getLengthSoFar2nd(), 0.0);
+					assertEquals(expected.getStrokeLength(),
+							actual.getStrokeLength(), 0.0);
+				}
+			}
+		}
+	}
+
+	private static double sum(double[] values) {
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		return sum;
+	}
+
+	/**
+	 * @return the strokes of {@link ParallelFitTest#testStrokes()}, plus a
+	 *         short stroke with repeated points, repeated times and a hook
+	 */
+	static List<Stroke> testStrokes() {
+		List<Stroke> strokes = ParallelFitTest.testStrokes();
+		List<Point> hooked = new ArrayList<Point>();
+		long time = 0;
+		hooked.add(new Point(0, 0, time));
+		hooked.add(new Point(0, 0, time += 5));
+		hooked.add(new Point(3, 4, time += 5));
+		hooked.add(new Point(5, 5, time));
+		for (int i = 0; i < 40; i++) {
+			hooked.add(new Point(6 + i * 5, 6 + i * 0.5, time += 10));
+			if (i % 7 == 0)
+				hooked.add(new Point(6 + i * 5, 6 + i * 0.5, time += 10));
+		}
+		hooked.add(new Point(204, 30, time += 10));
+		hooked.add(new Point(200, 34, time += 10));
+		strokes.add(new Stroke(hooked));
+		return strokes;
+	}
+}
@@ -0,0 +1,237 @@
+package srl.test.recognition.paleo.multistroke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Shape;
+import srl.core.sketch.Stroke;
+import srl.core.util.IsAConstants;
+import srl.recognition.IRecognitionResult;
+import srl.recognition.RecognitionResult;
+import srl.recognition.paleo.Fit;
+import srl.recognition.paleo.multistroke.Graph;
+import srl.recognition.paleo.multistroke.GraphNode;
+import srl.recognition.paleo.multistroke.MultiStrokePaleoRecognizer;
+import srl.recognition.recognizer.IRecognizer;
+
+public class MultiStrokePaleoRecognizerTest {
+
+	/**
+	 * Draws the same sketches stroke by stroke with and without incremental
+	 * updates and compares the graph and the results after every stroke
+	 */
+	@Test
+	public void testIncrementalMatchesFullRescan() {
+		int combined = 0;
+		for (int sketch = 0; sketch < 10; sketch++) {
+			List<Stroke> strokes = randomSketch(new Random(sketch));
+			List<Stroke> sameStrokes = randomSketch(new Random(sketch));
+
+			MultiStrokePaleoRecognizer full = recognizer(false);
+			MultiStrokePaleoRecognizer incremental = recognizer(true);
+			for (int s = 0; s < strokes.size(); s++) {
+				List<String> expected = describe(recognize(full, strokes.get(s)));
+				List<String> actual = describe(recognize(incremental,
+						sameStrokes.get(s)));
+				assertEquals(expected, actual);
+				assertEquals(edges(full.getGraph()),
+						edges(incremental.getGraph()));
+				for (String result : actual) {
+					if (result.startsWith(Fit.POLYGON + " combined"))
+						combined++;
+				}
+			}
+		}
+		// the sketches do close loops of line strokes
+		assertTrue(combined > 0);
+	}
+
+	/**
+	 * Turning incremental mode on part way through a sketch indexes the
+	 * strokes recognized so far
+	 */
+	@Test
+	public void testSwitchToIncrementalMatchesFullRescan() {
+		List<Stroke> strokes = randomSketch(new Random(5));
+		List<Stroke> sameStrokes = randomSketch(new Random(5));
+		MultiStrokePaleoRecognizer full = recognizer(false);
+		MultiStrokePaleoRecognizer switched = recognizer(false);
+		for (int s = 0; s < strokes.size(); s++) {
+			if (s == strokes.size() / 2)
+				switched.setIncremental(true);
+			assertEquals(describe(recognize(full, strokes.get(s))),
+					describe(recognize(switched, sameStrokes.get(s))));
+			assertEquals(edges(full.getGraph()), edges(switched.getGraph()));
+		}
+	}
+
+	private static MultiStrokePaleoRecognizer recognizer(boolean incremental) {
+		MultiStrokePaleoRecognizer recognizer = new MultiStrokePaleoRecognizer(
+				new EndpointRecognizer());
+		recognizer.M_DEBUG = false;
+		recognizer.setIncremental(incremental);
+		return recognizer;
+	}
+
+	private static List<IRecognitionResult> recognize(
+			MultiStrokePaleoRecognizer recognizer, Stroke stroke) {
+		recognizer.submitForRecognition(Collections.singletonList(stroke));
+		return recognizer.recognize();
+	}
+
+	/**
+	 * @return the best shape of each result, with the strokes it covers, in a
+	 *         fixed order
+	 */
+	private static List<String> describe(List<IRecognitionResult> results) {
+		List<String> descriptions = new ArrayList<String>();
+		for (IRecognitionResult result : results) {
+			Shape best = result.getBestShape();
+			StringBuilder description = new StringBuilder(
+					best.getInterpretation().label);
+			if (best.hasAttribute(MultiStrokePaleoRecognizer.COMBINED))
+				description.append(" combined");
+			for (Stroke s : best.getRecursiveStrokes())
+				description.append(" ").append(s.getFirstPoint().getX())
+						.append(",").append(s.getFirstPoint().getY())
+						.append("/").append(s.getNumPoints());
+			descriptions.add(description.toString());
+		}
+		Collections.sort(descriptions);
+		return descriptions;
+	}
+
+	/**
+	 * @return every edge of the graph by the names of its endpoints, in a
+	 *         fixed order
+	 */
+	private static List<String> edges(Graph graph) {
+		Set<GraphNode> nodes = new LinkedHashSet<GraphNode>(graph.getNodes());
+		List<String> edges = new ArrayList<String>();
+		for (GraphNode node : nodes) {
+			// a node can stay listed after its edges have been removed
+			List<GraphNode> adjacent = graph.getAdjacentNodes(node);
+			if (adjacent == null)
+				continue;
+			for (GraphNode w : adjacent)
+				edges.add(node + "-" + w);
+		}
+		Collections.sort(edges);
+		return edges;
+	}
+
+	/**
+	 * Closed loops of lines, with single lines and arcs around them
+	 */
+	private static List<Stroke> randomSketch(Random random) {
+		List<Stroke> strokes = new ArrayList<Stroke>();
+		long[] time = { 0 };
+		for (int shape = 0; shape < 12; shape++) {
+			double x = random.nextInt(600);
+			double y = random.nextInt(600);
+			double size = 40 + random.nextInt(80);
+			switch (random.nextInt(4)) {
+			case 0:
+				double[][] square = { { x, y }, { x + size, y },
+						{ x + size, y + size }, { x, y + size } };
+				addLoop(random, square, strokes, time);
+				break;
+			case 1:
+				double[][] triangle = { { x, y }, { x + size, y },
+						{ x + size / 2, y + size } };
+				addLoop(random, triangle, strokes, time);
+				break;
+			case 2:
+				strokes.add(line(x, y, x + random.nextInt(100), y
+						+ random.nextInt(100), time));
+				break;
+			default:
+				strokes.add(arc(x, y, size / 2, time));
+			}
+		}
+		return strokes;
+	}
+
+	/**
+	 * Adds one line stroke per side, with the corners a little off
+	 */
+	private static void addLoop(Random random, double[][] corners,
+			List<Stroke> strokes, long[] time) {
+		for (int c = 0; c < corners.length; c++) {
+			double[] from = corners[c];
+			double[] to = corners[(c + 1) % corners.length];
+			strokes.add(line(from[0] + random.nextInt(5) - 2, from[1]
+					+ random.nextInt(5) - 2, to[0] + random.nextInt(5) - 2,
+					to[1] + random.nextInt(5) - 2, time));
+		}
+	}
+
+	private static Stroke line(double x1, double y1, double x2, double y2,
+			long[] time) {
+		List<Point> points = new ArrayList<Point>();
+		int numPoints = 2 + (int) (Math.hypot(x2 - x1, y2 - y1) / 4);
+		for (int p = 0; p < numPoints; p++) {
+			double t = p / (double) (numPoints - 1);
+			points.add(new Point(x1 + (x2 - x1) * t, y1 + (y2 - y1) * t,
+					time[0] += 10));
+		}
+		time[0] += 100;
+		return new Stroke(points);
+	}
+
+	private static Stroke arc(double x, double y, double radius, long[] time) {
+		List<Point> points = new ArrayList<Point>();
+		for (int p = 0; p <= 20; p++) {
+			double angle = Math.PI * p / 20;
+			points.add(new Point(x + radius * Math.cos(angle), y + radius
+					* Math.sin(angle), time[0] += 10));
+		}
+		time[0] += 100;
+		return new Stroke(points);
+	}
+
+	/**
+	 * Stands in for PaleoSketch: closed strokes are polygons, straight strokes
+	 * lines and anything else an arc
+	 */
+	private static class EndpointRecognizer implements
+			IRecognizer<Stroke, IRecognitionResult> {
+
+		private Stroke m_stroke;
+
+		@Override
+		public void submitForRecognition(Stroke submission) {
+			m_stroke = submission;
+		}
+
+		@Override
+		public IRecognitionResult recognize() {
+			double distance = m_stroke.getFirstPoint().distance(
+					m_stroke.getLastPoint());
+			double length = m_stroke.getPathLength();
+			Shape shape = new Shape();
+			shape.add(m_stroke);
+			if (distance < length * 0.15) {
+				shape.setInterpretation(Fit.POLYGON, 0.9);
+				shape.setAttribute(IsAConstants.CLOSED, "true");
+			}
+			else if (distance > length * 0.95)
+				shape.setInterpretation(Fit.LINE, 0.9);
+			else
+				shape.setInterpretation(Fit.ARC, 0.9);
+			RecognitionResult result = new RecognitionResult();
+			result.addShapeToNBestList(shape);
+			return result;
+		}
+	}
+}
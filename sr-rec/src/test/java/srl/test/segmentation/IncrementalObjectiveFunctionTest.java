@@ -0,0 +1,115 @@
+package srl.test.segmentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import srl.core.sketch.Point;
+import srl.core.sketch.Stroke;
+import srl.segmentation.combination.objectiveFunctions.IObjectiveFunction;
+import srl.segmentation.combination.objectiveFunctions.IncrementalObjectiveFunction;
+import srl.segmentation.combination.objectiveFunctions.MSEObjectiveFunction;
+import srl.segmentation.combination.objectiveFunctions.PaleoErrorObjectiveFunction;
+import srl.segmentation.combination.objectiveFunctions.PolylineMSEObjectiveFunction;
+
+public class IncrementalObjectiveFunctionTest {
+
+	@Test
+	public void testPolylineMSEErrorsMatch() {
+		assertSameErrors(new PolylineMSEObjectiveFunction());
+	}
+
+	@Test
+	public void testMSEErrorsMatch() {
+		assertSameErrors(new MSEObjectiveFunction());
+	}
+
+	@Test
+	public void testOtherFunctionsAreNotWrapped() {
+		IObjectiveFunction function = new PaleoErrorObjectiveFunction();
+		assertSame(function, IncrementalObjectiveFunction.wrap(function));
+	}
+
+	/**
+	 * The same corners on another stroke, and on a stroke that grew after
+	 * its errors were cached
+	 */
+	@Test
+	public void testNewStrokeClearsCache() {
+		Random random = new Random(3);
+		PolylineMSEObjectiveFunction function = new PolylineMSEObjectiveFunction();
+		IObjectiveFunction incremental = IncrementalObjectiveFunction
+				.wrap(function);
+		List<Integer> corners = new ArrayList<Integer>();
+		corners.add(0);
+		corners.add(20);
+		corners.add(39);
+		Stroke stroke = zigzag(random, 40);
+		Stroke other = zigzag(random, 40);
+		incremental.solve(new ArrayList<Integer>(corners), stroke);
+		assertEquals(function.solve(new ArrayList<Integer>(corners), other),
+				incremental.solve(new ArrayList<Integer>(corners), other), 0.0);
+
+		incremental.solve(new ArrayList<Integer>(corners), stroke);
+		stroke.addPoint(new Point(1000, 1000, stroke.getTimeEnd() + 10));
+		assertEquals(function.solve(new ArrayList<Integer>(corners), stroke),
+				incremental.solve(new ArrayList<Integer>(corners), stroke), 0.0);
+	}
+
+	/**
+	 * Adds and removes corners one at a time, as the feature subset searches
+	 * do, and compares every subset with the wrapped function
+	 */
+	private static void assertSameErrors(IObjectiveFunction function) {
+		Random random = new Random(16);
+		IObjectiveFunction incremental = IncrementalObjectiveFunction
+				.wrap(function);
+		assertTrue(incremental instanceof IncrementalObjectiveFunction);
+		for (int s = 0; s < 5; s++) {
+			Stroke stroke = zigzag(random, 30 + random.nextInt(70));
+			int last = stroke.getNumPoints() - 1;
+			List<Integer> corners = new ArrayList<Integer>();
+			corners.add(0);
+			corners.add(last);
+			for (int step = 0; step < 100; step++) {
+				if (corners.size() > 2 && random.nextBoolean()) {
+					corners.remove(1 + random.nextInt(corners.size() - 2));
+				}
+				else {
+					int corner = 1 + random.nextInt(last - 1);
+					if (!corners.contains(corner))
+						corners.add(corner);
+				}
+				Collections.shuffle(corners, random);
+				double expected = function.solve(
+						new ArrayList<Integer>(corners), stroke);
+				double actual = incremental.solve(
+						new ArrayList<Integer>(corners), stroke);
+				assertEquals(expected, actual, 0.0);
+			}
+		}
+	}
+
+	private static Stroke zigzag(Random random, int numPoints) {
+		List<Point> points = new ArrayList<Point>();
+		double x = 0, y = 0;
+		double dx = 4, dy = 1;
+		for (int p = 0; p < numPoints; p++) {
+			points.add(new Point(x, y, p * 10L));
+			if (random.nextInt(8) == 0) {
+				dx = random.nextInt(9) - 4;
+				dy = random.nextInt(9) - 4;
+			}
+			x += dx + random.nextDouble();
+			y += dy + random.nextDouble();
+		}
+		return new Stroke(points);
+	}
+}